@@ -2,23 +2,19 @@ package org.angularjs.codeInsight;
 
 import com.intellij.json.psi.JsonElement;
 import com.intellij.lang.javascript.psi.JSCallExpression;
-import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
 import com.intellij.lang.javascript.psi.JSLiteralExpression;
 import com.intellij.lang.javascript.psi.ecma6.ES6Decorator;
 import com.intellij.lang.javascript.psi.stubs.JSImplicitElement;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.stubs.StubIndexKey;
 import com.intellij.util.Processor;
+import org.angularjs.index.AngularDirectiveDefinitions;
 import org.angularjs.index.AngularDirectivesDocIndex;
 import org.angularjs.index.AngularDirectivesIndex;
-import org.angularjs.index.AngularIndexUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-
 import static com.intellij.openapi.util.text.StringUtil.trimEnd;
 import static com.intellij.openapi.util.text.StringUtil.trimStart;
 
@@ -68,19 +64,19 @@ public class DirectiveUtil {
 
   public static boolean processTagDirectives(final Project project,
                                              Processor<JSImplicitElement> processor) {
-    final Collection<String> docDirectives = AngularIndexUtil.getAllKeys(AngularDirectivesDocIndex.KEY, project);
-    for (String directiveName : docDirectives) {
-      final JSImplicitElement directive = getTagDirective(project, directiveName, AngularDirectivesDocIndex.KEY);
+    final AngularDirectiveDefinitions docDirectives = AngularDirectiveDefinitions.getInstance(project, AngularDirectivesDocIndex.KEY);
+    for (String directiveName : docDirectives.getNames()) {
+      final JSImplicitElement directive = getTagDirective(project, directiveName, docDirectives);
       if (directive != null) {
         if (!processor.process(directive)) {
           return false;
         }
       }
     }
-    final Collection<String> directives = AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, project);
-    for (String directiveName : directives) {
+    final AngularDirectiveDefinitions directives = AngularDirectiveDefinitions.getInstance(project, AngularDirectivesIndex.KEY);
+    for (String directiveName : directives.getNames()) {
       if (!docDirectives.contains(directiveName)) {
-        final JSImplicitElement directive = getTagDirective(project, directiveName, AngularDirectivesIndex.KEY);
+        final JSImplicitElement directive = getTagDirective(project, directiveName, directives);
         if (directive != null) {
           if (!processor.process(directive)) {
             return false;
@@ -92,21 +88,15 @@ public class DirectiveUtil {
   }
 
   public static JSImplicitElement getTagDirective(String directiveName, Project project) {
-    final JSImplicitElement directive = getTagDirective(project, directiveName, AngularDirectivesDocIndex.KEY);
-    return directive == null ? getTagDirective(project, directiveName, AngularDirectivesIndex.KEY) : directive;
+    final JSImplicitElement directive =
+      getTagDirective(project, directiveName, AngularDirectiveDefinitions.getInstance(project, AngularDirectivesDocIndex.KEY));
+    return directive == null ?
+           getTagDirective(project, directiveName, AngularDirectiveDefinitions.getInstance(project, AngularDirectivesIndex.KEY)) : directive;
   }
 
-  private static JSImplicitElement getTagDirective(Project project, String directiveName, final StubIndexKey<String, JSImplicitElementProvider> index) {
-    final JSImplicitElement directive = AngularIndexUtil.resolve(project, index, directiveName);
-    final String restrictions = directive != null ? directive.getTypeString() : null;
-    if (restrictions != null) {
-      final String[] split = restrictions.split(";", -1);
-      final String restrict = AngularIndexUtil.convertRestrictions(project, split[0]);
-      if (!StringUtil.isEmpty(restrict) && StringUtil.containsIgnoreCase(restrict, "E")) {
-        return directive;
-      }
-    }
-    return null;
+  private static JSImplicitElement getTagDirective(Project project, String directiveName, final AngularDirectiveDefinitions definitions) {
+    final AngularDirectiveDefinitions.Directive directive = definitions.resolve(directiveName);
+    return directive != null && directive.isTag(project) ? directive.getElement() : null;
   }
 
   @Nullable
@@ -123,9 +113,10 @@ public class DirectiveUtil {
   @Nullable
   private static JSImplicitElement getDirective(@NotNull PsiElement element, final String name) {
     final String directiveName = getAttributeName(name);
-    final JSImplicitElement directive = AngularIndexUtil.resolve(element.getProject(), AngularDirectivesIndex.KEY, directiveName);
-    if (directive != null && directive.isEquivalentTo(element)) {
-      return directive;
+    final AngularDirectiveDefinitions.Directive directive =
+      AngularDirectiveDefinitions.getInstance(element.getProject(), AngularDirectivesIndex.KEY).resolve(directiveName);
+    if (directive != null && directive.getElement().isEquivalentTo(element)) {
+      return directive.getElement();
     }
     return null;
   }
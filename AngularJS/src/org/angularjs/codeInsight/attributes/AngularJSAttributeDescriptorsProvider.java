@@ -17,13 +17,13 @@ import com.intellij.xml.XmlAttributeDescriptor;
 import com.intellij.xml.XmlAttributeDescriptorsProvider;
 import com.intellij.xml.XmlElementDescriptor;
 import org.angularjs.codeInsight.DirectiveUtil;
+import org.angularjs.index.AngularDirectiveDefinitions;
 import org.angularjs.index.AngularDirectivesDocIndex;
 import org.angularjs.index.AngularDirectivesIndex;
 import org.angularjs.index.AngularIndexUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -42,7 +42,7 @@ public class AngularJSAttributeDescriptorsProvider implements XmlAttributeDescri
 
       final Map<String, XmlAttributeDescriptor> result = new LinkedHashMap<>();
       final XmlElementDescriptor descriptor = xmlTag.getDescriptor();
-      final Collection<String> directives = AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, project);
+      final AngularDirectiveDefinitions directives = AngularDirectiveDefinitions.getInstance(project, AngularDirectivesIndex.KEY);
       if (hasAngularJS2) {
         if (descriptor instanceof HtmlElementDescriptorImpl) {
           final XmlAttributeDescriptor[] descriptors = ((HtmlElementDescriptorImpl)descriptor).getDefaultAttributeDescriptors(xmlTag);
@@ -66,14 +66,14 @@ public class AngularJSAttributeDescriptorsProvider implements XmlAttributeDescri
           }
         }
       }
-      final Collection<String> docDirectives = AngularIndexUtil.getAllKeys(AngularDirectivesDocIndex.KEY, project);
-      for (String directiveName : docDirectives) {
+      final AngularDirectiveDefinitions docDirectives = AngularDirectiveDefinitions.getInstance(project, AngularDirectivesDocIndex.KEY);
+      for (String directiveName : docDirectives.getNames()) {
         PsiElement declaration = applicableDirective(project, directiveName, xmlTag, AngularDirectivesDocIndex.KEY);
         if (isApplicable(declaration)) {
           addAttributes(project, result, directiveName, declaration);
         }
       }
-      for (String directiveName : directives) {
+      for (String directiveName : directives.getNames()) {
         if (!docDirectives.contains(directiveName)) {
           PsiElement declaration = applicableDirective(project, directiveName, xmlTag, AngularDirectivesIndex.KEY);
           if (isApplicable(declaration)) {
@@ -99,10 +99,10 @@ public class AngularJSAttributeDescriptorsProvider implements XmlAttributeDescri
 
   private static PsiElement applicableDirective(Project project, String directiveName, XmlTag tag, final StubIndexKey<String, JSImplicitElementProvider> index) {
     Ref<PsiElement> result = Ref.create(PsiUtilCore.NULL_PSI_ELEMENT);
-    AngularIndexUtil.multiResolve(project, index, directiveName, (directive) -> {
-      ThreeState applicable = isApplicable(project, tag, directive);
+    AngularDirectiveDefinitions.getInstance(project, index).process(directiveName, (directive) -> {
+      ThreeState applicable = isApplicable(tag, directive);
       if (applicable == ThreeState.YES) {
-        result.set(directive);
+        result.set(directive.getElement());
       }
       if (applicable == ThreeState.NO && result.get() == PsiUtilCore.NULL_PSI_ELEMENT) {
         result.set(null);
@@ -113,22 +113,17 @@ public class AngularJSAttributeDescriptorsProvider implements XmlAttributeDescri
   }
 
   @NotNull
-  private static ThreeState isApplicable(Project project, XmlTag tag, JSImplicitElement directive) {
+  private static ThreeState isApplicable(XmlTag tag, AngularDirectiveDefinitions.Directive directive) {
     if (directive == null) {
       return ThreeState.UNSURE;
     }
 
-    final String restrictions = directive.getTypeString();
-    if (restrictions != null) {
-      final String[] split = restrictions.split(";", -1);
-      final String restrict = AngularIndexUtil.convertRestrictions(project, split[0]);
-      final String requiredTag = split[1];
-      if (!StringUtil.isEmpty(restrict) && !StringUtil.containsIgnoreCase(restrict, "A")) {
-        return ThreeState.NO;
-      }
-      if (!tagMatches(tag, requiredTag)) {
-        return ThreeState.NO;
-      }
+    if (!directive.isAttribute()) {
+      return ThreeState.NO;
+    }
+    final String requiredTag = directive.getRequiredTag();
+    if (requiredTag != null && !tagMatches(tag, requiredTag)) {
+      return ThreeState.NO;
     }
 
     return ThreeState.YES;
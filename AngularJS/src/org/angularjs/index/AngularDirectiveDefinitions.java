@@ -0,0 +1,194 @@
+package org.angularjs.index;
+
+import com.intellij.lang.javascript.DialectDetector;
+import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
+import com.intellij.lang.javascript.psi.stubs.JSImplicitElement;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootModificationTracker;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.Processor;
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Directives of one of the directive indices by their normalized (dashed) names, with restrictions parsed.
+ * Every attribute and custom tag in a template is looked up here while highlighting, so each name is resolved once
+ * and kept until declarations of directives change.
+ */
+public class AngularDirectiveDefinitions {
+  private static final Key<CachedValue<AngularDirectiveDefinitions>> DIRECTIVES_KEY = Key.create("angularjs.directive.definitions");
+  private static final Key<CachedValue<AngularDirectiveDefinitions>> DOC_DIRECTIVES_KEY = Key.create("angularjs.doc.directive.definitions");
+  private static final Definitions NO_DEFINITIONS = new Definitions(Collections.emptyList(), Collections.emptyList());
+
+  private final Project myProject;
+  private final StubIndexKey<String, JSImplicitElementProvider> myIndex;
+  private final Collection<String> myNames;
+  private final Set<String> myNameSet;
+  private final ConcurrentMap<String, Definitions> myDefinitions = ContainerUtil.newConcurrentMap();
+
+  private AngularDirectiveDefinitions(@NotNull Project project, @NotNull StubIndexKey<String, JSImplicitElementProvider> index) {
+    myProject = project;
+    myIndex = index;
+    myNames = AngularIndexUtil.getAllKeys(index, project);
+    myNameSet = new THashSet<>(myNames);
+  }
+
+  /**
+   * @param index {@link AngularDirectivesIndex#KEY} or {@link AngularDirectivesDocIndex#KEY}
+   */
+  @NotNull
+  public static AngularDirectiveDefinitions getInstance(@NotNull Project project,
+                                                        @NotNull StubIndexKey<String, JSImplicitElementProvider> index) {
+    assert index == AngularDirectivesIndex.KEY || index == AngularDirectivesDocIndex.KEY : index;
+    final Key<CachedValue<AngularDirectiveDefinitions>> key = index == AngularDirectivesIndex.KEY ? DIRECTIVES_KEY : DOC_DIRECTIVES_KEY;
+    return CachedValuesManager.getManager(project).getCachedValue(project, key, () ->
+      CachedValueProvider.Result.create(new AngularDirectiveDefinitions(project, index),
+                                        AngularIndexModificationTracker.getInstance(project).getTracker(index),
+                                        VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS,
+                                        ProjectRootModificationTracker.getInstance(project)), false);
+  }
+
+  /**
+   * Names of the directives in the order of {@link AngularIndexUtil#getAllKeys}.
+   */
+  @NotNull
+  public Collection<String> getNames() {
+    return myNames;
+  }
+
+  public boolean contains(@NotNull String name) {
+    return myNameSet.contains(name);
+  }
+
+  /**
+   * Passes directives with the name to the processor in the same order and with the same stopping rules
+   * as {@link AngularIndexUtil#multiResolve}.
+   */
+  public void process(@NotNull String name, @NotNull Processor<Directive> processor) {
+    final Definitions definitions = getDefinitions(name);
+    for (Directive directive : definitions.myIndexed) {
+      if (!processor.process(directive)) break;
+    }
+    for (Directive directive : definitions.myMetadata) {
+      if (!processor.process(directive)) return;
+    }
+  }
+
+  /**
+   * Same directive as {@link AngularIndexUtil#resolve} would find.
+   */
+  @Nullable
+  public Directive resolve(@NotNull String name) {
+    return getDefinitions(name).myResolved;
+  }
+
+  @NotNull
+  private Definitions getDefinitions(@NotNull String name) {
+    if (!myNameSet.contains(name)) return NO_DEFINITIONS;
+
+    final Definitions definitions = myDefinitions.get(name);
+    return definitions != null ? definitions : ConcurrencyUtil.cacheOrGet(myDefinitions, name, computeDefinitions(name));
+  }
+
+  @NotNull
+  private Definitions computeDefinitions(@NotNull String name) {
+    final GlobalSearchScope scope = GlobalSearchScope.allScope(myProject);
+    final List<Directive> indexed = new ArrayList<>();
+    AngularIndexUtil.processIndexed(myProject, myIndex, name, element -> indexed.add(new Directive(element)), scope);
+    final List<Directive> metadata = new ArrayList<>();
+    if (myIndex == AngularDirectivesIndex.KEY) {
+      AngularIndexUtil.processMetadata(myProject, name, element -> metadata.add(new Directive(element)), scope);
+    }
+    return new Definitions(indexed, metadata);
+  }
+
+  private static class Definitions {
+    private final List<Directive> myIndexed;
+    private final List<Directive> myMetadata;
+    private final Directive myResolved;
+
+    private Definitions(@NotNull List<Directive> indexed, @NotNull List<Directive> metadata) {
+      myIndexed = indexed;
+      myMetadata = metadata;
+      myResolved = resolve(metadata, resolve(indexed, null));
+    }
+
+    /**
+     * The last directive up to the first TypeScript one, like the processor of {@link AngularIndexUtil#resolve}.
+     */
+    @Nullable
+    private static Directive resolve(@NotNull List<Directive> directives, @Nullable Directive previous) {
+      Directive result = previous;
+      for (Directive directive : directives) {
+        result = directive;
+        if (directive.myTypeScript) break;
+      }
+      return result;
+    }
+  }
+
+  public static class Directive {
+    private final JSImplicitElement myElement;
+    private final boolean myTypeScript;
+    private final boolean myDefaultRestrictions;
+    private final boolean myAttribute;
+    private final boolean myTag;
+    private final String myRequiredTag;
+
+    private Directive(@NotNull JSImplicitElement element) {
+      myElement = element;
+      myTypeScript = DialectDetector.isTypeScript(element);
+
+      final String restrictions = element.getTypeString();
+      final String[] split = restrictions != null ? restrictions.split(";", -1) : null;
+      final String restrict = split != null ? split[0] : null;
+      myDefaultRestrictions = AngularJSIndexingHandler.DEFAULT_RESTRICTIONS.equals(restrict);
+      // default restrictions are "A" or "AE" depending on the version of AngularJS
+      myAttribute = StringUtil.isEmpty(restrict) || myDefaultRestrictions || StringUtil.containsIgnoreCase(restrict, "A");
+      myTag = !StringUtil.isEmpty(restrict) && StringUtil.containsIgnoreCase(restrict, "E");
+      myRequiredTag = split != null ? split[1] : null;
+    }
+
+    @NotNull
+    public JSImplicitElement getElement() {
+      return myElement;
+    }
+
+    public boolean isAttribute() {
+      return myAttribute;
+    }
+
+    public boolean isTag(@NotNull Project project) {
+      if (myDefaultRestrictions) {
+        return StringUtil.containsIgnoreCase(AngularIndexUtil.convertRestrictions(project, AngularJSIndexingHandler.DEFAULT_RESTRICTIONS), "E");
+      }
+      return myTag;
+    }
+
+    /**
+     * Comma-separated names of tags the directive may be used on, empty or "ANY" for any tag,
+     * {@code null} if the directive has no restrictions.
+     */
+    @Nullable
+    public String getRequiredTag() {
+      return myRequiredTag;
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package org.angularjs.index;
+
+import com.intellij.json.JsonLanguage;
+import com.intellij.lang.Language;
+import com.intellij.lang.javascript.JavascriptLanguage;
+import com.intellij.lang.xml.XMLLanguage;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.fileTypes.LanguageFileType;
+import com.intellij.openapi.fileTypes.StdFileTypes;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.*;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.PsiTreeChangeEventImpl;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.ID;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Counts PSI changes which may change the keys of Angular indices, so that cached keys survive edits in other files.
+ * Stub indices are built from JavaScript code (and metadata in JSON files), the file-based indices from HTML templates,
+ * so these are tracked separately. Files changed on disk or through VFS don't produce PSI events unless their PSI
+ * is loaded, so VFS events are counted as well.
+ */
+public class AngularIndexModificationTracker {
+  private final SimpleModificationTracker myScriptTracker = new SimpleModificationTracker();
+  private final SimpleModificationTracker myTemplateTracker = new SimpleModificationTracker();
+
+  public static AngularIndexModificationTracker getInstance(@NotNull Project project) {
+    return ServiceManager.getService(project, AngularIndexModificationTracker.class);
+  }
+
+  public AngularIndexModificationTracker(@NotNull Project project) {
+    PsiManager.getInstance(project).addPsiTreeChangeListener(new MyPsiTreeChangeListener(), project);
+    project.getMessageBus().connect(project).subscribe(VirtualFileManager.VFS_CHANGES, new MyVfsListener());
+  }
+
+  @NotNull
+  public ModificationTracker getTracker(@NotNull ID<String, ?> index) {
+    return index instanceof StubIndexKey ? myScriptTracker : myTemplateTracker;
+  }
+
+  private void changed(@NotNull PsiTreeChangeEvent event, @Nullable PsiElement... elements) {
+    // generic events for the whole file are accompanied by events for the changed elements
+    if (event instanceof PsiTreeChangeEventImpl && ((PsiTreeChangeEventImpl)event).isGenericChange()) return;
+
+    final PsiFile file = event.getFile();
+    // files or directories were added, removed, moved or renamed
+    if (file == null) {
+      myScriptTracker.incModificationCount();
+      myTemplateTracker.incModificationCount();
+      return;
+    }
+
+    final VirtualFile virtualFile = file.getViewProvider().getVirtualFile();
+    if (AngularTemplateIndexInputFilter.INSTANCE.acceptInput(virtualFile)) {
+      myTemplateTracker.incModificationCount();
+    }
+
+    final Language language = file.getLanguage();
+    if (isScript(language) || language.isKindOf(JsonLanguage.INSTANCE)) {
+      myScriptTracker.incModificationCount();
+    }
+    else if (containsXml(file) && containsScript(elements)) {
+      // scripts embedded into HTML or other markup
+      myScriptTracker.incModificationCount();
+    }
+  }
+
+  private void changed(@NotNull VFileEvent event) {
+    if (event instanceof VFileContentChangeEvent) {
+      changed(((VFileContentChangeEvent)event).getFile(), false);
+    }
+    else if (event instanceof VFileCreateEvent) {
+      final VFileCreateEvent createEvent = (VFileCreateEvent)event;
+      changed(createEvent.getChildName(), createEvent.isDirectory());
+    }
+    else if (event instanceof VFileDeleteEvent || event instanceof VFileMoveEvent) {
+      changed(event.getFile(), true);
+    }
+    else if (event instanceof VFileCopyEvent) {
+      final VFileCopyEvent copyEvent = (VFileCopyEvent)event;
+      changed(copyEvent.getNewChildName(), copyEvent.getFile().isDirectory());
+    }
+    else if (event instanceof VFilePropertyChangeEvent) {
+      final VFilePropertyChangeEvent propertyEvent = (VFilePropertyChangeEvent)event;
+      if (VirtualFile.PROP_NAME.equals(propertyEvent.getPropertyName())) {
+        final boolean directory = propertyEvent.getFile().isDirectory();
+        changed((String)propertyEvent.getOldValue(), directory);
+        changed((String)propertyEvent.getNewValue(), directory);
+      }
+    }
+  }
+
+  private void changed(@Nullable VirtualFile file, boolean mayBeDirectory) {
+    if (file == null) return;
+    changed(file.getName(), mayBeDirectory && file.isDirectory());
+  }
+
+  /**
+   * The file may be gone already, so its type is detected by name.
+   */
+  private void changed(@NotNull String fileName, boolean directory) {
+    if (directory) {
+      myScriptTracker.incModificationCount();
+      myTemplateTracker.incModificationCount();
+      return;
+    }
+
+    final FileType fileType = FileTypeManager.getInstance().getFileTypeByFileName(fileName);
+    if (fileType == StdFileTypes.HTML || fileType == StdFileTypes.XHTML) {
+      myTemplateTracker.incModificationCount();
+      // scripts embedded into HTML
+      myScriptTracker.incModificationCount();
+    }
+    else if (fileType instanceof LanguageFileType) {
+      final Language language = ((LanguageFileType)fileType).getLanguage();
+      if (isScript(language) || language.isKindOf(JsonLanguage.INSTANCE)) {
+        myScriptTracker.incModificationCount();
+      }
+    }
+  }
+
+  private static boolean isScript(@NotNull Language language) {
+    return language.isKindOf(JavascriptLanguage.INSTANCE);
+  }
+
+  private static boolean containsXml(@NotNull PsiFile file) {
+    for (Language language : file.getViewProvider().getLanguages()) {
+      if (language.isKindOf(XMLLanguage.INSTANCE)) return true;
+    }
+    return false;
+  }
+
+  private static boolean containsScript(@Nullable PsiElement... elements) {
+    if (elements == null) return true;
+    for (PsiElement element : elements) {
+      if (element == null) continue;
+      if (element instanceof PsiFileSystemItem) return true;
+      if (!PsiTreeUtil.processElements(element, e -> !isScript(e.getLanguage()))) return true;
+    }
+    return false;
+  }
+
+  private class MyPsiTreeChangeListener extends PsiTreeChangeAdapter {
+    @Override
+    public void beforeChildRemoval(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getChild());
+    }
+
+    @Override
+    public void beforeChildReplacement(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getOldChild());
+    }
+
+    @Override
+    public void beforeChildrenChange(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getParent());
+    }
+
+    @Override
+    public void childAdded(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getChild());
+    }
+
+    @Override
+    public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getNewChild());
+    }
+
+    @Override
+    public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getParent());
+    }
+
+    @Override
+    public void childMoved(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getOldParent(), event.getNewParent());
+    }
+
+    @Override
+    public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+      changed(event, event.getElement());
+    }
+  }
+
+  private class MyVfsListener implements BulkFileListener {
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+      for (VFileEvent event : events) {
+        changed(event);
+      }
+    }
+  }
+}
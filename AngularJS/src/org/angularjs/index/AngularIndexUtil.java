@@ -75,7 +75,19 @@ public class AngularIndexUtil {
                                    final String lookupKey,
                                    final Processor<JSImplicitElement> processor) {
     final GlobalSearchScope scope = GlobalSearchScope.allScope(project);
-    StubIndex.getInstance().processElements(
+    processIndexed(project, index, lookupKey, processor, scope);
+
+    if (index == AngularDirectivesIndex.KEY) {
+      processMetadata(project, lookupKey, processor, scope);
+    }
+  }
+
+  static boolean processIndexed(@NotNull Project project,
+                                @NotNull StubIndexKey<String, JSImplicitElementProvider> index,
+                                @NotNull String lookupKey,
+                                @NotNull Processor<JSImplicitElement> processor,
+                                @NotNull GlobalSearchScope scope) {
+    return StubIndex.getInstance().processElements(
       index, lookupKey, project, scope, JSImplicitElementProvider.class, provider -> {
         final JSElementIndexingData indexingData = provider.getIndexingData();
         if (indexingData != null) {
@@ -92,16 +104,12 @@ public class AngularIndexUtil {
         return true;
       }
     );
-
-    if (index == AngularDirectivesIndex.KEY) {
-      processMetadata(project, lookupKey, processor, scope);
-    }
   }
 
-  private static boolean processMetadata(@NotNull Project project,
-                                         @NotNull String lookupKey,
-                                         @NotNull Processor<JSImplicitElement> processor,
-                                         @NotNull GlobalSearchScope scope) {
+  static boolean processMetadata(@NotNull Project project,
+                                 @NotNull String lookupKey,
+                                 @NotNull Processor<JSImplicitElement> processor,
+                                 @NotNull GlobalSearchScope scope) {
     FileBasedIndex.ValueProcessor<Collection<JSImplicitElementsIndex.JSElementProxy>> implicitElementsProcessor =
       (virtualFile, value) -> {
         final PsiFile psiFile = PsiManager.getInstance(project).findFile(virtualFile);
@@ -218,7 +226,9 @@ public class AngularIndexUtil {
           filteredKeys.addAll(filteredFromMeta);
         }
       }
-      return CachedValueProvider.Result.create(filteredKeys, PsiManager.getInstance(project).getModificationTracker());
+      return CachedValueProvider.Result.create(filteredKeys, AngularIndexModificationTracker.getInstance(project).getTracker(id),
+                                               VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS,
+                                               ProjectRootModificationTracker.getInstance(project));
     }
   }
 }
@@ -3,6 +3,7 @@ package org.angularjs.codeInsight;
 import com.intellij.codeInspection.htmlInspections.RequiredAttributesInspection;
 import com.intellij.lang.javascript.JSTestUtils;
 import com.intellij.lang.javascript.dialects.JSLanguageLevel;
+import com.intellij.lang.javascript.psi.stubs.JSImplicitElement;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiReference;
 import com.intellij.psi.css.inspections.invalid.CssInvalidPseudoSelectorInspection;
@@ -164,6 +165,17 @@ public class TagsTest extends LightPlatformCodeInsightFixtureTestCase {
     });
   }
 
+  public void testCustomTagsAfterChange() {
+    myFixture.configureByFiles("angular.js", "custom.js");
+    final JSImplicitElement directive = DirectiveUtil.getTagDirective("my-customer", getProject());
+    assertNotNull(directive);
+    assertNull(DirectiveUtil.getTagDirective("my-latecomer", getProject()));
+
+    myFixture.configureByText("late.js", "angular.module('late', []).directive('myLatecomer', function() { return { restrict: 'E' }; });");
+    assertNotNull(DirectiveUtil.getTagDirective("my-latecomer", getProject()));
+    assertEquals(directive, DirectiveUtil.getTagDirective("my-customer", getProject()));
+  }
+
   public void testCustomTagsViaFunctionResolve() {
     myFixture.configureByFiles("customViaFunction.after.html", "angular.js", "custom.js");
     int offsetBySignature = AngularTestUtil.findOffsetBySignature("function-cus<caret>tomer", myFixture.getFile());
@@ -1,9 +1,16 @@
 package org.angularjs.index;
 
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
 import org.angularjs.AngularTestUtil;
 import org.junit.Assert;
 
+import java.io.IOException;
+import java.util.Collection;
+
 public class AngularIndexUtilTest extends LightPlatformCodeInsightFixtureTestCase {
 
   @Override
@@ -16,4 +23,30 @@ public class AngularIndexUtilTest extends LightPlatformCodeInsightFixtureTestCas
                               "{\"__symbolic\": \"module\",\"version\": 3,\"metadata\": {\"NgForOf\":{\"__symbolic\":\"class\",\"arity\":1,\"decorators\":[{\"__symbolic\":\"call\",\"expression\":{\"__symbolic\":\"reference\",\"module\":\"@angular/core\",\"name\":\"Directive\"},\"arguments\":[{\"selector\":\"[ngFor][ngForOf]\"}]}],\"members\":{\"ngForOf\":[{\"__symbolic\":\"property\",\"decorators\":[{\"__symbolic\":\"call\",\"expression\":{\"__symbolic\":\"reference\",\"module\":\"@angular/core\",\"name\":\"Input\"}}]}],\"ngForTrackBy\":[{\"__symbolic\":\"property\",\"decorators\":[{\"__symbolic\":\"call\",\"expression\":{\"__symbolic\":\"reference\",\"module\":\"@angular/core\",\"name\":\"Input\"}}]}],\"__ctor__\":[{\"__symbolic\":\"constructor\",\"parameters\":[{\"__symbolic\":\"reference\",\"module\":\"@angular/core\",\"name\":\"ViewContainerRef\"},{\"__symbolic\":\"reference\",\"name\":\"TemplateRef\",\"module\":\"@angular/core\",\"arguments\":[{\"__symbolic\":\"reference\",\"name\":\"NgForOfContext\"}]},{\"__symbolic\":\"reference\",\"module\":\"@angular/core\",\"name\":\"IterableDiffers\"}]}],\"ngForTemplate\":[{\"__symbolic\":\"property\",\"decorators\":[{\"__symbolic\":\"call\",\"expression\":{\"__symbolic\":\"reference\",\"module\":\"@angular/core\",\"name\":\"Input\"}}]}],\"ngOnChanges\":[{\"__symbolic\":\"method\"}],\"ngDoCheck\":[{\"__symbolic\":\"method\"}],\"_applyChanges\":[{\"__symbolic\":\"method\"}],\"_perViewChange\":[{\"__symbolic\":\"method\"}]}}}}");
     Assert.assertTrue(AngularIndexUtil.hasAngularJS2(myFixture.getProject()));
   }
+
+  public void testKeysSurviveUnrelatedChanges() {
+    myFixture.configureByText("app.js", "angular.module('app', []).directive('myFirst', function() { return {}; });");
+    myFixture.configureByText("index.html", "<html><body><div class=\"<caret>\" my-first></div></body></html>");
+    final Collection<String> keys = AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, getProject());
+    Assert.assertTrue(keys.contains("my-first"));
+
+    myFixture.type("value");
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+    Assert.assertSame(keys, AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, getProject()));
+
+    myFixture.configureByText("other.js", "angular.module('app').directive('mySecond', function() { return {}; });");
+    Assert.assertTrue(AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, getProject()).contains("my-second"));
+  }
+
+  public void testKeysUpdatedOnVfsChanges() throws IOException {
+    final VirtualFile file = myFixture.getTempDirFixture().createFile("app.js",
+                                                                      "angular.module('app', []).directive('myFirst', function() { return {}; });");
+    Assert.assertTrue(AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, getProject()).contains("my-first"));
+
+    // no PSI is loaded for the file, so there are no PSI events
+    WriteAction.run(() -> VfsUtil.saveText(file, "angular.module('app', []).directive('mySecond', function() { return {}; });"));
+    final Collection<String> keys = AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, getProject());
+    Assert.assertTrue(keys.contains("my-second"));
+    Assert.assertFalse(keys.contains("my-first"));
+  }
 }
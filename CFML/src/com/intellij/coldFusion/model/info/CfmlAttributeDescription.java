@@ -44,6 +44,16 @@ public class CfmlAttributeDescription implements Comparable<CfmlAttributeDescrip
     myCompletionExample = completionExample;
   }
 
+  CfmlAttributeDescription(Pattern namePattern, int type, boolean required, String description,
+                           @Nullable String completionExample, @Nullable String[] values) {
+    myNamePattern = namePattern;
+    myType = type;
+    myRequired = required;
+    myDescription = description;
+    myCompletionExample = completionExample;
+    myValues = values;
+  }
+
   public void addValue(String value) {
     if (myValues == null) {
       myValues = ArrayUtil.EMPTY_STRING_ARRAY;
@@ -60,6 +70,15 @@ public class CfmlAttributeDescription implements Comparable<CfmlAttributeDescrip
     return myNamePattern.matcher(myNamePattern.pattern()).matches() ? myNamePattern.pattern() : myCompletionExample;
   }
 
+  Pattern getNamePattern() {
+    return myNamePattern;
+  }
+
+  @Nullable
+  String getCompletionExample() {
+    return myCompletionExample;
+  }
+
   public String getDescription() {
     return myDescription;
   }
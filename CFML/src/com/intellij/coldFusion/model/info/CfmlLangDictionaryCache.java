@@ -0,0 +1,319 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.coldFusion.model.info;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Dictionaries of all language levels, shared by all projects.
+ * <p/>
+ * Parsing of a tags XML file takes a noticeable time, so the parsed dictionary is saved to the system directory
+ * in a binary form and is read from there next time. All strings of the binary form are stored once in a table,
+ * so attribute and parameter names, types and values are shared by the loaded descriptions.
+ */
+public class CfmlLangDictionaryCache {
+  private static final Logger LOG = Logger.getInstance(CfmlLangDictionaryCache.class.getName());
+
+  private static final int MAGIC = 0xCF3D1C7;
+  private static final int VERSION = 1;
+  private static final String SCOPES_FILE_NAME = "scopes.txt";
+
+  private static final Map<String, CfmlLangInfo.CfmlLangDictionary> ourDictionaries = new ConcurrentHashMap<>();
+
+  private CfmlLangDictionaryCache() {
+  }
+
+  @NotNull
+  public static CfmlLangInfo.CfmlLangDictionary getDictionary(@Nullable String tagsFileName) {
+    tagsFileName = StringUtil.notNullize(tagsFileName);
+    CfmlLangInfo.CfmlLangDictionary dictionary = ourDictionaries.get(tagsFileName);
+    if (dictionary != null) return dictionary;
+
+    synchronized (CfmlLangDictionaryCache.class) {
+      dictionary = ourDictionaries.get(tagsFileName);
+      if (dictionary == null) {
+        dictionary = load(tagsFileName, getCacheFile(tagsFileName));
+        ourDictionaries.put(tagsFileName, dictionary);
+      }
+    }
+    return dictionary;
+  }
+
+  static File getCacheFile(String tagsFileName) {
+    return new File(PathManager.getSystemPath(), "cfml/" + FileUtil.getNameWithoutExtension(tagsFileName) + ".dic");
+  }
+
+  static CfmlLangInfo.CfmlLangDictionary load(String tagsFileName, File cacheFile) {
+    long stamp = getStamp(tagsFileName);
+    if (stamp != -1 && cacheFile.isFile()) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+        CfmlLangInfo.CfmlLangDictionary dictionary = read(in, stamp);
+        if (dictionary != null) return dictionary;
+      }
+      catch (IOException | RuntimeException e) {
+        LOG.info("Cannot read " + cacheFile + ", " + tagsFileName + " will be parsed", e);
+      }
+    }
+
+    CfmlLangInfo.CfmlLangDictionary dictionary = new CfmlLangInfo.CfmlLangDictionary(SCOPES_FILE_NAME, tagsFileName);
+    if (stamp != -1 && !dictionary.myHasErrors) {
+      save(dictionary, stamp, cacheFile);
+    }
+    return dictionary;
+  }
+
+  /**
+   * @return stamp of both files the dictionary is parsed from, -1 if one of them is missing
+   */
+  private static long getStamp(String tagsFileName) {
+    if (StringUtil.isEmpty(tagsFileName)) return -1;
+    long tagsStamp = getResourceStamp(tagsFileName);
+    long scopesStamp = getResourceStamp(SCOPES_FILE_NAME);
+    return tagsStamp == -1 || scopesStamp == -1 ? -1 : tagsStamp * 31 + scopesStamp;
+  }
+
+  private static long getResourceStamp(String fileName) {
+    URL resource = CfmlLangInfo.class.getResource(fileName);
+    if (resource == null) return -1;
+    try {
+      URLConnection connection = resource.openConnection();
+      connection.setUseCaches(false);
+      long result = connection.getContentLengthLong() * 31 + connection.getLastModified();
+      connection.getInputStream().close();
+      return result;
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return -1;
+    }
+  }
+
+  private static void save(CfmlLangInfo.CfmlLangDictionary dictionary, long stamp, File cacheFile) {
+    File tempFile = new File(cacheFile.getPath() + ".tmp");
+    try {
+      FileUtil.createParentDirs(tempFile);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        write(dictionary, stamp, out);
+      }
+      FileUtil.rename(tempFile, cacheFile);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot save " + cacheFile, e);
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  static void write(CfmlLangInfo.CfmlLangDictionary dictionary, long stamp, DataOutputStream out) throws IOException {
+    StringTable strings = new StringTable();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream body = new DataOutputStream(bytes);
+
+    strings.writeArray(body, dictionary.myVariableScopes);
+    strings.writeArray(body, dictionary.myPredefinedFunctions);
+
+    Map<String, CfmlFunctionDescription> functions = orEmpty(dictionary.myFunctionParameters);
+    body.writeInt(functions.size());
+    for (Map.Entry<String, CfmlFunctionDescription> entry : functions.entrySet()) {
+      CfmlFunctionDescription function = entry.getValue();
+      strings.write(body, entry.getKey());
+      strings.write(body, function.getName());
+      strings.write(body, function.getReturnType());
+      strings.write(body, function.getDescription());
+      body.writeInt(function.getParameters().size());
+      for (CfmlFunctionDescription.CfmlParameterDescription parameter : function.getParameters()) {
+        strings.write(body, parameter.getName());
+        strings.write(body, parameter.getType());
+        body.writeBoolean(parameter.isRequired());
+        strings.write(body, parameter.getDescription());
+      }
+    }
+
+    Map<String, CfmlTagDescription> tags = orEmpty(dictionary.myTagAttributes);
+    body.writeInt(tags.size());
+    for (Map.Entry<String, CfmlTagDescription> entry : tags.entrySet()) {
+      CfmlTagDescription tag = entry.getValue();
+      strings.write(body, entry.getKey());
+      strings.write(body, tag.getName());
+      body.writeBoolean(tag.isSingle());
+      body.writeBoolean(tag.isEndTagRequired());
+      strings.write(body, tag.getDescription());
+      body.writeInt(tag.getAttributes().size());
+      for (CfmlAttributeDescription attribute : tag.getAttributes()) {
+        strings.write(body, attribute.getNamePattern().pattern());
+        body.writeInt(attribute.getType());
+        body.writeBoolean(attribute.isRequired());
+        strings.write(body, attribute.getDescription());
+        strings.write(body, attribute.getCompletionExample());
+        strings.writeArray(body, attribute.getValues());
+      }
+    }
+
+    Map<String, Integer> variables = orEmpty(dictionary.myPredefinedVariables);
+    body.writeInt(variables.size());
+    for (Map.Entry<String, Integer> entry : variables.entrySet()) {
+      strings.write(body, entry.getKey());
+      body.writeInt(entry.getValue());
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(stamp);
+    out.writeInt(strings.myStrings.size());
+    for (String s : strings.myStrings) {
+      byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(utf8.length);
+      out.write(utf8);
+    }
+    bytes.writeTo(out);
+  }
+
+  /**
+   * @return null if the data were saved for other version of the format or of the tags or scopes file
+   */
+  @Nullable
+  static CfmlLangInfo.CfmlLangDictionary read(DataInputStream in, long stamp) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != stamp) return null;
+
+    String[] strings = new String[in.readInt()];
+    byte[] buffer = new byte[256];
+    for (int i = 0; i < strings.length; i++) {
+      int length = in.readInt();
+      if (length > buffer.length) {
+        buffer = new byte[Math.max(length, buffer.length * 2)];
+      }
+      in.readFully(buffer, 0, length);
+      strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    CfmlLangInfo.CfmlLangDictionary dictionary = new CfmlLangInfo.CfmlLangDictionary();
+    dictionary.myVariableScopes = readArray(in, strings);
+    dictionary.myPredefinedFunctions = readArray(in, strings);
+
+    int functionCount = in.readInt();
+    Map<String, CfmlFunctionDescription> functions = new HashMap<>(functionCount * 4 / 3 + 1);
+    for (int i = 0; i < functionCount; i++) {
+      String key = readString(in, strings);
+      CfmlFunctionDescription function = new CfmlFunctionDescription(readString(in, strings), readString(in, strings));
+      function.setDescription(readString(in, strings));
+      int parameterCount = in.readInt();
+      for (int j = 0; j < parameterCount; j++) {
+        CfmlFunctionDescription.CfmlParameterDescription parameter =
+          new CfmlFunctionDescription.CfmlParameterDescription(readString(in, strings), readString(in, strings), in.readBoolean());
+        parameter.setDescription(readString(in, strings));
+        function.addParameter(parameter);
+      }
+      functions.put(key, function);
+    }
+    dictionary.myFunctionParameters = functions;
+    dictionary.myPredefinedFunctionsInLowCase = functions.keySet().toArray(new String[functions.size()]);
+
+    // attribute names are regular expressions, compile each of them once
+    Map<String, Pattern> namePatterns = new HashMap<>();
+    int tagCount = in.readInt();
+    Map<String, CfmlTagDescription> tags = new HashMap<>(tagCount * 4 / 3 + 1);
+    for (int i = 0; i < tagCount; i++) {
+      String key = readString(in, strings);
+      CfmlTagDescription tag = new CfmlTagDescription(readString(in, strings), in.readBoolean(), in.readBoolean());
+      tag.setDescription(readString(in, strings));
+      int attributeCount = in.readInt();
+      for (int j = 0; j < attributeCount; j++) {
+        String name = readString(in, strings);
+        Pattern namePattern = namePatterns.get(name);
+        if (namePattern == null) {
+          namePattern = Pattern.compile(name);
+          namePatterns.put(name, namePattern);
+        }
+        tag.addAttribute(new CfmlAttributeDescription(namePattern, in.readInt(), in.readBoolean(), readString(in, strings),
+                                                      readString(in, strings), readArray(in, strings)));
+      }
+      tags.put(key, tag);
+    }
+    dictionary.myTagAttributes = tags;
+
+    int variableCount = in.readInt();
+    Map<String, Integer> variables = new HashMap<>(variableCount * 4 / 3 + 1);
+    for (int i = 0; i < variableCount; i++) {
+      variables.put(readString(in, strings), in.readInt());
+    }
+    dictionary.myPredefinedVariables = variables;
+    return dictionary;
+  }
+
+  @Nullable
+  private static String readString(DataInputStream in, String[] strings) throws IOException {
+    int index = in.readInt();
+    return index < 0 ? null : strings[index];
+  }
+
+  @Nullable
+  private static String[] readArray(DataInputStream in, String[] strings) throws IOException {
+    int length = in.readInt();
+    if (length < 0) return null;
+
+    String[] result = new String[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = readString(in, strings);
+    }
+    return result;
+  }
+
+  private static <K, V> Map<K, V> orEmpty(@Nullable Map<K, V> map) {
+    return map != null ? map : Collections.emptyMap();
+  }
+
+  private static class StringTable {
+    private final List<String> myStrings = new ArrayList<>();
+    private final Map<String, Integer> myIndices = new HashMap<>();
+
+    void write(DataOutputStream out, @Nullable String s) throws IOException {
+      if (s == null) {
+        out.writeInt(-1);
+        return;
+      }
+      Integer index = myIndices.get(s);
+      if (index == null) {
+        index = myStrings.size();
+        myStrings.add(s);
+        myIndices.put(s, index);
+      }
+      out.writeInt(index);
+    }
+
+    void writeArray(DataOutputStream out, @Nullable String[] array) throws IOException {
+      if (array == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(array.length);
+      for (String s : array) {
+        write(out, s);
+      }
+    }
+  }
+}
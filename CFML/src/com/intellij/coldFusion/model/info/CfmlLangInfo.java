@@ -20,9 +20,7 @@ import com.intellij.coldFusion.model.CfmlLanguage;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.reference.SoftReference;
 import com.intellij.util.text.LineReader;
 import org.jetbrains.annotations.Nullable;
 import org.xml.sax.InputSource;
@@ -30,7 +28,6 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import java.io.InputStream;
-import java.lang.ref.Reference;
 import java.util.List;
 import java.util.Map;
 
@@ -39,8 +36,6 @@ import java.util.Map;
  */
 public class CfmlLangInfo {
   private final Project myProject;
-  private Reference<CfmlLangDictionary> myCFDictionary;
-  private String myCFDictionaryLevel;
 
   public static CfmlLangInfo getInstance(Project project) {
     return ServiceManager.getService(project, CfmlLangInfo.class);
@@ -51,11 +46,17 @@ public class CfmlLangInfo {
   }
 
   public static class CfmlLangDictionary {
+    CfmlLangDictionary() {
+    }
+
     public CfmlLangDictionary(String scopesFileName, String tagsFileName) {
       if (StringUtil.isEmpty(scopesFileName) || StringUtil.isEmpty(tagsFileName)) {
         return;
       }
       myVariableScopes = readStringsFromFile(scopesFileName);
+      if (myVariableScopes == null) {
+        myHasErrors = true;
+      }
 
       final CfmlTagsDescriptionsParser cfmlTagsParser = new CfmlTagsDescriptionsParser();
       try {
@@ -65,6 +66,7 @@ public class CfmlLangInfo {
       }
       catch (Exception e) {
         LOG.error(e);
+        myHasErrors = true;
       }
       myTagAttributes = cfmlTagsParser.getTags();
       myFunctionParameters = cfmlTagsParser.getFunctions();
@@ -79,27 +81,12 @@ public class CfmlLangInfo {
     public String[] myVariableScopes;
     public Map<String, CfmlTagDescription> myTagAttributes;
     public Map<String, CfmlFunctionDescription> myFunctionParameters;
+    // the dictionary is incomplete, so it mustn't be cached
+    boolean myHasErrors;
   }
 
   private CfmlLangDictionary getProjectDictionary() {
-    String languageLevel = getLanguageLevel();
-    CfmlLangDictionary dictionary;
-
-    if (Comparing.equal(myCFDictionaryLevel, languageLevel)) {
-      dictionary = SoftReference.dereference(myCFDictionary);
-      if (dictionary != null) return dictionary;
-    }
-
-    synchronized (CfmlLangInfo.class) {
-      dictionary = SoftReference.dereference(myCFDictionary);
-      if (dictionary == null || !Comparing.equal(myCFDictionaryLevel, languageLevel)) {
-        dictionary = new CfmlLangDictionary("scopes.txt", languageLevel);
-        myCFDictionary = new SoftReference<>(dictionary);
-        myCFDictionaryLevel = languageLevel;
-      }
-    }
-
-    return dictionary;
+    return CfmlLangDictionaryCache.getDictionary(getLanguageLevel());
   }
 
   public String getLanguageLevel() {
@@ -44,6 +44,9 @@ public class CfmlTagsDescriptionsParser extends DefaultHandler {
   private CfmlAttributeDescription myCurrentAttribute = null;
   private List<String> myFunctionUpperCased = new LinkedList<>();
   private String myCurrentScope = "";
+  // the same attributes and parameters are described for many tags and functions
+  private final Map<String, String> myStrings = new HashMap<>();
+  private final Map<String, Pattern> myNamePatterns = new HashMap<>();
 
   private static final int TAG_STATE = 0;
   private static final int FUNCTION_STATE = 1;
@@ -98,7 +101,7 @@ public class CfmlTagsDescriptionsParser extends DefaultHandler {
       if (localName.equals("tag")) {
         final String isSingle = attr.getValue("single");
         final String isEndtagrequired = attr.getValue("endtagrequired");
-        myCurrentTag = new CfmlTagDescription(attr.getValue("name"),
+        myCurrentTag = new CfmlTagDescription(intern(attr.getValue("name")),
                                               Boolean.valueOf(isSingle), Boolean.valueOf(isEndtagrequired));
       }
       else if (localName.equals("help")) {
@@ -109,20 +112,20 @@ public class CfmlTagsDescriptionsParser extends DefaultHandler {
         int aType = CfmlTypesInfo.getTypeByString(attr.getValue("type"));
         boolean aRequired = Boolean.valueOf(attr.getValue("required"));
         String aDescription = "";
-        myCurrentAttribute = new CfmlAttributeDescription(aName, aType, aRequired, aDescription);
+        myCurrentAttribute = new CfmlAttributeDescription(getNamePattern(aName), aType, aRequired, aDescription, null, null);
       }
       else if (localName.equals("value") && myCurrentAttribute != null) {
-        myCurrentAttribute.addValue(attr.getValue("option"));
+        myCurrentAttribute.addValue(intern(attr.getValue("option")));
       }
     }
     else if (myState == FUNCTION_STATE) {
       myIsFunctionHelpSection = false;
       if (localName.equals("function")) {
-        myCurrentFunction = new CfmlFunctionDescription(attr.getValue("name"), attr.getValue("returns"));
+        myCurrentFunction = new CfmlFunctionDescription(attr.getValue("name"), intern(attr.getValue("returns")));
       }
       else if (localName.equals("parameter") && myCurrentFunction != null) {
-        String aName = attr.getValue("name");
-        String aType = attr.getValue("type");
+        String aName = intern(attr.getValue("name"));
+        String aType = intern(attr.getValue("type"));
         boolean aRequired = Boolean.valueOf(attr.getValue("required"));
 
         myCurrentFunction.addParameter(new CfmlFunctionDescription.CfmlParameterDescription(aName, aType, aRequired));
@@ -182,6 +185,25 @@ public class CfmlTagsDescriptionsParser extends DefaultHandler {
     }
   }
 
+  private String intern(String s) {
+    if (s == null) return null;
+    String result = myStrings.get(s);
+    if (result == null) {
+      myStrings.put(s, s);
+      result = s;
+    }
+    return result;
+  }
+
+  private Pattern getNamePattern(String name) {
+    Pattern result = myNamePatterns.get(name);
+    if (result == null) {
+      result = Pattern.compile(name);
+      myNamePatterns.put(name, result);
+    }
+    return result;
+  }
+
   public Map<String, CfmlFunctionDescription> getFunctions() {
     return myFunctions;
   }
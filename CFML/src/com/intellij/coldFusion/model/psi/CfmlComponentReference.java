@@ -20,14 +20,12 @@ import com.intellij.codeInsight.completion.InsertionContext;
 import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.coldFusion.UI.config.CfmlMappingsConfig;
-import com.intellij.coldFusion.UI.config.CfmlProjectConfiguration;
 import com.intellij.coldFusion.model.CfmlUtil;
 import com.intellij.coldFusion.model.files.CfmlFile;
 import com.intellij.coldFusion.model.psi.stubs.CfmlIndex;
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.Couple;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.io.FileUtil;
@@ -130,35 +128,55 @@ public class CfmlComponentReference extends CfmlCompositeElement implements Cfml
       return result;
     }
 
-    Project project = originalFile.getProject();
-    if (!componentQualifiedName.contains(".")) {
-      // resolve with directory scope
-      // PsiFile containingFile = getContainingFile();
-      // containingFile = containingFile == null ? null : containingFile.getOriginalFile();
-      {
-        CfmlFile cfmlConteiningFile = originalFile;
-        PsiDirectory directory = cfmlConteiningFile.getParent();
-        if (directory != null) {
-          GlobalSearchScope searchScope = GlobalSearchScopes.directoryScope(directory, false);
+    final Project project = originalFile.getProject();
+    final PsiDirectory directory = originalFile.getParent();
+    final CfmlComponentResolveCache cache = CfmlComponentResolveCache.getInstance(project);
+    final CfmlMappingsConfig mappings = cache.getMappings();
+    result.addAll(cache.getComponents(componentQualifiedName, directory != null ? directory.getVirtualFile() : null, mappings,
+                                      () -> resolveInDirectoryAndMappings(componentQualifiedName, directory, mappings, project)));
 
-          final Collection<CfmlComponent> components = CfmlIndex.getInstance(project).getComponentsByNameInScope(
-            componentQualifiedName, searchScope);
-          components.addAll(CfmlIndex.getInstance(project).getInterfacesByNameInScope(
-            componentQualifiedName, searchScope));
-          for (CfmlComponent component : components) {
-            result.add(component);
-          }
-        }
-        else {
-          final Collection<CfmlComponent> components = CfmlIndex.getInstance(project).getComponentsByName(
-            componentQualifiedName);
-          components.addAll(CfmlIndex.getInstance(project).getInterfacesByName(componentQualifiedName));
-          for (CfmlComponent component : components) {
-            result.add(component);
-          }
+    if (result.isEmpty()) {
+      final Couple<String> prefixAndName = CfmlUtil.getPrefixAndName(componentQualifiedName);
+      final String componentName = prefixAndName.getSecond();
+      final CfmlImport cfmlImport = CfmlUtil.getImportByPrefix(originalFile, prefixAndName.getFirst());
+      if (cfmlImport != null && !StringUtil.isEmpty(componentName)) {
+        String libtag = cfmlImport.getImportString();
+        final VirtualFile folder = CfmlUtil.findFileByLibTag(originalFile, libtag);
+        if (folder != null && folder.isDirectory()) {
+          final GlobalSearchScope scope = GlobalSearchScopes.directoryScope(originalFile.getProject(), folder, true);
+          result.addAll(CfmlIndex.getInstance(originalFile.getProject()).getComponentsByNameInScope(componentName, scope));
         }
       }
     }
+    return result;
+  }
+
+  /**
+   * Unlike resolving by imports, the result depends only on the directory of the file, so it's cached
+   */
+  private static List<CfmlComponent> resolveInDirectoryAndMappings(String componentQualifiedName,
+                                                                   @Nullable PsiDirectory directory,
+                                                                   CfmlMappingsConfig mappings,
+                                                                   Project project) {
+    List<CfmlComponent> result = new ArrayList<>();
+    if (!componentQualifiedName.contains(".")) {
+      // resolve with directory scope
+      if (directory != null) {
+        GlobalSearchScope searchScope = GlobalSearchScopes.directoryScope(directory, false);
+
+        final Collection<CfmlComponent> components = CfmlIndex.getInstance(project).getComponentsByNameInScope(
+          componentQualifiedName, searchScope);
+        components.addAll(CfmlIndex.getInstance(project).getInterfacesByNameInScope(
+          componentQualifiedName, searchScope));
+        result.addAll(components);
+      }
+      else {
+        final Collection<CfmlComponent> components = CfmlIndex.getInstance(project).getComponentsByName(
+          componentQualifiedName);
+        components.addAll(CfmlIndex.getInstance(project).getInterfacesByName(componentQualifiedName));
+        result.addAll(components);
+      }
+    }
 
     if (result.isEmpty()) {
       String componentName = getComponentName(componentQualifiedName);
@@ -172,9 +190,6 @@ public class CfmlComponentReference extends CfmlCompositeElement implements Cfml
         directoryName = componentQualifiedName.substring(0, i);
       }
 
-      CfmlProjectConfiguration.State state = CfmlProjectConfiguration.getInstance(project).getState();
-      CfmlMappingsConfig mappings = state != null ? state.getMapps().clone() : new CfmlMappingsConfig();
-      adjustMappingsIfEmpty(mappings, originalFile.getProject());
       // addFakeMappingsForResolution(mappings);
       List<String> realPossiblePaths = mappings.mapVirtualToReal(directoryName);
       // Collections.sort(realPossiblePaths);
@@ -203,37 +218,21 @@ public class CfmlComponentReference extends CfmlCompositeElement implements Cfml
         if (fileByUrl != null) {
           PsiFile file = PsiManager.getInstance(project).findFile(fileByUrl);
           if (file != null) {
-            PsiDirectory directory = file.getParent();
-            if (directory != null) {
-              GlobalSearchScope searchScope = GlobalSearchScopes.directoryScope(directory, false);
+            PsiDirectory fileDirectory = file.getParent();
+            if (fileDirectory != null) {
+              GlobalSearchScope searchScope = GlobalSearchScopes.directoryScope(fileDirectory, false);
 
               final Collection<CfmlComponent> componentsFromGlobalScope = CfmlIndex.getInstance(project).getComponentsByNameInScope(
                 componentName, searchScope);
               componentsFromGlobalScope.addAll(CfmlIndex.getInstance(project).getInterfacesByNameInScope(
                 componentName, searchScope));
 
-              for (CfmlComponent component : componentsFromGlobalScope) {
-                result.add(component);
-              }
+              result.addAll(componentsFromGlobalScope);
             }
           }
         }
       }
     }
-
-    if (result.isEmpty()) {
-      final Couple<String> prefixAndName = CfmlUtil.getPrefixAndName(componentQualifiedName);
-      final String componentName = prefixAndName.getSecond();
-      final CfmlImport cfmlImport = CfmlUtil.getImportByPrefix(originalFile, prefixAndName.getFirst());
-      if (cfmlImport != null && !StringUtil.isEmpty(componentName)) {
-        String libtag = cfmlImport.getImportString();
-        final VirtualFile folder = CfmlUtil.findFileByLibTag(originalFile, libtag);
-        if (folder != null && folder.isDirectory()) {
-          final GlobalSearchScope scope = GlobalSearchScopes.directoryScope(originalFile.getProject(), folder, true);
-          result.addAll(CfmlIndex.getInstance(originalFile.getProject()).getComponentsByNameInScope(componentName, scope));
-        }
-      }
-    }
     return result;
   }
 
@@ -354,11 +353,11 @@ public class CfmlComponentReference extends CfmlCompositeElement implements Cfml
       int i = text.lastIndexOf(".");
       directoryName = text.substring(0, i);
     }
-    CfmlProjectConfiguration.State state = CfmlProjectConfiguration.getInstance(project).getState();
-    CfmlMappingsConfig mappings = state != null ? state.getMapps().clone() : new CfmlMappingsConfig();
-
-    adjustMappingsIfEmpty(mappings, project);
-    if (reference != null) addFakeMappingsForImports(reference, mappings);
+    CfmlMappingsConfig mappings = CfmlComponentResolveCache.getInstance(project).getMappings();
+    if (reference != null && PsiTreeUtil.getParentOfType(reference, CfmlImport.class) != null) {
+      mappings = mappings.clone();
+      addFakeMappingsForImports(reference, mappings);
+    }
 
     List<String> realPossiblePaths = mappings.mapVirtualToReal(directoryName);
 
@@ -433,16 +432,6 @@ public class CfmlComponentReference extends CfmlCompositeElement implements Cfml
     });
   }
 
-  private static void adjustMappingsIfEmpty(CfmlMappingsConfig mappings, Project project) {
-    if (mappings.getServerMappings().size() != 0) {
-      return;
-    }
-
-    for (VirtualFile root : ProjectRootManager.getInstance(project).getContentRoots()) {
-      mappings.putToServerMappings("", root.getPresentableUrl());
-    }
-  }
-
   private static void addFakeMappingsForImports(CfmlComponentReference ref, CfmlMappingsConfig mappings) {
     if (PsiTreeUtil.getParentOfType(ref, CfmlImport.class) != null) {
       // create fake mappings for imports
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.coldFusion.model.psi;
+
+import com.intellij.coldFusion.UI.config.CfmlMappingsConfig;
+import com.intellij.coldFusion.UI.config.CfmlProjectConfiguration;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Components resolved by qualified names against the index. Highlighting of a big component
+ * resolves the same names many times, so results are kept until PSI or project roots are changed.
+ * Results depend on the mappings and the directory of the referencing file, these are parts of the key.
+ */
+public class CfmlComponentResolveCache {
+  private final Project myProject;
+  private final CachedValue<ConcurrentMap<Key, List<CfmlComponent>>> myComponents;
+  private final AtomicLong myHits = new AtomicLong();
+  private final AtomicLong myMisses = new AtomicLong();
+
+  private CfmlMappingsConfig myConfiguredMappings;
+  private long myRootsModificationCount = -1;
+  private CfmlMappingsConfig myMappings;
+
+  public static CfmlComponentResolveCache getInstance(Project project) {
+    return ServiceManager.getService(project, CfmlComponentResolveCache.class);
+  }
+
+  public CfmlComponentResolveCache(Project project) {
+    myProject = project;
+    myComponents = CachedValuesManager.getManager(project).createCachedValue(
+      () -> CachedValueProvider.Result.<ConcurrentMap<Key, List<CfmlComponent>>>create(
+        new ConcurrentHashMap<>(), PsiModificationTracker.MODIFICATION_COUNT, ProjectRootManager.getInstance(project)), false);
+  }
+
+  @NotNull
+  List<CfmlComponent> getComponents(@NotNull String qualifiedName,
+                                    @Nullable VirtualFile directory,
+                                    @NotNull CfmlMappingsConfig mappings,
+                                    @NotNull Computable<List<CfmlComponent>> computable) {
+    Key key = new Key(qualifiedName, directory, mappings);
+    ConcurrentMap<Key, List<CfmlComponent>> components = myComponents.getValue();
+    List<CfmlComponent> result = components.get(key);
+    if (result != null) {
+      myHits.incrementAndGet();
+      return result;
+    }
+
+    myMisses.incrementAndGet();
+    result = Collections.unmodifiableList(computable.compute());
+    components.put(key, result);
+    return result;
+  }
+
+  /**
+   * Returns configured mappings, or content roots mapped to the root when there are no mappings.
+   * The result must not be modified.
+   */
+  @NotNull
+  public synchronized CfmlMappingsConfig getMappings() {
+    CfmlProjectConfiguration.State state = CfmlProjectConfiguration.getInstance(myProject).getState();
+    CfmlMappingsConfig configured = state != null ? state.getMapps() : null;
+    long rootsModificationCount = ProjectRootManager.getInstance(myProject).getModificationCount();
+
+    if (myMappings == null || rootsModificationCount != myRootsModificationCount ||
+        !Comparing.equal(configured, myConfiguredMappings)) {
+      myConfiguredMappings = configured != null ? configured.clone() : null;
+      myRootsModificationCount = rootsModificationCount;
+
+      CfmlMappingsConfig mappings = configured != null ? configured.clone() : new CfmlMappingsConfig();
+      if (mappings.getServerMappings().isEmpty()) {
+        for (VirtualFile root : ProjectRootManager.getInstance(myProject).getContentRoots()) {
+          mappings.putToServerMappings("", root.getPresentableUrl());
+        }
+      }
+      myMappings = mappings;
+    }
+    return myMappings;
+  }
+
+  public long getHitCount() {
+    return myHits.get();
+  }
+
+  public long getMissCount() {
+    return myMisses.get();
+  }
+
+  @Override
+  public String toString() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return "CfmlComponentResolveCache: " + hits + " hits of " + total + " lookups";
+  }
+
+  private static class Key {
+    private final String myQualifiedName;
+    private final VirtualFile myDirectory;
+    private final CfmlMappingsConfig myMappings;
+
+    private Key(@NotNull String qualifiedName, @Nullable VirtualFile directory, @NotNull CfmlMappingsConfig mappings) {
+      myQualifiedName = qualifiedName;
+      myDirectory = directory;
+      myMappings = mappings;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+
+      Key key = (Key)o;
+      return myQualifiedName.equals(key.myQualifiedName) &&
+             Comparing.equal(myDirectory, key.myDirectory) &&
+             myMappings.equals(key.myMappings);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = myQualifiedName.hashCode();
+      result = 31 * result + (myDirectory != null ? myDirectory.hashCode() : 0);
+      result = 31 * result + myMappings.hashCode();
+      return result;
+    }
+  }
+}
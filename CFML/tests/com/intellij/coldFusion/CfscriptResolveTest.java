@@ -320,6 +320,19 @@ public class CfscriptResolveTest extends JavaCodeInsightFixtureTestCase {
     assertEquals(assertInstanceOf(resolveReferenceAtCaret(), CfmlComponent.class).getName(), "ComponentName");
   }
 
+  public void testResolveComponentIsCached() {
+    addComponentsTo(myFixture);
+    PsiReference reference = myFixture.getReferenceAtCaretPositionWithAssertion(Util.getInputDataFileName(getTestName(true)));
+    CfmlComponentResolveCache cache = CfmlComponentResolveCache.getInstance(getProject());
+
+    assertEquals("ComponentName", assertInstanceOf(reference.resolve(), CfmlComponent.class).getName());
+    long misses = cache.getMissCount();
+    long hits = cache.getHitCount();
+    assertEquals("ComponentName", assertInstanceOf(reference.resolve(), CfmlComponent.class).getName());
+    assertEquals(misses, cache.getMissCount());
+    assertTrue(cache.getHitCount() > hits);
+  }
+
   public void testResolveComponentInCreateObjectWithoutFirstParameter() {
     addComponentsTo(myFixture);
     assertEquals(assertInstanceOf(resolveReferenceAtCaret(), CfmlComponent.class).getName(), "ComponentName");
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.coldFusion.model.info;
+
+import com.intellij.coldFusion.model.CfmlLanguage;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.UsefulTestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class CfmlLangDictionaryCacheTest extends UsefulTestCase {
+
+  public void testBinaryFormIsTheSameAsXml() throws Exception {
+    for (String languageLevel : new String[]{CfmlLanguage.CF10, CfmlLanguage.CF11, CfmlLanguage.RAILO}) {
+      File cacheFile = FileUtil.createTempFile("cfml", ".dic");
+      try {
+        assertTrue(cacheFile.delete());
+        CfmlLangInfo.CfmlLangDictionary parsed = CfmlLangDictionaryCache.load(languageLevel, cacheFile);
+        assertTrue(cacheFile.isFile());
+        CfmlLangInfo.CfmlLangDictionary loaded = CfmlLangDictionaryCache.load(languageLevel, cacheFile);
+
+        assertNotSame(parsed, loaded);
+        assertEquals(languageLevel, dump(parsed), dump(loaded));
+      }
+      finally {
+        FileUtil.delete(cacheFile);
+      }
+    }
+  }
+
+  public void testColdAndWarmLoad() throws Exception {
+    File cacheFile = FileUtil.createTempFile("cfml", ".dic");
+    try {
+      CfmlLangInfo.CfmlLangDictionary parsed = new CfmlLangInfo.CfmlLangDictionary("scopes.txt", CfmlLanguage.CF11);
+      assertFalse(parsed.myHasErrors);
+
+      CfmlLangDictionaryCache.load(CfmlLanguage.CF11, cacheFile);
+      assertTrue(cacheFile.length() > 0);
+      CfmlLangInfo.CfmlLangDictionary warm = CfmlLangDictionaryCache.load(CfmlLanguage.CF11, cacheFile);
+
+      assertEquals(new TreeSet<>(parsed.myTagAttributes.keySet()), new TreeSet<>(warm.myTagAttributes.keySet()));
+      assertEquals(new TreeSet<>(parsed.myFunctionParameters.keySet()), new TreeSet<>(warm.myFunctionParameters.keySet()));
+      assertOrderedEquals(warm.myVariableScopes, parsed.myVariableScopes);
+      assertEquals(dump(parsed), dump(warm));
+    }
+    finally {
+      FileUtil.delete(cacheFile);
+    }
+  }
+
+  private static String dump(CfmlLangInfo.CfmlLangDictionary dictionary) {
+    StringBuilder result = new StringBuilder();
+    result.append(Arrays.toString(dictionary.myVariableScopes)).append('\n');
+    result.append(Arrays.toString(dictionary.myPredefinedFunctions)).append('\n');
+    result.append(new TreeSet<>(Arrays.asList(dictionary.myPredefinedFunctionsInLowCase))).append('\n');
+    result.append(new TreeMap<>(dictionary.myPredefinedVariables)).append('\n');
+
+    for (Map.Entry<String, CfmlFunctionDescription> entry : new TreeMap<>(dictionary.myFunctionParameters).entrySet()) {
+      CfmlFunctionDescription function = entry.getValue();
+      result.append(entry.getKey()).append(' ').append(function.getPresentableText()).append(' ').append(function.getDescription());
+      for (CfmlFunctionDescription.CfmlParameterDescription parameter : function.getParameters()) {
+        result.append(' ').append(parameter.getDescription());
+      }
+      result.append('\n');
+    }
+
+    for (Map.Entry<String, CfmlTagDescription> entry : new TreeMap<>(dictionary.myTagAttributes).entrySet()) {
+      CfmlTagDescription tag = entry.getValue();
+      result.append(entry.getKey()).append(' ').append(tag.getName()).append(' ').append(tag.isSingle()).append(' ')
+        .append(tag.isEndTagRequired()).append(' ').append(tag.getDescription());
+      for (CfmlAttributeDescription attribute : tag.getAttributes()) {
+        result.append(' ').append(attribute).append(attribute.getName()).append(Arrays.toString(attribute.getValues()));
+      }
+      result.append('\n');
+    }
+    return result.toString();
+  }
+}
@@ -7,7 +7,9 @@ import com.google.dart.server.*;
 import com.google.dart.server.generated.AnalysisServer;
 import com.google.dart.server.internal.remote.DebugPrintStream;
 import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.RequestStatistics;
 import com.google.dart.server.internal.remote.StdioServerSocket;
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
 import com.google.dart.server.utilities.logging.Logging;
 import com.intellij.codeInsight.intention.IntentionManager;
 import com.intellij.ide.util.PropertiesComponent;
@@ -131,6 +133,7 @@ public class DartAnalysisServerService implements Disposable {
   private final Map<String, Long> myFilePathWithOverlaidContentToTimestamp = new THashMap<>();
   private final List<String> myVisibleFiles = new ArrayList<>();
   private final Set<Document> myChangedDocuments = new THashSet<>();
+  private final DartOverlayEditsTracker myOverlayEditsTracker = new DartOverlayEditsTracker();
   private final Alarm myUpdateFilesAlarm;
 
   @NotNull private final Queue<CompletionInfo> myCompletionInfos = new LinkedList<>();
@@ -641,6 +644,21 @@ public class DartAnalysisServerService implements Disposable {
         myUpdateFilesAlarm.cancelAllRequests();
         myUpdateFilesAlarm.addRequest(DartAnalysisServerService.this::updateFilesContent, UPDATE_FILES_TIMEOUT);
       }
+
+      @Override
+      public void documentChanged(DocumentEvent e) {
+        if (myServer == null || !isIncrementalOverlaysEnabled()) return;
+
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
+        if (isLocalAnalyzableFile(file)) {
+          synchronized (myLock) {
+            // deltas make sense only relative to the content that has already been sent to the server
+            if (myFilePathWithOverlaidContentToTimestamp.containsKey(file.getPath())) {
+              myOverlayEditsTracker.documentChanged(file.getPath(), e);
+            }
+          }
+        }
+      }
     };
 
     EditorFactory.getInstance().getEventMulticaster().addDocumentListener(documentListener, myProject);
@@ -661,6 +679,18 @@ public class DartAnalysisServerService implements Disposable {
     return myProject;
   }
 
+  /**
+   * Request latencies, timeouts and cache statistics for diagnostics, see {@link RequestStatistics}.
+   */
+  @NotNull
+  public String getRequestStatisticsReport() {
+    final AnalysisServer server = myServer;
+    final String requests = server instanceof RemoteAnalysisServerImpl
+                            ? ((RemoteAnalysisServerImpl)server).getRequestStatistics().getReport()
+                            : "Analysis server is not running";
+    return requests + "\n\n" + FileOffsetsManager.getInstance().getStatistics();
+  }
+
   @Override
   public void dispose() {
     stopServer();
@@ -761,9 +791,11 @@ public class DartAnalysisServerService implements Disposable {
     }
   }
 
-  private void doUpdateFilesContent() {
-    // may be use DocumentListener to collect deltas instead of sending the whole Document.getText() each time?
+  private static boolean isIncrementalOverlaysEnabled() {
+    return Registry.is("dart.server.incremental.overlays", true);
+  }
 
+  private void doUpdateFilesContent() {
     AnalysisServer server = myServer;
     if (server == null) {
       return;
@@ -791,7 +823,10 @@ public class DartAnalysisServerService implements Disposable {
 
           final Long oldTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
           if (oldTimestamp == null || document.getModificationStamp() != oldTimestamp) {
-            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), new AddContentOverlay(document.getText()));
+            final List<SourceEdit> edits = oldTimestamp == null ? null
+                                                                : myOverlayEditsTracker.pollEdits(file.getPath(), document, oldTimestamp);
+            final Object overlay = edits != null ? new ChangeContentOverlay(edits) : new AddContentOverlay(document.getText());
+            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), overlay);
             myFilePathWithOverlaidContentToTimestamp.put(file.getPath(), document.getModificationStamp());
           }
         }
@@ -801,6 +836,7 @@ public class DartAnalysisServerService implements Disposable {
       for (String oldPath : oldTrackedFiles) {
         final Long removed = myFilePathWithOverlaidContentToTimestamp.remove(oldPath);
         LOG.assertTrue(removed != null, oldPath);
+        myOverlayEditsTracker.forget(oldPath);
         filesToUpdate.put(FileUtil.toSystemDependentName(oldPath), new RemoveContentOverlay());
       }
 
@@ -920,7 +956,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_ANALYSIS_GET_HOVER, GET_HOVER_TIMEOUT);
     return result;
   }
 
@@ -967,7 +1003,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_ANALYSIS_GET_NAVIGATION, GET_NAVIGATION_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("analysis_getNavigation() took more than " + GET_NAVIGATION_TIMEOUT + "ms for file " + filePath);
@@ -1003,7 +1039,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_GET_ASSISTS, GET_ASSISTS_TIMEOUT);
     return results;
   }
 
@@ -1024,7 +1060,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_IS_POSTFIX_COMPLETION_APPLICABLE, POSTFIX_COMPLETION_TIMEOUT);
     return resultRef.get();
   }
 
@@ -1050,7 +1086,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_INITIALIZATION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_LIST_POSTFIX_COMPLETION_TEMPLATES, POSTFIX_INITIALIZATION_TIMEOUT);
     return resultRef.get();
   }
 
@@ -1080,7 +1116,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_GET_POSTFIX_COMPLETION, POSTFIX_COMPLETION_TIMEOUT);
     return resultRef.get();
   }
 
@@ -1104,7 +1140,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, STATEMENT_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_GET_STATEMENT_COMPLETION, STATEMENT_COMPLETION_TIMEOUT);
     return resultRef.get();
   }
 
@@ -1147,7 +1183,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_FIXES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_GET_FIXES, GET_FIXES_TIMEOUT);
   }
 
   public void search_findElementReferences(@NotNull final VirtualFile file,
@@ -1175,7 +1211,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, FIND_ELEMENT_REFERENCES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_SEARCH_FIND_ELEMENT_REFERENCES, FIND_ELEMENT_REFERENCES_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("search_findElementReferences() took too long for " + filePath + "@" + offset);
@@ -1236,7 +1272,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_SEARCH_GET_TYPE_HIERARCHY, GET_TYPE_HIERARCHY_TIMEOUT);
     return results;
   }
 
@@ -1266,7 +1302,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_COMPLETION_GET_SUGGESTIONS, GET_SUGGESTIONS_TIMEOUT);
     return resultRef.get();
   }
 
@@ -1304,7 +1340,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_FORMAT, EDIT_FORMAT_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_format() took too long for file " + filePath);
@@ -1343,7 +1379,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_ANALYSIS_GET_IMPORTED_ELEMENTS, IMPORTED_ELEMENTS_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("analysis_getImportedElements() took too long for file " + filePath);
@@ -1378,7 +1414,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_IMPORT_ELEMENTS, IMPORTED_ELEMENTS_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_importElements() took too long for file " + filePath);
@@ -1436,7 +1472,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_ORGANIZE_DIRECTIVES, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_organizeDirectives() took too long for file " + filePath);
@@ -1475,7 +1511,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_SORT_MEMBERS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EDIT_SORT_MEMBERS, EDIT_SORT_MEMBERS_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_sortMembers() took too long for file " + filePath);
@@ -1553,7 +1589,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_CREATE_CONTEXT_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EXECUTION_CREATE_CONTEXT, EXECUTION_CREATE_CONTEXT_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("execution_createContext() took too long for file " + filePath);
@@ -1606,7 +1642,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_EXECUTION_MAP_URI, EXECUTION_MAP_URI_TIMEOUT);
 
     if (latch.getCount() > 0) {
       LOG.info("execution_mapUri() took too long for contextID " + _id + " and file or uri " + (filePath != null ? filePath : _uri));
@@ -1810,6 +1846,7 @@ public class DartAnalysisServerService implements Disposable {
       myFilePathWithOverlaidContentToTimestamp.clear();
       myVisibleFiles.clear();
       myChangedDocuments.clear();
+      myOverlayEditsTracker.clear();
       myServerData.clearData();
       myRootsHandler.reset();
 
@@ -1839,7 +1876,7 @@ public class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, ANALYSIS_IN_TESTS_TIMEOUT / TESTS_TIMEOUT_COEFF);
+    awaitForLatchCheckingCanceled(server, latch, RequestUtilities.METHOD_ANALYSIS_GET_ERRORS, ANALYSIS_IN_TESTS_TIMEOUT / TESTS_TIMEOUT_COEFF);
     assert latch.getCount() == 0 : "Analysis did't complete in " + ANALYSIS_IN_TESTS_TIMEOUT + "ms.";
   }
 
@@ -1896,8 +1933,12 @@ public class DartAnalysisServerService implements Disposable {
            ", error code = " + error.getCode() + ": " + error.getMessage();
   }
 
+  /**
+   * @param method request method, used to record timeouts in {@link RequestStatistics}
+   */
   private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
                                                        @NotNull final CountDownLatch latch,
+                                                       @NotNull final String method,
                                                        long timeoutInMillis) {
     if (ApplicationManager.getApplication().isUnitTestMode()) {
       timeoutInMillis *= TESTS_TIMEOUT_COEFF;
@@ -1910,6 +1951,9 @@ public class DartAnalysisServerService implements Disposable {
         return false;
       }
       if (timeoutInMillis != -1 && System.currentTimeMillis() > startTime + timeoutInMillis) {
+        if (server instanceof RemoteAnalysisServerImpl) {
+          ((RemoteAnalysisServerImpl)server).getRequestStatistics().requestTimedOut(method);
+        }
         return false;
       }
       if (Uninterruptibles.awaitUninterruptibly(latch, CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS)) {
@@ -0,0 +1,158 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.util.ArrayUtil;
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartHighlightRegion;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable compact storage of highlight regions of one file: parallel arrays instead of an object per region.
+ * Document changes produce a new instance, so a snapshot obtained by a reader never changes.
+ */
+final class DartHighlightRegions {
+
+  static final DartHighlightRegions EMPTY = new DartHighlightRegions(ArrayUtil.EMPTY_INT_ARRAY,
+                                                                     ArrayUtil.EMPTY_INT_ARRAY,
+                                                                     ArrayUtil.EMPTY_STRING_ARRAY,
+                                                                     0);
+
+  private final int[] myOffsets;
+  private final int[] myLengths;
+  private final String[] myTypes; // interned
+  private final int mySize;
+
+  private DartHighlightRegions(@NotNull final int[] offsets, @NotNull final int[] lengths, @NotNull final String[] types, final int size) {
+    myOffsets = offsets;
+    myLengths = lengths;
+    myTypes = types;
+    mySize = size;
+  }
+
+  int size() {
+    return mySize;
+  }
+
+  int getOffset(final int index) {
+    return myOffsets[index];
+  }
+
+  int getLength(final int index) {
+    return myLengths[index];
+  }
+
+  @NotNull
+  String getType(final int index) {
+    return myTypes[index];
+  }
+
+  /**
+   * Regions touched by the change are updated (or deleted if they were removed completely), others are shifted.
+   */
+  @NotNull
+  DartHighlightRegions documentChanged(final int eventOffset, final int deltaLength) {
+    if (deltaLength == 0 || mySize == 0) return this;
+
+    final int[] offsets = new int[mySize];
+    final int[] lengths = new int[mySize];
+    final String[] types = new String[mySize];
+    int size = 0;
+
+    final int eventRightOffset = eventOffset - deltaLength;
+
+    for (int i = 0; i < mySize; i++) {
+      int offset = myOffsets[i];
+      int length = myLengths[i];
+
+      if (deltaLength > 0) {
+        // Something was typed. Shift untouched regions, update touched.
+        if (eventOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset < eventOffset && eventOffset < offset + length) {
+          length += deltaLength;
+        }
+      }
+      else {
+        // Some text was deleted. Shift untouched regions, delete or update touched.
+        final int regionRightOffset = offset + length;
+
+        if (eventRightOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset <= eventOffset && eventRightOffset <= regionRightOffset && length != -deltaLength) {
+          length += deltaLength;
+        }
+        else if (eventOffset < regionRightOffset) {
+          continue;
+        }
+      }
+
+      offsets[size] = offset;
+      lengths[size] = length;
+      types[size] = myTypes[i];
+      size++;
+    }
+
+    return new DartHighlightRegions(offsets, lengths, types, size);
+  }
+
+  /**
+   * Read-only view; {@link DartHighlightRegion} objects are created on the fly and are not cached.
+   */
+  @NotNull
+  List<DartHighlightRegion> asList() {
+    return new AbstractList<DartHighlightRegion>() {
+      @Override
+      public DartHighlightRegion get(final int index) {
+        if (index >= mySize) throw new IndexOutOfBoundsException(index + " >= " + mySize);
+        return new DartHighlightRegion(myOffsets[index], myLengths[index], myTypes[index]);
+      }
+
+      @Override
+      public int size() {
+        return mySize;
+      }
+    };
+  }
+
+  static class Builder {
+    private int[] myOffsets;
+    private int[] myLengths;
+    private String[] myTypes;
+    private int mySize;
+
+    Builder(final int expectedSize) {
+      myOffsets = new int[expectedSize];
+      myLengths = new int[expectedSize];
+      myTypes = new String[expectedSize];
+    }
+
+    void add(final int offset, final int length, @NotNull final String type) {
+      if (mySize == myOffsets.length) {
+        final int newCapacity = Math.max(4, mySize * 2);
+        myOffsets = Arrays.copyOf(myOffsets, newCapacity);
+        myLengths = Arrays.copyOf(myLengths, newCapacity);
+        myTypes = Arrays.copyOf(myTypes, newCapacity);
+      }
+      myOffsets[mySize] = offset;
+      myLengths[mySize] = length;
+      myTypes[mySize] = type.intern();
+      mySize++;
+    }
+
+    @NotNull
+    DartHighlightRegions build() {
+      if (mySize == 0) return EMPTY;
+      // trim, so that no memory is wasted while the regions are kept
+      if (mySize < myOffsets.length) {
+        myOffsets = Arrays.copyOf(myOffsets, mySize);
+        myLengths = Arrays.copyOf(myLengths, mySize);
+        myTypes = Arrays.copyOf(myTypes, mySize);
+      }
+      return new DartHighlightRegions(myOffsets, myLengths, myTypes, mySize);
+    }
+  }
+}
@@ -0,0 +1,287 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartNavigationRegion;
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartNavigationTarget;
+import gnu.trove.THashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.dartlang.analysis.server.protocol.NavigationTarget;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable compact storage of navigation regions of one file. Regions are kept in parallel arrays sorted by offset,
+ * region targets are indices in the target table, so a target shared by many regions is stored once.
+ * Document changes produce a new instance, so a snapshot obtained by a reader never changes.
+ * The only mutable part is the cache of converted target offsets, which is filled lazily and may be safely shared.
+ */
+final class DartNavigationRegions {
+
+  static final DartNavigationRegions EMPTY = new DartNavigationRegions(ArrayUtil.EMPTY_INT_ARRAY,
+                                                                       ArrayUtil.EMPTY_INT_ARRAY,
+                                                                       new int[]{0},
+                                                                       ArrayUtil.EMPTY_INT_ARRAY,
+                                                                       ArrayUtil.EMPTY_STRING_ARRAY,
+                                                                       ArrayUtil.EMPTY_STRING_ARRAY,
+                                                                       ArrayUtil.EMPTY_INT_ARRAY,
+                                                                       ArrayUtil.EMPTY_INT_ARRAY,
+                                                                       0);
+
+  private final int[] myOffsets;
+  private final int[] myLengths;
+  // targets of the region i are myTargetIndices[myTargetStarts[i]] .. myTargetIndices[myTargetStarts[i + 1] - 1]
+  private final int[] myTargetStarts;
+  private final int[] myTargetIndices;
+  private final int mySize;
+
+  // target table
+  private final String[] myTargetFiles; // interned, system-independent
+  private final String[] myTargetKinds; // interned
+  private final int[] myTargetOriginalOffsets;
+  private final int[] myTargetConvertedOffsets; // -1 if not converted yet
+
+  private DartNavigationRegions(@NotNull final int[] offsets,
+                                @NotNull final int[] lengths,
+                                @NotNull final int[] targetStarts,
+                                @NotNull final int[] targetIndices,
+                                @NotNull final String[] targetFiles,
+                                @NotNull final String[] targetKinds,
+                                @NotNull final int[] targetOriginalOffsets,
+                                @NotNull final int[] targetConvertedOffsets,
+                                final int size) {
+    myOffsets = offsets;
+    myLengths = lengths;
+    myTargetStarts = targetStarts;
+    myTargetIndices = targetIndices;
+    myTargetFiles = targetFiles;
+    myTargetKinds = targetKinds;
+    myTargetOriginalOffsets = targetOriginalOffsets;
+    myTargetConvertedOffsets = targetConvertedOffsets;
+    mySize = size;
+  }
+
+  int size() {
+    return mySize;
+  }
+
+  @NotNull
+  String getTargetFile(final int targetIndex) {
+    return myTargetFiles[targetIndex];
+  }
+
+  @NotNull
+  String getTargetKind(final int targetIndex) {
+    return myTargetKinds[targetIndex];
+  }
+
+  int getTargetOriginalOffset(final int targetIndex) {
+    return myTargetOriginalOffsets[targetIndex];
+  }
+
+  int getTargetConvertedOffset(final int targetIndex) {
+    return myTargetConvertedOffsets[targetIndex];
+  }
+
+  void setTargetConvertedOffset(final int targetIndex, final int convertedOffset) {
+    myTargetConvertedOffsets[targetIndex] = convertedOffset;
+  }
+
+  /**
+   * Regions touched by the change are deleted, others are shifted. Already converted offsets of targets in the same file are shifted as well.
+   */
+  @NotNull
+  DartNavigationRegions documentChanged(@NotNull final String filePath, final int eventOffset, final int deltaLength) {
+    if (deltaLength == 0 || mySize == 0) return this;
+
+    // may be we'd better delete target touched by editing?
+    final int[] targetConvertedOffsets = myTargetConvertedOffsets.clone();
+    for (int i = 0; i < targetConvertedOffsets.length; i++) {
+      if (targetConvertedOffsets[i] >= eventOffset && myTargetFiles[i].equals(filePath)) {
+        targetConvertedOffsets[i] += deltaLength;
+      }
+    }
+
+    final int[] offsets = new int[mySize];
+    final int[] lengths = new int[mySize];
+    final int[] targetStarts = new int[mySize + 1];
+    final int[] targetIndices = new int[myTargetIndices.length];
+    int size = 0;
+    int targetCount = 0;
+
+    final int eventRightOffset = eventOffset - deltaLength;
+
+    for (int i = 0; i < mySize; i++) {
+      int offset = myOffsets[i];
+      final int length = myLengths[i];
+
+      if (deltaLength > 0) {
+        // Something was typed. Shift untouched regions, delete touched.
+        if (eventOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset < eventOffset && eventOffset < offset + length) {
+          continue;
+        }
+      }
+      else {
+        // Some text was deleted. Shift untouched regions, delete touched.
+        if (eventRightOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (eventOffset < offset + length) {
+          continue;
+        }
+      }
+
+      offsets[size] = offset;
+      lengths[size] = length;
+      targetStarts[size] = targetCount;
+      final int start = myTargetStarts[i];
+      final int end = myTargetStarts[i + 1];
+      System.arraycopy(myTargetIndices, start, targetIndices, targetCount, end - start);
+      targetCount += end - start;
+      size++;
+    }
+    targetStarts[size] = targetCount;
+
+    return new DartNavigationRegions(offsets, lengths, targetStarts, targetIndices,
+                                     myTargetFiles, myTargetKinds, myTargetOriginalOffsets, targetConvertedOffsets, size);
+  }
+
+  /**
+   * Read-only view; {@link DartNavigationRegion} and {@link DartNavigationTarget} objects are created on the fly and are not cached.
+   */
+  @NotNull
+  List<DartNavigationRegion> asList() {
+    return new AbstractList<DartNavigationRegion>() {
+      @Override
+      public DartNavigationRegion get(final int index) {
+        if (index >= mySize) throw new IndexOutOfBoundsException(index + " >= " + mySize);
+        return new DartNavigationRegion(myOffsets[index], myLengths[index], getTargets(index));
+      }
+
+      @Override
+      public int size() {
+        return mySize;
+      }
+    };
+  }
+
+  @NotNull
+  private List<DartNavigationTarget> getTargets(final int regionIndex) {
+    final int start = myTargetStarts[regionIndex];
+    final int count = myTargetStarts[regionIndex + 1] - start;
+    return new AbstractList<DartNavigationTarget>() {
+      @Override
+      public DartNavigationTarget get(final int index) {
+        if (index >= count) throw new IndexOutOfBoundsException(index + " >= " + count);
+        return new DartNavigationTarget(DartNavigationRegions.this, myTargetIndices[start + index]);
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+  static class Builder {
+    private final TObjectIntHashMap<NavigationTarget> myTargetToIndex = new TObjectIntHashMap<>();
+    private final Map<String, String> myConvertedFiles = new THashMap<>();
+    private final int[] myOffsets;
+    private final int[] myLengths;
+    private final int[] myTargetStarts;
+    private int[] myTargetIndices;
+    private int myTargetIndicesCount;
+    private int mySize;
+
+    private String[] myTargetFiles;
+    private String[] myTargetKinds;
+    private int[] myTargetOriginalOffsets;
+    private int myTargetCount;
+
+    Builder(final int maxRegionCount) {
+      myOffsets = new int[maxRegionCount];
+      myLengths = new int[maxRegionCount];
+      myTargetStarts = new int[maxRegionCount + 1];
+      myTargetIndices = new int[maxRegionCount];
+      myTargetFiles = new String[Math.max(4, maxRegionCount / 2)];
+      myTargetKinds = new String[myTargetFiles.length];
+      myTargetOriginalOffsets = new int[myTargetFiles.length];
+    }
+
+    /**
+     * Regions must be added in offset order.
+     */
+    void add(final int offset, final int length, @NotNull final List<NavigationTarget> targets) {
+      myOffsets[mySize] = offset;
+      myLengths[mySize] = length;
+      myTargetStarts[mySize] = myTargetIndicesCount;
+
+      for (NavigationTarget target : targets) {
+        if (myTargetIndicesCount == myTargetIndices.length) {
+          myTargetIndices = Arrays.copyOf(myTargetIndices, Math.max(4, myTargetIndicesCount * 2));
+        }
+        myTargetIndices[myTargetIndicesCount++] = getTargetIndex(target);
+      }
+
+      mySize++;
+      myTargetStarts[mySize] = myTargetIndicesCount;
+    }
+
+    private int getTargetIndex(@NotNull final NavigationTarget target) {
+      // equal targets are stored once
+      if (myTargetToIndex.containsKey(target)) {
+        return myTargetToIndex.get(target);
+      }
+
+      if (myTargetCount == myTargetFiles.length) {
+        final int newCapacity = myTargetCount * 2;
+        myTargetFiles = Arrays.copyOf(myTargetFiles, newCapacity);
+        myTargetKinds = Arrays.copyOf(myTargetKinds, newCapacity);
+        myTargetOriginalOffsets = Arrays.copyOf(myTargetOriginalOffsets, newCapacity);
+      }
+
+      final int index = myTargetCount++;
+      myTargetFiles[index] = getTargetFile(target.getFile());
+      myTargetKinds[index] = target.getKind().intern();
+      myTargetOriginalOffsets[index] = target.getOffset();
+      myTargetToIndex.put(target, index);
+      return index;
+    }
+
+    @NotNull
+    private String getTargetFile(@NotNull final String file) {
+      // each target file is converted and interned once per notification
+      String result = myConvertedFiles.get(file);
+      if (result == null) {
+        result = FileUtil.toSystemIndependentName(file.trim()).intern();
+        myConvertedFiles.put(file, result);
+      }
+      return result;
+    }
+
+    @NotNull
+    DartNavigationRegions build() {
+      if (mySize == 0) return EMPTY;
+
+      final int[] convertedOffsets = new int[myTargetCount];
+      Arrays.fill(convertedOffsets, -1);
+
+      return new DartNavigationRegions(Arrays.copyOf(myOffsets, mySize),
+                                       Arrays.copyOf(myLengths, mySize),
+                                       Arrays.copyOf(myTargetStarts, mySize + 1),
+                                       Arrays.copyOf(myTargetIndices, myTargetIndicesCount),
+                                       Arrays.copyOf(myTargetFiles, myTargetCount),
+                                       Arrays.copyOf(myTargetKinds, myTargetCount),
+                                       Arrays.copyOf(myTargetOriginalOffsets, myTargetCount),
+                                       convertedOffsets,
+                                       mySize);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects document changes as {@link SourceEdit}s so that {@link DartAnalysisServerService} can send {@code ChangeContentOverlay}
+ * instead of the whole document text. Edits are recorded only for files that already have overlaid content on the server side.
+ * Consecutive edits that touch each other (typing, backspacing) are coalesced into one edit.
+ * <p/>
+ * Not thread-safe, callers synchronize on {@code DartAnalysisServerService.myLock}.
+ */
+class DartOverlayEditsTracker {
+
+  // above this limit it is cheaper to send the whole document text
+  static final int MAX_EDITS_PER_FILE = 100;
+
+  private static class FileEdits {
+    private final long myBaseModificationStamp;
+    private long myLastModificationStamp;
+    private final List<SourceEdit> myEdits = new ArrayList<>();
+    private boolean myBroken;
+
+    private FileEdits(final long baseModificationStamp) {
+      myBaseModificationStamp = baseModificationStamp;
+      myLastModificationStamp = baseModificationStamp;
+    }
+  }
+
+  private final Map<String, FileEdits> myFilePathToEdits = new THashMap<>();
+
+  /**
+   * Must be called from {@link com.intellij.openapi.editor.event.DocumentListener#documentChanged(DocumentEvent)}.
+   */
+  void documentChanged(@NotNull final String filePath, @NotNull final DocumentEvent e) {
+    final Document document = e.getDocument();
+    FileEdits fileEdits = myFilePathToEdits.get(filePath);
+    if (fileEdits == null) {
+      fileEdits = new FileEdits(e.getOldTimeStamp());
+      myFilePathToEdits.put(filePath, fileEdits);
+    }
+    else if (fileEdits.myLastModificationStamp != e.getOldTimeStamp()) {
+      // some change was not reported to this tracker
+      fileEdits.myBroken = true;
+    }
+
+    fileEdits.myLastModificationStamp = document.getModificationStamp();
+    if (fileEdits.myBroken) return;
+
+    addEdit(fileEdits.myEdits, e.getOffset(), e.getOldLength(), e.getNewFragment().toString());
+
+    if (fileEdits.myEdits.size() > MAX_EDITS_PER_FILE) {
+      fileEdits.myBroken = true;
+      fileEdits.myEdits.clear();
+    }
+  }
+
+  /**
+   * Returns edits that transform the content sent to the server with the {@code overlaidModificationStamp} into the current
+   * {@code document} content, or {@code null} if the delta chain is broken and the whole document text must be sent.
+   * Collected edits for the file are forgotten in any case.
+   */
+  @Nullable
+  List<SourceEdit> pollEdits(@NotNull final String filePath, @NotNull final Document document, final long overlaidModificationStamp) {
+    final FileEdits fileEdits = myFilePathToEdits.remove(filePath);
+    if (fileEdits == null ||
+        fileEdits.myBroken ||
+        fileEdits.myEdits.isEmpty() ||
+        fileEdits.myBaseModificationStamp != overlaidModificationStamp ||
+        fileEdits.myLastModificationStamp != document.getModificationStamp()) {
+      return null;
+    }
+
+    return fileEdits.myEdits;
+  }
+
+  void forget(@NotNull final String filePath) {
+    myFilePathToEdits.remove(filePath);
+  }
+
+  void clear() {
+    myFilePathToEdits.clear();
+  }
+
+  /**
+   * Edits are applied by the server one by one, so each offset is relative to the content with all previous edits applied.
+   * Try to merge the new edit with the last one if they are adjacent or overlapping, otherwise just append it.
+   */
+  static void addEdit(@NotNull final List<SourceEdit> edits, final int offset, final int length, @NotNull final String replacement) {
+    if (!edits.isEmpty()) {
+      final SourceEdit last = edits.get(edits.size() - 1);
+      final int lastOffset = last.getOffset();
+      final String lastReplacement = last.getReplacement();
+      final int lastEnd = lastOffset + lastReplacement.length();
+
+      SourceEdit merged = null;
+      if (offset >= lastOffset && offset + length <= lastEnd) {
+        // new edit is inside the text inserted by the previous one
+        final String newReplacement = lastReplacement.substring(0, offset - lastOffset) +
+                                      replacement +
+                                      lastReplacement.substring(offset - lastOffset + length);
+        merged = new SourceEdit(lastOffset, last.getLength(), newReplacement, null);
+      }
+      else if (offset == lastEnd) {
+        // typing forward
+        merged = new SourceEdit(lastOffset, last.getLength() + length, lastReplacement + replacement, null);
+      }
+      else if (offset + length == lastOffset) {
+        // backspacing
+        merged = new SourceEdit(offset, length + last.getLength(), replacement + lastReplacement, null);
+      }
+
+      if (merged != null) {
+        edits.set(edits.size() - 1, merged);
+        return;
+      }
+    }
+
+    edits.add(new SourceEdit(offset, length, replacement, null));
+  }
+}
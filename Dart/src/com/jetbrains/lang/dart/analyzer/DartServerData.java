@@ -14,12 +14,14 @@ import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.util.EventDispatcher;
 import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
 import org.dartlang.analysis.server.protocol.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 
 public class DartServerData {
 
@@ -32,8 +34,9 @@ public class DartServerData {
   private EventDispatcher<OutlineListener> myEventDispatcher = EventDispatcher.create(OutlineListener.class);
 
   private final Map<String, List<DartError>> myErrorData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartHighlightRegion>> myHighlightData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartNavigationRegion>> myNavigationData = Collections.synchronizedMap(new THashMap<>());
+  // highlight and navigation regions are the most numerous, so they are kept in compact immutable per-file snapshots
+  private final ConcurrentMap<String, DartHighlightRegions> myHighlightData = ContainerUtil.newConcurrentMap();
+  private final ConcurrentMap<String, DartNavigationRegions> myNavigationData = ContainerUtil.newConcurrentMap();
   private final Map<String, List<DartOverrideMember>> myOverrideData = Collections.synchronizedMap(new THashMap<>());
   private final Map<String, List<DartRegion>> myImplementedClassData = Collections.synchronizedMap(new THashMap<>());
   private final Map<String, List<DartRegion>> myImplementedMemberData = Collections.synchronizedMap(new THashMap<>());
@@ -87,35 +90,36 @@ public class DartServerData {
   void computedHighlights(@NotNull final String filePath, @NotNull final List<HighlightRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartHighlightRegion> newRegions = new ArrayList<>(regions.size());
+    final DartHighlightRegions.Builder builder = new DartHighlightRegions.Builder(regions.size());
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
 
     for (HighlightRegion region : regions) {
       if (region.getLength() > 0) {
         final int offset = myService.getConvertedOffset(file, region.getOffset());
         final int length = myService.getConvertedOffset(file, region.getOffset() + region.getLength()) - offset;
-        newRegions.add(new DartHighlightRegion(offset, length, region.getType()));
+        builder.add(offset, length, region.getType());
       }
     }
 
-    myHighlightData.put(filePath, newRegions);
+    myHighlightData.put(filePath, builder.build());
     forceFileAnnotation(file, false);
   }
 
   void computedNavigation(@NotNull final String filePath, @NotNull final List<NavigationRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartNavigationRegion> newRegions = new ArrayList<>(regions.size());
+    final DartNavigationRegions.Builder builder = new DartNavigationRegions.Builder(regions.size());
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
 
     for (NavigationRegion region : regions) {
       if (region.getLength() > 0) {
-        final DartNavigationRegion dartNavigationRegion = createDartNavigationRegion(myService, file, region);
-        newRegions.add(dartNavigationRegion);
+        final int offset = myService.getConvertedOffset(file, region.getOffset());
+        final int length = myService.getConvertedOffset(file, region.getOffset() + region.getLength()) - offset;
+        builder.add(offset, length, region.getTargetObjects());
       }
     }
 
-    myNavigationData.put(filePath, newRegions);
+    myNavigationData.put(filePath, builder.build());
     forceFileAnnotation(file, true);
   }
 
@@ -220,16 +224,22 @@ public class DartServerData {
     return errors != null ? errors : Collections.emptyList();
   }
 
+  /**
+   * Returns a read-only snapshot that is not affected by further changes; region objects are created on access.
+   */
   @NotNull
   List<DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
-    final List<DartHighlightRegion> regions = myHighlightData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartHighlightRegions regions = myHighlightData.get(file.getPath());
+    return regions != null ? regions.asList() : Collections.emptyList();
   }
 
+  /**
+   * Returns a read-only snapshot that is not affected by further changes; region objects are created on access.
+   */
   @NotNull
   List<DartNavigationRegion> getNavigation(@NotNull final VirtualFile file) {
-    final List<DartNavigationRegion> regions = myNavigationData.get(file.getPath());
-    return regions != null ? regions : Collections.emptyList();
+    final DartNavigationRegions regions = myNavigationData.get(file.getPath());
+    return regions != null ? regions.asList() : Collections.emptyList();
   }
 
   @NotNull
@@ -349,23 +359,25 @@ public class DartServerData {
     final String filePath = file.getPath();
     myFilePathsWithUnsentChanges.add(filePath);
 
-    boolean someRegionDeleted = updateRegionsDeletingTouched(filePath, myErrorData.get(filePath), e);
+    boolean someRegionDeleted = updateRegionsDeletingTouched(myErrorData.get(filePath), e);
     if (someRegionDeleted) {
       myFilePathsWithLostErrorInfo.add(filePath);
     }
-    updateRegionsUpdatingTouched(myHighlightData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myNavigationData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myOverrideData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedClassData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedMemberData.get(filePath), e);
+
+    final int deltaLength = e.getNewLength() - e.getOldLength();
+    myHighlightData.computeIfPresent(filePath, (path, regions) -> regions.documentChanged(e.getOffset(), deltaLength));
+    myNavigationData.computeIfPresent(filePath, (path, regions) -> regions.documentChanged(path, e.getOffset(), deltaLength));
+
+    updateRegionsDeletingTouched(myOverrideData.get(filePath), e);
+    updateRegionsDeletingTouched(myImplementedClassData.get(filePath), e);
+    updateRegionsDeletingTouched(myImplementedMemberData.get(filePath), e);
     // A bit outdated outline data is not a big problem, updated data will come shortly
   }
 
   /**
    * @return {@code true} if at least one region has been deleted, {@code false} if updated only or nothing done at all
    */
-  private static boolean updateRegionsDeletingTouched(@NotNull final String filePath,
-                                                      @Nullable final List<? extends DartRegion> regions,
+  private static boolean updateRegionsDeletingTouched(@Nullable final List<? extends DartRegion> regions,
                                                       @NotNull final DocumentEvent e) {
     if (regions == null) return false;
 
@@ -379,15 +391,6 @@ public class DartServerData {
     while (iterator.hasNext()) {
       final DartRegion region = iterator.next();
 
-      if (region instanceof DartNavigationRegion) {
-        // may be we'd better delete target touched by editing?
-        for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
-          if (target.myFile.equals(filePath) && target.myConvertedOffset >= eventOffset) {
-            target.myConvertedOffset += deltaLength;
-          }
-        }
-      }
-
       if (deltaLength > 0) {
         // Something was typed. Shift untouched regions, delete touched.
         if (eventOffset <= region.myOffset) {
@@ -415,44 +418,6 @@ public class DartServerData {
     return regionDeleted;
   }
 
-  private static void updateRegionsUpdatingTouched(@Nullable final List<? extends DartRegion> regions,
-                                                   @NotNull final DocumentEvent e) {
-    if (regions == null) return;
-
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, update touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          region.myLength += deltaLength;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete or update touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-        final int regionRightOffset = region.myOffset + region.myLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset <= eventOffset && eventRightOffset <= regionRightOffset && region.myLength != -deltaLength) {
-          region.myLength += deltaLength;
-        }
-        else if (eventOffset < regionRightOffset) {
-          iterator.remove();
-        }
-      }
-    }
-  }
-
   public static class DartRegion {
     protected int myOffset;
     protected int myLength;
@@ -484,9 +449,9 @@ public class DartServerData {
   public static class DartHighlightRegion extends DartRegion {
     private final String type;
 
-    private DartHighlightRegion(final int offset, final int length, @NotNull final String type) {
+    DartHighlightRegion(final int offset, final int length, @NotNull final String type) {
       super(offset, length);
-      this.type = type.intern();
+      this.type = type; // interned by DartHighlightRegions
     }
 
     public String getType() {
@@ -552,6 +517,9 @@ public class DartServerData {
     private final String myFile;
     private final int myOriginalOffset;
     private final String myKind;
+    // if not null then converted offset is cached there as well, so that it is not recalculated for each view of the same target
+    @Nullable private final DartNavigationRegions myStore;
+    private final int myIndexInStore;
 
     private int myConvertedOffset = -1;
 
@@ -559,6 +527,17 @@ public class DartServerData {
       myFile = FileUtil.toSystemIndependentName(target.getFile().trim()).intern();
       myOriginalOffset = target.getOffset();
       myKind = target.getKind().intern();
+      myStore = null;
+      myIndexInStore = -1;
+    }
+
+    DartNavigationTarget(@NotNull final DartNavigationRegions store, final int index) {
+      myFile = store.getTargetFile(index);
+      myOriginalOffset = store.getTargetOriginalOffset(index);
+      myKind = store.getTargetKind(index);
+      myStore = store;
+      myIndexInStore = index;
+      myConvertedOffset = store.getTargetConvertedOffset(index);
     }
 
     public String getFile() {
@@ -568,6 +547,9 @@ public class DartServerData {
     public int getOffset(@NotNull final Project project, @Nullable final VirtualFile file) {
       if (myConvertedOffset == -1) {
         myConvertedOffset = DartAnalysisServerService.getInstance(project).getConvertedOffset(file, myOriginalOffset);
+        if (myStore != null) {
+          myStore.setTargetConvertedOffset(myIndexInStore, myConvertedOffset);
+        }
       }
       return myConvertedOffset;
     }
@@ -1,12 +1,13 @@
 package com.jetbrains.lang.dart.analyzer;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.containers.IntArrayList;
 import com.intellij.util.text.CharArrayUtil;
-import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
@@ -14,7 +15,8 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileOffsetsManager {
 
@@ -23,7 +25,27 @@ public class FileOffsetsManager {
     return ServiceManager.getService(FileOffsetsManager.class);
   }
 
-  private final Map<VirtualFile, LineOffsets> myLineOffsetsMap = new THashMap<>();
+  // max total weight of the cache; an entry weighs 1 plus the number of its line offsets, each one takes 2 ints,
+  // so files without CRLF line separators, which share NO_LINE_OFFSETS, are counted too
+  private static final int MAX_CACHED_WEIGHT = 1_000_000;
+
+  private final Cache<VirtualFile, LineOffsets> myLineOffsetsCache;
+
+  private final AtomicLong myHits = new AtomicLong();
+  private final AtomicLong myMisses = new AtomicLong();
+  private final AtomicLong myLoadTimeNanos = new AtomicLong();
+
+  public FileOffsetsManager() {
+    this(MAX_CACHED_WEIGHT, Math.max(4, Runtime.getRuntime().availableProcessors()));
+  }
+
+  FileOffsetsManager(final long maxWeight, final int concurrencyLevel) {
+    myLineOffsetsCache = CacheBuilder.newBuilder()
+      .concurrencyLevel(concurrencyLevel)
+      .maximumWeight(maxWeight)
+      .weigher((VirtualFile file, LineOffsets offsets) -> 1 + offsets.myOriginalLineOffsets.length)
+      .build();
+  }
 
   private static class LineOffsets {
     private final long myFileModificationStamp; // todo stamp outside of this class
@@ -31,15 +53,18 @@ public class FileOffsetsManager {
     private final int[] myConvertedLineOffsets;
     private final boolean myLineOffsetsAreTheSame;
 
+    private static final int[] NO_LINE_OFFSETS = {0};
+
     public LineOffsets(final long modificationStamp, @NotNull final int[] originalLineOffsets, @NotNull final int[] convertedLineOffsets) {
       assert originalLineOffsets.length > 0 && convertedLineOffsets.length > 0 && originalLineOffsets.length == convertedLineOffsets.length
         : originalLineOffsets.length + " " + convertedLineOffsets.length;
 
       myFileModificationStamp = modificationStamp;
-      myOriginalLineOffsets = originalLineOffsets;
-      myConvertedLineOffsets = convertedLineOffsets;
       myLineOffsetsAreTheSame =
         originalLineOffsets[originalLineOffsets.length - 1] == convertedLineOffsets[convertedLineOffsets.length - 1];
+      // offsets are not needed if there are no CRLF line separators in the file, that's the most common case
+      myOriginalLineOffsets = myLineOffsetsAreTheSame ? NO_LINE_OFFSETS : originalLineOffsets;
+      myConvertedLineOffsets = myLineOffsetsAreTheSame ? NO_LINE_OFFSETS : convertedLineOffsets;
     }
   }
 
@@ -69,17 +94,41 @@ public class FileOffsetsManager {
   }
 
   @NotNull
-  private synchronized LineOffsets getLineOffsets(@NotNull final VirtualFile file) {
-    LineOffsets offsets = myLineOffsetsMap.get(file);
+  private LineOffsets getLineOffsets(@NotNull final VirtualFile file) {
+    LineOffsets offsets = myLineOffsetsCache.getIfPresent(file);
     if (offsets != null && file.getModificationStamp() == offsets.myFileModificationStamp) {
+      myHits.incrementAndGet();
       return offsets;
     }
 
+    // Concurrent loading of the same file is possible but harmless: the result is the same, the last one wins.
+    myMisses.incrementAndGet();
+    final long start = System.nanoTime();
     offsets = loadLineOffsets(file);
-    myLineOffsetsMap.put(file, offsets);
+    myLoadTimeNanos.addAndGet(System.nanoTime() - start);
+
+    myLineOffsetsCache.put(file, offsets);
     return offsets;
   }
 
+  long getHitCount() {
+    return myHits.get();
+  }
+
+  long getMissCount() {
+    return myMisses.get();
+  }
+
+  @NotNull
+  public String getStatistics() {
+    final long hits = getHitCount();
+    final long misses = getMissCount();
+    final long total = hits + misses;
+    return "Line offsets cache: " + myLineOffsetsCache.size() + " files, " +
+           hits + " hits, " + misses + " misses (" + (total == 0 ? 0 : misses * 100 / total) + "%), " +
+           "load time " + TimeUnit.NANOSECONDS.toMillis(myLoadTimeNanos.get()) + " ms";
+  }
+
   @NotNull
   // similar to com.intellij.openapi.fileEditor.impl.LoadTextUtil.loadText()
   private static LineOffsets loadLineOffsets(@NotNull final VirtualFile file) {
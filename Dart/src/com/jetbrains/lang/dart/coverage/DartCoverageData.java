@@ -15,82 +15,144 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.intellij.util.containers.hash.HashMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.rt.coverage.data.LineData;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
 
+/**
+ * Hits from the coverage session file, merged per source. The file is read with a streaming {@link JsonReader}:
+ * <pre>{"type": "CodeCoverage", "coverage": [{"source": "file:///foo.dart", "hits": [line, count, line, count, ...]}, ...]}</pre>
+ * Hits of each source are accumulated in an int array indexed by line number, the same source may occur in the list many times.
+ */
 public class DartCoverageData {
-  @Nullable private List<DartFileCoverageData> coverage;
+  private static final int NO_HITS = -1;
 
-  @Nullable
-  public List<DartFileCoverageData> getCoverage() {
-    return coverage;
+  private static class LineHits {
+    private int[] myHits = new int[0]; // NO_HITS for lines not mentioned in the coverage file
+    private int myMaxLine = -1;
+
+    private void add(final int line, final int hitCount) {
+      if (line < 0) return;
+
+      if (line >= myHits.length) {
+        final int oldLength = myHits.length;
+        myHits = Arrays.copyOf(myHits, Math.max(line + 1, oldLength * 2));
+        Arrays.fill(myHits, oldLength, myHits.length, NO_HITS);
+      }
+
+      myHits[line] = myHits[line] == NO_HITS ? hitCount : myHits[line] + hitCount;
+      myMaxLine = Math.max(myMaxLine, line);
+    }
   }
 
-  public void setCoverage(@Nullable List<DartFileCoverageData> coverage) {
-    this.coverage = coverage;
+  private final Map<String, LineHits> mySourceToLineHits = new LinkedHashMap<>();
+
+  // reused for all items of the "coverage" list, "hits" are merged when the item is read completely as "source" may come after them
+  private int[] myHitsBuffer = new int[256];
+  private int myHitsBufferSize;
+
+  private DartCoverageData() {
   }
 
   @NotNull
-  public Map<String, SortedMap<Integer, Integer>> getMergedDartFileCoverageData() {
-    Map<String, SortedMap<Integer, Integer>> mergedCoverageData = new HashMap<>();
-    List<DartFileCoverageData> coverageData = getCoverage();
-    if (coverageData != null) {
-      for (DartFileCoverageData item : coverageData) {
-        String source = item.getSource();
-        if (source == null) {
-          continue;
-        }
-        if (!mergedCoverageData.containsKey(source)) {
-          mergedCoverageData.put(source, new TreeMap<>());
-        }
-
-        SortedMap<Integer, Integer> fileData = mergedCoverageData.get(source);
-        List<Integer> hits = item.getHits();
-        if (hits == null) {
-          continue;
-        }
-        for (int i = 0; i < hits.size(); i += 2) {
-          Integer lineNumber = hits.get(i);
-          Integer hitCount = hits.get(i + 1);
-          if (!fileData.containsKey(lineNumber)) {
-            fileData.put(lineNumber, 0);
-          }
+  public static DartCoverageData read(@NotNull final Reader reader) throws IOException {
+    final DartCoverageData data = new DartCoverageData();
+    final JsonReader jsonReader = new JsonReader(reader);
 
-          fileData.put(lineNumber, fileData.get(lineNumber) + hitCount);
+    jsonReader.beginObject();
+    while (jsonReader.hasNext()) {
+      if ("coverage".equals(jsonReader.nextName()) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+          ProgressManager.checkCanceled();
+          data.readFileCoverage(jsonReader);
         }
+        jsonReader.endArray();
+      }
+      else {
+        jsonReader.skipValue();
       }
     }
+    jsonReader.endObject();
 
-    return mergedCoverageData;
+    data.myHitsBuffer = null;
+    return data;
   }
-}
 
+  private void readFileCoverage(@NotNull final JsonReader jsonReader) throws IOException {
+    String source = null;
+    myHitsBufferSize = 0;
+
+    jsonReader.beginObject();
+    while (jsonReader.hasNext()) {
+      final String name = jsonReader.nextName();
+      if ("source".equals(name) && jsonReader.peek() == JsonToken.STRING) {
+        source = jsonReader.nextString();
+      }
+      else if ("hits".equals(name) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+          if (myHitsBufferSize == myHitsBuffer.length) {
+            myHitsBuffer = Arrays.copyOf(myHitsBuffer, myHitsBufferSize * 2);
+          }
+          myHitsBuffer[myHitsBufferSize++] = jsonReader.nextInt();
+        }
+        jsonReader.endArray();
+      }
+      else {
+        jsonReader.skipValue();
+      }
+    }
+    jsonReader.endObject();
 
-class DartFileCoverageData {
-  @Nullable private String source;
-  @Nullable private List<Integer> hits;
+    if (source == null) return;
 
-  @Nullable
-  public String getSource() {
-    return source;
+    LineHits lineHits = mySourceToLineHits.get(source);
+    if (lineHits == null) {
+      lineHits = new LineHits();
+      mySourceToLineHits.put(source, lineHits);
+    }
+
+    for (int i = 0; i + 1 < myHitsBufferSize; i += 2) {
+      lineHits.add(myHitsBuffer[i], myHitsBuffer[i + 1]);
+    }
   }
 
-  public void setSource(@Nullable String source) {
-    this.source = source;
+  @NotNull
+  public List<String> getSources() {
+    return new ArrayList<>(mySourceToLineHits.keySet());
   }
 
+  /**
+   * Creates line data for the source and forgets its hits, so that memory is released while the sources are converted one by one.
+   *
+   * @return array indexed by line number, {@code null} elements for lines without hits; {@code null} if the source is unknown
+   */
   @Nullable
-  public List<Integer> getHits() {
-    return hits;
-  }
+  public LineData[] takeLineData(@NotNull final String source) {
+    final LineHits lineHits = mySourceToLineHits.remove(source);
+    if (lineHits == null) return null;
+
+    if (lineHits.myMaxLine < 0) {
+      return new LineData[1];
+    }
 
-  public void setHits(@Nullable List<Integer> hits) {
-    this.hits = hits;
+    final LineData[] lines = new LineData[lineHits.myMaxLine + 1];
+    for (int line = 0; line <= lineHits.myMaxLine; line++) {
+      final int hitCount = lineHits.myHits[line];
+      if (hitCount != NO_HITS) {
+        final LineData lineData = new LineData(line, null);
+        lineData.setHits(hitCount);
+        lines[line] = lineData;
+      }
+    }
+    return lines;
   }
-}
\ No newline at end of file
+}
@@ -15,8 +15,6 @@
  */
 package com.jetbrains.lang.dart.coverage;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import com.intellij.coverage.CoverageEngine;
 import com.intellij.coverage.CoverageRunner;
 import com.intellij.coverage.CoverageSuite;
@@ -26,19 +24,13 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Ref;
-import com.intellij.rt.coverage.data.ClassData;
 import com.intellij.rt.coverage.data.LineData;
 import com.intellij.rt.coverage.data.ProjectData;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.Map;
-import java.util.SortedMap;
+import java.io.*;
 
 public class DartCoverageRunner extends CoverageRunner {
   private static final String ID = "DartCoverageRunner";
@@ -97,37 +89,23 @@ public class DartCoverageRunner extends CoverageRunner {
 
     final ProjectData projectData = new ProjectData();
 
-    try {
-      DartCoverageData data = new Gson().fromJson(new BufferedReader(new FileReader(sessionDataFile)), DartCoverageData.class);
-      if (data == null) {
-        LOG.warn("Coverage file does not contain valid data.");
-        return null;
-      }
+    try (Reader reader = new BufferedReader(new FileReader(sessionDataFile))) {
+      final DartCoverageData data = DartCoverageData.read(reader);
 
-      for (Map.Entry<String, SortedMap<Integer, Integer>> entry : data.getMergedDartFileCoverageData().entrySet()) {
+      for (String source : data.getSources()) {
         ProgressManager.checkCanceled();
 
-        String filePath = getFileForUri(project, contextId, entry.getKey());
-        if (filePath == null) {
+        final LineData[] lines = data.takeLineData(source);
+        String filePath = getFileForUri(project, contextId, source);
+        if (lines == null || filePath == null) {
           // File is not found.
           continue;
         }
-        SortedMap<Integer, Integer> lineHits = entry.getValue();
-        ClassData classData = projectData.getOrCreateClassData(filePath);
-        if (lineHits.size() == 0) {
-          classData.setLines(new LineData[1]);
-          continue;
-        }
-        LineData[] lines = new LineData[lineHits.lastKey() + 1];
-        for (Map.Entry<Integer, Integer> hit : lineHits.entrySet()) {
-          LineData lineData = new LineData(hit.getKey(), null);
-          lineData.setHits(hit.getValue());
-          lines[hit.getKey()] = lineData;
-        }
-        classData.setLines(lines);
+        projectData.getOrCreateClassData(filePath).setLines(lines);
       }
     }
-    catch (FileNotFoundException | JsonSyntaxException e) {
+    catch (IOException | IllegalStateException | NumberFormatException e) {
+      // malformed JSON
       LOG.warn(e);
     }
     finally {
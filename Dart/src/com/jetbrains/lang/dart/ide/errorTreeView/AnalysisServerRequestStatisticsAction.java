@@ -0,0 +1,32 @@
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.jetbrains.lang.dart.DartBundle;
+import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shows response times of Dart Analysis Server requests, including how often the IDE stopped waiting for a result because of a timeout.
+ */
+public class AnalysisServerRequestStatisticsAction extends DumbAwareAction {
+  public AnalysisServerRequestStatisticsAction() {
+    super(DartBundle.message("analysis.server.show.request.statistics.text"));
+  }
+
+  @Override
+  public void actionPerformed(AnActionEvent e) {
+    final Project project = e.getProject();
+    if (project == null) return;
+
+    final String report = DartAnalysisServerService.getInstance(project).getRequestStatisticsReport();
+    Messages.showInfoMessage(project, report, DartBundle.message("analysis.server.show.request.statistics.title"));
+  }
+
+  @Override
+  public void update(@NotNull final AnActionEvent e) {
+    e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+  }
+}
@@ -6,6 +6,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.indexing.FileContent;
 import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartFileType;
 import com.jetbrains.lang.dart.psi.*;
 import com.jetbrains.lang.dart.util.DartControlFlowUtil;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
@@ -18,7 +19,7 @@ import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
 
 public class DartIndexUtil {
   // inc when change parser
-  public static final int INDEX_VERSION = 23;
+  public static final int INDEX_VERSION = 24;
 
   private static final Key<DartFileIndexData> ourDartCachesData = Key.create("dart.caches.index.data");
 
@@ -29,13 +30,20 @@ public class DartIndexUtil {
     synchronized (content) {
       indexData = content.getUserData(ourDartCachesData);
       if (indexData != null) return indexData;
-      indexData = indexFileRoots(content.getPsiFile());
+      if (content.getFileType() == DartFileType.INSTANCE) {
+        // most Dart files are indexed from lexer tokens, PSI is built only for files that the token indexer can't handle
+        indexData = DartTokenIndexer.indexFile(content.getContentAsText(), content.getFileName());
+      }
+      if (indexData == null) {
+        indexData = indexFileRoots(content.getPsiFile());
+      }
+      content.putUserData(ourDartCachesData, indexData);
     }
 
     return indexData;
   }
 
-  private static DartFileIndexData indexFileRoots(PsiFile psiFile) {
+  static DartFileIndexData indexFileRoots(PsiFile psiFile) {
     DartFileIndexData result = new DartFileIndexData();
 
     result.setLibraryName(DartResolveUtil.getLibraryName(psiFile));
@@ -0,0 +1,946 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.openapi.diagnostic.ControlFlowException;
+import com.intellij.psi.tree.IElementType;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartTokenTypesSets;
+import com.jetbrains.lang.dart.lexer.DartLexer;
+import com.jetbrains.lang.dart.util.DartPsiImplUtil;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static com.jetbrains.lang.dart.DartTokenTypes.*;
+import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
+
+/**
+ * Builds {@link DartFileIndexData} for a Dart file using {@link DartLexer} tokens only, without building PSI.
+ * Directives, top-level declarations and class members are recognized; function bodies, initializers and default values
+ * are skipped as balanced token sequences.
+ * <p/>
+ * The result must be exactly the same as the one of the PSI-based indexer, so whenever the token stream contains something
+ * that is not understood for sure (syntax errors, {@code part of} with URI, class without body, etc.)
+ * {@link #indexFile(CharSequence, String)} returns {@code null} and the caller falls back to PSI.
+ */
+final class DartTokenIndexer {
+
+  private static final class CannotIndexException extends RuntimeException implements ControlFlowException {
+    private CannotIndexException() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final CannotIndexException CANNOT_INDEX = new CannotIndexException();
+
+  private static class Declaration {
+    @NotNull private final String myName;
+    @NotNull private final DartComponentType myType;
+    @NotNull private final List<String> myMemberNames;
+    private final boolean myIsClass;
+
+    private Declaration(@NotNull final String name,
+                        @NotNull final DartComponentType type,
+                        @NotNull final List<String> memberNames,
+                        final boolean isClass) {
+      myName = name;
+      myType = type;
+      myMemberNames = memberNames;
+      myIsClass = isClass;
+    }
+  }
+
+  private final CharSequence myText;
+  private IElementType[] myTypes = new IElementType[256];
+  private int[] myStarts = new int[256];
+  private int[] myEnds = new int[256];
+  private int myCount;
+  private int myPos;
+
+  private String myLibraryName;
+  private String myPartOfLibraryName;
+  private final List<Declaration> myDeclarations = new ArrayList<>();
+  private final List<DartImportOrExportInfo> myImportAndExportInfos = new ArrayList<>();
+  private final List<String> myPartUris = new ArrayList<>();
+
+  private DartTokenIndexer(@NotNull final CharSequence text) {
+    myText = text;
+  }
+
+  /**
+   * @return {@code null} if the file can't be reliably indexed without PSI
+   */
+  @Nullable
+  static DartFileIndexData indexFile(@NotNull final CharSequence text, @NotNull final String fileName) {
+    final DartTokenIndexer indexer = new DartTokenIndexer(text);
+    try {
+      indexer.tokenize();
+      indexer.parseFile();
+    }
+    catch (CannotIndexException e) {
+      return null;
+    }
+    return indexer.createIndexData(fileName);
+  }
+
+  /**
+   * Fills the data in the same order as {@link DartIndexUtil#indexFileRoots}: declarations first, then directives.
+   */
+  @NotNull
+  private DartFileIndexData createIndexData(@NotNull final String fileName) {
+    final DartFileIndexData result = new DartFileIndexData();
+
+    result.setLibraryName(myLibraryName != null ? myLibraryName : myPartOfLibraryName != null ? myPartOfLibraryName : fileName);
+    result.setIsPart(myPartOfLibraryName != null);
+
+    for (Declaration declaration : myDeclarations) {
+      result.addSymbol(declaration.myName);
+      result.addComponentInfo(declaration.myName, new DartComponentInfo(declaration.myType, result.getLibraryName()));
+      if (declaration.myIsClass) {
+        result.addClassName(declaration.myName);
+        for (String memberName : declaration.myMemberNames) {
+          result.addSymbol(memberName);
+        }
+      }
+    }
+
+    for (DartImportOrExportInfo info : myImportAndExportInfos) {
+      result.addImportInfo(info);
+      result.addComponentInfo(info.getImportPrefix(), new DartComponentInfo(DartComponentType.LABEL, null));
+    }
+
+    for (String partUri : myPartUris) {
+      result.addPartUri(partUri);
+    }
+
+    return result;
+  }
+
+  private void tokenize() {
+    final DartLexer lexer = new DartLexer();
+    lexer.start(myText);
+
+    IElementType tokenType;
+    while ((tokenType = lexer.getTokenType()) != null) {
+      if (tokenType == DartTokenTypesSets.BAD_CHARACTER) throw CANNOT_INDEX;
+
+      if (tokenType != DartTokenTypesSets.WHITE_SPACE && !DartTokenTypesSets.COMMENTS.contains(tokenType)) {
+        if (myCount == myTypes.length) {
+          myTypes = Arrays.copyOf(myTypes, myCount * 2);
+          myStarts = Arrays.copyOf(myStarts, myCount * 2);
+          myEnds = Arrays.copyOf(myEnds, myCount * 2);
+        }
+        myTypes[myCount] = tokenType;
+        myStarts[myCount] = lexer.getTokenStart();
+        myEnds[myCount] = lexer.getTokenEnd();
+        myCount++;
+      }
+
+      lexer.advance();
+    }
+  }
+
+  // ---------------------------------------------------------------- top level
+
+  private void parseFile() {
+    while (myPos < myCount) {
+      parseTopLevelDefinition();
+    }
+  }
+
+  private void parseTopLevelDefinition() {
+    skipMetadata();
+
+    final IElementType type = type(0);
+    if (type == LIBRARY) {
+      parseLibraryStatement();
+    }
+    else if (type == PART) {
+      parsePartOrPartOfStatement();
+    }
+    else if (type == IMPORT) {
+      parseImportOrExportStatement(Kind.Import);
+    }
+    else if (type == EXPORT) {
+      parseImportOrExportStatement(Kind.Export);
+    }
+    else if (type == CLASS || (type == ABSTRACT && type(1) == CLASS)) {
+      parseClassDefinition();
+    }
+    else if (type == ENUM) {
+      parseEnumDefinition();
+    }
+    else if (type == TYPEDEF) {
+      parseFunctionTypeAlias();
+    }
+    else {
+      parseFunctionOrVariable(null);
+    }
+  }
+
+  private void parseLibraryStatement() {
+    advance(); // 'library'
+
+    final StringBuilder name = new StringBuilder(expectId());
+    while (type(0) == DOT) {
+      advance();
+      name.append('.').append(expectId());
+    }
+    expect(SEMICOLON);
+
+    if (myLibraryName == null) {
+      myLibraryName = name.toString();
+    }
+  }
+
+  private void parsePartOrPartOfStatement() {
+    advance(); // 'part'
+
+    if (type(0) == OF) {
+      advance();
+      // 'part of' with URI: the library name can be calculated only by looking into another file
+      if (!isId(type(0))) throw CANNOT_INDEX;
+
+      final int start = myStarts[myPos];
+      expectId();
+      while (type(0) == DOT) {
+        advance();
+        expectId();
+      }
+      final int end = myEnds[myPos - 1];
+      expect(SEMICOLON);
+
+      if (myPartOfLibraryName == null) {
+        myPartOfLibraryName = myText.subSequence(start, end).toString();
+      }
+    }
+    else {
+      final String uri = parseUri();
+      expect(SEMICOLON);
+      myPartUris.add(uri);
+    }
+  }
+
+  private void parseImportOrExportStatement(@NotNull final Kind kind) {
+    advance(); // 'import' or 'export'
+
+    final String uri = parseUri();
+
+    // configurable imports: if (dart.library.io) 'uri'
+    while (type(0) == IF) {
+      advance();
+      if (type(0) != LPAREN) throw CANNOT_INDEX;
+      skipBalanced();
+      parseUri();
+    }
+
+    String importPrefix = null;
+    if (kind == Kind.Import) {
+      if (type(0) == DEFERRED) {
+        advance();
+        if (type(0) != AS) throw CANNOT_INDEX;
+      }
+      if (type(0) == AS) {
+        advance();
+        importPrefix = expectId();
+      }
+    }
+
+    final Set<String> showComponentNames = new THashSet<>();
+    final Set<String> hideComponentNames = new THashSet<>();
+    while (type(0) == SHOW || type(0) == HIDE) {
+      final Set<String> names = type(0) == SHOW ? showComponentNames : hideComponentNames;
+      advance();
+      names.add(expectId());
+      while (type(0) == COMMA) {
+        advance();
+        names.add(expectId());
+      }
+    }
+
+    expect(SEMICOLON);
+
+    myImportAndExportInfos.add(new DartImportOrExportInfo(kind, uri, importPrefix, showComponentNames, hideComponentNames));
+  }
+
+  @NotNull
+  private String parseUri() {
+    if (!isStringStart(type(0))) throw CANNOT_INDEX;
+    final int start = myStarts[myPos];
+    skipStringLiteral(false);
+    // adjacent string literals are valid in Dart, but too exotic for a URI
+    if (isStringStart(type(0))) throw CANNOT_INDEX;
+    return DartPsiImplUtil.getUnquotedDartStringAndItsRange(myText.subSequence(start, myEnds[myPos - 1]).toString()).first;
+  }
+
+  private void parseClassDefinition() {
+    if (type(0) == ABSTRACT) advance();
+    advance(); // 'class'
+
+    final String name = expectId();
+    if (type(0) == LT) skipAngleBrackets();
+
+    final List<String> memberNames = new ArrayList<>();
+
+    if (type(0) == EQ) {
+      // mixin application: class A = B with C;
+      advance();
+      parseType();
+      if (type(0) == WITH) {
+        advance();
+        parseTypeList();
+      }
+      if (type(0) == IMPLEMENTS) {
+        advance();
+        parseTypeList();
+      }
+      expect(SEMICOLON);
+    }
+    else {
+      if (type(0) == EXTENDS) {
+        advance();
+        parseType();
+        if (type(0) == WITH) {
+          advance();
+          parseTypeList();
+        }
+      }
+      if (type(0) == IMPLEMENTS) {
+        advance();
+        parseTypeList();
+      }
+      if (type(0) == NATIVE) {
+        advance();
+        if (isStringStart(type(0))) skipStringLiteral(true);
+      }
+
+      // class body is optional in the grammar, but a class without body is not a valid code anyway
+      expect(LBRACE);
+      while (type(0) != RBRACE) {
+        if (type(0) == null) throw CANNOT_INDEX;
+        parseFunctionOrVariable(memberNames);
+      }
+      advance();
+    }
+
+    myDeclarations.add(new Declaration(name, DartComponentType.CLASS, memberNames, true));
+  }
+
+  private void parseEnumDefinition() {
+    advance(); // 'enum'
+
+    final String name = expectId();
+    final List<String> constantNames = new ArrayList<>();
+
+    expect(LBRACE);
+    constantNames.add(expectId());
+    while (type(0) == COMMA) {
+      advance();
+      if (type(0) == RBRACE) break;
+      constantNames.add(expectId());
+    }
+    expect(RBRACE);
+
+    myDeclarations.add(new Declaration(name, DartComponentType.CLASS, constantNames, true));
+  }
+
+  private void parseFunctionTypeAlias() {
+    advance(); // 'typedef'
+
+    final String name;
+    if (isId(type(0)) && (type(1) == EQ || type(1) == LT && typeAfterAngleBrackets(myPos + 1) == EQ)) {
+      // typedef F<T> = void Function(T t);
+      name = expectId();
+      if (type(0) == LT) skipAngleBrackets();
+      expect(EQ);
+      if (!parseType()) throw CANNOT_INDEX; // must be a function type
+    }
+    else {
+      // typedef void F<T>(T t);
+      name = parseReturnTypeAndName();
+      if (type(0) == LT) skipAngleBrackets();
+      if (type(0) != LPAREN) throw CANNOT_INDEX;
+      skipBalanced();
+    }
+
+    if (type(0) == SEMICOLON) advance();
+
+    myDeclarations.add(new Declaration(name, DartComponentType.TYPEDEF, new ArrayList<>(), false));
+  }
+
+  /**
+   * Parses {@code returnType? name} in front of a type parameter list or a formal parameter list.
+   */
+  @NotNull
+  private String parseReturnTypeAndName() {
+    final int typeStart = myPos;
+    parseType();
+    if (type(0) == LPAREN && isId(myTypes[typeStart]) && (myPos == typeStart + 1 || myTypes[typeStart + 1] == LT)) {
+      // it was not a type but the name
+      return getText(typeStart);
+    }
+    return expectId();
+  }
+
+  // ---------------------------------------------------------------- functions, variables and class members
+
+  /**
+   * Parses a top-level function, getter, setter or variable declaration list if {@code memberNames} is {@code null},
+   * or a class member otherwise; declared names are added to {@code memberNames} in the latter case.
+   */
+  private void parseFunctionOrVariable(@Nullable final List<String> memberNames) {
+    final boolean inClass = memberNames != null;
+
+    skipMetadata();
+
+    boolean varOrFinalOrConst = false;
+    while (true) {
+      final IElementType type = type(0);
+      if (!varOrFinalOrConst && (type == EXTERNAL || type == STATIC || type == COVARIANT)) {
+        // covariant x; - built-in identifier is the type here
+        if (isId(type(1)) && (type(2) == SEMICOLON || type(2) == EQ || type(2) == COMMA)) break;
+        advance();
+      }
+      else if (type == VAR || type == FINAL || type == CONST) {
+        varOrFinalOrConst = true;
+        advance();
+      }
+      else {
+        break;
+      }
+    }
+
+    if (inClass && type(0) == FACTORY) {
+      advance();
+      String name = expectId();
+      if (type(0) == DOT) {
+        advance();
+        name = expectId();
+      }
+      skipFormalParameterList();
+      if (type(0) == EQ) {
+        // redirecting factory: = B.named;
+        skipExpression(false);
+        expect(SEMICOLON);
+      }
+      else {
+        skipFunctionBody(false);
+      }
+      memberNames.add(name);
+      return;
+    }
+
+    if (inClass && isId(type(0)) && type(1) == DOT && isId(type(2)) && type(3) == LPAREN) {
+      // named constructor
+      final String name = getText(myPos + 2);
+      myPos += 3;
+      skipFormalParameterList();
+      skipFunctionBody(true);
+      memberNames.add(name);
+      return;
+    }
+
+    // getter or setter without return type, 'get' and 'set' are also valid identifiers
+    if ((type(0) == GET || type(0) == SET) && isId(type(1))) {
+      parseGetterOrSetter(memberNames);
+      return;
+    }
+
+    if (inClass && type(0) == OPERATOR && getUserDefinableOperatorLength(myPos + 1) > 0) {
+      parseOperator(memberNames);
+      return;
+    }
+
+    final int typeStart = myPos;
+    parseType();
+
+    if ((type(0) == GET || type(0) == SET) && isId(type(1))) {
+      parseGetterOrSetter(memberNames);
+      return;
+    }
+
+    if (inClass && type(0) == OPERATOR && getUserDefinableOperatorLength(myPos + 1) > 0) {
+      parseOperator(memberNames);
+      return;
+    }
+
+    if (type(0) == LPAREN && isId(myTypes[typeStart]) && (myPos == typeStart + 1 || myTypes[typeStart + 1] == LT)) {
+      // function, method or constructor without return type, what was parsed as a type is the name with type parameters
+      final String name = getText(typeStart);
+      skipFormalParameterList();
+      skipFunctionBody(inClass);
+      addFunction(name, memberNames);
+      return;
+    }
+
+    if (isId(type(0))) {
+      final String name = expectId();
+      if (type(0) == LT || type(0) == LPAREN) {
+        if (type(0) == LT) skipAngleBrackets();
+        skipFormalParameterList();
+        skipFunctionBody(inClass);
+        addFunction(name, memberNames);
+      }
+      else {
+        parseVariableDeclarationListRest(name, memberNames);
+      }
+      return;
+    }
+
+    if (varOrFinalOrConst && myPos == typeStart + 1 && isId(myTypes[typeStart]) &&
+        (type(0) == EQ || type(0) == COMMA || type(0) == SEMICOLON)) {
+      // var x = 1; what was parsed as a type is the name
+      parseVariableDeclarationListRest(getText(typeStart), memberNames);
+      return;
+    }
+
+    throw CANNOT_INDEX;
+  }
+
+  private void addFunction(@NotNull final String name, @Nullable final List<String> memberNames) {
+    if (memberNames != null) {
+      memberNames.add(name);
+    }
+    else {
+      myDeclarations.add(new Declaration(name, DartComponentType.FUNCTION, new ArrayList<>(), false));
+    }
+  }
+
+  private void parseGetterOrSetter(@Nullable final List<String> memberNames) {
+    final boolean getter = type(0) == GET;
+    advance();
+    final String name = expectId();
+    if (getter) {
+      if (type(0) == LPAREN) skipBalanced();
+    }
+    else {
+      skipFormalParameterList();
+    }
+    skipFunctionBody(false);
+    // top-level getters and setters are functions
+    addFunction(name, memberNames);
+  }
+
+  private void parseOperator(@NotNull final List<String> memberNames) {
+    advance(); // 'operator'
+    final int length = getUserDefinableOperatorLength(myPos);
+    // the name is the text of the operator tokens, as they are collapsed into a single identifier by the parser
+    final String name = myText.subSequence(myStarts[myPos], myEnds[myPos + length - 1]).toString();
+    myPos += length;
+    skipFormalParameterList();
+    skipFunctionBody(false);
+    memberNames.add(name);
+  }
+
+  private void parseVariableDeclarationListRest(@NotNull final String firstName, @Nullable final List<String> memberNames) {
+    final List<String> names = new ArrayList<>();
+    names.add(firstName);
+
+    while (true) {
+      if (type(0) == EQ) {
+        advance();
+        skipExpression(true);
+      }
+      if (type(0) != COMMA) break;
+      advance();
+      names.add(expectId());
+    }
+    expect(SEMICOLON);
+
+    for (String name : names) {
+      if (memberNames != null) {
+        memberNames.add(name);
+      }
+      else {
+        myDeclarations.add(new Declaration(name, DartComponentType.VARIABLE, new ArrayList<>(), false));
+      }
+    }
+  }
+
+  /**
+   * @return number of tokens that form a user definable operator at the given index, 0 if there's no operator
+   */
+  private int getUserDefinableOperatorLength(final int index) {
+    final IElementType type = type(index - myPos);
+    if (type == GT) {
+      // '>>' and '>=' are lexed as separate tokens
+      final IElementType next = type(index - myPos + 1);
+      return (next == GT || next == EQ) && myEnds[index] == myStarts[index + 1] ? 2 : 1;
+    }
+    if (type == LBRACKET) {
+      if (type(index - myPos + 1) != RBRACKET) return 0;
+      return type(index - myPos + 2) == EQ ? 3 : 2;
+    }
+    if (type == MUL || type == DIV || type == REM || type == INT_DIV ||
+        type == PLUS || type == MINUS ||
+        type == LT_LT || type == LT_EQ || type == LT ||
+        type == EQ_EQ ||
+        type == AND || type == XOR || type == OR ||
+        type == BIN_NOT) {
+      return 1;
+    }
+    return 0;
+  }
+
+  // ---------------------------------------------------------------- types
+
+  /**
+   * Parses a type (including function types) and returns {@code true} if it is a function type.
+   */
+  private boolean parseType() {
+    boolean functionType = false;
+
+    if (type(0) == VOID) {
+      advance();
+    }
+    else if (!isFunctionTypeStart()) {
+      expectId();
+      while (type(0) == DOT) {
+        advance();
+        expectId();
+      }
+      if (type(0) == LT) skipAngleBrackets();
+    }
+
+    while (isFunctionTypeStart()) {
+      advance(); // 'Function'
+      if (type(0) == LT) skipAngleBrackets();
+      if (type(0) != LPAREN) throw CANNOT_INDEX;
+      skipBalanced();
+      functionType = true;
+    }
+
+    return functionType;
+  }
+
+  private void parseTypeList() {
+    parseType();
+    while (type(0) == COMMA) {
+      advance();
+      parseType();
+    }
+  }
+
+  private boolean isFunctionTypeStart() {
+    return type(0) == IDENTIFIER && (type(1) == LPAREN || type(1) == LT) && "Function".equals(getText(myPos));
+  }
+
+  private void skipAngleBrackets() {
+    myPos = getIndexAfterAngleBrackets(myPos);
+  }
+
+  @Nullable
+  private IElementType typeAfterAngleBrackets(final int index) {
+    final int after = getIndexAfterAngleBrackets(index);
+    return after < myCount ? myTypes[after] : null;
+  }
+
+  /**
+   * Type arguments and type parameters; they may contain function types with parenthesized parameter lists.
+   */
+  private int getIndexAfterAngleBrackets(final int index) {
+    int i = index;
+    if (i >= myCount || myTypes[i] != LT) throw CANNOT_INDEX;
+
+    int depth = 0;
+    while (i < myCount) {
+      final IElementType type = myTypes[i];
+      if (type == LT) {
+        depth++;
+      }
+      else if (type == GT) {
+        depth--;
+        if (depth == 0) return i + 1;
+      }
+      else if (type == LPAREN || type == LBRACKET) {
+        i = getIndexAfterBalanced(i);
+        continue;
+      }
+      else if (type == SEMICOLON || type == EQ || type == LBRACE || type == RBRACE || type == RPAREN || type == RBRACKET) {
+        throw CANNOT_INDEX;
+      }
+      i++;
+    }
+    throw CANNOT_INDEX;
+  }
+
+  // ---------------------------------------------------------------- skipped parts
+
+  private void skipMetadata() {
+    final int start = myPos;
+    while (type(0) == AT) {
+      advance();
+      expectId();
+      while (type(0) == DOT) {
+        advance();
+        expectId();
+      }
+      if (type(0) == LPAREN) skipBalanced();
+    }
+    // metadata without a declaration
+    if (myPos > start && type(0) == null) throw CANNOT_INDEX;
+  }
+
+  private void skipFormalParameterList() {
+    if (type(0) != LPAREN) throw CANNOT_INDEX;
+    skipBalanced();
+  }
+
+  /**
+   * Skips {@code ;}, native function body, block or arrow body, and, if {@code allowInitializers} is {@code true},
+   * constructor initializers or redirection in front of it.
+   */
+  private void skipFunctionBody(final boolean allowInitializers) {
+    if (allowInitializers && type(0) == COLON) {
+      advance();
+      skipInitializers();
+    }
+
+    if (type(0) == SEMICOLON) {
+      advance();
+      return;
+    }
+
+    if (type(0) == NATIVE) {
+      advance();
+      if (isStringStart(type(0))) skipStringLiteral(true);
+      if (type(0) == SEMICOLON) {
+        advance();
+        return;
+      }
+    }
+
+    if (type(0) == ASYNC || type(0) == SYNC) {
+      advance();
+      if (type(0) == MUL) advance();
+    }
+
+    if (type(0) == LBRACE) {
+      skipBalanced();
+    }
+    else if (type(0) == EXPRESSION_BODY_DEF) {
+      advance();
+      skipExpression(false);
+      expect(SEMICOLON);
+    }
+    else {
+      throw CANNOT_INDEX;
+    }
+  }
+
+  /**
+   * Skips initializers up to the function body; '{' is the body start only if it follows the end of an expression,
+   * otherwise it starts a map or set literal.
+   */
+  private void skipInitializers() {
+    while (true) {
+      final IElementType type = type(0);
+      if (type == null) throw CANNOT_INDEX;
+      if (type == SEMICOLON || type == EXPRESSION_BODY_DEF) return;
+      if (type == LBRACE && isExpressionEnd(myTypes[myPos - 1])) return;
+      if ((type == ASYNC || type == SYNC) && (type(1) == LBRACE || type(1) == EXPRESSION_BODY_DEF || type(1) == MUL)) return;
+
+      if (isOpeningBrace(type)) {
+        skipBalanced();
+      }
+      else if (isClosingBrace(type)) {
+        throw CANNOT_INDEX;
+      }
+      else {
+        advance();
+      }
+    }
+  }
+
+  /**
+   * Skips an expression up to ';' or, if {@code stopAtComma} is {@code true}, up to ',' on the same nesting level.
+   */
+  private void skipExpression(final boolean stopAtComma) {
+    final int start = myPos;
+    boolean seenLt = false;
+
+    while (true) {
+      final IElementType type = type(0);
+      if (type == null) throw CANNOT_INDEX;
+      if (type == SEMICOLON) break;
+      if (type == COMMA && stopAtComma) {
+        // foo<A, B>() or a < b, c > d? Only the parser knows.
+        if (seenLt) throw CANNOT_INDEX;
+        break;
+      }
+
+      if (isOpeningBrace(type)) {
+        skipBalanced();
+      }
+      else if (isClosingBrace(type)) {
+        throw CANNOT_INDEX;
+      }
+      else if (type == LT && !isExpressionEnd(myTypes[myPos - 1])) {
+        // type arguments of a collection literal or a generic function expression: <String, int>{}
+        skipAngleBrackets();
+      }
+      else if (type == LT && isGenericInvocationTypeArguments(myPos)) {
+        // foo<int, String>(), the parser prefers type arguments here as well
+        skipAngleBrackets();
+      }
+      else {
+        if (type == LT) seenLt = true;
+        advance();
+      }
+    }
+
+    if (myPos == start) throw CANNOT_INDEX;
+  }
+
+  /**
+   * Returns {@code true} if {@code <} at the given index starts a list of simple types immediately followed by {@code (}.
+   */
+  private boolean isGenericInvocationTypeArguments(final int index) {
+    int depth = 0;
+    for (int i = index; i < myCount; i++) {
+      final IElementType type = myTypes[i];
+      if (type == LT) {
+        depth++;
+      }
+      else if (type == GT) {
+        depth--;
+        if (depth == 0) return i + 1 < myCount && myTypes[i + 1] == LPAREN;
+      }
+      else if (type != COMMA && type != DOT && type != VOID && !isId(type)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private void skipStringLiteral(final boolean allowTemplates) {
+    boolean first = true;
+    while (isStringStart(type(0))) {
+      if (!first && !allowTemplates) throw CANNOT_INDEX;
+      first = false;
+
+      if (type(0) == RAW_SINGLE_QUOTED_STRING || type(0) == RAW_TRIPLE_QUOTED_STRING) {
+        advance();
+        continue;
+      }
+
+      advance(); // OPEN_QUOTE
+      while (type(0) != CLOSING_QUOTE) {
+        final IElementType type = type(0);
+        if (type == REGULAR_STRING_PART) {
+          advance();
+        }
+        else if (allowTemplates && type == SHORT_TEMPLATE_ENTRY_START) {
+          advance();
+          if (type(0) == IDENTIFIER || type(0) == THIS) advance();
+        }
+        else if (allowTemplates && type == LONG_TEMPLATE_ENTRY_START) {
+          skipBalanced();
+        }
+        else {
+          // not closed string or template in a URI
+          throw CANNOT_INDEX;
+        }
+      }
+      advance(); // CLOSING_QUOTE
+    }
+  }
+
+  private void skipBalanced() {
+    myPos = getIndexAfterBalanced(myPos);
+  }
+
+  /**
+   * @param index index of an opening brace
+   * @return index of the token that follows the matching closing brace
+   */
+  private int getIndexAfterBalanced(final int index) {
+    IElementType[] openings = new IElementType[16];
+    int depth = 0;
+
+    for (int i = index; i < myCount; i++) {
+      final IElementType type = myTypes[i];
+      if (isOpeningBrace(type)) {
+        if (depth == openings.length) {
+          openings = Arrays.copyOf(openings, depth * 2);
+        }
+        openings[depth++] = type;
+      }
+      else if (isClosingBrace(type)) {
+        if (depth == 0 || getClosingBrace(openings[--depth]) != type) throw CANNOT_INDEX;
+        if (depth == 0) return i + 1;
+      }
+      else if (i == index) {
+        throw CANNOT_INDEX;
+      }
+    }
+
+    throw CANNOT_INDEX;
+  }
+
+  private static boolean isOpeningBrace(@Nullable final IElementType type) {
+    return type == LPAREN || type == LBRACKET || type == LBRACE || type == LONG_TEMPLATE_ENTRY_START;
+  }
+
+  private static boolean isClosingBrace(@Nullable final IElementType type) {
+    return type == RPAREN || type == RBRACKET || type == RBRACE || type == LONG_TEMPLATE_ENTRY_END;
+  }
+
+  @NotNull
+  private static IElementType getClosingBrace(@NotNull final IElementType openingBrace) {
+    if (openingBrace == LPAREN) return RPAREN;
+    if (openingBrace == LBRACKET) return RBRACKET;
+    if (openingBrace == LBRACE) return RBRACE;
+    return LONG_TEMPLATE_ENTRY_END;
+  }
+
+  private static boolean isExpressionEnd(@Nullable final IElementType type) {
+    return isId(type) ||
+           type == RPAREN || type == RBRACKET || type == RBRACE ||
+           type == CLOSING_QUOTE || type == RAW_SINGLE_QUOTED_STRING || type == RAW_TRIPLE_QUOTED_STRING ||
+           type == NUMBER || type == THIS || type == SUPER || type == NULL || type == TRUE || type == FALSE;
+  }
+
+  private static boolean isStringStart(@Nullable final IElementType type) {
+    return type == OPEN_QUOTE || type == RAW_SINGLE_QUOTED_STRING || type == RAW_TRIPLE_QUOTED_STRING;
+  }
+
+  // ---------------------------------------------------------------- tokens
+
+  /**
+   * Identifier as understood by {@code DartGeneratedParserUtilBase.nonStrictID()}: built-in identifiers are allowed.
+   */
+  private static boolean isId(@Nullable final IElementType type) {
+    return type == IDENTIFIER || DartTokenTypesSets.BUILT_IN_IDENTIFIERS.contains(type);
+  }
+
+  @Nullable
+  private IElementType type(final int lookAhead) {
+    final int index = myPos + lookAhead;
+    return index < myCount ? myTypes[index] : null;
+  }
+
+  @NotNull
+  private String getText(final int index) {
+    return myText.subSequence(myStarts[index], myEnds[index]).toString();
+  }
+
+  private void advance() {
+    myPos++;
+  }
+
+  private void expect(@NotNull final IElementType type) {
+    if (type(0) != type) throw CANNOT_INDEX;
+    myPos++;
+  }
+
+  @NotNull
+  private String expectId() {
+    if (!isId(type(0))) throw CANNOT_INDEX;
+    return getText(myPos++);
+  }
+}
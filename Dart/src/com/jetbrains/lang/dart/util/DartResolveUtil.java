@@ -9,6 +9,7 @@ import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.source.tree.LeafPsiElement;
+import com.intellij.psi.scope.PsiScopeProcessor;
 import com.intellij.psi.search.PsiElementProcessor;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
@@ -19,6 +20,7 @@ import com.intellij.util.BooleanValueHolder;
 import com.intellij.util.Function;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.MultiMap;
 import com.jetbrains.lang.dart.DartComponentType;
 import com.jetbrains.lang.dart.DartTokenTypesSets;
 import com.jetbrains.lang.dart.ide.index.*;
@@ -198,12 +200,14 @@ public class DartResolveUtil {
     if (filesOfInterest != null && filesOfInterest.isEmpty()) return true;
 
     final boolean privateOnly = componentNameHint != null && componentNameHint.startsWith("_");
-    return processTopLevelDeclarationsImpl(context, processor, rootVirtualFile, filesOfInterest, new THashSet<>(), privateOnly);
+    return processTopLevelDeclarationsImpl(context, processor, rootVirtualFile, componentNameHint, filesOfInterest, new THashSet<>(),
+                                           privateOnly);
   }
 
   private static boolean processTopLevelDeclarationsImpl(final @NotNull PsiElement context,
                                                          final @NotNull DartPsiScopeProcessor processor,
                                                          final @Nullable VirtualFile virtualFile,
+                                                         final @Nullable String componentNameHint,
                                                          final @Nullable Set<VirtualFile> filesOfInterest,
                                                          final @NotNull Set<VirtualFile> alreadyProcessed,
                                                          final boolean privateOnly) {
@@ -220,8 +224,11 @@ public class DartResolveUtil {
     if (contains) {
       final PsiFile psiFile = context.getManager().findFile(virtualFile);
       for (PsiElement root : findDartRoots(psiFile)) {
-        if (!DartPsiCompositeElementImpl.processDeclarationsImpl(root, processor, ResolveState.initial(), null)) {
-          return false;
+        final MultiMap<String, DartComponentName> declarations = getTopLevelDeclarations(root);
+        for (DartComponentName componentName : componentNameHint == null ? declarations.values() : declarations.get(componentNameHint)) {
+          if (!processor.execute(componentName, ResolveState.initial())) {
+            return false;
+          }
         }
       }
     }
@@ -234,7 +241,8 @@ public class DartResolveUtil {
 
       final PsiFile partPsiFile = context.getManager().findFile(partFile);
       if (partPsiFile != null) {
-        if (!processTopLevelDeclarationsImpl(partPsiFile, processor, partFile, filesOfInterest, alreadyProcessed, privateOnly)) {
+        if (!processTopLevelDeclarationsImpl(partPsiFile, processor, partFile, componentNameHint, filesOfInterest, alreadyProcessed,
+                                             privateOnly)) {
           return false;
         }
       }
@@ -264,7 +272,7 @@ public class DartResolveUtil {
       if (importedFile != null) {
         processor.importedFileProcessingStarted(importedFile, importOrExportInfo);
         final boolean continueProcessing =
-          processTopLevelDeclarationsImpl(context, processor, importedFile, filesOfInterest, alreadyProcessed, false);
+          processTopLevelDeclarationsImpl(context, processor, importedFile, componentNameHint, filesOfInterest, alreadyProcessed, false);
         processor.importedFileProcessingFinished(importedFile);
         if (!continueProcessing) {
           return false;
@@ -279,7 +287,7 @@ public class DartResolveUtil {
           new DartImportOrExportInfo(Kind.Import, DART_CORE_URI, null, Collections.emptySet(), Collections.emptySet());
         processor.importedFileProcessingStarted(dartCoreLib, implicitImportInfo);
         final boolean continueProcessing =
-          processTopLevelDeclarationsImpl(context, processor, dartCoreLib, filesOfInterest, alreadyProcessed, false);
+          processTopLevelDeclarationsImpl(context, processor, dartCoreLib, componentNameHint, filesOfInterest, alreadyProcessed, false);
         processor.importedFileProcessingFinished(dartCoreLib);
 
         if (!continueProcessing) {
@@ -291,6 +299,27 @@ public class DartResolveUtil {
     return true;
   }
 
+  /**
+   * Declarations of the Dart file or of the Dart script embedded in HTML file, grouped by name. Resolving a name against a large library
+   * (e.g. dart:core) looks up the only matching group instead of walking all top-level PSI elements on each call.
+   * The map is dropped when its own file changes, edits in other files keep it.
+   */
+  @NotNull
+  private static MultiMap<String, DartComponentName> getTopLevelDeclarations(final @NotNull PsiElement root) {
+    return CachedValuesManager.getCachedValue(root, () -> {
+      final MultiMap<String, DartComponentName> result = new MultiMap<>();
+      DartPsiCompositeElementImpl.processDeclarationsImpl(root, new PsiScopeProcessor() {
+        @Override
+        public boolean execute(@NotNull PsiElement element, @NotNull ResolveState state) {
+          final DartComponentName componentName = (DartComponentName)element;
+          result.putValue(componentName.getName(), componentName);
+          return true;
+        }
+      }, ResolveState.initial(), null);
+      return CachedValueProvider.Result.create(result, root.getContainingFile());
+    });
+  }
+
   @Nullable
   public static VirtualFile getImportedFile(final @NotNull Project project,
                                             final @NotNull VirtualFile contextFile,
@@ -0,0 +1,82 @@
+package com.google.dart.server.internal.remote;
+
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ByteRequestSinkTest extends TestCase {
+  public void testRequestsQueuedDuringWriteAreFlushedTogether() throws Exception {
+    final CountDownLatch firstFlushStarted = new CountDownLatch(1);
+    final CountDownLatch releaseFirstFlush = new CountDownLatch(1);
+    final FlushCountingStream stream = new FlushCountingStream(firstFlushStarted, releaseFirstFlush);
+    final ByteRequestSink sink = new ByteRequestSink(stream, null);
+
+    sink.add(request("1"));
+    assertTrue(firstFlushStarted.await(10, TimeUnit.SECONDS));
+
+    // the writer thread is busy, these requests wait in the queue
+    for (int i = 2; i <= 5; i++) {
+      sink.add(request(String.valueOf(i)));
+    }
+    releaseFirstFlush.countDown();
+
+    final String expected = "{\"id\":\"1\"}\n{\"id\":\"2\"}\n{\"id\":\"3\"}\n{\"id\":\"4\"}\n{\"id\":\"5\"}\n";
+    final long deadline = System.currentTimeMillis() + 10000;
+    while ((!expected.equals(stream.getText()) || stream.getFlushCount() < 2) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(expected, stream.getText());
+    assertEquals(2, stream.getFlushCount());
+
+    sink.close();
+  }
+
+  private static JsonObject request(String id) {
+    final JsonObject request = new JsonObject();
+    request.addProperty("id", id);
+    return request;
+  }
+
+  /**
+   * Blocks the first flush until released.
+   */
+  private static class FlushCountingStream extends ByteArrayOutputStream {
+    private final CountDownLatch myFirstFlushStarted;
+    private final CountDownLatch myReleaseFirstFlush;
+    private int myFlushCount;
+
+    FlushCountingStream(CountDownLatch firstFlushStarted, CountDownLatch releaseFirstFlush) {
+      myFirstFlushStarted = firstFlushStarted;
+      myReleaseFirstFlush = releaseFirstFlush;
+    }
+
+    @Override
+    public void flush() {
+      final boolean first;
+      synchronized (this) {
+        first = myFlushCount++ == 0;
+      }
+      if (first) {
+        myFirstFlushStarted.countDown();
+        try {
+          myReleaseFirstFlush.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    synchronized int getFlushCount() {
+      return myFlushCount;
+    }
+
+    synchronized String getText() {
+      return new String(toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+    }
+  }
+}
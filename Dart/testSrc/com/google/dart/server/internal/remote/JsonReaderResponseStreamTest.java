@@ -0,0 +1,85 @@
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class JsonReaderResponseStreamTest extends TestCase {
+  private static final String HIGHLIGHTS =
+    "{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/a.dart\",\"regions\":[{\"type\":\"KEYWORD\",\"offset\":1,\"length\":2}]}}";
+
+  private final List<String> myEvents = new ArrayList<>();
+  private boolean myStreamEnded;
+
+  public void testLastLineWithoutNewLine() throws Exception {
+    JsonReaderResponseStream stream = createStream("{\"id\":\"1\"}\n\nObservatory listening\n{\"id\":\"2\"}");
+    assertEquals("1", stream.take().get("id").getAsString());
+    assertEquals("2", stream.take().get("id").getAsString());
+    assertNull(stream.take());
+    assertTrue(myStreamEnded);
+  }
+
+  public void testMultiByteCharacters() throws Exception {
+    String id = "\u00e9\u20ac\ud83d\ude00";
+    JsonReaderResponseStream stream = createStream("{\"id\":\"" + id + "\"}\n");
+    assertEquals(id, stream.take().get("id").getAsString());
+    assertNull(stream.take());
+  }
+
+  public void testStreamingNotification() throws Exception {
+    final Thread thread = Thread.currentThread();
+    JsonReaderResponseStream stream = createStream(HIGHLIGHTS + "\n{\"id\":\"1\"}\n");
+    stream.setNotificationListener(new AnalysisServerListenerAdapter() {
+      @Override
+      public void computedHighlights(String file, List<HighlightRegion> highlights) {
+        // listeners are called by the thread taking responses, as for notifications processed from JsonObjects
+        assertSame(thread, Thread.currentThread());
+        assertEquals(Collections.singletonList(new HighlightRegion("KEYWORD", 1, 2)), highlights);
+        myEvents.add(file);
+      }
+    });
+
+    assertSame(JsonReaderResponseStream.PROCESSED_NOTIFICATION, stream.take());
+    assertEquals(Collections.singletonList("/a.dart"), myEvents);
+    assertEquals("1", stream.take().get("id").getAsString());
+  }
+
+  public void testListenerException() throws Exception {
+    JsonReaderResponseStream stream = createStream(HIGHLIGHTS + "\n{\"id\":\"1\"}\n");
+    stream.setNotificationListener(new AnalysisServerListenerAdapter() {
+      @Override
+      public void computedHighlights(String file, List<HighlightRegion> highlights) {
+        throw new UnsupportedOperationException(file);
+      }
+    });
+
+    try {
+      stream.take();
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      assertEquals("/a.dart", e.getMessage());
+    }
+    // the notification has been read completely before the listener was called
+    assertEquals("1", stream.take().get("id").getAsString());
+  }
+
+  public void testWithoutListener() throws Exception {
+    JsonReaderResponseStream stream = createStream(HIGHLIGHTS);
+    JsonObject response = stream.take();
+    assertEquals("analysis.highlights", response.get("event").getAsString());
+    assertEquals("/a.dart", response.getAsJsonObject("params").get("file").getAsString());
+  }
+
+  private JsonReaderResponseStream createStream(String text) {
+    return new JsonReaderResponseStream(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), null,
+                                        () -> myStreamEnded = true);
+  }
+}
@@ -0,0 +1,74 @@
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class RequestStatisticsTest extends TestCase {
+  private static final String HOVER = RequestUtilities.METHOD_ANALYSIS_GET_HOVER;
+  private static final String FORMAT = RequestUtilities.METHOD_EDIT_FORMAT;
+
+  private long myNanos;
+  private final RequestStatistics myStatistics = new RequestStatistics() {
+    @Override
+    long nanoTime() {
+      return myNanos;
+    }
+  };
+
+  public void testResponseTimesByMethod() {
+    respond("1", HOVER, 5, false);
+    respond("2", HOVER, 60, false);
+    respond("3", HOVER, 4000, true);
+    respond("4", FORMAT, 300, false);
+
+    // avg/max ms, then histogram buckets <10 <50 <100 <300 <1000 <3000 >=3000
+    assertEquals(HOVER + ": 3, 1355/4000, 1, 0, 0; 1 0 1 0 0 0 1", getLine(HOVER));
+    assertEquals(FORMAT + ": 1, 300/300, 0, 0, 0; 0 0 0 0 1 0 0", getLine(FORMAT));
+  }
+
+  public void testPendingAndTimedOutRequests() {
+    myStatistics.requestSent("1", HOVER);
+    myStatistics.requestSent("2", HOVER);
+    myStatistics.requestTimedOut(HOVER);
+    assertEquals(HOVER + ": 0, 0/0, 0, 1, 2; 0 0 0 0 0 0 0", getLine(HOVER));
+
+    // a late response still counts, responses to unknown requests are ignored
+    myNanos += TimeUnit.MILLISECONDS.toNanos(20);
+    myStatistics.responseReceived("1", false);
+    myStatistics.responseReceived("unknown", false);
+    assertEquals(HOVER + ": 1, 20/20, 0, 1, 1; 0 1 0 0 0 0 0", getLine(HOVER));
+
+    // the server was restarted
+    myStatistics.clearPendingRequests();
+    myStatistics.responseReceived("2", false);
+    assertEquals(HOVER + ": 1, 20/20, 0, 1, 0; 0 1 0 0 0 0 0", getLine(HOVER));
+  }
+
+  public void testMethodsSorted() {
+    respond("1", HOVER, 1, false);
+    respond("2", FORMAT, 1, false);
+    final String[] lines = myStatistics.getReport().split("\n");
+    assertEquals(3, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("method: "));
+    assertTrue(lines[1], lines[1].startsWith(HOVER + ": "));
+    assertTrue(lines[2], lines[2].startsWith(FORMAT + ": "));
+  }
+
+  private void respond(String id, String method, long millis, boolean error) {
+    myStatistics.requestSent(id, method);
+    myNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    myStatistics.responseReceived(id, error);
+  }
+
+  private String getLine(String method) {
+    for (String line : myStatistics.getReport().split("\n")) {
+      if (line.startsWith(method + ": ")) {
+        return line;
+      }
+    }
+    fail("no line for " + method + " in " + myStatistics.getReport());
+    return null;
+  }
+}
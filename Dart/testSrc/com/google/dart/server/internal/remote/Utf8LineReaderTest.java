@@ -0,0 +1,139 @@
+package com.google.dart.server.internal.remote;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class Utf8LineReaderTest extends TestCase {
+  private static final String MULTI_BYTE = "a\u00e9\u20ac\ud83d\ude00z"; // 1, 2, 3 and 4 bytes
+
+  public void testLines() throws IOException {
+    Utf8LineReader reader = new Utf8LineReader(stream("first\nsecond\n"), 100);
+    assertEquals("first", readLine(reader, 100));
+    assertTrue(reader.nextLine());
+    assertEquals("first", reader.getPreviousLinePrefix());
+    assertEquals("second", readLine(reader, 100));
+    // the end of the stream is found only when the line after the last new line is read
+    assertTrue(reader.nextLine());
+    assertEquals("second", reader.getPreviousLinePrefix());
+    assertEquals("", readLine(reader, 100));
+    assertFalse(reader.nextLine());
+    assertTrue(reader.isStreamEnded());
+  }
+
+  public void testLastLineWithoutNewLine() throws IOException {
+    Utf8LineReader reader = new Utf8LineReader(stream("first\nlast"));
+    assertEquals("first", readLine(reader, 100));
+    assertTrue(reader.nextLine());
+    assertEquals("last", readLine(reader, 100));
+    assertFalse(reader.nextLine());
+    assertEquals(-1, reader.read(new char[1], 0, 1));
+  }
+
+  public void testLineSkippedWithoutReading() throws IOException {
+    Utf8LineReader reader = new Utf8LineReader(stream("  {skipped}\n\t{read}"), 3);
+    assertEquals('{', reader.peekFirstSignificantByte());
+    assertTrue(reader.nextLine());
+    assertEquals("  {...", reader.getPreviousLinePrefix());
+    assertEquals('{', reader.peekFirstSignificantByte());
+    assertEquals("{read}", readLine(reader, 100));
+  }
+
+  public void testMultiByteCharacters() throws IOException {
+    assertEquals(MULTI_BYTE, readLine(new Utf8LineReader(stream(MULTI_BYTE + "\n")), 100));
+  }
+
+  public void testMultiByteCharactersSplitBetweenReads() throws IOException {
+    for (int chunk = 1; chunk <= 4; chunk++) {
+      Utf8LineReader reader = new Utf8LineReader(new ChunkedInputStream(bytes(MULTI_BYTE + "\n" + MULTI_BYTE), chunk));
+      assertEquals("chunk " + chunk, MULTI_BYTE, readLine(reader, 100));
+      assertTrue(reader.nextLine());
+      assertEquals("chunk " + chunk, MULTI_BYTE, readLine(reader, 100));
+    }
+  }
+
+  public void testMultiByteCharactersAtBufferBoundary() throws IOException {
+    // the reader buffer has 64K bytes, put each character across its end
+    for (int shift = 1; shift <= 3; shift++) {
+      char[] padding = new char[64 * 1024 - shift];
+      Arrays.fill(padding, 'x');
+      String line = new String(padding) + "\ud83d\ude00\u20ac\u00e9";
+      assertEquals("shift " + shift, line, readLine(new Utf8LineReader(stream(line + "\n")), 1000));
+    }
+  }
+
+  public void testSurrogatePairSplitBetweenReadCalls() throws IOException {
+    Utf8LineReader reader = new Utf8LineReader(stream("\ud83d\ude00\ud83d\ude01"));
+    assertEquals("\ud83d\ude00\ud83d\ude01", readLine(reader, 1));
+
+    reader = new Utf8LineReader(stream("a\ud83d\ude00"));
+    char[] chars = new char[2];
+    assertEquals(2, reader.read(chars, 0, 2));
+    assertEquals("a\ud83d", new String(chars));
+    assertEquals(1, reader.read(chars, 0, 2));
+    assertEquals('\ude00', chars[0]);
+    assertEquals(-1, reader.read(chars, 0, 2));
+  }
+
+  public void testMalformedInput() throws IOException {
+    byte[] bytes = {
+      'a',
+      (byte)0xFF,                         // invalid first byte
+      (byte)0x80,                         // continuation byte without first byte
+      (byte)0xE2, (byte)0x82, 'b',        // truncated 3-byte sequence
+      (byte)0xF0, (byte)0x9F, (byte)0x98, // truncated 4-byte sequence at the end of the line
+      '\n',
+      'c'
+    };
+    Utf8LineReader reader = new Utf8LineReader(new ByteArrayInputStream(bytes));
+    assertEquals("a\ufffd\ufffd\ufffdb\ufffd", readLine(reader, 100));
+    assertTrue(reader.nextLine());
+    assertEquals("c", readLine(reader, 100));
+  }
+
+  public void testTruncatedSequenceAtStreamEnd() throws IOException {
+    byte[] bytes = {'a', (byte)0xE2, (byte)0x82};
+    Utf8LineReader reader = new Utf8LineReader(new ChunkedInputStream(bytes, 1));
+    assertEquals("a\ufffd", readLine(reader, 100));
+    assertFalse(reader.nextLine());
+  }
+
+  private static String readLine(Utf8LineReader reader, int bufferSize) throws IOException {
+    StringBuilder result = new StringBuilder();
+    char[] chars = new char[bufferSize];
+    int count;
+    while ((count = reader.read(chars, 0, chars.length)) != -1) {
+      result.append(chars, 0, count);
+    }
+    return result.toString();
+  }
+
+  private static InputStream stream(String s) {
+    return new ByteArrayInputStream(bytes(s));
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns at most the given number of bytes from each read.
+   */
+  private static class ChunkedInputStream extends ByteArrayInputStream {
+    private final int chunk;
+
+    ChunkedInputStream(byte[] bytes, int chunk) {
+      super(bytes);
+      this.chunk = chunk;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, chunk));
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DartOverlayEditsTrackerTest extends TestCase {
+
+  private static String apply(@NotNull String text, @NotNull final List<SourceEdit> edits) {
+    for (SourceEdit edit : edits) {
+      text = text.substring(0, edit.getOffset()) + edit.getReplacement() + text.substring(edit.getOffset() + edit.getLength());
+    }
+    return text;
+  }
+
+  /**
+   * Each element of {@code changes} is {offset, length, replacement}; changes are applied to {@code text} sequentially,
+   * the same way document events come, and the result is compared with the result of applying collected (coalesced) edits.
+   */
+  private static void doTest(@NotNull final String text, final int expectedEditsCount, @NotNull final Object[]... changes) {
+    final List<SourceEdit> edits = new ArrayList<>();
+    String expected = text;
+    for (Object[] change : changes) {
+      final int offset = (Integer)change[0];
+      final int length = (Integer)change[1];
+      final String replacement = (String)change[2];
+      expected = expected.substring(0, offset) + replacement + expected.substring(offset + length);
+      DartOverlayEditsTracker.addEdit(edits, offset, length, replacement);
+    }
+
+    assertEquals(expected, apply(text, edits));
+    assertEquals(expectedEditsCount, edits.size());
+  }
+
+  public void testTyping() {
+    doTest("void main() {}", 1, new Object[]{13, 0, "p"}, new Object[]{14, 0, "r"}, new Object[]{15, 0, "int();"});
+  }
+
+  public void testBackspacing() {
+    doTest("void main() { print(); }", 1, new Object[]{21, 1, ""}, new Object[]{20, 1, ""}, new Object[]{19, 1, ""});
+  }
+
+  public void testEditInsideInsertedText() {
+    doTest("var a;", 1, new Object[]{5, 0, " = 12345"}, new Object[]{10, 2, ""}, new Object[]{8, 0, "0"});
+  }
+
+  public void testReplaceThenContinue() {
+    doTest("var foo = 1;", 1, new Object[]{4, 3, "bar"}, new Object[]{7, 0, "Baz"}, new Object[]{9, 1, "Z"});
+  }
+
+  public void testDistantEdits() {
+    doTest("class A {}\nclass B {}\n", 2, new Object[]{9, 0, "int a;"}, new Object[]{0, 0, "// comment\n"});
+  }
+}
@@ -0,0 +1,83 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.testFramework.LightVirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+public class FileOffsetsManagerTest extends LightPlatformTestCase {
+
+  @NotNull
+  private static LightVirtualFile lfFile(final int index) {
+    return new LightVirtualFile("lf" + index + ".txt", "a\nb\nc");
+  }
+
+  public void testOffsets() {
+    final FileOffsetsManager manager = new FileOffsetsManager(100, 1);
+    final LightVirtualFile crlf = new LightVirtualFile("crlf.txt", "a\r\nb\r\nc");
+    assertEquals(2, manager.getConvertedOffset(crlf, 3));
+    assertEquals(3, manager.getOriginalOffset(crlf, 2));
+    assertEquals(4, manager.getConvertedOffset(crlf, 6));
+
+    final LightVirtualFile lf = lfFile(0);
+    assertEquals(4, manager.getConvertedOffset(lf, 4));
+    assertEquals(4, manager.getOriginalOffset(lf, 4));
+  }
+
+  public void testHitsAndMisses() {
+    final FileOffsetsManager manager = new FileOffsetsManager(100, 1);
+    final LightVirtualFile crlf = new LightVirtualFile("crlf.txt", "a\r\nb\r\nc");
+    manager.getConvertedOffset(crlf, 3);
+    assertEquals(0, manager.getHitCount());
+    assertEquals(1, manager.getMissCount());
+
+    manager.getConvertedOffset(crlf, 6);
+    manager.getOriginalOffset(crlf, 2);
+    assertEquals(2, manager.getHitCount());
+    assertEquals(1, manager.getMissCount());
+
+    // offsets of a changed file are loaded again
+    crlf.setContent(this, "a\nb\r\nc", false);
+    assertEquals(3, manager.getConvertedOffset(crlf, 3));
+    assertEquals(2, manager.getHitCount());
+    assertEquals(2, manager.getMissCount());
+    assertTrue(manager.getStatistics(), manager.getStatistics().contains("2 hits, 2 misses"));
+  }
+
+  public void testEviction() {
+    // a file with CRLF line separators and 3 lines weighs 4, a file without them weighs 2;
+    // a single segment makes the cache evict the least recently used file of all
+    final FileOffsetsManager manager = new FileOffsetsManager(20, 1);
+    final LightVirtualFile crlf = new LightVirtualFile("crlf.txt", "a\r\nb\r\nc");
+    manager.getConvertedOffset(crlf, 3);
+    for (int i = 1; i <= 8; i++) {
+      manager.getConvertedOffset(lfFile(i), 0);
+    }
+    assertEquals(9, manager.getMissCount());
+
+    // everything fits, the CRLF file becomes the most recently used one
+    manager.getConvertedOffset(crlf, 3);
+    assertEquals(1, manager.getHitCount());
+
+    // the least recently used file is evicted
+    final LightVirtualFile lf9 = lfFile(9);
+    manager.getConvertedOffset(lf9, 0);
+    manager.getConvertedOffset(crlf, 3);
+    manager.getConvertedOffset(lf9, 0);
+    assertEquals(3, manager.getHitCount());
+    assertEquals(10, manager.getMissCount());
+  }
+
+  public void testFilesWithoutCrLfAreBounded() {
+    final FileOffsetsManager manager = new FileOffsetsManager(20, 1);
+    final LightVirtualFile first = lfFile(0);
+    manager.getConvertedOffset(first, 0);
+    for (int i = 1; i < 100; i++) {
+      manager.getConvertedOffset(lfFile(i), 0);
+    }
+    assertTrue(manager.getStatistics(), manager.getStatistics().startsWith("Line offsets cache: 10 files"));
+
+    manager.getConvertedOffset(first, 0);
+    assertEquals(0, manager.getHitCount());
+    assertEquals(101, manager.getMissCount());
+  }
+}
@@ -0,0 +1,40 @@
+package com.jetbrains.lang.dart.coverage;
+
+import com.intellij.rt.coverage.data.LineData;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+public class DartCoverageDataTest extends LightPlatformCodeInsightFixtureTestCase {
+
+  private static String hits(final LineData[] lines) {
+    final StringBuilder builder = new StringBuilder();
+    for (LineData line : lines) {
+      builder.append(line == null ? "-" : String.valueOf(line.getHits())).append(' ');
+    }
+    return builder.toString().trim();
+  }
+
+  public void testMergeHits() throws IOException {
+    final DartCoverageData data = DartCoverageData.read(new StringReader(
+      "{\"type\": \"CodeCoverage\", \"coverage\": [\n" +
+      "  {\"source\": \"file:///a.dart\", \"script\": {\"type\": \"@Script\", \"id\": \"1\"}, \"hits\": [1, 2, 3, 0]},\n" +
+      "  {\"hits\": [3, 5, 5, 1], \"source\": \"file:///a.dart\"},\n" +
+      "  {\"source\": \"file:///b.dart\", \"hits\": []},\n" +
+      "  {\"source\": null, \"hits\": [1, 1]},\n" +
+      "  {\"source\": \"file:///c.dart\", \"hits\": [2, 0]}\n" +
+      "]}"));
+
+    assertEquals(Arrays.asList("file:///a.dart", "file:///b.dart", "file:///c.dart"), data.getSources());
+    assertEquals("- 2 - 5 - 1", hits(data.takeLineData("file:///a.dart")));
+    assertEquals("-", hits(data.takeLineData("file:///b.dart")));
+    assertEquals("- - 0", hits(data.takeLineData("file:///c.dart")));
+    assertNull(data.takeLineData("file:///a.dart"));
+  }
+
+  public void testNoCoverage() throws IOException {
+    assertEmpty(DartCoverageData.read(new StringReader("{\"type\": \"CodeCoverage\"}")).getSources());
+  }
+}
@@ -0,0 +1,133 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFile;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+public class DartTokenIndexerTest extends DartCodeInsightFixtureTestCase {
+
+  private void doTest(@NotNull final String text) {
+    final DartFileIndexData tokenData = DartTokenIndexer.indexFile(text, "file.dart");
+    assertNotNull("token indexer failed", tokenData);
+    assertSameData(text, tokenData);
+  }
+
+  private void doTestNotIndexed(@NotNull final String text) {
+    assertNull(DartTokenIndexer.indexFile(text, "file.dart"));
+  }
+
+  private void assertSameData(@NotNull final String text, @NotNull final DartFileIndexData tokenData) {
+    final PsiFile psiFile = myFixture.configureByText("file.dart", text);
+    final DartFileIndexData psiData = DartIndexUtil.indexFileRoots(psiFile);
+
+    assertEquals(psiData.getLibraryName(), tokenData.getLibraryName());
+    assertEquals(psiData.isPart(), tokenData.isPart());
+    assertEquals(sorted(psiData.getSymbols()), sorted(tokenData.getSymbols()));
+    assertEquals(sorted(psiData.getClassNames()), sorted(tokenData.getClassNames()));
+    assertEquals(new TreeMap<>(psiData.getComponentInfoMap()), new TreeMap<>(tokenData.getComponentInfoMap()));
+    assertEquals(psiData.getImportAndExportInfos(), tokenData.getImportAndExportInfos());
+    assertEquals(psiData.getPartUris(), tokenData.getPartUris());
+  }
+
+  @NotNull
+  private static List<String> sorted(@NotNull final List<String> list) {
+    final List<String> result = new ArrayList<>(list);
+    Collections.sort(result);
+    return result;
+  }
+
+  public void testDirectives() {
+    doTest("@deprecated library foo.bar  .baz;\n" +
+           "import 'dart:io' if (dart.library.html) 'html.dart' deferred as io show File, Directory hide Process;\n" +
+           "import \"package:a/a.dart\" as a;\n" +
+           "export r'src/x.dart' show A;\n" +
+           "part 'src/part.dart';\n" +
+           "part \"src/part2.dart\";");
+  }
+
+  public void testNoLibraryName() {
+    doTest("import 'foo.dart';\n" +
+           "main() {}");
+  }
+
+  public void testPartOf() {
+    doTest("part of foo . bar;\n" +
+           "class A {}");
+  }
+
+  public void testTopLevelDeclarations() {
+    doTest("const Map<String, int> m = <String, int>{'a': 1, 'b': 2}, n = const {};\n" +
+           "final f = foo<int, String>(1);\n" +
+           "var s = \"interp ${ {'a': 1}['a'] } and $x\", t = r'raw';\n" +
+           "int Function(int, {String name}) callback;\n" +
+           "Future<void> main(List<String> args) async { await null; }\n" +
+           "Stream<int> gen() async* { yield 1; }\n" +
+           "Iterable<int> syncGen() sync* => [1];\n" +
+           "get topGetter => 1;\n" +
+           "set topSetter(v) {}\n" +
+           "external int ext();\n" +
+           "typedef Handler<T> = void Function(T event);\n" +
+           "typedef int Compare<T>(T a, T b);\n" +
+           "typedef Old(x);");
+  }
+
+  public void testClassMembers() {
+    doTest("@meta.annotation(1, named: const {'x'})\n" +
+           "abstract class A<T extends Comparable<T>> extends B<List<T>> with M1, M2<T> implements I {\n" +
+           "  static const int x = 1, y = 2;\n" +
+           "  covariant num z;\n" +
+           "  var covariant;\n" +
+           "  final Map<String, List<int>> cache = <String, List<int>>{};\n" +
+           "  A() : cache2 = {}, super();\n" +
+           "  A.named(int a) : this();\n" +
+           "  const A.constant() : m = const {'a': 1};\n" +
+           "  factory A.create() = B<T>.create;\n" +
+           "  factory A.other() { return null; }\n" +
+           "  operator ==(other) => false;\n" +
+           "  int operator [](int i) => i;\n" +
+           "  void operator []=(int i, v) {}\n" +
+           "  bool operator >=(other) => true;\n" +
+           "  int operator >>(int s) => 1;\n" +
+           "  T get value => null;\n" +
+           "  set value(T v) {}\n" +
+           "  external void ext();\n" +
+           "  void abstractMethod();\n" +
+           "  static Future<Map<String, int>> load<K>() async => null;\n" +
+           "  get(String key) => null;\n" +
+           "  void set(String key, v) {}\n" +
+           "}\n" +
+           "class Mixed = Object with M implements I;\n" +
+           "enum Color { red, green, blue, }");
+  }
+
+  public void testNotIndexed() {
+    doTestNotIndexed("part of 'lib.dart';");
+    doTestNotIndexed("class A {");
+    doTestNotIndexed("class A { foo( }");
+    doTestNotIndexed("var x = a < b, y = c > (d);");
+    doTestNotIndexed("main() { ` }");
+  }
+
+  public void testParsingTestData() throws IOException {
+    final File[] files = new File(DartTestUtils.BASE_TEST_DATA_PATH + "/parsing").listFiles();
+    assertNotNull(files);
+    for (File file : files) {
+      if (!file.getName().endsWith(".dart")) continue;
+      final String text = StringUtil.convertLineSeparators(FileUtil.loadFile(file));
+      final DartFileIndexData tokenData = DartTokenIndexer.indexFile(text, "file.dart");
+      if (tokenData != null) {
+        assertSameData(text, tokenData);
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.psi.DartComponentName;
+import com.jetbrains.lang.dart.resolve.ComponentNameScopeProcessor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+public class DartResolveUtilTest extends DartCodeInsightFixtureTestCase {
+  private PsiFile myLib;
+  private PsiFile myMain;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myLib = myFixture.addFileToProject("lib.dart", "library lib;\n" +
+                                                   "import 'dart:core' as core;\n" +
+                                                   "part 'part.dart';\n" +
+                                                   "class Foo {}\n" +
+                                                   "void bar() {}\n" +
+                                                   "var _private;\n");
+    myFixture.addFileToProject("part.dart", "part of lib;\n" +
+                                            "class _Hidden {}\n" +
+                                            "class Foo2 {}\n" +
+                                            "void bar() {}\n");
+    myMain = myFixture.addFileToProject("main.dart", "import 'lib.dart';\n" +
+                                                     "class Main {}\n");
+  }
+
+  public void testLookupByName() {
+    assertEquals(set("Foo in lib.dart"), process(myLib, "Foo"));
+    assertEquals(set("Foo2 in part.dart"), process(myLib, "Foo2"));
+    assertEquals(set("bar in lib.dart", "bar in part.dart"), process(myLib, "bar"));
+    assertEquals(set("core in lib.dart"), process(myLib, "core"));
+    assertEquals(set("Foo in lib.dart"), process(myMain, "Foo"));
+    assertEquals(set("Main in main.dart"), process(myMain, "Main"));
+    assertEquals(set("Object in object.dart"), process(myMain, "Object"));
+    assertEquals(set(), process(myMain, "Unknown"));
+  }
+
+  public void testPrivateNames() {
+    assertEquals(set("_Hidden in part.dart"), process(myLib, "_Hidden"));
+    assertEquals(set("_private in lib.dart"), process(myLib, "_private"));
+    // private declarations of imported libraries are not visible
+    assertEquals(set(), process(myMain, "_Hidden"));
+    assertEquals(set(), process(myMain, "_private"));
+  }
+
+  public void testLookupByNameMatchesFullWalk() {
+    final Set<String> all = process(myMain, null);
+    assertTrue(all.containsAll(set("Main in main.dart", "Foo in lib.dart", "Foo2 in part.dart", "bar in lib.dart", "bar in part.dart",
+                                   "Object in object.dart", "String in string.dart")));
+
+    for (String name : Arrays.asList("Main", "Foo", "Foo2", "bar", "Object", "String", "int")) {
+      final Set<String> expected = new TreeSet<>();
+      for (String declaration : all) {
+        if (declaration.startsWith(name + " in ")) {
+          expected.add(declaration);
+        }
+      }
+      assertFalse(name, expected.isEmpty());
+      assertEquals(name, expected, process(myMain, name));
+    }
+  }
+
+  public void testDeclarationsUpdatedAfterChange() {
+    assertEquals(set("Foo in lib.dart"), process(myMain, "Foo"));
+
+    final Document document = PsiDocumentManager.getInstance(getProject()).getDocument(myLib);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.setText(document.getText().replace("class Foo {}",
+                                                                                                              "class FooRenamed {}")));
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+
+    assertEquals(set(), process(myMain, "Foo"));
+    assertEquals(set("FooRenamed in lib.dart"), process(myMain, "FooRenamed"));
+    assertTrue(process(myMain, null).contains("FooRenamed in lib.dart"));
+  }
+
+  @NotNull
+  private static Set<String> process(@NotNull PsiFile context, @Nullable String componentNameHint) {
+    final Set<DartComponentName> result = new LinkedHashSet<>();
+    DartResolveUtil.processTopLevelDeclarations(context, new ComponentNameScopeProcessor(result), context.getVirtualFile(),
+                                                componentNameHint);
+    final Set<String> names = new TreeSet<>();
+    for (DartComponentName componentName : result) {
+      names.add(componentName.getName() + " in " + componentName.getContainingFile().getName());
+    }
+    return names;
+  }
+
+  @NotNull
+  private static Set<String> set(String... declarations) {
+    return new TreeSet<>(Arrays.asList(declarations));
+  }
+}
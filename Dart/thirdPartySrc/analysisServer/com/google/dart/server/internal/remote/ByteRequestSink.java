@@ -21,6 +21,8 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -90,18 +92,27 @@ public class ByteRequestSink implements RequestSink {
 
     @Override
     public void run() {
+      List<String> lines = new ArrayList<String>();
       while (true) {
         try {
-          String line = lineQueue.take();
-          if (line == ByteResponseStream.EOF_LINE) {
-            return;
-          }
+          lines.add(lineQueue.take());
+          // write all requests that have been queued meanwhile with a single flush
+          lineQueue.drainTo(lines);
 
-          writer.println(line);
+          for (String line : lines) {
+            if (line == ByteResponseStream.EOF_LINE) {
+              writer.flush();
+              return;
+            }
+            writer.println(line);
+          }
           writer.flush();
         }
         catch (InterruptedException e) {
         }
+        finally {
+          lines.clear();
+        }
       }
     }
   }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2014, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.AnalysisServerListener;
+import com.google.dart.server.internal.remote.processor.NotificationAnalysisHighlightsProcessor;
+import com.google.dart.server.internal.remote.processor.NotificationAnalysisNavigationProcessor;
+import com.google.dart.server.internal.remote.processor.StreamingNotificationProcessor;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} based implementation of {@link ResponseStream} that parses UTF-8 bytes
+ * with a {@link JsonReader} without reading each line into a {@link String} first. Each line must
+ * contain exactly one complete JSON object, lines that do not start with '{' are ignored.
+ * <p>
+ * Large notifications ("analysis.highlights", "analysis.navigation") are decoded directly from the
+ * stream by {@link StreamingNotificationProcessor}s and passed to the listener set with
+ * {@link #setNotificationListener(AnalysisServerListener)}; {@link #take()} returns
+ * {@link #PROCESSED_NOTIFICATION} for them. All other messages are returned as {@link JsonObject}s.
+ * <p>
+ * Unlike {@link ByteResponseStream} this stream has no own reader thread, it is read by the thread
+ * that calls {@link #take()}. The listener is notified by {@link #take()} after the whole message
+ * is read, so it is called on that thread, the {@code ServerResponseReaderThread}, which notifies
+ * listeners about all other notifications too. Listeners are called on the same thread and in the
+ * same order of messages as with {@link ByteResponseStream}, only exceptions thrown by them are
+ * rethrown by {@link #take()}.
+ *
+ * @coverage dart.server.remote
+ */
+public class JsonReaderResponseStream implements ResponseStream {
+  /**
+   * Returned by {@link #take()} when a notification has already been handled while reading it.
+   */
+  public static final JsonObject PROCESSED_NOTIFICATION = new JsonObject();
+
+  /**
+   * How many first bytes of each line are printed to the {@link DebugPrintStream}.
+   */
+  private static final int DEBUG_LINE_PREFIX_LIMIT = 1000;
+
+  private final Utf8LineReader reader;
+  private final DebugPrintStream debugStream;
+  private final Runnable onStreamEndRunnable;
+  private volatile AnalysisServerListener listener;
+  private boolean streamEnded;
+
+  /**
+   * Notifies the listener about the message that has just been read, or {@code null}.
+   */
+  private Runnable notification;
+
+  /**
+   * Initializes a newly created response stream.
+   *
+   * @param stream the byte stream to read JSON objects from
+   * @param debugStream the {@link DebugPrintStream} to print the beginning of each line to, may be {@code null}
+   */
+  public JsonReaderResponseStream(InputStream stream, DebugPrintStream debugStream, Runnable onStreamEndRunnable) {
+    this.reader = debugStream != null ? new Utf8LineReader(stream, DEBUG_LINE_PREFIX_LIMIT) : new Utf8LineReader(stream);
+    this.debugStream = debugStream;
+    this.onStreamEndRunnable = onStreamEndRunnable;
+  }
+
+  /**
+   * Sets the listener to notify about notifications that are processed while reading. If it is not
+   * set, all messages are returned from {@link #take()} as {@link JsonObject}s.
+   */
+  public void setNotificationListener(AnalysisServerListener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void lastRequestProcessed() {
+  }
+
+  @Override
+  public synchronized JsonObject take() throws Exception {
+    while (true) {
+      if (streamEnded) {
+        return null;
+      }
+
+      int firstByte = reader.peekFirstSignificantByte();
+      if (firstByte != '{') {
+        // ignore empty and non-JSON (debug) lines
+        boolean hasNextLine = reader.nextLine();
+        printDebugLine();
+        if (!hasNextLine) {
+          onStreamEnd();
+        }
+        continue;
+      }
+
+      JsonObject response;
+      try {
+        response = readMessage(new JsonReader(reader));
+      }
+      catch (IOException e) {
+        if (reader.isStreamEnded()) {
+          onStreamEnd();
+          return null;
+        }
+        throw new JsonSyntaxException("Parse server message failed", e);
+      }
+      catch (IllegalStateException e) {
+        throw new JsonSyntaxException("Parse server message failed", e);
+      }
+      finally {
+        if (!streamEnded) {
+          boolean hasNextLine = reader.nextLine();
+          printDebugLine();
+          if (!hasNextLine) {
+            onStreamEnd();
+          }
+        }
+      }
+
+      if (notification != null) {
+        Runnable notification = this.notification;
+        this.notification = null;
+        notification.run();
+      }
+      return response;
+    }
+  }
+
+  private void onStreamEnd() {
+    streamEnded = true;
+    if (onStreamEndRunnable != null) {
+      onStreamEndRunnable.run();
+    }
+  }
+
+  private void printDebugLine() {
+    if (debugStream != null) {
+      String line = reader.getPreviousLinePrefix();
+      if (line != null && !line.isEmpty()) {
+        debugStream.println(System.currentTimeMillis() + " <= " + line);
+      }
+    }
+  }
+
+  private JsonObject readMessage(JsonReader jsonReader) throws Exception {
+    JsonObject response = new JsonObject();
+    String event = null;
+    Runnable processed = null;
+
+    jsonReader.beginObject();
+    while (jsonReader.hasNext()) {
+      String name = jsonReader.nextName();
+      if ("event".equals(name)) {
+        event = jsonReader.nextString();
+        response.addProperty(name, event);
+        continue;
+      }
+      if ("params".equals(name) && event != null) {
+        StreamingNotificationProcessor processor = getStreamingProcessor(event);
+        if (processor != null) {
+          processed = processor.read(jsonReader);
+          continue;
+        }
+      }
+      response.add(name, new JsonParser().parse(jsonReader));
+    }
+    jsonReader.endObject();
+
+    if (processed != null) {
+      notification = processed;
+      return PROCESSED_NOTIFICATION;
+    }
+    return response;
+  }
+
+  private StreamingNotificationProcessor getStreamingProcessor(String event) {
+    AnalysisServerListener listener = this.listener;
+    if (listener == null) {
+      return null;
+    }
+    if (event.equals(RemoteAnalysisServerImpl.ANALYSIS_NOTIFICATION_HIGHTLIGHTS)) {
+      return new NotificationAnalysisHighlightsProcessor(listener);
+    }
+    if (event.equals(RemoteAnalysisServerImpl.ANALYSIS_NOTIFICATION_NAVIGATION)) {
+      return new NotificationAnalysisNavigationProcessor(listener);
+    }
+    return null;
+  }
+}
@@ -68,9 +68,9 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   private static final String ANALYSIS_NOTIFICATION_ANALYZED_FILES = "analysis.analyzedFiles";
   private static final String ANALYSIS_NOTIFICATION_ERRORS = "analysis.errors";
   private static final String ANALYSIS_NOTIFICATION_FLUSH_RESULTS = "analysis.flushResults";
-  private static final String ANALYSIS_NOTIFICATION_HIGHTLIGHTS = "analysis.highlights";
+  static final String ANALYSIS_NOTIFICATION_HIGHTLIGHTS = "analysis.highlights";
   private static final String ANALYSIS_NOTIFICATION_IMPLEMENTED = "analysis.implemented";
-  private static final String ANALYSIS_NOTIFICATION_NAVIGATION = "analysis.navigation";
+  static final String ANALYSIS_NOTIFICATION_NAVIGATION = "analysis.navigation";
   private static final String ANALYSIS_NOTIFICATION_OCCURRENCES = "analysis.occurrences";
   private static final String ANALYSIS_NOTIFICATION_OUTLINE = "analysis.outline";
   private static final String ANALYSIS_NOTIFICATION_OVERRIDES = "analysis.overrides";
@@ -110,6 +110,11 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   private final Object consumerMapLock = new Object();
 
+  /**
+   * Response times of requests, errors and timeouts by request method.
+   */
+  private final RequestStatistics requestStatistics = new RequestStatistics();
+
   /**
    * The unique ID for the next request.
    */
@@ -568,6 +573,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
       return;
     }
     String idString = idJsonPrimitive.getAsString();
+    requestStatistics.responseReceived(idString, response.get("error") != null);
     // prepare consumer
     Consumer consumer;
     synchronized (consumerMapLock) {
@@ -720,6 +726,10 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     synchronized (consumerMapLock) {
       consumerMap.put(id, consumer);
     }
+    JsonElement method = request.get("method");
+    if (method != null) {
+      requestStatistics.requestSent(id, method.getAsString());
+    }
     lastRequestTime.set(System.currentTimeMillis());
     synchronized (requestSinkLock) {
       requestSink.add(request);
@@ -729,8 +739,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   private void startServer() throws Exception {
     socket.start();
     consumerMap.clear();
+    requestStatistics.clearPendingRequests();
     requestSink = socket.getRequestSink();
     responseStream = socket.getResponseStream();
+    if (responseStream instanceof JsonReaderResponseStream) {
+      ((JsonReaderResponseStream)responseStream).setNotificationListener(listener);
+    }
     errorStream = socket.getErrorStream();
     new ServerResponseReaderThread(responseStream).start();
     if (errorStream != null) {
@@ -881,6 +895,10 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
   }
 
+  public RequestStatistics getRequestStatistics() {
+    return requestStatistics;
+  }
+
   public long getLastRequestMillis() {
     return lastRequestTime.get();
   }
@@ -951,7 +969,9 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
           }
           lastResponseTime.set(System.currentTimeMillis());
           try {
-            processResponse(response);
+            if (response != JsonReaderResponseStream.PROCESSED_NOTIFICATION) {
+              processResponse(response);
+            }
           }
           finally {
             stream.lastRequestProcessed();
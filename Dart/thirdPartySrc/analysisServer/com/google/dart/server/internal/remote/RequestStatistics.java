@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-method statistics of requests sent to the server: response time histogram, errors, and the
+ * number of results that came too late, after the client had stopped waiting for them.
+ *
+ * @coverage dart.server.remote
+ */
+public class RequestStatistics {
+  /**
+   * Upper bounds (exclusive) of the histogram buckets in milliseconds, the last bucket is unbounded.
+   */
+  private static final long[] BUCKET_BOUNDS_MILLIS = {10, 50, 100, 300, 1000, 3000};
+
+  private static class MethodStatistics {
+    private long responseCount;
+    private long totalNanos;
+    private long maxNanos;
+    private long errorCount;
+    private long timeoutCount;
+    private final long[] buckets = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+  }
+
+  private static class PendingRequest {
+    private final String method;
+    private final long startNanos;
+
+    private PendingRequest(String method, long startNanos) {
+      this.method = method;
+      this.startNanos = startNanos;
+    }
+  }
+
+  private final Map<String, PendingRequest> pendingRequests = new HashMap<String, PendingRequest>();
+  private final Map<String, MethodStatistics> methodStatistics = new TreeMap<String, MethodStatistics>();
+
+  synchronized void requestSent(String id, String method) {
+    getMethodStatistics(method);
+    pendingRequests.put(id, new PendingRequest(method, nanoTime()));
+  }
+
+  synchronized void responseReceived(String id, boolean error) {
+    PendingRequest request = pendingRequests.remove(id);
+    if (request == null) {
+      return;
+    }
+    long nanos = nanoTime() - request.startNanos;
+    MethodStatistics statistics = getMethodStatistics(request.method);
+    statistics.responseCount++;
+    statistics.totalNanos += nanos;
+    statistics.maxNanos = Math.max(statistics.maxNanos, nanos);
+    if (error) {
+      statistics.errorCount++;
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+      bucket++;
+    }
+    statistics.buckets[bucket]++;
+  }
+
+  /**
+   * Records that the client stopped waiting for the response to a request with the given method,
+   * so its result (if any) will be dropped.
+   */
+  public synchronized void requestTimedOut(String method) {
+    getMethodStatistics(method).timeoutCount++;
+  }
+
+  /**
+   * Forgets requests that will never get responses, for example because the server was restarted.
+   */
+  synchronized void clearPendingRequests() {
+    pendingRequests.clear();
+  }
+
+  /**
+   * Returns a human-readable report, one line per request method.
+   */
+  public synchronized String getReport() {
+    Map<String, Integer> pendingCounts = new HashMap<String, Integer>();
+    for (PendingRequest request : pendingRequests.values()) {
+      Integer count = pendingCounts.get(request.method);
+      pendingCounts.put(request.method, count == null ? 1 : count + 1);
+    }
+
+    StringBuilder builder = new StringBuilder();
+    builder.append("method: responses, avg/max ms, errors, timed out (dropped), pending; histogram ms");
+    for (long bound : BUCKET_BOUNDS_MILLIS) {
+      builder.append(" <").append(bound);
+    }
+    builder.append(" >=").append(BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1]);
+
+    for (Map.Entry<String, MethodStatistics> entry : methodStatistics.entrySet()) {
+      MethodStatistics statistics = entry.getValue();
+      long avgMillis = statistics.responseCount == 0
+                       ? 0
+                       : TimeUnit.NANOSECONDS.toMillis(statistics.totalNanos / statistics.responseCount);
+      Integer pending = pendingCounts.get(entry.getKey());
+      builder.append('\n').append(entry.getKey()).append(": ")
+        .append(statistics.responseCount).append(", ")
+        .append(avgMillis).append('/').append(TimeUnit.NANOSECONDS.toMillis(statistics.maxNanos)).append(", ")
+        .append(statistics.errorCount).append(", ")
+        .append(statistics.timeoutCount).append(", ")
+        .append(pending == null ? 0 : pending).append(";");
+      for (long count : statistics.buckets) {
+        builder.append(' ').append(count);
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Returns the current time for response time measurement, overridden in tests.
+   */
+  long nanoTime() {
+    return System.nanoTime();
+  }
+
+  private MethodStatistics getMethodStatistics(String method) {
+    MethodStatistics statistics = methodStatistics.get(method);
+    if (statistics == null) {
+      statistics = new MethodStatistics();
+      methodStatistics.put(method, statistics);
+    }
+    return statistics;
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2014, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link Reader} that decodes UTF-8 bytes of a single line directly from an {@link InputStream}.
+ * The reader reports end of input at the end of the current line, {@link #nextLine()} moves it to
+ * the following line. No intermediate {@link String} is created for the line, only its beginning
+ * may be remembered for debug output, see {@link #Utf8LineReader(InputStream, int)}.
+ *
+ * @coverage dart.server.remote
+ */
+public class Utf8LineReader extends Reader {
+  private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+  private final InputStream stream;
+  private final byte[] buffer = new byte[64 * 1024];
+  private int position;
+  private int limit;
+
+  /**
+   * {@code true} if the underlying stream has ended or failed.
+   */
+  private boolean streamEnded;
+
+  /**
+   * {@code true} if the end of the current line has been reached.
+   */
+  private boolean lineEnded;
+
+  /**
+   * The first bytes of the current line, or {@code null} if they are not remembered.
+   */
+  private final byte[] linePrefix;
+  private int linePrefixLength;
+  private boolean linePrefixTruncated;
+  private String previousLinePrefix;
+
+  /**
+   * The low surrogate to return on the next read, or {@code 0}.
+   */
+  private char pendingLowSurrogate;
+
+  public Utf8LineReader(InputStream stream) {
+    this(stream, 0);
+  }
+
+  /**
+   * @param linePrefixLimit how many first bytes of each line to remember for {@link #getPreviousLinePrefix()}
+   */
+  public Utf8LineReader(InputStream stream, int linePrefixLimit) {
+    this.stream = stream;
+    this.linePrefix = linePrefixLimit > 0 ? new byte[linePrefixLimit] : null;
+  }
+
+  /**
+   * Returns the beginning of the line skipped by the last {@link #nextLine()} call (ending with
+   * "..." if it is longer than the limit), or {@code null} if line prefixes are not remembered.
+   */
+  public String getPreviousLinePrefix() {
+    return previousLinePrefix;
+  }
+
+  /**
+   * Returns {@code true} if the underlying stream has ended (or could not be read any more).
+   */
+  public boolean isStreamEnded() {
+    return streamEnded;
+  }
+
+  /**
+   * Skips the rest of the current line and makes the next line available for reading.
+   *
+   * @return {@code false} if there are no more lines in the stream
+   */
+  public boolean nextLine() {
+    while (!lineEnded) {
+      int b = readByte();
+      if (b == -1 || b == '\n') {
+        break;
+      }
+    }
+    if (linePrefix != null) {
+      String prefix = new String(linePrefix, 0, linePrefixLength, StandardCharsets.UTF_8);
+      previousLinePrefix = linePrefixTruncated ? prefix + "..." : prefix;
+    }
+    pendingLowSurrogate = 0;
+    lineEnded = false;
+    linePrefixLength = 0;
+    linePrefixTruncated = false;
+    return !streamEnded;
+  }
+
+  /**
+   * Returns the first byte of the current line that is not a whitespace without consuming it, or
+   * {@code -1} if the line or the stream has ended.
+   */
+  public int peekFirstSignificantByte() {
+    while (!lineEnded) {
+      if (position == limit && !fill()) {
+        return -1;
+      }
+      byte b = buffer[position];
+      if (b == '\n') {
+        return -1;
+      }
+      if (b != ' ' && b != '\t' && b != '\r') {
+        return b & 0xFF;
+      }
+      readByte();
+    }
+    return -1;
+  }
+
+  @Override
+  public int read(char[] chars, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    int count = 0;
+    if (pendingLowSurrogate != 0) {
+      chars[offset + count++] = pendingLowSurrogate;
+      pendingLowSurrogate = 0;
+    }
+    while (count < length && !lineEnded) {
+      int b = readByte();
+      if (b == -1 || b == '\n') {
+        lineEnded = true;
+        break;
+      }
+      if (b < 0x80) {
+        chars[offset + count++] = (char)b;
+        continue;
+      }
+      int codePoint;
+      int extraBytes;
+      if ((b & 0xE0) == 0xC0) {
+        codePoint = b & 0x1F;
+        extraBytes = 1;
+      }
+      else if ((b & 0xF0) == 0xE0) {
+        codePoint = b & 0x0F;
+        extraBytes = 2;
+      }
+      else if ((b & 0xF8) == 0xF0) {
+        codePoint = b & 0x07;
+        extraBytes = 3;
+      }
+      else {
+        chars[offset + count++] = REPLACEMENT_CHAR;
+        continue;
+      }
+      for (int i = 0; i < extraBytes; i++) {
+        int next = peekByte();
+        if (next == -1 || (next & 0xC0) != 0x80) {
+          codePoint = -1;
+          break;
+        }
+        readByte();
+        codePoint = (codePoint << 6) | (next & 0x3F);
+      }
+      if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT) {
+        chars[offset + count++] = REPLACEMENT_CHAR;
+      }
+      else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        chars[offset + count++] = (char)codePoint;
+      }
+      else {
+        chars[offset + count++] = Character.highSurrogate(codePoint);
+        if (count < length) {
+          chars[offset + count++] = Character.lowSurrogate(codePoint);
+        }
+        else {
+          pendingLowSurrogate = Character.lowSurrogate(codePoint);
+        }
+      }
+    }
+    return count == 0 ? -1 : count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    stream.close();
+  }
+
+  private int readByte() {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    byte b = buffer[position++];
+    if (linePrefix != null && b != '\n') {
+      if (linePrefixLength < linePrefix.length) {
+        linePrefix[linePrefixLength++] = b;
+      }
+      else {
+        linePrefixTruncated = true;
+      }
+    }
+    return b & 0xFF;
+  }
+
+  private int peekByte() {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position] & 0xFF;
+  }
+
+  private boolean fill() {
+    if (streamEnded) {
+      return false;
+    }
+    int read;
+    try {
+      read = stream.read(buffer, 0, buffer.length);
+    }
+    catch (IOException e) {
+      read = -1;
+    }
+    if (read <= 0) {
+      streamEnded = true;
+      lineEnded = true;
+      return false;
+    }
+    position = 0;
+    limit = read;
+    return true;
+  }
+}
@@ -18,7 +18,10 @@ import com.google.dart.server.utilities.general.StringUtilities;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -148,4 +151,34 @@ public abstract class JsonProcessor {
       return jsonElement.getAsString();
     }
   }
+
+  /**
+   * Read a JSON array of {@code int}s from the given {@link JsonReader}.
+   */
+  protected int[] readIntArray(JsonReader reader) throws IOException {
+    int[] ints = new int[4];
+    int count = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (count == ints.length) {
+        ints = Arrays.copyOf(ints, count * 2);
+      }
+      ints[count++] = reader.nextInt();
+    }
+    reader.endArray();
+    return count == ints.length ? ints : Arrays.copyOf(ints, count);
+  }
+
+  /**
+   * Read a JSON array of strings from the given {@link JsonReader}.
+   */
+  protected String[] readStringArray(JsonReader reader) throws IOException {
+    List<String> strings = Lists.newArrayList();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      strings.add(reader.nextString());
+    }
+    reader.endArray();
+    return strings.toArray(new String[strings.size()]);
+  }
 }
@@ -15,9 +15,11 @@ package com.google.dart.server.internal.remote.processor;
 
 import com.google.dart.server.AnalysisServerListener;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import org.dartlang.analysis.server.protocol.HighlightRegion;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -25,7 +27,7 @@ import java.util.List;
  * 
  * @coverage dart.server.remote
  */
-public class NotificationAnalysisHighlightsProcessor extends NotificationProcessor {
+public class NotificationAnalysisHighlightsProcessor extends NotificationProcessor implements StreamingNotificationProcessor {
 
   public NotificationAnalysisHighlightsProcessor(AnalysisServerListener listener) {
     super(listener);
@@ -42,4 +44,61 @@ public class NotificationAnalysisHighlightsProcessor extends NotificationProcess
     // notify listener
     getListener().computedHighlights(file, regions);
   }
+
+  /**
+   * Read the "params" object of the notification from the given {@link JsonReader}, the returned
+   * action notifies {@link #listener}.
+   */
+  @Override
+  public Runnable read(JsonReader paramsReader) throws Exception {
+    String file = null;
+    List<HighlightRegion> regions = HighlightRegion.EMPTY_LIST;
+    paramsReader.beginObject();
+    while (paramsReader.hasNext()) {
+      String name = paramsReader.nextName();
+      if (name.equals("file")) {
+        file = paramsReader.nextString();
+      }
+      else if (name.equals("regions")) {
+        regions = readRegions(paramsReader);
+      }
+      else {
+        paramsReader.skipValue();
+      }
+    }
+    paramsReader.endObject();
+    final String highlightedFile = file;
+    final List<HighlightRegion> highlights = regions;
+    return () -> getListener().computedHighlights(highlightedFile, highlights);
+  }
+
+  private static List<HighlightRegion> readRegions(JsonReader reader) throws Exception {
+    List<HighlightRegion> regions = new ArrayList<HighlightRegion>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String type = null;
+      int offset = 0;
+      int length = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("type")) {
+          type = reader.nextString();
+        }
+        else if (name.equals("offset")) {
+          offset = reader.nextInt();
+        }
+        else if (name.equals("length")) {
+          length = reader.nextInt();
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      regions.add(new HighlightRegion(type, offset, length));
+    }
+    reader.endArray();
+    return regions;
+  }
 }
@@ -16,10 +16,12 @@ package com.google.dart.server.internal.remote.processor;
 import com.google.dart.server.AnalysisServerListener;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import org.dartlang.analysis.server.protocol.NavigationRegion;
 import org.dartlang.analysis.server.protocol.NavigationTarget;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -27,7 +29,7 @@ import java.util.List;
  * 
  * @coverage dart.server.remote
  */
-public class NotificationAnalysisNavigationProcessor extends NotificationProcessor {
+public class NotificationAnalysisNavigationProcessor extends NotificationProcessor implements StreamingNotificationProcessor {
   public NotificationAnalysisNavigationProcessor(AnalysisServerListener listener) {
     super(listener);
   }
@@ -54,4 +56,118 @@ public class NotificationAnalysisNavigationProcessor extends NotificationProcess
     // notify listener
     getListener().computedNavigation(file, regions);
   }
+
+  /**
+   * Read the "params" object of the notification from the given {@link JsonReader}, the returned
+   * action notifies {@link #listener}. Regions, targets and files may come in any order, so they
+   * are linked after the whole object is read.
+   */
+  @Override
+  public Runnable read(JsonReader paramsReader) throws Exception {
+    String file = null;
+    String[] targetFiles = new String[0];
+    List<NavigationTarget> targets = NavigationTarget.EMPTY_LIST;
+    List<NavigationRegion> regions = NavigationRegion.EMPTY_LIST;
+    paramsReader.beginObject();
+    while (paramsReader.hasNext()) {
+      String name = paramsReader.nextName();
+      if (name.equals("file")) {
+        file = paramsReader.nextString();
+      }
+      else if (name.equals("files")) {
+        targetFiles = readStringArray(paramsReader);
+      }
+      else if (name.equals("targets")) {
+        targets = readTargets(paramsReader);
+      }
+      else if (name.equals("regions")) {
+        regions = readRegions(paramsReader);
+      }
+      else {
+        paramsReader.skipValue();
+      }
+    }
+    paramsReader.endObject();
+    for (NavigationTarget target : targets) {
+      target.lookupFile(targetFiles);
+    }
+    for (NavigationRegion region : regions) {
+      region.lookupTargets(targets);
+    }
+    final String navigationFile = file;
+    final List<NavigationRegion> navigationRegions = regions;
+    return () -> getListener().computedNavigation(navigationFile, navigationRegions);
+  }
+
+  private List<NavigationRegion> readRegions(JsonReader reader) throws Exception {
+    List<NavigationRegion> regions = new ArrayList<NavigationRegion>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      int offset = 0;
+      int length = 0;
+      int[] targets = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("offset")) {
+          offset = reader.nextInt();
+        }
+        else if (name.equals("length")) {
+          length = reader.nextInt();
+        }
+        else if (name.equals("targets")) {
+          targets = readIntArray(reader);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      regions.add(new NavigationRegion(offset, length, targets != null ? targets : new int[0]));
+    }
+    reader.endArray();
+    return regions;
+  }
+
+  private static List<NavigationTarget> readTargets(JsonReader reader) throws Exception {
+    List<NavigationTarget> targets = new ArrayList<NavigationTarget>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String kind = null;
+      int fileIndex = 0;
+      int offset = 0;
+      int length = 0;
+      int startLine = 0;
+      int startColumn = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("kind")) {
+          kind = reader.nextString();
+        }
+        else if (name.equals("fileIndex")) {
+          fileIndex = reader.nextInt();
+        }
+        else if (name.equals("offset")) {
+          offset = reader.nextInt();
+        }
+        else if (name.equals("length")) {
+          length = reader.nextInt();
+        }
+        else if (name.equals("startLine")) {
+          startLine = reader.nextInt();
+        }
+        else if (name.equals("startColumn")) {
+          startColumn = reader.nextInt();
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      targets.add(new NavigationTarget(kind, fileIndex, offset, length, startLine, startColumn));
+    }
+    reader.endArray();
+    return targets;
+  }
 }
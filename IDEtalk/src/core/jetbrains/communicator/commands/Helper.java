@@ -74,30 +74,29 @@ public class Helper {
   public static void fillVFileContent(final Transport transport, final User user, final VFile vFile, IDEFacade ideFacade) {
     if (user.isOnline()) {
       try {
+        final Semaphore semaphore = new Semaphore(0);
+        final GetVFileContentsXmlMessage message = new GetVFileContentsXmlMessage(vFile) {
+          @Override
+          public void processResponse(Element responseElement) {
+            super.processResponse(responseElement);
+            semaphore.release();
+          }
+        };
         UIUtil.run(ideFacade, StringUtil.getMsg("GetVFileContents.title"),
             new Runnable() {
               @Override
               public void run() {
-
-                final Semaphore semaphore = new Semaphore(1);
                 try {
-                  semaphore.acquire();
-
-                  transport.sendXmlMessage(user, new GetVFileContentsXmlMessage(vFile) {
-                    @Override
-                    public void processResponse(Element responseElement) {
-                      super.processResponse(responseElement);
-                      semaphore.release();
-                    }
-                  });
-
-                  semaphore.tryAcquire(getWaitTimeout(), TimeUnit.MILLISECONDS);
-
+                  do {
+                    transport.sendXmlMessage(user, message);
+                    if (!semaphore.tryAcquire(getWaitTimeout(), TimeUnit.MILLISECONDS)) break;
+                  }
+                  while (message.hasMoreChunks());
                 } catch (InterruptedException ignored) {
                   // noop
                 }
               }
-            });
+            }, message::getProgress);
       } catch (CanceledException e) {
         LOG.info(e.getMessage(), e);
       }
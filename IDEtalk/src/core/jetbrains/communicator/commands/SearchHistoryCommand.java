@@ -22,7 +22,7 @@ import jetbrains.communicator.core.users.User;
 import jetbrains.communicator.ide.IDEFacade;
 import jetbrains.communicator.util.StringUtil;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -45,13 +45,7 @@ public class SearchHistoryCommand implements UserCommand {
         StringUtil.getMsg("search"));
 
     if (searchString != null) {
-      LocalMessage[] localMessages = myMessageDispatcher.getHistory(myUser, null);
-      List<LocalMessage> result = new ArrayList<>();
-      for (LocalMessage message : localMessages) {
-        if (message.containsString(searchString)) {
-          result.add(message);
-        }
-      }
+      List<LocalMessage> result = Arrays.asList(myMessageDispatcher.findInHistory(myUser, searchString));
 
       if (result.size() == 0) {
         myIdeFacade.showMessage(StringUtil.getMsg("SearchHistoryCommand.search.history", myUser.getDisplayName()),
@@ -37,6 +37,9 @@ public interface LocalMessageDispatcher extends MessageDispatcher {
   /** Oldest messages go first */
   LocalMessage[] getHistory(User user, Date since);
 
+  /** Messages of the history for which {@link LocalMessage#containsString(String)} is true, oldest messages go first */
+  LocalMessage[] findInHistory(User user, String searchString);
+
   void clearHistory();
   boolean isHistoryEmpty();
 }
@@ -17,15 +17,39 @@
 package jetbrains.communicator.core.transport;
 
 import jetbrains.communicator.core.vfs.VFile;
+import jetbrains.communicator.core.vfs.VFileContentsCache;
 import org.jdom.Element;
 
 /**
+ * Requests file contents in chunks of {@link #CHUNK_SIZE} characters. The message is sent
+ * again while {@link #hasMoreChunks()} is true, contents are set to the file when all chunks are received.
+ * <p/>
+ * Hash of the previously received contents of the file is sent with the first request,
+ * the contents are taken from the local cache when the remote file was not changed.
+ * Responses without hash come from peers which send whole contents at once.
+ *
  * @author Kir
  */
 public class GetVFileContentsXmlMessage implements XmlMessage {
   public static final String TAG = "fillContents";
+  public static final String CHUNK_SIZE_ATTR = "chunkSize";
+  public static final String OFFSET_ATTR = "offset";
+  public static final String LENGTH_ATTR = "length";
+  public static final String HASH_ATTR = "hash";
+  public static final String KNOWN_HASH_ATTR = "knownHash";
+  public static final String UNCHANGED_ATTR = "unchanged";
+
+  public static final int CHUNK_SIZE = 32 * 1024;
+  private static final VFileContentsCache ourReceivedContents = new VFileContentsCache(16 * 1024 * 1024);
+
   private final VFile myFile;
 
+  private boolean myMoreChunks;
+  private boolean myIgnoreKnownHash;
+  private String myHash;
+  private int myLength;
+  private StringBuilder myReceived;
+
   public GetVFileContentsXmlMessage(VFile file) {
     myFile = file;
   }
@@ -44,12 +68,86 @@ public class GetVFileContentsXmlMessage implements XmlMessage {
 
   public void fillRequest(Element element) {
     myFile.saveTo(element);
+
+    element.setAttribute(CHUNK_SIZE_ATTR, String.valueOf(CHUNK_SIZE));
+    if (myReceived != null) {
+      element.setAttribute(OFFSET_ATTR, String.valueOf(myReceived.length()));
+      element.setAttribute(HASH_ATTR, myHash);
+    }
+    else {
+      String knownHash = myIgnoreKnownHash ? null : ourReceivedContents.getHash(myFile);
+      if (knownHash != null) {
+        element.setAttribute(KNOWN_HASH_ATTR, knownHash);
+      }
+    }
   }
 
   public void processResponse(Element responseElement) {
+    myMoreChunks = false;
     VFile from = VFile.createFrom(responseElement);
-    if (from != null) {
-      myFile.setContents(from.getContents());
+    String hash = responseElement.getAttributeValue(HASH_ATTR);
+    if (hash == null) {
+      if (from != null) {
+        myFile.setContents(from.getContents());
+      }
+      return;
+    }
+
+    if ("true".equals(responseElement.getAttributeValue(UNCHANGED_ATTR))) {
+      String contents = ourReceivedContents.get(hash);
+      if (contents != null) {
+        myFile.setContents(contents);
+      }
+      else {
+        // dropped from the cache since the request was sent
+        myIgnoreKnownHash = true;
+        myMoreChunks = true;
+      }
+      return;
+    }
+
+    int offset = getIntAttribute(responseElement, OFFSET_ATTR);
+    if (offset == 0 || !hash.equals(myHash)) {
+      myHash = hash;
+      myLength = getIntAttribute(responseElement, LENGTH_ATTR);
+      myReceived = new StringBuilder(Math.max(myLength, 0));
+    }
+
+    String chunk = from == null ? null : from.getContents();
+    if (offset != myReceived.length() || chunk == null || chunk.isEmpty() && myReceived.length() < myLength) {
+      myReceived = null;
+      return;
+    }
+
+    myReceived.append(chunk);
+    if (myReceived.length() < myLength) {
+      myMoreChunks = true;
+    }
+    else {
+      String contents = myReceived.toString();
+      myReceived = null;
+      ourReceivedContents.put(myFile, hash, contents);
+      myFile.setContents(contents);
+    }
+  }
+
+  public boolean hasMoreChunks() {
+    return myMoreChunks;
+  }
+
+  /** Returns fraction of the received contents in the current transfer */
+  public double getProgress() {
+    StringBuilder received = myReceived;
+    if (received == null || myLength <= 0) return myMoreChunks ? 0 : 1;
+    return (double)received.length() / myLength;
+  }
+
+  private static int getIntAttribute(Element element, String name) {
+    try {
+      return Integer.parseInt(element.getAttributeValue(name));
+    }
+    catch (NumberFormatException ignored) {
+      return -1;
     }
   }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2000-2006 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.communicator.core.vfs;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * File contents by their hash, least recently used contents are dropped
+ * when the total length exceeds the limit. Also remembers the hash of the last
+ * contents of every file, so that unchanged files need not be transferred again.
+ */
+public class VFileContentsCache {
+  private final int myMaxLength;
+  private final LinkedHashMap<String, String> myContents = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, String> myFileHashes = new HashMap<>();
+  private long myLength;
+
+  public VFileContentsCache(int maxLength) {
+    myMaxLength = maxLength;
+  }
+
+  @Nullable
+  public synchronized String get(String hash) {
+    return myContents.get(hash);
+  }
+
+  public synchronized void put(String hash, String contents) {
+    if (contents.length() > myMaxLength) return;
+
+    String old = myContents.put(hash, contents);
+    if (old == null) {
+      myLength += contents.length();
+    }
+
+    Iterator<String> it = myContents.values().iterator();
+    while (myLength > myMaxLength && it.hasNext()) {
+      myLength -= it.next().length();
+      it.remove();
+    }
+  }
+
+  /** Returns hash of the last known contents of the file if they are still in the cache */
+  @Nullable
+  public synchronized String getHash(VFile file) {
+    String hash = myFileHashes.get(getKey(file));
+    if (hash != null && !myContents.containsKey(hash)) {
+      myFileHashes.remove(getKey(file));
+      return null;
+    }
+    return hash;
+  }
+
+  public synchronized void put(VFile file, String hash, String contents) {
+    put(hash, contents);
+    if (myContents.containsKey(hash)) {
+      myFileHashes.put(getKey(file), hash);
+    }
+  }
+
+  private static String getKey(VFile file) {
+    return file.getProjectName() + ':' + file.getFullPath();
+  }
+
+  public static String hash(String contents) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(contents.getBytes(StandardCharsets.UTF_8));
+      StringBuilder result = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return result.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
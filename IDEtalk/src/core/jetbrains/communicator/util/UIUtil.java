@@ -26,6 +26,7 @@ import jetbrains.communicator.ide.CanceledException;
 import jetbrains.communicator.ide.IDEFacade;
 import jetbrains.communicator.ide.ProgressIndicator;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -38,6 +39,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.DoubleSupplier;
 
 /**
  * @author Kir
@@ -91,11 +93,19 @@ public class UIUtil {
 
   public static void run(final IDEFacade ideFacade, final String title, final Runnable runnable)
       throws CanceledException {
+    run(ideFacade, title, runnable, null);
+  }
+
+  /**
+   * @param progress fraction of the done work, the indicator is indefinite if null
+   */
+  public static void run(final IDEFacade ideFacade, final String title, final Runnable runnable, @Nullable final DoubleSupplier progress)
+      throws CanceledException {
 
     IDEFacade.Process process = new IDEFacade.Process() {
       @Override
       public void run(ProgressIndicator indicator) {
-        indicator.setIndefinite(true);
+        indicator.setIndefinite(progress == null);
         indicator.setText(title);
 
         Future<?> workerThreadFuture = ideFacade.runOnPooledThread(runnable);
@@ -103,7 +113,7 @@ public class UIUtil {
         while (!workerThreadFuture.isDone()) {
           try {
             indicator.checkCanceled();
-            indicator.setFraction(0.5f); // Update indicator
+            indicator.setFraction(progress == null ? 0.5f : progress.getAsDouble()); // Update indicator
             workerThreadFuture.get(100, TimeUnit.MILLISECONDS);
           }
           catch (TimeoutException ignored) {
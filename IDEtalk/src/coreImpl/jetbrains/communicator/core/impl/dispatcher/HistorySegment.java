@@ -0,0 +1,388 @@
+/*
+ * Copyright 2000-2006 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.communicator.core.impl.dispatcher;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.thoughtworks.xstream.XStream;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongHashSet;
+import gnu.trove.TLongObjectHashMap;
+import jetbrains.communicator.core.dispatcher.LocalMessage;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only history file of one day. Record format:
+ * <pre>
+ * int recordLength, long when, int userKeyLength, byte[] userKey (UTF-8), byte[] message (XStream XML in UTF-8)
+ * </pre>
+ * Only record headers are read when the segment is opened, messages are read and decoded on each request
+ * and not kept, entries hold messages only until they are saved. The file is read into heap buffers and
+ * not mapped, as mapped files can't be truncated or deleted on Windows until the mapping is garbage collected.
+ * <p/>
+ * The search index is built on the first search from the message XML, without decoding it: character trigrams
+ * of the text map to ids of entries, that is their positions in {@link #myEntries}. Then only headers and
+ * posting lists stay in memory.
+ */
+class HistorySegment {
+  @NonNls
+  private static final Logger LOG = Logger.getLogger(HistorySegment.class);
+
+  private static final int RECORD_HEADER_SIZE = 4 + 8 + 4;
+
+  private final File myFile;
+  private final List<Entry> myEntries = new ArrayList<>();
+  private final Map<String, List<Entry>> myUserEntries = new HashMap<>();
+  private TLongObjectHashMap<TIntArrayList> myTrigramIndex;
+  private final List<Entry> myUnsavedEntries = new ArrayList<>();
+  private boolean myLoaded;
+  private long myLength; // length of complete records, a crash during write may leave a broken tail
+
+  private static class Entry {
+    private final int myId;
+    private final String myUserKey;
+    private final long myWhen;
+    private LocalMessage myMessage; // until saved
+    private int myOffset = -1;
+    private int myLength;
+
+    private Entry(int id, String userKey, long when, LocalMessage message) {
+      myId = id;
+      myUserKey = userKey;
+      myWhen = when;
+      myMessage = message;
+    }
+  }
+
+  HistorySegment(File file) {
+    myFile = file;
+  }
+
+  File getFile() {
+    return myFile;
+  }
+
+  boolean isLoaded() {
+    return myLoaded;
+  }
+
+  void load() throws IOException {
+    myLoaded = true;
+    if (!myFile.isFile()) return;
+
+    long fileLength = myFile.length();
+    int position = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+      while (position + RECORD_HEADER_SIZE <= fileLength) {
+        int recordLength = in.readInt();
+        long recordEnd = (long)position + 4 + recordLength;
+        if (recordLength < RECORD_HEADER_SIZE - 4 || recordEnd > fileLength) break;
+
+        long when = in.readLong();
+        int userKeyLength = in.readInt();
+        int userKeyOffset = position + RECORD_HEADER_SIZE;
+        if (userKeyLength < 0 || userKeyLength > recordEnd - userKeyOffset) break;
+
+        byte[] userKey = new byte[userKeyLength];
+        in.readFully(userKey);
+        Entry entry = new Entry(myEntries.size(), new String(userKey, StandardCharsets.UTF_8), when, null);
+        entry.myOffset = userKeyOffset + userKeyLength;
+        entry.myLength = (int)(recordEnd - entry.myOffset);
+        myEntries.add(entry);
+        getEntries(entry.myUserKey).add(entry);
+
+        // message bodies are read on demand
+        skipFully(in, entry.myLength);
+        position = (int)recordEnd;
+      }
+    }
+    myLength = position;
+    if (position < fileLength) {
+      LOG.info("Broken history record in " + myFile + " at " + position + ", will be overwritten");
+    }
+  }
+
+  private List<Entry> getEntries(String userKey) {
+    List<Entry> entries = myUserEntries.get(userKey);
+    if (entries == null) {
+      entries = new ArrayList<>();
+      myUserEntries.put(userKey, entries);
+    }
+    return entries;
+  }
+
+  void addMessage(String userKey, LocalMessage message, XStream xStream) {
+    Entry entry = new Entry(myEntries.size(), userKey, message.getWhen().getTime(), message);
+    myEntries.add(entry);
+    getEntries(userKey).add(entry);
+    myUnsavedEntries.add(entry);
+
+    if (myTrigramIndex != null) {
+      addToIndex(entry.myId, xStream.toXML(message));
+    }
+  }
+
+  /**
+   * @param since if not null, only messages sent after it are returned; older ones are skipped
+   *              by the time in record headers and not decoded
+   * @return messages of the user in the order they were added
+   */
+  List<LocalMessage> getMessages(String userKey, @Nullable Date since, XStream xStream) {
+    List<Entry> entries = myUserEntries.get(userKey);
+    if (entries == null) return Collections.emptyList();
+
+    if (since != null) {
+      List<Entry> newer = new ArrayList<>();
+      for (Entry entry : entries) {
+        if (entry.myWhen > since.getTime()) {
+          newer.add(entry);
+        }
+      }
+      entries = newer;
+    }
+    return decode(entries, xStream);
+  }
+
+  /**
+   * @return messages of the user for which {@link LocalMessage#containsString(String)} is true
+   */
+  List<LocalMessage> findMessages(String userKey, String searchString, XStream xStream) {
+    List<Entry> entries = myUserEntries.get(userKey);
+    if (entries == null) return Collections.emptyList();
+
+    if (searchString.length() >= 3) {
+      entries = getCandidates(userKey, searchString, xStream);
+    }
+
+    List<LocalMessage> result = new ArrayList<>();
+    for (LocalMessage message : decode(entries, xStream)) {
+      if (message.containsString(searchString)) {
+        result.add(message);
+      }
+    }
+    return result;
+  }
+
+  private List<LocalMessage> decode(List<Entry> entries, XStream xStream) {
+    List<LocalMessage> result = new ArrayList<>(entries.size());
+    FileChannel channel = null;
+    try {
+      for (Entry entry : entries) {
+        LocalMessage message = entry.myMessage;
+        if (message == null) {
+          if (channel == null) {
+            channel = FileChannel.open(myFile.toPath(), StandardOpenOption.READ);
+          }
+          try {
+            message = (LocalMessage)xStream.fromXML(readString(channel, entry.myOffset, entry.myLength));
+          }
+          catch (RuntimeException e) {
+            LOG.info("Error reading message from " + myFile + " at " + entry.myOffset, e);
+            continue;
+          }
+        }
+        result.add(message);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Error reading " + myFile, e);
+    }
+    finally {
+      close(channel);
+    }
+    return result;
+  }
+
+  /**
+   * @return entries of the user that have all trigrams of the search string
+   */
+  private List<Entry> getCandidates(String userKey, String searchString, XStream xStream) {
+    if (myTrigramIndex == null) {
+      buildIndex(xStream);
+    }
+
+    TIntArrayList smallest = null;
+    for (int i = 0; i + 3 <= searchString.length(); i++) {
+      TIntArrayList ids = myTrigramIndex.get(trigram(searchString, i));
+      if (ids == null) return Collections.emptyList();
+      if (smallest == null || ids.size() < smallest.size()) {
+        smallest = ids;
+      }
+    }
+
+    List<Entry> result = new ArrayList<>();
+    for (int i = 0; i < smallest.size(); i++) {
+      Entry entry = myEntries.get(smallest.get(i));
+      if (entry.myUserKey.equals(userKey) && hasAllTrigrams(entry.myId, searchString)) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  private boolean hasAllTrigrams(int id, String searchString) {
+    for (int i = 0; i + 3 <= searchString.length(); i++) {
+      if (myTrigramIndex.get(trigram(searchString, i)).binarySearch(id) < 0) return false;
+    }
+    return true;
+  }
+
+  private void buildIndex(XStream xStream) {
+    myTrigramIndex = new TLongObjectHashMap<>();
+    FileChannel channel = null;
+    try {
+      for (Entry entry : myEntries) {
+        String xml;
+        if (entry.myOffset >= 0) {
+          try {
+            if (channel == null) {
+              channel = FileChannel.open(myFile.toPath(), StandardOpenOption.READ);
+            }
+            xml = readString(channel, entry.myOffset, entry.myLength);
+          }
+          catch (IOException e) {
+            LOG.info("Error reading " + myFile, e);
+            continue;
+          }
+        }
+        else {
+          xml = xStream.toXML(entry.myMessage);
+        }
+        addToIndex(entry.myId, xml);
+      }
+    }
+    finally {
+      close(channel);
+    }
+  }
+
+  /**
+   * Indexes text between tags, string fields of messages are written there.
+   */
+  private void addToIndex(int id, String xml) {
+    TLongHashSet trigrams = new TLongHashSet();
+    int textStart = 0; // -1 inside of a tag
+    for (int i = 0; i <= xml.length(); i++) {
+      if (i == xml.length() || xml.charAt(i) == '<') {
+        if (textStart >= 0 && i - textStart >= 3) {
+          String text = StringUtil.unescapeXml(xml.substring(textStart, i));
+          if (!StringUtil.isEmptyOrSpaces(text)) {
+            for (int j = 0; j + 3 <= text.length(); j++) {
+              trigrams.add(trigram(text, j));
+            }
+          }
+        }
+        textStart = -1;
+      }
+      else if (xml.charAt(i) == '>') {
+        textStart = i + 1;
+      }
+    }
+
+    // ids are added in increasing order, so posting lists stay sorted
+    for (long trigram : trigrams.toArray()) {
+      TIntArrayList ids = myTrigramIndex.get(trigram);
+      if (ids == null) {
+        ids = new TIntArrayList(1);
+        myTrigramIndex.put(trigram, ids);
+      }
+      ids.add(id);
+    }
+  }
+
+  private static long trigram(String s, int offset) {
+    return (long)s.charAt(offset) << 32 | (long)s.charAt(offset + 1) << 16 | s.charAt(offset + 2);
+  }
+
+  void save(XStream xStream) throws IOException {
+    if (myUnsavedEntries.isEmpty()) return;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    int[] offsets = new int[myUnsavedEntries.size()];
+    int[] lengths = new int[myUnsavedEntries.size()];
+    for (int i = 0; i < myUnsavedEntries.size(); i++) {
+      Entry entry = myUnsavedEntries.get(i);
+      byte[] userKey = entry.myUserKey.getBytes(StandardCharsets.UTF_8);
+      byte[] message = xStream.toXML(entry.myMessage).getBytes(StandardCharsets.UTF_8);
+
+      out.writeInt(RECORD_HEADER_SIZE - 4 + userKey.length + message.length);
+      out.writeLong(entry.myWhen);
+      out.writeInt(userKey.length);
+      out.write(userKey);
+      offsets[i] = (int)myLength + out.size();
+      lengths[i] = message.length;
+      out.write(message);
+    }
+
+    try (FileChannel channel = FileChannel.open(myFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      if (channel.size() > myLength) {
+        channel.truncate(myLength);
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+      long position = myLength;
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+    }
+
+    for (int i = 0; i < myUnsavedEntries.size(); i++) {
+      Entry entry = myUnsavedEntries.get(i);
+      entry.myOffset = offsets[i];
+      entry.myLength = lengths[i];
+      entry.myMessage = null;
+    }
+    myLength += out.size();
+    myUnsavedEntries.clear();
+  }
+
+  private static String readString(FileChannel channel, int offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of file at " + (offset + buffer.position()));
+      }
+    }
+    return new String(buffer.array(), StandardCharsets.UTF_8);
+  }
+
+  private static void skipFully(DataInputStream in, int length) throws IOException {
+    int skipped = 0;
+    while (skipped < length) {
+      int n = in.skipBytes(length - skipped);
+      if (n <= 0) throw new EOFException();
+      skipped += n;
+    }
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    }
+    catch (IOException e) {
+      LOG.info("Error closing " + closeable, e);
+    }
+  }
+}
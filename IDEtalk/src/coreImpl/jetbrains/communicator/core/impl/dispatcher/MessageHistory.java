@@ -28,12 +28,18 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Future;
 
 /**
+ * Message history in append-only {@link HistorySegment}s, one file per day. Added messages are appended
+ * to their segment with a delay, queries open only the segments of requested days.
+ * Segments keep search indices, so text search doesn't decode messages that can't match.
+ * Day files of the old XML format are converted to segments when their day is requested.
+ *
  * @author Kir
  */
 class MessageHistory {
@@ -43,11 +49,16 @@ class MessageHistory {
   public static final long SAVE_TIMEOUT = 300;
   @NonNls
   private static final String HISTORY = "history";
+  @NonNls
+  private static final String SEGMENT_EXTENSION = ".log";
+  @NonNls
+  private static final String LEGACY_EXTENSION = ".xml";
 
-  private final DayHistory myHistory = new DayHistory();
+  private final TreeMap<Date, HistorySegment> mySegments = new TreeMap<>();
+  private final Set<HistorySegment> myUnsavedSegments = new LinkedHashSet<>();
   @NonNls
   private final XStream myXStream;
-  private final UserModel myUserModel;
+  private final UserConverter myUserConverter;
   private final IDEFacade myFacade;
 
   private Future<?> myPendingSave;
@@ -57,14 +68,14 @@ class MessageHistory {
 
   MessageHistory(IDEFacade facade, UserModel userModel) {
     myFacade = facade;
-    myUserModel = userModel;
+    myUserConverter = new UserConverter(userModel);
 
     getHistoryDir().mkdir();
 
     myXStream = XMLUtil.createXStream();
     setupXStream();
 
-    loadHistorySince(new Date());
+    findSegments();
   }
 
   public synchronized void dispose() {
@@ -73,7 +84,8 @@ class MessageHistory {
       myPendingSave = null;
     }
 
-    myHistory.clear();
+    saveHistory();
+    mySegments.clear();
   }
 
   private void setupXStream() {
@@ -81,16 +93,45 @@ class MessageHistory {
     myXStream.alias("dayHistory", DayHistory.class);
     myXStream.aliasField("historyEntries", DayHistory.class, "myData");
 
-    myXStream.registerConverter(new UserConverter(myUserModel));
+    myXStream.registerConverter(myUserConverter);
+  }
+
+  private synchronized void findSegments() {
+    String[] historyFiles = getHistoryDir().list((dir, name) -> name.endsWith(SEGMENT_EXTENSION) || name.endsWith(LEGACY_EXTENSION));
+    if (historyFiles == null) return;
+
+    for (String historyFile : historyFiles) {
+      try {
+        Date date = DATE_FORMAT.parse(historyFile);
+        if (!mySegments.containsKey(date)) {
+          mySegments.put(date, new HistorySegment(getSegmentFile(date)));
+        }
+      }
+      catch (ParseException e) {
+        // ignore file of wrong format
+      }
+      catch (NumberFormatException e) {
+        // ignore file of wrong format
+      }
+    }
   }
 
   public synchronized void addMessage(User user, LocalMessage message) {
-    myHistory.addMessage(user, message);
+    Date day = TimeUtil.getDay(message.getWhen());
+    HistorySegment segment = mySegments.get(day);
+    if (segment == null) {
+      segment = new HistorySegment(getSegmentFile(day));
+      mySegments.put(day, segment);
+    }
+
+    getLoadedSegment(day, segment).addMessage(myUserConverter.toString(user), message, myXStream);
+    myUnsavedSegments.add(segment);
     triggerSave();
   }
 
   public synchronized void clear() {
-    myHistory.clear();
+    mySegments.clear();
+    myUnsavedSegments.clear();
 
     deleteAllHistoryFiles();
   }
@@ -101,7 +142,9 @@ class MessageHistory {
 
     for (File file : historyDir.listFiles()) {
       if (thread.isInterrupted()) return;
-      file.delete();
+      if (!file.delete()) {
+        LOG.warn("Unable to delete history file " + file);
+      }
     }
   }
 
@@ -110,68 +153,72 @@ class MessageHistory {
   }
 
   public synchronized LocalMessage[] getHistory(User user, @Nullable Date since) {
-    loadHistorySince(since);
+    String userKey = myUserConverter.toString(user);
+    Map<Date, HistorySegment> segments = since == null ? mySegments : mySegments.tailMap(TimeUtil.getDay(since), true);
 
-    List<LocalMessage> list = filterHistoryByDate(user, since);
-    return list.toArray(new LocalMessage[0]);
-  }
-
-  private List<LocalMessage> filterHistoryByDate(User user, Date since) {
-    List<LocalMessage> list = myHistory.readMessages(user);
-    if (since != null) {
-      List<LocalMessage> result = new ArrayList<>(list.size());
-      for (LocalMessage message : list) {
-        if (message.getWhen().after(since)) {
-          result.add(message);
-        }
-      }
-      list = result;
+    List<LocalMessage> result = new ArrayList<>();
+    for (Map.Entry<Date, HistorySegment> entry : segments.entrySet()) {
+      result.addAll(getLoadedSegment(entry.getKey(), entry.getValue()).getMessages(userKey, since, myXStream));
     }
-    return list;
+
+    Collections.sort(result, (o1, o2) -> o1.getWhen().compareTo(o2.getWhen()));
+    return result.toArray(new LocalMessage[0]);
   }
 
-  private void loadHistorySince(@Nullable Date since) {
-    if (since != null) {
-      since = TimeUtil.getDay(since);
+  /**
+   * Searches all history of the user, see {@link LocalMessage#containsString(String)}.
+   */
+  public synchronized LocalMessage[] findMessages(User user, String searchString) {
+    String userKey = myUserConverter.toString(user);
+
+    List<LocalMessage> result = new ArrayList<>();
+    for (Map.Entry<Date, HistorySegment> entry : mySegments.entrySet()) {
+      result.addAll(getLoadedSegment(entry.getKey(), entry.getValue()).findMessages(userKey, searchString, myXStream));
     }
 
-    if (!myHistory.hasHistorySince(since)) {
-      if (since == null) {
-        doLoadHistorySince(new Date(0));
-        myHistory.setHasFullHistory();
+    Collections.sort(result, (o1, o2) -> o1.getWhen().compareTo(o2.getWhen()));
+    return result.toArray(new LocalMessage[0]);
+  }
+
+  private HistorySegment getLoadedSegment(Date date, HistorySegment segment) {
+    if (!segment.isLoaded()) {
+      try {
+        segment.load();
       }
-      else {
-        doLoadHistorySince(since);
+      catch (IOException e) {
+        LOG.info("Error reading " + segment.getFile(), e);
       }
+      convertLegacyHistory(date, segment);
     }
+    return segment;
   }
 
-  private void doLoadHistorySince(Date since) {
-    File historyDir = getHistoryDir();
-
-    String[] historyFiles = historyDir.list((dir, name) -> name.endsWith(".xml"));
-
-    Arrays.sort(historyFiles);
-    for (int i = historyFiles.length - 1; i >= 0; i--) {
-      String historyFile = historyFiles[i];
-      try {
-        Date date = DATE_FORMAT.parse(historyFile);
-        if (!date.before(since) && !myHistory.hasHistorySince(date)) {
-          DayHistory dayHistory = (DayHistory)XMLUtil.fromXml(myXStream, myFacade.getCacheDir(), getFileNameForDate(date), false);
-          if (dayHistory != null) {
-            dayHistory.copyTo(myHistory);
-          }
+  private void convertLegacyHistory(Date date, HistorySegment segment) {
+    String fileName = getLegacyFileNameForDate(date);
+    File file = new File(myFacade.getCacheDir(), fileName);
+    if (!file.isFile()) return;
+
+    DayHistory dayHistory = (DayHistory)XMLUtil.fromXml(myXStream, myFacade.getCacheDir(), fileName, false);
+    if (dayHistory != null) {
+      for (User user : dayHistory.keySet()) {
+        String userKey = myUserConverter.toString(user);
+        for (LocalMessage message : dayHistory.get(user)) {
+          segment.addMessage(userKey, message, myXStream);
         }
       }
-      catch (ParseException e) {
-        // ignore file of wrong format
+      try {
+        segment.save(myXStream);
       }
-      catch (NumberFormatException e) {
-        // ignore file of wrong format
+      catch (IOException e) {
+        LOG.error("Unable to convert history for " + date, e);
+        return;
       }
     }
-
-    myHistory.resort();
+    if (!file.delete()) {
+      // the messages would be converted again on the next start
+      LOG.warn("Unable to delete converted history file " + file);
+      file.deleteOnExit();
+    }
   }
 
   private void triggerSave() {
@@ -192,48 +239,32 @@ class MessageHistory {
 
   private synchronized void saveHistory() {
     LOG.debug("Start history save");
-    Map<Date, DayHistory> map = getHistory();
-    for (Date date : map.keySet()) {
-      DayHistory dayHistory = map.get(date);
+    for (Iterator<HistorySegment> it = myUnsavedSegments.iterator(); it.hasNext(); ) {
+      HistorySegment segment = it.next();
       try {
-        XMLUtil.toXml(myXStream, myFacade.getCacheDir(), getFileNameForDate(date), dayHistory);
-      } catch (RuntimeException e) {
-        LOG.error("Unable to save dayHistory for " + date + ": " + dayHistory, e);
+        segment.save(myXStream);
+        it.remove();
       }
-    }
-
-    LOG.debug("Done history save");
-  }
-
-  private synchronized Map<Date, DayHistory> getHistory() {
-    Map<Date, DayHistory> result = new HashMap<>();
-
-    for (User user : myHistory.keySet()) {
-      List<LocalMessage> messages = myHistory.get(user);
-      for (LocalMessage message : messages) {
-        DayHistory dayHistory = getDayHistoryFor(message, result);
-
-        dayHistory.addMessage(user, message);
+      catch (IOException e) {
+        LOG.error("Unable to save history to " + segment.getFile(), e);
+      }
+      catch (RuntimeException e) {
+        LOG.error("Unable to save history to " + segment.getFile(), e);
+        it.remove();
       }
     }
 
-    return result;
+    LOG.debug("Done history save");
   }
 
-  private DayHistory getDayHistoryFor(LocalMessage message, Map<Date, DayHistory> result) {
-    Date day = TimeUtil.getDay(message.getWhen());
-    DayHistory dayHistory = result.get(day);
-    if (dayHistory == null) {
-      dayHistory = new DayHistory();
-      result.put(day, dayHistory);
-    }
-    return dayHistory;
+  private File getSegmentFile(Date date) {
+    return new File(getHistoryDir(), DATE_FORMAT.format(date) + SEGMENT_EXTENSION);
   }
 
   @NonNls
-  private String getFileNameForDate(Date date) {
+  private String getLegacyFileNameForDate(Date date) {
     //noinspection HardCodedStringLiteral
-    return HISTORY + '/' + DATE_FORMAT.format(date) + ".xml";
+    return HISTORY + '/' + DATE_FORMAT.format(date) + LEGACY_EXTENSION;
   }
 
   public boolean isEmpty() {
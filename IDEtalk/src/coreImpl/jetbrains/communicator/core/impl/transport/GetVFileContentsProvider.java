@@ -18,13 +18,18 @@ package jetbrains.communicator.core.impl.transport;
 import jetbrains.communicator.core.transport.GetVFileContentsXmlMessage;
 import jetbrains.communicator.core.users.UserModel;
 import jetbrains.communicator.core.vfs.VFile;
+import jetbrains.communicator.core.vfs.VFileContentsCache;
 import jetbrains.communicator.ide.IDEFacade;
 import org.jdom.Element;
 
 /**
+ * Serves file contents whole, or in chunks for requests with chunk size.
+ * Contents being sent are kept by hash, so the file is read once per transfer.
+ *
  * @author Kir
  */
 public class GetVFileContentsProvider extends FileAccessProvider {
+  private final VFileContentsCache mySentContents = new VFileContentsCache(4 * 1024 * 1024);
 
   public GetVFileContentsProvider(IDEFacade ideFacade, UserModel userModel) {
     super(ideFacade, userModel);
@@ -36,7 +41,65 @@ public class GetVFileContentsProvider extends FileAccessProvider {
 
   protected void doProcess(Element request, Element response) {
     VFile from = VFile.createFrom(request);
-    myIdeFacade.fillFileContents(from);
+    int chunkSize = getIntAttribute(request, GetVFileContentsXmlMessage.CHUNK_SIZE_ATTR);
+    if (from == null || chunkSize <= 0) {
+      if (from != null) {
+        myIdeFacade.fillFileContents(from);
+        from.saveTo(response);
+      }
+      return;
+    }
+
+    String hash = request.getAttributeValue(GetVFileContentsXmlMessage.HASH_ATTR);
+    int offset = getIntAttribute(request, GetVFileContentsXmlMessage.OFFSET_ATTR);
+    String contents = hash == null ? null : mySentContents.get(hash);
+    if (contents == null) {
+      from.setContents(null);
+      myIdeFacade.fillFileContents(from);
+      contents = from.getContents();
+      if (contents == null) {
+        from.saveTo(response);
+        return;
+      }
+
+      String actualHash = VFileContentsCache.hash(contents);
+      if (!actualHash.equals(hash)) {
+        hash = actualHash;
+        offset = 0; // file was changed during the transfer, start it again
+      }
+    }
+
+    response.setAttribute(GetVFileContentsXmlMessage.HASH_ATTR, hash);
+    if (offset <= 0 && hash.equals(request.getAttributeValue(GetVFileContentsXmlMessage.KNOWN_HASH_ATTR))) {
+      response.setAttribute(GetVFileContentsXmlMessage.UNCHANGED_ATTR, "true");
+      from.setContents(null);
+      from.saveTo(response);
+      return;
+    }
+
+    offset = offset < 0 || offset > contents.length() ? 0 : offset;
+    int end = (int)Math.min(contents.length(), (long)offset + chunkSize);
+    if (end < contents.length() && end > offset + 1 && Character.isHighSurrogate(contents.charAt(end - 1))) {
+      end--;
+    }
+    if (end < contents.length()) {
+      mySentContents.put(hash, contents);
+    }
+
+    from.setContents(contents.substring(offset, end));
     from.saveTo(response);
+    response.setAttribute(GetVFileContentsXmlMessage.OFFSET_ATTR, String.valueOf(offset));
+    response.setAttribute(GetVFileContentsXmlMessage.LENGTH_ATTR, String.valueOf(contents.length()));
+  }
+
+  private static int getIntAttribute(Element element, String name) {
+    String value = element.getAttributeValue(name);
+    if (value == null) return -1;
+    try {
+      return Integer.parseInt(value);
+    }
+    catch (NumberFormatException ignored) {
+      return -1;
+    }
   }
 }
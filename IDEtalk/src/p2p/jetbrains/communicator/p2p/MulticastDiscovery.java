@@ -0,0 +1,364 @@
+/*
+ * Copyright 2000-2006 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.communicator.p2p;
+
+import jetbrains.communicator.ide.IDEFacade;
+import jetbrains.communicator.p2p.commands.AddOnlineUserP2PCommand;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+
+/**
+ * Multicast pings of IDEtalk users in the local network, on all local interfaces with one thread.
+ * <p/>
+ * The thread waits on a selector for pings received by a nonblocking channel which joins the multicast group
+ * on every interface, and answers them with XML-RPC {@link AddOnlineUserP2PCommand} on pooled threads.
+ * Pings are sent through a channel per interface, the channels are kept open between scans.
+ *
+ * @author Kir Maximov
+ */
+@SuppressWarnings({"HardCodedStringLiteral"})
+class MulticastDiscovery extends Thread {
+
+  private static final Logger LOG = Logger.getLogger(MulticastDiscovery.class);
+
+  public static final int MULTICAST_PORT = 2863;
+  static final String PING_MESSAGE = "Is there anybody out there?";
+  private static final String MULTICAST_ADORES = "239.203.13.64";
+  private static final int BUFFER_SIZE = PING_MESSAGE.getBytes().length + 6;
+  private static final int ALLOWED_FAILURES = 3000;
+  // a ping is sent on every interface, so a host in several common networks gets it several times
+  private static final long REPEATED_PING_TIMEOUT = 1000;
+
+  private volatile boolean myIsRunning;
+  protected volatile boolean myStarted;
+  private volatile Selector mySelector;
+
+  private final IDEFacade myIdeFacade;
+  private final UserMonitorClient myUserMonitorClient;
+
+  private final Map<InetAddress, DatagramChannel> mySendChannels = new HashMap<>();
+  private final Map<String, Long> myAnsweredPings = new HashMap<>();
+  private int myFailuresCounter;
+
+  MulticastDiscovery(IDEFacade ideFacade, UserMonitorClient userMonitorClient) {
+    super("IDEtalk Multicast Thread");
+    setDaemon(true); //Sometimes this thread lives forever, that's why idea.exe process never ends
+                     // see jetbrains.communicator.p2p.NetworkUtil.sendMessage(...) inside try/catch block
+                     //TODO: make it not a Daemon thread again and fix the problem somewhere else. Where...?
+    myIdeFacade = ideFacade;
+    myUserMonitorClient = userMonitorClient;
+
+    System.setProperty("sun.net.client.defaultConnectTimeout", "2000");
+  }
+
+  public void sendMulticastPingRequest() throws IOException {
+    if (!myIsRunning) return;
+
+    ByteBuffer message = ByteBuffer.wrap((PING_MESSAGE + myUserMonitorClient.getPort()).getBytes());
+    InetSocketAddress target = new InetSocketAddress(InetAddress.getByName(MULTICAST_ADORES), MULTICAST_PORT);
+
+    boolean sent = false;
+    synchronized (mySendChannels) {
+      for (InetAddress selfAddress : NetworkUtil.getSelfAddresses()) {
+        try {
+          LOG.debug("Sending Multicast ping request: " + selfAddress);
+          getSendChannel(selfAddress).send(message.duplicate(), target);
+          sent = true;
+        }
+        catch (IOException e) {
+          LOG.debug("Unable to send multicast request on interface " + selfAddress, e);
+          closeQuietly(mySendChannels.remove(selfAddress));
+        }
+      }
+    }
+
+    if (sent) {
+      myFailuresCounter = 0;
+    }
+    else if (++myFailuresCounter > ALLOWED_FAILURES) {
+      LOG.info("Unable to send multicast request. I give up after " + myFailuresCounter + " attempts.");
+      shutdown();
+    }
+  }
+
+  private DatagramChannel getSendChannel(InetAddress selfAddress) throws IOException {
+    DatagramChannel channel = mySendChannels.get(selfAddress);
+    if (channel == null) {
+      channel = DatagramChannel.open(StandardProtocolFamily.INET);
+      try {
+        NetworkInterface networkInterface = NetworkInterface.getByInetAddress(selfAddress);
+        if (networkInterface != null) {
+          channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+        }
+        channel.bind(new InetSocketAddress(selfAddress, 0));
+      }
+      catch (IOException e) {
+        closeQuietly(channel);
+        throw e;
+      }
+      mySendChannels.put(selfAddress, channel);
+    }
+    return channel;
+  }
+
+  @Override
+  public void run() {
+    LOG.info(getName() + ": Start thread.");
+    myIsRunning = true;
+    Runtime.getRuntime().addShutdownHook(new Thread("IDETalk shutdown hook") {
+      @Override
+      public void run() {
+        // Yes, MulticastDiscovery is daemon, but it still keeps JVM running.
+        // Seems this is some troubles with native calls.
+        // see IDEA-52501
+        // An interrupted select() returns immediately from then on, so the loop has to be stopped as well.
+        MulticastDiscovery.this.shutdown();
+        MulticastDiscovery.this.interrupt();
+      }
+    });
+
+    DatagramChannel channel = null;
+    try {
+      mySelector = Selector.open();
+      channel = DatagramChannel.open(StandardProtocolFamily.INET);
+      channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      channel.bind(new InetSocketAddress(MULTICAST_PORT));
+      if (!joinGroup(channel)) return;
+
+      channel.configureBlocking(false);
+      channel.register(mySelector, SelectionKey.OP_READ);
+
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      LOG.debug(getName() + ": Listening for multicast messages... ");
+      myStarted = true;
+      while (myIsRunning && !isInterrupted()) {
+        mySelector.select();
+        mySelector.selectedKeys().clear();
+
+        SocketAddress sender;
+        while (myIsRunning && (sender = channel.receive(buffer)) != null) {
+          buffer.flip();
+          processMessage(new String(buffer.array(), 0, buffer.limit()), ((InetSocketAddress)sender).getAddress());
+          buffer.clear();
+        }
+      }
+    }
+    catch (ClosedSelectorException ignored) {
+      // shutdown
+    }
+    catch (SocketException e) {
+      final String msg = e.getMessage();
+      if (msg != null) {
+        LOG.info(msg, e);
+      }
+      else {
+        logError(e);
+      }
+    }
+    catch (IOException e) {
+      if (myIsRunning) {
+        logError(e);
+      }
+    }
+    finally {
+      myIsRunning = false;
+      closeQuietly(channel);
+      closeSelector();
+      closeSendChannels();
+    }
+  }
+
+  private boolean joinGroup(DatagramChannel channel) throws IOException {
+    InetAddress group = InetAddress.getByName(MULTICAST_ADORES);
+    Set<NetworkInterface> joined = new HashSet<>();
+    for (InetAddress selfAddress : NetworkUtil.getSelfAddresses()) {
+      NetworkInterface networkInterface = NetworkInterface.getByInetAddress(selfAddress);
+      if (networkInterface == null || !joined.add(networkInterface)) continue;
+      try {
+        channel.join(group, networkInterface);
+      }
+      catch (IOException e) {
+        joined.remove(networkInterface);
+        LOG.info(getName() + ": Unable to join multicast group on " + networkInterface.getName() + ": " + e.getMessage());
+      }
+    }
+    if (joined.isEmpty()) {
+      LOG.info(getName() + ": No interfaces to listen for multicast messages");
+    }
+    return !joined.isEmpty();
+  }
+
+  private void processMessage(String message, InetAddress remoteAddress) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(getName() + ": Got multicast message '" + message + "' from " + remoteAddress);
+    }
+    if (!message.startsWith(PING_MESSAGE)) return;
+
+    final int targetPort = extractPort(message);
+    final InetAddress selfAddress = getSelfAddressFor(remoteAddress);
+    if (selfAddress != null && shouldAddSelf(remoteAddress, selfAddress, targetPort) && isNewPing(remoteAddress, targetPort)) {
+      myIdeFacade.runOnPooledThread(() -> addSelfInfoTo(remoteAddress, selfAddress, targetPort));
+    }
+  }
+
+  private boolean isNewPing(InetAddress remoteAddress, int targetPort) {
+    long now = System.currentTimeMillis();
+    if (myAnsweredPings.size() > 256) {
+      myAnsweredPings.values().removeIf(time -> now - time > REPEATED_PING_TIMEOUT);
+    }
+
+    String key = remoteAddress.getHostAddress() + ':' + targetPort;
+    Long answeredAt = myAnsweredPings.get(key);
+    if (answeredAt != null && now - answeredAt < REPEATED_PING_TIMEOUT) return false;
+    myAnsweredPings.put(key, now);
+    return true;
+  }
+
+  /**
+   * @return own address in the network of the remote address, the remote address for own pings
+   */
+  private static InetAddress getSelfAddressFor(InetAddress remoteAddress) {
+    Collection<InetAddress> selfAddresses = NetworkUtil.getSelfAddresses();
+    if (selfAddresses.contains(remoteAddress)) return remoteAddress;
+
+    InetAddress result = null;
+    for (InetAddress selfAddress : selfAddresses) {
+      if (isInSameNetwork(selfAddress, remoteAddress)) return selfAddress;
+      if (result == null && !selfAddress.isLoopbackAddress()) {
+        result = selfAddress;
+      }
+    }
+    return result;
+  }
+
+  private static boolean isInSameNetwork(InetAddress selfAddress, InetAddress remoteAddress) {
+    try {
+      NetworkInterface networkInterface = NetworkInterface.getByInetAddress(selfAddress);
+      if (networkInterface == null) return false;
+
+      for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+        if (!interfaceAddress.getAddress().equals(selfAddress)) continue;
+
+        byte[] self = selfAddress.getAddress();
+        byte[] remote = remoteAddress.getAddress();
+        if (self.length != remote.length) return false;
+        int prefixLength = interfaceAddress.getNetworkPrefixLength();
+        for (int bit = 0; bit < prefixLength && bit < self.length * 8; bit++) {
+          int mask = 0x80 >> (bit % 8);
+          if ((self[bit / 8] & mask) != (remote[bit / 8] & mask)) return false;
+        }
+        return true;
+      }
+    }
+    catch (SocketException e) {
+      LOG.debug(e);
+    }
+    return false;
+  }
+
+  private void logError(IOException e) {
+    LOG.error(getName() + " is terminated:\n" + e.getMessage(), e);
+  }
+
+  private void addSelfInfoTo(InetAddress remoteAddress, InetAddress selfAddress, int targetPort) {
+    String[] projects = myIdeFacade.getProjects();
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(getName() + ": Add self " + selfAddress + " to " + remoteAddress);
+    }
+    AddOnlineUserP2PCommand.addSelfTo(targetPort, remoteAddress, selfAddress, myUserMonitorClient.getPort(), Arrays.asList(projects), myUserMonitorClient.getOwnPresence());
+  }
+
+  private boolean shouldAddSelf(InetAddress remoteAddress, InetAddress selfAddress, int targetPort) {
+    boolean ownAddress = NetworkUtil.isOwnAddress(remoteAddress);
+    if (ownAddress) {
+      return shouldSendToSelf(targetPort); // For tests
+    }
+    return !selfAddress.isLoopbackAddress();
+  }
+
+  private boolean shouldSendToSelf(int targetPort) {
+    return targetPort == myUserMonitorClient.getPort();
+  }
+
+  static int extractPort(String message) {
+    String port = message.substring(PING_MESSAGE.length());
+    try {
+      return Integer.valueOf(port).intValue();
+    }
+    catch (Exception e) {
+      LOG.debug(e);
+    }
+    return P2PTransport.XML_RPC_PORT;
+  }
+
+  public void shutdown() {
+    myIsRunning = false;
+    Selector selector = mySelector;
+    if (selector != null) {
+      selector.wakeup();
+    }
+    closeSendChannels();
+  }
+
+  private void closeSelector() {
+    Selector selector = mySelector;
+    if (selector != null) {
+      try {
+        selector.close();
+      }
+      catch (IOException e) {
+        LOG.debug(e);
+      }
+    }
+  }
+
+  private void closeSendChannels() {
+    synchronized (mySendChannels) {
+      for (DatagramChannel channel : mySendChannels.values()) {
+        closeQuietly(channel);
+      }
+      mySendChannels.clear();
+    }
+  }
+
+  private static void closeQuietly(DatagramChannel channel) {
+    if (channel != null) {
+      try {
+        channel.close();
+      }
+      catch (IOException e) {
+        LOG.debug(e);
+      }
+    }
+  }
+
+  public boolean isStarted() {
+    return myStarted;
+  }
+
+  public boolean isRunning() {
+    return myIsRunning;
+  }
+}
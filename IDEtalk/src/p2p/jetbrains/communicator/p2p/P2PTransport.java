@@ -65,7 +65,7 @@ public class P2PTransport implements Transport, UserMonitorClient, Disposable {
 
   static final String CODE = "P2P";
 
-  static final int XML_RPC_PORT = MulticastPingThread.MULTICAST_PORT + 1;
+  static final int XML_RPC_PORT = MulticastDiscovery.MULTICAST_PORT + 1;
 
   private final UserMonitorThread myUserMonitorThread;
 
@@ -375,6 +375,11 @@ public class P2PTransport implements Transport, UserMonitorClient, Disposable {
     }
   }
 
+  @Override
+  public void addOnlineUsers(@NotNull Collection<User> onlineUsers) {
+    addNewOnlineUsers(onlineUsers);
+  }
+
   public void setAvailable(String remoteUser) {
     final User user = myUserModel.findUser(remoteUser, getName());
     if (user != null) {
@@ -466,7 +471,8 @@ public class P2PTransport implements Transport, UserMonitorClient, Disposable {
           UserPresence oldPresence = getNotNullOnlineInfo(user).getPresence();
           final OnlineUserInfo onlineUserInfo = myUserToInfoNew.get(user);
           if (onlineUserInfo == null) {
-            return;
+            // kept online by the monitor without an answer in this scan
+            continue;
           }
 
           UserPresence newPresence = onlineUserInfo.getPresence();
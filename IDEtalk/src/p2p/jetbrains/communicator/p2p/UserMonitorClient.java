@@ -26,6 +26,12 @@ import java.util.Collection;
 public interface UserMonitorClient {
   void setOnlineUsers(Collection<User> onlineUsers);
 
+  /**
+   * Reports users which answered the current scan before it is finished,
+   * the complete set of online users is passed to {@link #setOnlineUsers(Collection)} later.
+   */
+  void addOnlineUsers(Collection<User> onlineUsers);
+
   User createUser(String remoteUsername, OnlineUserInfo onlineUserInfo);
   int getPort();
   UserPresence getOwnPresence();
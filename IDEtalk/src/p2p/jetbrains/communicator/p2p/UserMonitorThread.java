@@ -16,6 +16,7 @@
 package jetbrains.communicator.p2p;
 
 import com.intellij.util.Time;
+import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import jetbrains.communicator.core.Pico;
 import jetbrains.communicator.core.users.User;
@@ -35,7 +36,11 @@ import java.util.*;
  * @author Kir Maximov
  *         <p/>
  *         This thread periodically scans the local network via multicast
- *         request and passes obtained users to UserMonitorClient
+ *         request and passes obtained users to UserMonitorClient.
+ *         New users are passed as soon as they answer, the scan ends when
+ *         the users which answered the previous scan had enough time to answer.
+ *         Answers which come after the end of a scan count for the next one,
+ *         and users stay online until they miss several scans in a row.
  */
 @SuppressWarnings({"HardCodedStringLiteral"})
 public class UserMonitorThread extends Thread {
@@ -44,30 +49,43 @@ public class UserMonitorThread extends Thread {
   static final long WAIT_USER_RESPONSES_TIMEOUT = 3000;
   static final String SCAN_TIMEOUT_PROPERTY = "ideTalk.scanTimeout";
   static final long TIMEOUT_BETWEEN_SCANS = 3 * Time.MINUTE;
+  // a scan ends before the timeout when nobody answered for this time,
+  // but not earlier than users answered in the previous scan
+  static final long QUIET_PERIOD = 200;
+  static final long MIN_RESPONSES_TIMEOUT = 500;
+  static final int MISSED_SCANS_BEFORE_OFFLINE = 2;
 
-  private final MulticastPingThread[] myMulticastThreads;
+  private final MulticastDiscovery myDiscovery;
   private final UserMonitorClient myClient;
   private final long myWaitUserResponsesTimeout;
   private final long myScansTimeout;
 
   private final Set<User> myAvailableUsers = Collections.synchronizedSet(new THashSet<User>());
+  private final Set<User> myPublishedUsers = Collections.synchronizedSet(new THashSet<User>());
+  private final Set<User> myLateUsers = new THashSet<>();
+  private final Map<User, Integer> myMissedScans = new THashMap<>();
+  private final Map<User, Long> myRoundTripTimes = Collections.synchronizedMap(new THashMap<User, Long>());
 
   private Thread myThread;
   private long myStartFindingAt;
+  private volatile long myPingSentAt;
+  private volatile long myLastResponseAt;
+  private long myExpectedResponsesTime = -1;
+  private boolean myUsersFlushed;
 
   private final Object myLock = new Object();
 
   public UserMonitorThread(P2PTransport client, long waitUserResponsesTimeout) {
-    this(createMulticastThreads(client), client, waitUserResponsesTimeout);
+    this(new MulticastDiscovery(client.getIdeFacade(), client), client, waitUserResponsesTimeout);
   }
 
-  UserMonitorThread(MulticastPingThread[] multicastPingThread, UserMonitorClient client, long waitUserResponsesTimeout) {
+  UserMonitorThread(MulticastDiscovery discovery, UserMonitorClient client, long waitUserResponsesTimeout) {
     super("User Monitor Thread");
 
     setDaemon(true);
-    assert multicastPingThread != null;
+    assert discovery != null;
     myClient = client;
-    myMulticastThreads = multicastPingThread;
+    myDiscovery = discovery;
     myWaitUserResponsesTimeout = waitUserResponsesTimeout;
 
     String timeout = System.getProperty(SCAN_TIMEOUT_PROPERTY);
@@ -86,16 +104,10 @@ public class UserMonitorThread extends Thread {
     }
   }
 
-  private static MulticastPingThread[] createMulticastThreads(P2PTransport client) {
-    List<MulticastPingThread> result = new ArrayList<>();
-    for (InetAddress selfAddress : NetworkUtil.getSelfAddresses()) {
-      result.add(new MulticastPingThread(selfAddress, client.getIdeFacade(), client));
-    }
-    return result.toArray(new MulticastPingThread[0]);
-  }
-
   public void shutdown() {
-    shutdownMulticastThreads();
+    if (myDiscovery.isAlive()) {
+      myDiscovery.shutdown();
+    }
     if (isRunning()) {
       final Thread thr = myThread;
       myThread = null;
@@ -108,20 +120,12 @@ public class UserMonitorThread extends Thread {
     }
   }
 
-  private void shutdownMulticastThreads() {
-    for (MulticastPingThread multicastThread : myMulticastThreads) {
-      if (multicastThread.isAlive()) {
-        multicastThread.shutdown();
-      }
-    }
-  }
-
   @Override
   public void run() {
     super.run();
     LOG.info("Start " + getName());
 
-    startupMulticastThreads();
+    startupDiscovery();
 
     myThread = Thread.currentThread();
 
@@ -136,11 +140,14 @@ public class UserMonitorThread extends Thread {
         }
 
         try {
-          sendMulticastRequests(getListeningThreads());
+          if (myDiscovery.isAlive()) {
+            myPingSentAt = System.currentTimeMillis();
+            myDiscovery.sendMulticastPingRequest();
+          }
 
-          //noinspection BusyWait
-          Thread.sleep(myWaitUserResponsesTimeout);
+          waitForResponses();
 
+          updateExpectedResponsesTime();
           flushOnlineUsers();
         }
         finally {
@@ -174,40 +181,53 @@ public class UserMonitorThread extends Thread {
     return myThread != null;
   }
 
-  private static void sendMulticastRequests(List<MulticastPingThread> listeningThreads) throws IOException {
-    for (MulticastPingThread thread : listeningThreads) {
-      thread.sendMulticastPingRequest();
+  private void waitForResponses() throws InterruptedException {
+    long pingSentAt = myPingSentAt;
+    long deadline = pingSentAt + myWaitUserResponsesTimeout;
+    synchronized (myLock) {
+      long now = System.currentTimeMillis();
+      while (isRunning() && now < deadline && !allResponsesReceived(pingSentAt, now)) {
+        myLock.wait(Math.min(deadline - now, QUIET_PERIOD));
+        now = System.currentTimeMillis();
+      }
     }
   }
 
-  private List<MulticastPingThread> getListeningThreads() {
-    List<MulticastPingThread> result = new ArrayList<>();
-    for (MulticastPingThread multicastThread : myMulticastThreads) {
-      if (multicastThread.isAlive()) {
-        result.add(multicastThread);
+  private boolean allResponsesReceived(long pingSentAt, long now) {
+    long lastResponseAt = myLastResponseAt;
+    return myExpectedResponsesTime >= 0 && lastResponseAt >= pingSentAt &&
+           now - pingSentAt >= myExpectedResponsesTime && now - lastResponseAt >= QUIET_PERIOD;
+  }
+
+  private void updateExpectedResponsesTime() {
+    long maxRoundTripTime = -1;
+    synchronized (myRoundTripTimes) {
+      for (User user : myAvailableUsers.toArray(new User[0])) {
+        Long roundTripTime = myRoundTripTimes.get(user);
+        if (roundTripTime != null) {
+          maxRoundTripTime = Math.max(maxRoundTripTime, roundTripTime.longValue());
+        }
       }
     }
-    return result;
+    myExpectedResponsesTime = maxRoundTripTime < 0 ? -1 : Math.max(MIN_RESPONSES_TIMEOUT, 2 * maxRoundTripTime + QUIET_PERIOD);
   }
 
   private void startFindingUsers() {
     synchronized (myLock) {
       myStartFindingAt = System.currentTimeMillis();
       myAvailableUsers.clear();
+      myAvailableUsers.addAll(myLateUsers);
+      myLateUsers.clear();
+      myUsersFlushed = false;
     }
   }
 
-  private void startupMulticastThreads() {
-    for (MulticastPingThread multicastThread : myMulticastThreads) {
-      multicastThread.start();
-    }
+  private void startupDiscovery() {
+    myDiscovery.start();
     new WaitFor(Time.SECOND) {
       @Override
       protected boolean condition() {
-        for (MulticastPingThread multicastThread : myMulticastThreads) {
-          if (!multicastThread.isStarted()) return false;
-        }
-        return true;
+        return myDiscovery.isStarted();
       }
     };
   }
@@ -233,7 +253,24 @@ public class UserMonitorThread extends Thread {
       }
       OnlineUserInfo onlineUserInfo = new OnlineUserInfo(InetAddress.getByName(remoteAddress), remotePort.intValue(), projects, presence);
       if (!onlineUserInfo.getAddress().isLoopbackAddress() || Pico.isUnitTest()) {
-        myAvailableUsers.add(myClient.createUser(remoteUsername, onlineUserInfo));
+        User user = myClient.createUser(remoteUsername, onlineUserInfo);
+
+        long now = System.currentTimeMillis();
+        synchronized (myLock) {
+          if (!isFinding() || myUsersFlushed) {
+            // the answer came after the scan ended, the next scan shouldn't miss the user
+            myLateUsers.add(user);
+          }
+          myAvailableUsers.add(user);
+          if (myPingSentAt > 0) {
+            myRoundTripTimes.put(user, now - myPingSentAt);
+          }
+        }
+        myLastResponseAt = now;
+
+        if (myPublishedUsers.add(user)) {
+          myClient.addOnlineUsers(Collections.singleton(user));
+        }
       }
     }
     catch (UnknownHostException ignored) {
@@ -249,15 +286,44 @@ public class UserMonitorThread extends Thread {
 
   void flushOnlineUsers() {
     Set<User> users;
-    synchronized (myAvailableUsers) {
+    synchronized (myLock) {
       users = new THashSet<>(myAvailableUsers);
+      myUsersFlushed = true;
+    }
+    synchronized (myPublishedUsers) {
+      for (User user : myPublishedUsers) {
+        if (users.contains(user)) {
+          myMissedScans.remove(user);
+          continue;
+        }
+        Integer missed = myMissedScans.get(user);
+        int missedScans = missed == null ? 1 : missed.intValue() + 1;
+        if (missedScans < MISSED_SCANS_BEFORE_OFFLINE) {
+          myMissedScans.put(user, missedScans);
+          users.add(user);
+        }
+        else {
+          myMissedScans.remove(user);
+        }
+      }
+      myPublishedUsers.clear();
+      myPublishedUsers.addAll(users);
     }
     if (LOG.isDebugEnabled()) {
       LOG.debug("Setting online users: \n" + Arrays.toString(users.toArray()));
     }
+    myRoundTripTimes.keySet().retainAll(users);
     myClient.setOnlineUsers(users);
   }
 
+  /**
+   * @return time between the last ping and the answer of the user in milliseconds, -1 if unknown
+   */
+  public long getRoundTripTime(User user) {
+    Long result = myRoundTripTimes.get(user);
+    return result == null ? -1 : result.longValue();
+  }
+
   public long getWaitUserResponsesTimeout() {
     return myWaitUserResponsesTimeout;
   }
@@ -302,9 +368,6 @@ public class UserMonitorThread extends Thread {
   }
 
   boolean _isAlive() {
-    for (MulticastPingThread multicastThread : myMulticastThreads) {
-      if (multicastThread.isRunning()) return true;
-    }
-    return super.isAlive();
+    return myDiscovery.isRunning() || super.isAlive();
   }
 }
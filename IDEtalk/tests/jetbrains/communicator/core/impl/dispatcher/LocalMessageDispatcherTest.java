@@ -31,6 +31,7 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Date;
 
 /**
@@ -252,6 +253,60 @@ public class LocalMessageDispatcherTest extends BaseTestCase {
     assertEquals(2, messages.length);
   }
 
+  public void testHistoryAfterBrokenRecord() throws Exception {
+    myDispatcher.sendNow(myUser, new MockMessage(new Date(), "first"));
+    Thread.sleep(SAVE_WAIT_TIMEOUT);
+
+    File[] segments = new File(myIdeFacade.getCacheDir(), "history").listFiles();
+    assertEquals(1, segments.length);
+    FileOutputStream out = new FileOutputStream(segments[0], true);
+    out.write(new byte[]{0, 0, 1, 0, 42});
+    out.close();
+
+    LocalMessageDispatcherImpl localMessageDispatcher = createLocalMessageDispatcher();
+    assertEquals(1, localMessageDispatcher.getHistory(myUser, null).length);
+    localMessageDispatcher.sendNow(myUser, new MockMessage(new Date(), "second"));
+    Thread.sleep(SAVE_WAIT_TIMEOUT);
+
+    LocalMessage[] messages = createLocalMessageDispatcher().getHistory(myUser, null);
+    assertEquals(2, messages.length);
+    assertEquals("first", ((MockMessage) messages[0]).getMessage());
+    assertEquals("second", ((MockMessage) messages[1]).getMessage());
+  }
+
+  public void testClearHistoryAfterReading() throws Exception {
+    myDispatcher.sendNow(myUser, new MockMessage(new Date(), "some text"));
+    Thread.sleep(SAVE_WAIT_TIMEOUT);
+
+    LocalMessageDispatcherImpl localMessageDispatcher = createLocalMessageDispatcher();
+    assertEquals(1, localMessageDispatcher.getHistory(myUser, null).length);
+    assertEquals(1, localMessageDispatcher.findInHistory(myUser, "text").length);
+
+    // files which were read must not be held open
+    localMessageDispatcher.clearHistory();
+    assertEquals(0, new File(myIdeFacade.getCacheDir(), "history").listFiles().length);
+    assertTrue(localMessageDispatcher.isHistoryEmpty());
+  }
+
+  public void testFindInHistory() throws Exception {
+    myDispatcher.sendNow(myUser, new MockMessage(yesterday(), "some text1 & <more>"));
+    myDispatcher.sendNow(myUser, new MockMessage(new Date(), "some text2"));
+    myDispatcher.sendNow(UserImpl.create("other", MockTransport.NAME), new MockMessage(new Date(), "other text2"));
+    Thread.sleep(SAVE_WAIT_TIMEOUT);
+
+    LocalMessageDispatcherImpl localMessageDispatcher = createLocalMessageDispatcher();
+    assertEquals(1, localMessageDispatcher.findInHistory(myUser, "text2").length);
+    assertEquals(2, localMessageDispatcher.findInHistory(myUser, "xt").length);
+    assertEquals(1, localMessageDispatcher.findInHistory(myUser, "& <more>").length);
+    assertEquals(0, localMessageDispatcher.findInHistory(myUser, "text3").length);
+
+    localMessageDispatcher.sendNow(myUser, new MockMessage(new Date(), "new text3"));
+    LocalMessage[] found = localMessageDispatcher.findInHistory(myUser, "text");
+    assertEquals(3, found.length);
+    assertEquals("some text1 & <more>", ((MockMessage) found[0]).getMessage());
+    assertEquals("new text3", ((MockMessage) found[2]).getMessage());
+  }
+
   private Date yesterday() {
     return new Date(System.currentTimeMillis() - 1000 * 3600 * 24);
   }
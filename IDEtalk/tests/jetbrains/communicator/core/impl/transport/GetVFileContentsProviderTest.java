@@ -0,0 +1,127 @@
+/*
+ * Copyright 2000-2006 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.communicator.core.impl.transport;
+
+import jetbrains.communicator.core.impl.BaseTestCase;
+import jetbrains.communicator.core.impl.users.UserModelImpl;
+import jetbrains.communicator.core.transport.GetVFileContentsXmlMessage;
+import jetbrains.communicator.core.transport.Transport;
+import jetbrains.communicator.core.users.User;
+import jetbrains.communicator.core.vfs.VFile;
+import jetbrains.communicator.mock.MockIDEFacade;
+import jetbrains.communicator.mock.MockTransport;
+import org.jdom.Element;
+
+import java.util.Arrays;
+
+public class GetVFileContentsProviderTest extends BaseTestCase {
+  private MockIDEFacade myIdeFacade;
+  private GetVFileContentsProvider myProvider;
+  private User myUser;
+  private int myRequests;
+  private boolean myLastUnchanged;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    UserModelImpl userModel = new UserModelImpl(getBroadcaster());
+    disposeOnTearDown(userModel);
+    myIdeFacade = new MockIDEFacade();
+    myProvider = new GetVFileContentsProvider(myIdeFacade, userModel);
+
+    myUser = userModel.createUser("User", MockTransport.NAME);
+    userModel.addUser(myUser);
+    myUser.setCanAccessMyFiles(true, userModel);
+  }
+
+  public void testSmallFile() {
+    VFile vFile = VFile.create(getName());
+    myIdeFacade.setReturnedFileText(vFile, "some text");
+
+    assertEquals("some text", transfer(vFile));
+    assertEquals(1, myRequests);
+  }
+
+  public void testChunks() {
+    VFile vFile = VFile.create(getName());
+    String text = createText(GetVFileContentsXmlMessage.CHUNK_SIZE * 3 + 10);
+    myIdeFacade.setReturnedFileText(vFile, text);
+
+    assertEquals(text, transfer(vFile));
+    assertEquals(4, myRequests);
+  }
+
+  public void testUnchangedFileIsNotSentAgain() {
+    VFile vFile = VFile.create(getName());
+    String text = createText(GetVFileContentsXmlMessage.CHUNK_SIZE * 2);
+    myIdeFacade.setReturnedFileText(vFile, text);
+    transfer(vFile);
+
+    VFile sameFile = VFile.create(getName());
+    assertEquals(text, transfer(sameFile));
+    assertEquals(1, myRequests);
+    assertTrue("Should be taken from cache", myLastUnchanged);
+
+    myIdeFacade.setReturnedFileText(vFile, text + "changed");
+    VFile changedFile = VFile.create(getName());
+    assertEquals(text + "changed", transfer(changedFile));
+    assertFalse(myLastUnchanged);
+  }
+
+  public void testNoSuchFile() {
+    assertNull(transfer(VFile.create(getName())));
+    assertEquals(1, myRequests);
+  }
+
+  public void testResponseFromOldVersion() {
+    VFile vFile = VFile.create(getName());
+    GetVFileContentsXmlMessage message = new GetVFileContentsXmlMessage(vFile);
+
+    Element response = new Element("response", Transport.NAMESPACE);
+    VFile remoteFile = VFile.create(getName());
+    remoteFile.setContents("old text");
+    remoteFile.saveTo(response);
+    message.processResponse(response);
+
+    assertFalse(message.hasMoreChunks());
+    assertEquals("old text", vFile.getContents());
+  }
+
+  private String transfer(VFile vFile) {
+    GetVFileContentsXmlMessage message = new GetVFileContentsXmlMessage(vFile);
+    myRequests = 0;
+    do {
+      Element request = new Element(message.getTagName(), message.getTagNamespace());
+      message.fillRequest(request);
+      Element response = new Element("response", Transport.NAMESPACE);
+      assertTrue(myProvider.processAndFillResponse(response, request, new MockTransport(), myUser.getName()));
+      myLastUnchanged = response.getAttribute(GetVFileContentsXmlMessage.UNCHANGED_ATTR) != null;
+      message.processResponse(response);
+      myRequests++;
+    }
+    while (message.hasMoreChunks());
+    return vFile.getContents();
+  }
+
+  private static String createText(int length) {
+    char[] chars = new char[length];
+    Arrays.fill(chars, 'd');
+    chars[length / 2] = '<';
+    chars[length - 1] = '&';
+    return new String(chars);
+  }
+}
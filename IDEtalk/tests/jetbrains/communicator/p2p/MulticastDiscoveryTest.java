@@ -17,26 +17,24 @@ package jetbrains.communicator.p2p;
 
 import jetbrains.communicator.core.impl.BaseTestCase;
 
-import java.net.InetAddress;
-
 /**
  * @author Kir
  */
-public class MulticastPingThreadTest extends BaseTestCase {
-  private MulticastPingThread myMulticastPingThread;
+public class MulticastDiscoveryTest extends BaseTestCase {
+  private MulticastDiscovery myDiscovery;
 
   @Override
   protected void setUp() throws Exception {
     super.setUp();
 
-    myMulticastPingThread = new MulticastPingThread(InetAddress.getLocalHost(), null, null);
+    myDiscovery = new MulticastDiscovery(null, null);
   }
 
   public void testExtractPort() {
-    final String pingMessage = MulticastPingThread.PING_MESSAGE;
+    final String pingMessage = MulticastDiscovery.PING_MESSAGE;
 
-    assertEquals(P2PTransport.XML_RPC_PORT, myMulticastPingThread.extractPort(pingMessage));
-    assertEquals(125, myMulticastPingThread.extractPort(pingMessage + 125));
+    assertEquals(P2PTransport.XML_RPC_PORT, myDiscovery.extractPort(pingMessage));
+    assertEquals(125, myDiscovery.extractPort(pingMessage + 125));
 
   }
 
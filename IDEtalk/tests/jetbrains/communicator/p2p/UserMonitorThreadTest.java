@@ -37,7 +37,7 @@ import java.util.*;
 public class UserMonitorThreadTest extends BaseTestCase {
   private Mock myUserMonitorClientMock;
   private UserMonitorThread myUserMonitorThread;
-  private MulticastPingThread myMulticastThread;
+  private MulticastDiscovery myDiscovery;
   private static final int PORT = 12234;
   private static final int WAIT_USER_RESPONSES_TIMEOUT = 500;
 
@@ -48,7 +48,7 @@ public class UserMonitorThreadTest extends BaseTestCase {
     myUserMonitorClientMock = mock(UserMonitorClient.class);
 
     final boolean[] started = new boolean[1];
-    myMulticastThread = new MulticastPingThread(InetAddress.getByName("localhost"), null, (UserMonitorClient) myUserMonitorClientMock.proxy()) {
+    myDiscovery = new MulticastDiscovery(null, (UserMonitorClient) myUserMonitorClientMock.proxy()) {
       @Override
       public void run() {
         myStarted = true;
@@ -66,7 +66,8 @@ public class UserMonitorThreadTest extends BaseTestCase {
     };
 
     myUserMonitorClientMock.stubs().method("getPort").will(returnValue(PORT));
-    myUserMonitorThread = new UserMonitorThread(new MulticastPingThread[]{myMulticastThread},
+    myUserMonitorClientMock.stubs().method("addOnlineUsers");
+    myUserMonitorThread = new UserMonitorThread(myDiscovery,
         (UserMonitorClient) myUserMonitorClientMock.proxy(), WAIT_USER_RESPONSES_TIMEOUT);
     myUserMonitorThread.start();
 
@@ -172,6 +173,18 @@ public class UserMonitorThreadTest extends BaseTestCase {
     }
   }
 
+  public void testAddRemoteUser_BeforeScanEnds() throws Exception {
+    User p2PUser = UserImpl.create("nick", P2PTransport.CODE);
+    myUserMonitorClientMock.expects(atLeastOnce()).method("createUser").will(returnValue(p2PUser));
+    myUserMonitorClientMock.expects(once()).method("addOnlineUsers").with(eq(Collections.singleton(p2PUser)));
+
+    myUserMonitorThread.addOnlineUser("localhost", "nick", new Integer(PORT), new HashSet<>(), new UserPresence(PresenceMode.AWAY));
+    myUserMonitorThread.addOnlineUser("localhost", "nick", new Integer(PORT), new HashSet<>(), new UserPresence(PresenceMode.AWAY));
+
+    assertTrue("User should be reported while finding", myUserMonitorThread.isFinding());
+    assertTrue("Round trip time should be measured", myUserMonitorThread.getRoundTripTime(p2PUser) >= 0);
+  }
+
   private void expectSetOneOnlineUser() throws UnknownHostException {
     User p2PUser = UserImpl.create("nick", P2PTransport.CODE);
 
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2000-2006 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrains.communicator.p2p;
+
+import com.intellij.util.TimeoutUtil;
+import jetbrains.communicator.core.impl.BaseTestCase;
+import jetbrains.communicator.core.impl.users.UserImpl;
+import jetbrains.communicator.core.users.PresenceMode;
+import jetbrains.communicator.core.users.User;
+import jetbrains.communicator.core.users.UserPresence;
+import jetbrains.communicator.util.WaitFor;
+
+import java.util.*;
+
+/**
+ * A user answers the first scan quickly and the next ones later than the scan ends,
+ * because another user answers quickly and the scan ends early.
+ */
+public class UserMonitorThread_SlowUsers_Test extends BaseTestCase {
+  private static final int PORT = 12234;
+  private static final int WAIT_USER_RESPONSES_TIMEOUT = 1500;
+  private static final int SLOW_USER_DELAY = 1000;
+  private static final int SECS_BETWEEN_SCANS = 1;
+
+  private final List<Set<String>> myOnlineUsers = Collections.synchronizedList(new ArrayList<Set<String>>());
+  private UserMonitorThread myUserMonitorThread;
+  private int myPings;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    UserMonitorClient client = new UserMonitorClient() {
+      @Override
+      public void setOnlineUsers(Collection<User> onlineUsers) {
+        Set<String> names = new TreeSet<>();
+        for (User user : onlineUsers) {
+          names.add(user.getName());
+        }
+        myOnlineUsers.add(names);
+      }
+
+      @Override
+      public void addOnlineUsers(Collection<User> onlineUsers) {
+      }
+
+      @Override
+      public User createUser(String remoteUsername, OnlineUserInfo onlineUserInfo) {
+        return UserImpl.create(remoteUsername, P2PTransport.CODE);
+      }
+
+      @Override
+      public int getPort() {
+        return PORT;
+      }
+
+      @Override
+      public UserPresence getOwnPresence() {
+        return new UserPresence(PresenceMode.AVAILABLE);
+      }
+    };
+
+    MulticastDiscovery discovery = new MulticastDiscovery(null, client) {
+      @Override
+      public void run() {
+        myStarted = true;
+        TimeoutUtil.sleep(100000);
+      }
+
+      @Override
+      public void sendMulticastPingRequest() {
+        final boolean firstPing = myPings++ == 0;
+        answer("fast", 0);
+        answer("slow", firstPing ? 0 : SLOW_USER_DELAY);
+      }
+    };
+
+    System.setProperty(UserMonitorThread.SCAN_TIMEOUT_PROPERTY, "" + SECS_BETWEEN_SCANS);
+    myUserMonitorThread = new UserMonitorThread(discovery, client, WAIT_USER_RESPONSES_TIMEOUT);
+    System.setProperty(UserMonitorThread.SCAN_TIMEOUT_PROPERTY, "");
+    myUserMonitorThread.start();
+    myUserMonitorThread.triggerFindNow();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myUserMonitorThread.shutdown();
+    new WaitFor(5000) {
+      @Override
+      protected boolean condition() {
+        return !myUserMonitorThread._isAlive();
+      }
+    };
+    myUserMonitorThread.join();
+    super.tearDown();
+  }
+
+  private void answer(final String name, final long delay) {
+    Thread thread = new Thread("Answer of " + name) {
+      @Override
+      public void run() {
+        TimeoutUtil.sleep(delay);
+        myUserMonitorThread.addOnlineUser("localhost", name, PORT, new HashSet<>(), new UserPresence(PresenceMode.AVAILABLE));
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void testSlowUserStaysOnline() {
+    new WaitFor(15000) {
+      @Override
+      protected boolean condition() {
+        return myOnlineUsers.size() >= 3;
+      }
+    };
+    assertTrue("Three scans expected: " + myOnlineUsers, myOnlineUsers.size() >= 3);
+
+    Set<String> all = new TreeSet<>(Arrays.asList("fast", "slow"));
+    synchronized (myOnlineUsers) {
+      for (Set<String> users : myOnlineUsers) {
+        assertEquals("Users of every scan: " + myOnlineUsers, all, users);
+      }
+    }
+  }
+}
@@ -2,12 +2,20 @@ package org.jetbrains.plugins.cucumber.java;
 
 import com.intellij.ide.highlighter.JavaFileType;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.JavaPsiFacade;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.ProjectScope;
 import com.intellij.psi.search.searches.AnnotatedElementsSearch;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.util.Query;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -15,6 +23,7 @@ import org.jetbrains.plugins.cucumber.BDDFrameworkType;
 import org.jetbrains.plugins.cucumber.StepDefinitionCreator;
 import org.jetbrains.plugins.cucumber.java.steps.JavaStepDefinition;
 import org.jetbrains.plugins.cucumber.java.steps.JavaStepDefinitionCreator;
+import org.jetbrains.plugins.cucumber.java.steps.JavaStepDefinitionIndex;
 import org.jetbrains.plugins.cucumber.steps.AbstractStepDefinition;
 
 import java.util.ArrayList;
@@ -24,6 +33,8 @@ import java.util.List;
 public class CucumberJavaExtension extends AbstractCucumberJavaExtension {
   public static final String CUCUMBER_RUNTIME_JAVA_STEP_DEF_ANNOTATION = "cucumber.runtime.java.StepDefAnnotation";
 
+  private static final Key<CachedValue<List<AbstractStepDefinition>>> STEP_DEFINITIONS = Key.create("cucumber.java.step.definitions");
+
   @NotNull
   @Override
   public BDDFrameworkType getStepFileType() {
@@ -38,23 +49,50 @@ public class CucumberJavaExtension extends AbstractCucumberJavaExtension {
 
   @Override
   public List<AbstractStepDefinition> loadStepsFor(@Nullable PsiFile featureFile, @NotNull Module module) {
-    final GlobalSearchScope dependenciesScope = module.getModuleWithDependenciesAndLibrariesScope(true);
+    final Project project = module.getProject();
+    return CachedValuesManager.getManager(project).getCachedValue(module, STEP_DEFINITIONS, () -> CachedValueProvider.Result.create(
+      Collections.unmodifiableList(loadStepDefinitions(module)), PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT,
+      ProjectRootManager.getInstance(project)), false);
+  }
 
-    PsiClass stepDefAnnotationClass = JavaPsiFacade.getInstance(module.getProject()).findClass(CUCUMBER_RUNTIME_JAVA_STEP_DEF_ANNOTATION,
-                                                                                               dependenciesScope);
-    if (stepDefAnnotationClass == null) {
+  private static List<AbstractStepDefinition> loadStepDefinitions(@NotNull Module module) {
+    final Project project = module.getProject();
+    final GlobalSearchScope dependenciesScope = module.getModuleWithDependenciesAndLibrariesScope(true);
+    final List<PsiClass> stepDefAnnotations = findStepDefAnnotations(project, dependenciesScope);
+    if (stepDefAnnotations.isEmpty()) {
       return Collections.emptyList();
     }
 
     final List<AbstractStepDefinition> result = new ArrayList<>();
-    final Query<PsiClass> stepDefAnnotations = AnnotatedElementsSearch.searchPsiClasses(stepDefAnnotationClass, dependenciesScope);
+    JavaStepDefinitionIndex.processStepDefinitions(project, module.getModuleWithDependenciesScope(), stepDefAnnotations,
+                                                   (method, annotationClassName) -> result.add(new JavaStepDefinition(method, annotationClassName)));
+
+    // compiled step definitions of libraries are not indexed
+    final GlobalSearchScope librariesScope = dependenciesScope.intersectWith(ProjectScope.getLibrariesScope(project));
     for (PsiClass annotationClass : stepDefAnnotations) {
-      String annotationClassName = annotationClass.getQualifiedName();
-      if (annotationClass.isAnnotationType() && annotationClassName != null) {
-        final Query<PsiMethod> javaStepDefinitions = AnnotatedElementsSearch.searchPsiMethods(annotationClass, dependenciesScope);
-        for (PsiMethod stepDefMethod : javaStepDefinitions) {
-          result.add(new JavaStepDefinition(stepDefMethod, annotationClassName));
-        }
+      final Query<PsiMethod> javaStepDefinitions = AnnotatedElementsSearch.searchPsiMethods(annotationClass, librariesScope);
+      for (PsiMethod stepDefMethod : javaStepDefinitions) {
+        result.add(new JavaStepDefinition(stepDefMethod, annotationClass.getQualifiedName()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds annotation classes marked with {@code cucumber.runtime.java.StepDefAnnotation}. Besides the localized annotations
+   * of Cucumber libraries, these may be custom step annotations declared in sources.
+   */
+  @NotNull
+  public static List<PsiClass> findStepDefAnnotations(@NotNull Project project, @NotNull GlobalSearchScope scope) {
+    final PsiClass stepDefAnnotationClass = JavaPsiFacade.getInstance(project).findClass(CUCUMBER_RUNTIME_JAVA_STEP_DEF_ANNOTATION, scope);
+    if (stepDefAnnotationClass == null) {
+      return Collections.emptyList();
+    }
+
+    final List<PsiClass> result = new ArrayList<>();
+    for (PsiClass annotationClass : AnnotatedElementsSearch.searchPsiClasses(stepDefAnnotationClass, scope)) {
+      if (annotationClass.isAnnotationType() && annotationClass.getQualifiedName() != null) {
+        result.add(annotationClass);
       }
     }
     return result;
@@ -0,0 +1,178 @@
+package org.jetbrains.plugins.cucumber.java.steps;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.containers.MultiMap;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Maps short names of annotations with arguments to offsets of the methods annotated with them in Java sources.
+ * Annotations can't be resolved during indexing, and step definitions may use custom annotations from any package,
+ * so whether an annotation is a step definition annotation is checked when the index is queried.
+ */
+public class JavaStepDefinitionIndex extends FileBasedIndexExtension<String, List<Integer>> {
+  public static final ID<String, List<Integer>> INDEX_ID = ID.create("java.cucumber.step.definitions");
+  private static final int VERSION = 3;
+
+  private final DataIndexer<String, List<Integer>, FileContent> myDataIndexer = new MyDataIndexer();
+
+  @NotNull
+  @Override
+  public ID<String, List<Integer>> getName() {
+    return INDEX_ID;
+  }
+
+  @Override
+  public int getVersion() {
+    return VERSION;
+  }
+
+  @NotNull
+  @Override
+  public DataIndexer<String, List<Integer>, FileContent> getIndexer() {
+    return myDataIndexer;
+  }
+
+  @NotNull
+  @Override
+  public KeyDescriptor<String> getKeyDescriptor() {
+    return EnumeratorStringDescriptor.INSTANCE;
+  }
+
+  @NotNull
+  @Override
+  public DataExternalizer<List<Integer>> getValueExternalizer() {
+    return new DataExternalizer<List<Integer>>() {
+      @Override
+      public void save(@NotNull DataOutput out, List<Integer> value) throws IOException {
+        DataInputOutputUtil.writeINT(out, value.size());
+        for (int offset : value) {
+          DataInputOutputUtil.writeINT(out, offset);
+        }
+      }
+
+      @Override
+      public List<Integer> read(@NotNull DataInput in) throws IOException {
+        final int size = DataInputOutputUtil.readINT(in);
+        final List<Integer> result = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+          result.add(DataInputOutputUtil.readINT(in));
+        }
+        return result;
+      }
+    };
+  }
+
+  @NotNull
+  @Override
+  public FileBasedIndex.InputFilter getInputFilter() {
+    return new DefaultFileTypeSpecificInputFilter(JavaFileType.INSTANCE);
+  }
+
+  @Override
+  public boolean dependsOnFileContent() {
+    return true;
+  }
+
+  /**
+   * Finds methods annotated with the given step definition annotations in the scope and passes them with the annotation names
+   * to the processor.
+   *
+   * @param stepDefAnnotations annotation classes marked with {@code cucumber.runtime.java.StepDefAnnotation}
+   */
+  public static void processStepDefinitions(@NotNull final Project project,
+                                            @NotNull final GlobalSearchScope scope,
+                                            @NotNull final Collection<PsiClass> stepDefAnnotations,
+                                            @NotNull final StepDefinitionProcessor processor) {
+    final MultiMap<String, String> annotationNamesByShortName = new MultiMap<>();
+    for (PsiClass annotationClass : stepDefAnnotations) {
+      final String shortName = annotationClass.getName();
+      final String qualifiedName = annotationClass.getQualifiedName();
+      if (shortName != null && qualifiedName != null) {
+        annotationNamesByShortName.putValue(shortName, qualifiedName);
+      }
+    }
+
+    final FileBasedIndex index = FileBasedIndex.getInstance();
+    final PsiManager psiManager = PsiManager.getInstance(project);
+    for (final String shortName : annotationNamesByShortName.keySet()) {
+      final Collection<String> annotationClassNames = annotationNamesByShortName.get(shortName);
+      index.processValues(INDEX_ID, shortName, null, (file, offsets) -> {
+        final PsiFile psiFile = psiManager.findFile(file);
+        if (psiFile == null) return true;
+
+        for (int offset : offsets) {
+          final PsiMethod method = PsiTreeUtil.getParentOfType(psiFile.findElementAt(offset), PsiMethod.class, false);
+          if (method == null) continue;
+
+          for (PsiAnnotation annotation : method.getModifierList().getAnnotations()) {
+            final PsiJavaCodeReferenceElement reference = annotation.getNameReferenceElement();
+            if (reference == null || !shortName.equals(reference.getReferenceName())) continue;
+
+            final String annotationClassName = annotation.getQualifiedName();
+            if (annotationClassName != null && annotationClassNames.contains(annotationClassName)) {
+              processor.process(method, annotationClassName);
+            }
+          }
+        }
+        return true;
+      }, scope);
+    }
+  }
+
+  public interface StepDefinitionProcessor {
+    void process(@NotNull PsiMethod method, @NotNull String annotationClassName);
+  }
+
+  private static class MyDataIndexer implements DataIndexer<String, List<Integer>, FileContent> {
+    @NotNull
+    @Override
+    public Map<String, List<Integer>> map(@NotNull FileContent inputData) {
+      if (!StringUtil.contains(inputData.getContentAsText(), "@")) {
+        return Collections.emptyMap();
+      }
+      final PsiFile psiFile = inputData.getPsiFile();
+      if (!(psiFile instanceof PsiJavaFile)) {
+        return Collections.emptyMap();
+      }
+
+      final Map<String, List<Integer>> result = new HashMap<>();
+      psiFile.accept(new JavaRecursiveElementWalkingVisitor() {
+        @Override
+        public void visitMethod(PsiMethod method) {
+          super.visitMethod(method);
+          for (PsiAnnotation annotation : method.getModifierList().getAnnotations()) {
+            // step definition annotations always have the step pattern as an argument, that leaves out @Override and the like
+            if (annotation.getParameterList().getAttributes().length == 0) continue;
+
+            final PsiJavaCodeReferenceElement reference = annotation.getNameReferenceElement();
+            final String shortName = reference != null ? reference.getReferenceName() : null;
+            if (shortName != null) {
+              List<Integer> offsets = result.get(shortName);
+              if (offsets == null) {
+                offsets = new ArrayList<>();
+                result.put(shortName, offsets);
+              }
+              offsets.add(method.getTextOffset());
+            }
+          }
+        }
+      });
+      return result;
+    }
+  }
+}
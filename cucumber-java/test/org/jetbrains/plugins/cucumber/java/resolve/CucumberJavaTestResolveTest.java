@@ -46,6 +46,14 @@ public class CucumberJavaTestResolveTest extends BaseCucumberJavaResolveTest {
     doTest("negativeLookBehind", "c<caret>a", "step_method");
   }
 
+  public void testWholeStepMatch() {
+    doTest("partialMatch", "I have 5 cu<caret>kes\n", "i_have_cukes");
+  }
+
+  public void testPartialStepMatch() {
+    doTest("partialMatch", "I have 5 cukes tod<caret>ay", null);
+  }
+
   @Override
   protected LightProjectDescriptor getProjectDescriptor() {
     return CucumberJavaTestUtil.createCucumberJava8ProjectDescriptor();
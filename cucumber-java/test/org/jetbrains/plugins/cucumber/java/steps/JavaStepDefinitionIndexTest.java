@@ -0,0 +1,157 @@
+package org.jetbrains.plugins.cucumber.java.steps;
+
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jetbrains.plugins.cucumber.java.CucumberJavaCodeInsightTestCase;
+import org.jetbrains.plugins.cucumber.java.CucumberJavaExtension;
+import org.jetbrains.plugins.cucumber.steps.AbstractStepDefinition;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class JavaStepDefinitionIndexTest extends CucumberJavaCodeInsightTestCase {
+  public void testIndexedStepDefinitions() {
+    myFixture.addFileToProject("test/ShoppingStepdefs.java",
+                               "package test;\n" +
+                               "\n" +
+                               "import cucumber.api.java.Before;\n" +
+                               "import cucumber.api.java.en.Given;\n" +
+                               "import cucumber.api.java.de.*;\n" +
+                               "\n" +
+                               "public class ShoppingStepdefs {\n" +
+                               "  @Before\n" +
+                               "  public void before() {}\n" +
+                               "\n" +
+                               "  @Given(\"^I have (\\\\d+) cukes$\")\n" +
+                               "  public void i_have_cukes(int count) {}\n" +
+                               "\n" +
+                               "  @Angenommen(\"^ich habe (\\\\d+) Gurken$\")\n" +
+                               "  public void ich_habe_gurken(int count) {}\n" +
+                               "\n" +
+                               "  @cucumber.api.java.en.Then(\"^the result is (\\\\d+)$\")\n" +
+                               "  public void the_result_is(int result) {}\n" +
+                               "\n" +
+                               "  @Override\n" +
+                               "  public String toString() { return \"\"; }\n" +
+                               "}");
+
+    final Set<String> found = findStepDefinitions();
+    assertEquals("[i_have_cukes cucumber.api.java.en.Given, " +
+                 "ich_habe_gurken cucumber.api.java.de.Angenommen, " +
+                 "the_result_is cucumber.api.java.en.Then]", found.toString());
+  }
+
+  public void testSeveralOnDemandImports() {
+    myFixture.addFileToProject("test/MixedStepdefs.java",
+                               "package test;\n" +
+                               "\n" +
+                               "import cucumber.api.java.de.*;\n" +
+                               "import cucumber.api.java.en.*;\n" +
+                               "import cucumber.api.java.en.When;\n" +
+                               "\n" +
+                               "public class MixedStepdefs {\n" +
+                               "  @Given(\"^I have (\\\\d+) cukes$\")\n" +
+                               "  public void i_have_cukes(int count) {}\n" +
+                               "\n" +
+                               "  @Wenn(\"^ich (\\\\d+) Gurken esse$\")\n" +
+                               "  public void ich_esse_gurken(int count) {}\n" +
+                               "\n" +
+                               "  @When(\"^I eat (\\\\d+) cukes$\")\n" +
+                               "  public void i_eat_cukes(int count) {}\n" +
+                               "\n" +
+                               "  @Deprecated\n" +
+                               "  public void deprecated() {}\n" +
+                               "}");
+
+    final Set<String> found = findStepDefinitions();
+    assertEquals("[i_eat_cukes cucumber.api.java.en.When, " +
+                 "i_have_cukes cucumber.api.java.en.Given, " +
+                 "ich_esse_gurken cucumber.api.java.de.Wenn]", found.toString());
+  }
+
+  public void testCustomStepAnnotation() {
+    myFixture.addFileToProject("steps/Step.java",
+                               "package steps;\n" +
+                               "\n" +
+                               "import cucumber.runtime.java.StepDefAnnotation;\n" +
+                               "import java.lang.annotation.*;\n" +
+                               "\n" +
+                               "@Retention(RetentionPolicy.RUNTIME)\n" +
+                               "@Target(ElementType.METHOD)\n" +
+                               "@StepDefAnnotation\n" +
+                               "public @interface Step {\n" +
+                               "  String value();\n" +
+                               "}");
+    myFixture.addFileToProject("other/Given.java",
+                               "package other;\n" +
+                               "\n" +
+                               "public @interface Given {\n" +
+                               "  String value();\n" +
+                               "}");
+    myFixture.addFileToProject("test/CustomStepdefs.java",
+                               "package test;\n" +
+                               "\n" +
+                               "import steps.Step;\n" +
+                               "\n" +
+                               "public class CustomStepdefs {\n" +
+                               "  @Step(\"^I have (\\\\d+) cukes$\")\n" +
+                               "  public void i_have_cukes(int count) {}\n" +
+                               "\n" +
+                               "  @steps.Step(\"^I eat (\\\\d+) cukes$\")\n" +
+                               "  public void i_eat_cukes(int count) {}\n" +
+                               "\n" +
+                               "  @other.Given(\"^not a step$\")\n" +
+                               "  public void not_a_step() {}\n" +
+                               "\n" +
+                               "  @cucumber.api.java.en.Given(\"^a step$\")\n" +
+                               "  public void a_step() {}\n" +
+                               "\n" +
+                               "  @SuppressWarnings(\"unused\")\n" +
+                               "  public void suppressed() {}\n" +
+                               "}");
+
+    assertEquals("[a_step cucumber.api.java.en.Given, " +
+                 "i_eat_cukes steps.Step, " +
+                 "i_have_cukes steps.Step]", findStepDefinitions().toString());
+
+    final List<AbstractStepDefinition> definitions = new CucumberJavaExtension().loadStepsFor(null, myFixture.getModule());
+    assertEquals(3, definitions.size());
+  }
+
+  public void testStepDefinitionsAreCachedUntilChanged() {
+    myFixture.addFileToProject("test/ShoppingStepdefs.java",
+                               "package test;\n" +
+                               "\n" +
+                               "import cucumber.api.java.en.Given;\n" +
+                               "\n" +
+                               "public class ShoppingStepdefs {\n" +
+                               "  @Given(\"^I have (\\\\d+) cukes$\")\n" +
+                               "  public void i_have_cukes(int count) {}\n" +
+                               "}");
+
+    final CucumberJavaExtension extension = new CucumberJavaExtension();
+    final List<AbstractStepDefinition> definitions = extension.loadStepsFor(null, myFixture.getModule());
+    assertEquals(1, definitions.size());
+    assertSame(definitions, extension.loadStepsFor(null, myFixture.getModule()));
+
+    myFixture.addFileToProject("test/MoreStepdefs.java",
+                               "package test;\n" +
+                               "\n" +
+                               "import cucumber.api.java.en.When;\n" +
+                               "\n" +
+                               "public class MoreStepdefs {\n" +
+                               "  @When(\"^I eat (\\\\d+) cukes$\")\n" +
+                               "  public void i_eat_cukes(int count) {}\n" +
+                               "}");
+    assertEquals(2, extension.loadStepsFor(null, myFixture.getModule()).size());
+  }
+
+  private Set<String> findStepDefinitions() {
+    final GlobalSearchScope scope = GlobalSearchScope.allScope(getProject());
+    final Set<String> found = new TreeSet<>();
+    JavaStepDefinitionIndex.processStepDefinitions(getProject(), GlobalSearchScope.projectScope(getProject()),
+                                                   CucumberJavaExtension.findStepDefAnnotations(getProject(), scope),
+                                                   (method, annotationClassName) -> found.add(method.getName() + " " + annotationClassName));
+    return found;
+  }
+}
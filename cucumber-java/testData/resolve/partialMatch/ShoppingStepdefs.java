@@ -0,0 +1,9 @@
+package cucumber.examples.java.calculator;
+
+import cucumber.api.java.en.Given;
+
+public class ShoppingStepdefs {
+  @Given("I have (\\d+) cukes")
+  public void i_have_cukes(int count) {
+  }
+}
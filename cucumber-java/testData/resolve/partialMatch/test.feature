@@ -0,0 +1,5 @@
+Feature: Cukes
+
+  Scenario: Partial match
+    Given I have 5 cukes
+    Given I have 5 cukes today
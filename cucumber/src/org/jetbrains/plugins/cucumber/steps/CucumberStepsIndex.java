@@ -10,7 +10,8 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import java.util.HashMap;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.cucumber.BDDFrameworkType;
@@ -21,6 +22,7 @@ import org.jetbrains.plugins.cucumber.psi.GherkinFile;
 import org.jetbrains.plugins.cucumber.psi.GherkinStep;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 /**
@@ -31,6 +33,7 @@ public class CucumberStepsIndex {
 
   private final Map<BDDFrameworkType, CucumberJvmExtensionPoint> myExtensionMap;
   private final Map<CucumberJvmExtensionPoint, Object> myExtensionData;
+  private final ConcurrentMap<Module, ModuleStepDefinitions> myModuleStepDefinitions = ContainerUtil.createConcurrentWeakMap();
   private Project myProject;
 
   public static CucumberStepsIndex getInstance(Project project) {
@@ -118,9 +121,9 @@ public class CucumberStepsIndex {
 
     Map<Class<? extends AbstractStepDefinition>, AbstractStepDefinition> definitionsByClass =
       new HashMap<>();
-    List<AbstractStepDefinition> allSteps = loadStepsFor(featureFile, module);
+    ModuleStepDefinitions stepDefinitions = getModuleStepDefinitions(featureFile, module);
 
-    for (AbstractStepDefinition stepDefinition : allSteps) {
+    for (AbstractStepDefinition stepDefinition : stepDefinitions.myMatcher.findCandidates(substitutedName)) {
       if (stepDefinition.matches(substitutedName) && stepDefinition.supportsStep(step)) {
         final Pattern currentLongestPattern = getPatternByDefinition(definitionsByClass.get(stepDefinition.getClass()));
         final Pattern newPattern = getPatternByDefinition(stepDefinition);
@@ -147,19 +150,51 @@ public class CucumberStepsIndex {
     return definition.getPattern();
   }
 
-  // ToDo: use binary search here
   public List<AbstractStepDefinition> findStepDefinitionsByPattern(@NotNull final String pattern, @NotNull final Module module) {
-    final List<AbstractStepDefinition> allSteps = loadStepsFor(null, module);
     final List<AbstractStepDefinition> result = new ArrayList<>();
-    for (AbstractStepDefinition stepDefinition : allSteps) {
-      final String elementText = stepDefinition.getCucumberRegex();
-      if (elementText != null && elementText.equals(pattern)) {
-        result.add(stepDefinition);
+    final ModuleStepDefinitions stepDefinitions = getModuleStepDefinitions(null, module);
+    for (int i = 0; i < stepDefinitions.myRegexes.size(); i++) {
+      if (pattern.equals(stepDefinitions.myRegexes.get(i))) {
+        result.add(stepDefinitions.myDefinitions.get(i));
       }
     }
     return result;
   }
 
+  /**
+   * Returns step definitions of the module with their matcher. The matcher is built again only if the definitions
+   * or their patterns were changed since it was built for the module.
+   */
+  @NotNull
+  private ModuleStepDefinitions getModuleStepDefinitions(@Nullable final PsiFile featureFile, @NotNull final Module module) {
+    final List<AbstractStepDefinition> definitions = loadStepsFor(featureFile, module);
+    final long modificationCount = PsiManager.getInstance(module.getProject()).getModificationTracker().getModificationCount();
+
+    ModuleStepDefinitions result = myModuleStepDefinitions.get(module);
+    if (result != null && result.myDefinitions.equals(definitions)) {
+      if (result.myModificationCount == modificationCount) {
+        return result;
+      }
+      if (result.myRegexes.equals(getCucumberRegexes(definitions))) {
+        result.myModificationCount = modificationCount;
+        return result;
+      }
+    }
+
+    result = new ModuleStepDefinitions(definitions, modificationCount);
+    myModuleStepDefinitions.put(module, result);
+    return result;
+  }
+
+  @NotNull
+  private static List<String> getCucumberRegexes(@NotNull final List<AbstractStepDefinition> definitions) {
+    final List<String> result = new ArrayList<>(definitions.size());
+    for (AbstractStepDefinition definition : definitions) {
+      result.add(definition.getCucumberRegex());
+    }
+    return result;
+  }
+
   public List<AbstractStepDefinition> getAllStepDefinitions(@NotNull final PsiFile featureFile) {
     final Module module = ModuleUtilCore.findModuleForPsiElement(featureFile);
     if (module == null) return Collections.emptyList();
@@ -213,6 +248,7 @@ public class CucumberStepsIndex {
   }
 
   public void reset() {
+    myModuleStepDefinitions.clear();
     for (CucumberJvmExtensionPoint e : myExtensionMap.values()) {
       e.reset(myProject);
     }
@@ -251,4 +287,23 @@ public class CucumberStepsIndex {
 
     return false;
   }
+
+  private static class ModuleStepDefinitions {
+    private final List<AbstractStepDefinition> myDefinitions;
+    private final List<String> myRegexes;
+    private final StepDefinitionMatcher<AbstractStepDefinition> myMatcher;
+    private volatile long myModificationCount;
+
+    private ModuleStepDefinitions(@NotNull final List<AbstractStepDefinition> definitions, final long modificationCount) {
+      myDefinitions = definitions;
+      myRegexes = getCucumberRegexes(definitions);
+      myModificationCount = modificationCount;
+
+      final List<Pattern> patterns = new ArrayList<>(definitions.size());
+      for (AbstractStepDefinition definition : definitions) {
+        patterns.add(definition.getPattern());
+      }
+      myMatcher = new StepDefinitionMatcher<>(definitions, patterns);
+    }
+  }
 }
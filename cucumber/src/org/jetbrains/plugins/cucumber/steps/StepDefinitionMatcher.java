@@ -0,0 +1,304 @@
+package org.jetbrains.plugins.cucumber.steps;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the items whose patterns may match a step without running the pattern of every item.
+ * The candidates still have to be checked by the items themselves, e.g. with {@link AbstractStepDefinition#matches},
+ * which may require the whole step to match.
+ * <p/>
+ * Most step definitions are anchored and start with plain text, like {@code ^I have (\d+) cukes$}.
+ * Such patterns are put into a trie by their literal prefixes, so only the patterns whose prefix starts the step are run.
+ * Other patterns are run only if the step contains the longest piece of plain text that every match of the pattern contains.
+ * Patterns without such text, or with flags which change the meaning of the text, are always run.
+ */
+class StepDefinitionMatcher<T> {
+  private final List<T> myItems;
+  private final List<Pattern> myPatterns;
+  private final PrefixNode myPrefixes = new PrefixNode();
+  private final Map<String, BitSet> myRequiredTexts = new HashMap<>();
+  private final Map<String, BitSet> myRequiredTextsIgnoringCase = new HashMap<>();
+  private final BitSet myAlwaysRun;
+
+  /**
+   * @param items    items to match
+   * @param patterns patterns of the items, items with null patterns never match
+   */
+  StepDefinitionMatcher(@NotNull List<T> items, @NotNull List<Pattern> patterns) {
+    assert items.size() == patterns.size();
+    myItems = items;
+    myPatterns = patterns;
+    myAlwaysRun = new BitSet(patterns.size());
+
+    List<String> literals = new ArrayList<>();
+    for (int i = 0; i < patterns.size(); i++) {
+      Pattern pattern = patterns.get(i);
+      if (pattern == null) continue;
+
+      int flags = pattern.flags();
+      boolean ignoreCase = (flags & Pattern.CASE_INSENSITIVE) != 0;
+      literals.clear();
+      boolean isPrefix = (flags & ~Pattern.CASE_INSENSITIVE) == 0 && collectLiterals(pattern.pattern(), literals);
+
+      if (literals.isEmpty()) {
+        myAlwaysRun.set(i);
+      }
+      else if (isPrefix) {
+        myPrefixes.add(literals.get(0), ignoreCase, i);
+      }
+      else {
+        String longest = Collections.max(literals, Comparator.comparingInt(String::length));
+        Map<String, BitSet> texts = ignoreCase ? myRequiredTextsIgnoringCase : myRequiredTexts;
+        String key = ignoreCase ? toLowerCase(longest) : longest;
+        BitSet bits = texts.get(key);
+        if (bits == null) {
+          bits = new BitSet();
+          texts.put(key, bits);
+        }
+        bits.set(i);
+      }
+    }
+  }
+
+  /**
+   * @return items whose patterns may be found in the text, in the order they were passed to the constructor.
+   * Every item whose pattern is found in the text is returned, other items may be returned too.
+   */
+  @NotNull
+  List<T> findCandidates(@NotNull String text) {
+    BitSet candidates = (BitSet)myAlwaysRun.clone();
+    myPrefixes.collect(text, 0, candidates);
+    collectContained(text, myRequiredTexts, candidates);
+    collectContained(toLowerCase(text), myRequiredTextsIgnoringCase, candidates);
+
+    List<T> result = new ArrayList<>();
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      if (myPatterns.get(i) != null) {
+        result.add(myItems.get(i));
+      }
+    }
+    return result;
+  }
+
+  private static void collectContained(@NotNull String text, @NotNull Map<String, BitSet> texts, @NotNull BitSet result) {
+    for (Map.Entry<String, BitSet> entry : texts.entrySet()) {
+      if (text.contains(entry.getKey())) {
+        result.or(entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Collects pieces of plain text every match of the regex contains. Only the top level of the regex is examined.
+   *
+   * @return true if the first collected piece starts every match
+   */
+  static boolean collectLiterals(@NotNull String regex, @NotNull List<String> result) {
+    // an alternative may contain none of the text, inline flags may change its meaning
+    if (regex.contains("\\Q") || hasInlineFlags(regex) || hasTopLevelAlternative(regex)) {
+      return false;
+    }
+
+    boolean anchored = regex.startsWith("^");
+    int start = anchored ? 1 : 0;
+    boolean startsWithLiteral = false;
+    StringBuilder literal = new StringBuilder();
+    int depth = 0;
+    int i = start;
+    while (i < regex.length()) {
+      int charStart = i;
+      char c = regex.charAt(i);
+      if (c == '[') {
+        i = skipCharacterClass(regex, i);
+        if (i < 0) break;
+        addLiteral(literal, result);
+        continue;
+      }
+
+      if (c == '(' || c == ')') {
+        depth += c == '(' ? 1 : -1;
+        addLiteral(literal, result);
+        i++;
+        continue;
+      }
+
+      if (c == '\\') {
+        if (i + 1 >= regex.length()) break;
+        char escaped = regex.charAt(i + 1);
+        i += 2;
+        if (depth > 0) continue;
+        if (Character.isLetterOrDigit(escaped)) {
+          // skip arguments of escapes like \x41 or \p{L}
+          while (i < regex.length() && (Character.isLetterOrDigit(regex.charAt(i)) || "{}<>".indexOf(regex.charAt(i)) >= 0)) {
+            i++;
+          }
+          addLiteral(literal, result);
+          continue;
+        }
+        c = escaped;
+      }
+      else {
+        i++;
+        if (depth > 0) continue;
+        if ("{}.*+?^$|".indexOf(c) >= 0) {
+          if (c == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? regex.length() : end + 1;
+          }
+          addLiteral(literal, result);
+          continue;
+        }
+      }
+
+      char quantifier = i < regex.length() ? regex.charAt(i) : 0;
+      if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+        // the character is optional
+        addLiteral(literal, result);
+        continue;
+      }
+
+      if (charStart == start) {
+        startsWithLiteral = true;
+      }
+      literal.append(c);
+      if (quantifier == '+') {
+        addLiteral(literal, result);
+      }
+    }
+    addLiteral(literal, result);
+    return anchored && startsWithLiteral;
+  }
+
+  private static void addLiteral(@NotNull StringBuilder literal, @NotNull List<String> result) {
+    if (literal.length() > 0) {
+      result.add(literal.toString());
+      literal.setLength(0);
+    }
+  }
+
+  private static boolean hasInlineFlags(@NotNull String regex) {
+    for (int i = regex.indexOf("(?"); i >= 0 && i + 2 < regex.length(); i = regex.indexOf("(?", i + 1)) {
+      char kind = regex.charAt(i + 2);
+      if (Character.isLetter(kind) || kind == '-') return true;
+    }
+    return false;
+  }
+
+  private static boolean hasTopLevelAlternative(@NotNull String regex) {
+    if (regex.indexOf('|') < 0) return false;
+
+    int depth = 0;
+    int i = 0;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      if (c == '[') {
+        i = skipCharacterClass(regex, i);
+        if (i < 0) return true;
+        continue;
+      }
+
+      if (c == '\\') {
+        i++;
+      }
+      else if (c == '(') {
+        depth++;
+      }
+      else if (c == ')') {
+        depth--;
+      }
+      else if (c == '|' && depth == 0) {
+        return true;
+      }
+      i++;
+    }
+    return false;
+  }
+
+  /**
+   * @return offset after the character class starting at the offset, or -1 if the class is not closed
+   */
+  private static int skipCharacterClass(@NotNull String regex, int offset) {
+    int depth = 0;
+    int i = offset;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i += 2;
+      }
+      else if (c == '[') {
+        depth++;
+        i++;
+        if (i < regex.length() && regex.charAt(i) == '^') i++;
+        // ']' right after the opening bracket is a plain character
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+      }
+      else if (c == ']' && --depth == 0) {
+        return i + 1;
+      }
+      else {
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Case insensitive patterns without {@link Pattern#UNICODE_CASE} ignore case of US-ASCII characters only
+   */
+  private static char toLowerCase(char c) {
+    return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+  }
+
+  @NotNull
+  private static String toLowerCase(@NotNull String s) {
+    char[] chars = s.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = toLowerCase(chars[i]);
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Case sensitive prefixes are kept as is and case insensitive ones are kept in lower case,
+   * so the nodes for both are looked up for every character of the text.
+   */
+  private static class PrefixNode {
+    private final Map<Character, PrefixNode> myChildren = new HashMap<>();
+    private final BitSet myItems = new BitSet();
+
+    void add(@NotNull String prefix, boolean ignoreCase, int item) {
+      PrefixNode node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        char c = ignoreCase ? toLowerCase(prefix.charAt(i)) : prefix.charAt(i);
+        PrefixNode child = node.myChildren.get(c);
+        if (child == null) {
+          child = new PrefixNode();
+          node.myChildren.put(c, child);
+        }
+        node = child;
+      }
+      node.myItems.set(item);
+    }
+
+    void collect(@NotNull String text, int offset, @NotNull BitSet result) {
+      result.or(myItems);
+      if (offset >= text.length()) return;
+
+      char c = text.charAt(offset);
+      PrefixNode child = myChildren.get(c);
+      if (child != null) {
+        child.collect(text, offset + 1, result);
+      }
+      char lowerCase = toLowerCase(c);
+      if (lowerCase != c) {
+        child = myChildren.get(lowerCase);
+        if (child != null) {
+          child.collect(text, offset + 1, result);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.jetbrains.plugins.cucumber.steps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StepDefinitionMatcherTest {
+  private static final String[] REGEXES = {
+    "^I have (\\d+) cukes$",
+    "^i HAVE (\\d+) cukes in my belly$",
+    "^(?:the|a) user opens \"([^\"]*)\"$",
+    "the user opens \"([^\"]*)\"",
+    "^colou?r is (\\w+)$",
+    "^[Tt]here are (\\d+) items$",
+    "^I (?-i)Exactly$",
+    "I wait (\\d+) seconds|I sleep",
+    "^a\\.b\\(c\\) is done$",
+    "^Case Sensitive$",
+  };
+
+  @Test
+  public void testLiterals() {
+    assertLiterals("^I have (\\d+) cukes$", true, "I have ", " cukes");
+    assertLiterals("^colou?r is (\\w+)$", true, "colo", "r is ");
+    assertLiterals("^(?:the|a) user opens \"([^\"]*)\"$", false, " user opens \"", "\"");
+    assertLiterals("^[Tt]here are$", false, "here are");
+    assertLiterals("^a\\.b+c{2}d\\s$", true, "a.b", "d");
+    assertLiterals("I wait (\\d+) seconds|I sleep", false);
+    assertLiterals("^I (?-i)Exactly$", false);
+    assertLiterals("^\\x41bc$", false);
+  }
+
+  @Test
+  public void testFindMatches() {
+    assertMatches("I have 5 cukes", 0);
+    assertMatches("I HAVE 5 cukes in my belly", 1);
+    assertMatches("A user opens \"index\"", 2);
+    assertMatches("the user opens \"index\"", 2, 3);
+    assertMatches("when the user opens \"index\"", 3);
+    assertMatches("Colour is red", 4);
+    assertMatches("There are 3 items", 5);
+    assertMatches("i Exactly", 6);
+    assertMatches("I sleep", 7);
+    assertMatches("a.b(c) is done", 8);
+    assertMatches("Case Sensitive", 9);
+    assertMatches("case sensitive");
+  }
+
+  @Test
+  public void testSameAsRunningAllPatterns() {
+    List<String> steps = Arrays.asList("I have 1 cukes", "i have 1 cukes in my belly", "THE USER OPENS \"x\"", "color is blue",
+                                       "there are 7 items", "I wait 3 seconds", "a.b(c) is done", "", "I");
+    List<Pattern> patterns = compile();
+    StepDefinitionMatcher<String> matcher = new StepDefinitionMatcher<>(Arrays.asList(REGEXES), patterns);
+    for (String step : steps) {
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < REGEXES.length; i++) {
+        if (patterns.get(i).matcher(step).find()) {
+          expected.add(REGEXES[i]);
+        }
+      }
+      assertEquals(step, expected, findMatches(matcher, Arrays.asList(REGEXES), patterns, step));
+    }
+  }
+
+  @Test
+  public void testCandidatesAreNotConfirmed() {
+    List<Pattern> patterns = Arrays.asList(Pattern.compile("I have (\\d+) cukes"), Pattern.compile("^You have (\\d+) cukes$"));
+    StepDefinitionMatcher<Integer> matcher = new StepDefinitionMatcher<>(Arrays.asList(0, 1), patterns);
+    // the items decide how the pattern has to match, e.g. Java step definitions require the whole step to match
+    assertEquals(Arrays.asList(0), matcher.findCandidates("I have 5 cukes today"));
+    assertEquals(Arrays.asList(0), matcher.findCandidates("I have 5 cukes"));
+    assertEquals(Arrays.asList(1), matcher.findCandidates("You have a cuke"));
+  }
+
+  private static void assertLiterals(String regex, boolean isPrefix, String... literals) {
+    List<String> result = new ArrayList<>();
+    boolean prefix = StepDefinitionMatcher.collectLiterals(regex, result);
+    assertEquals(regex, Arrays.asList(literals), result);
+    if (isPrefix) {
+      assertTrue(regex, prefix);
+    }
+    else {
+      assertFalse(regex, prefix);
+    }
+  }
+
+  private static void assertMatches(String step, Integer... indices) {
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < REGEXES.length; i++) {
+      items.add(i);
+    }
+    List<Pattern> patterns = compile();
+    StepDefinitionMatcher<Integer> matcher = new StepDefinitionMatcher<>(items, patterns);
+    assertEquals(step, Arrays.asList(indices), findMatches(matcher, items, patterns, step));
+  }
+
+  private static <T> List<T> findMatches(StepDefinitionMatcher<T> matcher, List<T> items, List<Pattern> patterns, String step) {
+    List<T> candidates = matcher.findCandidates(step);
+    List<T> result = new ArrayList<>();
+    for (int i = 0; i < patterns.size(); i++) {
+      if (patterns.get(i).matcher(step).find()) {
+        T item = items.get(i);
+        assertTrue(step + " " + patterns.get(i), candidates.contains(item));
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  private static List<Pattern> compile() {
+    List<Pattern> result = new ArrayList<>();
+    for (String regex : REGEXES) {
+      result.add(Pattern.compile(regex, regex.startsWith("^Case") ? 0 : Pattern.CASE_INSENSITIVE));
+    }
+    return result;
+  }
+}
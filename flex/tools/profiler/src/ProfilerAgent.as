@@ -18,6 +18,7 @@ import flash.sampler.isGetterSetter;
 import flash.sampler.pauseSampling;
 import flash.sampler.startSampling;
 import flash.system.System;
+import flash.utils.ByteArray;
 import flash.utils.Dictionary;
 import flash.utils.getQualifiedClassName;
 
@@ -31,6 +32,10 @@ public class ProfilerAgent extends Sprite {
 
   private var stringDict:Object = {};
   private var stringDictSize:uint = 0;
+  private var frameIds:Object = {};
+  private var frameIdsSize:uint = 0;
+  private var cpuSamples:ByteArray = new ByteArray();
+  private var frameBytes:ByteArray = new ByteArray();
   private var lastCPUSample:Sample = null;
   private var id2SampleInfo:Dictionary = new Dictionary();
   private var object2Id:Dictionary = new Dictionary(true);
@@ -65,6 +70,8 @@ public class ProfilerAgent extends Sprite {
   private function clearSlidingStuff():void {
     stringDict = {};
     stringDictSize = 0;
+    frameIds = {};
+    frameIdsSize = 0;
     lastCPUSample = null;
   }
 
@@ -136,7 +143,6 @@ public class ProfilerAgent extends Sprite {
         var lastSampleToCheck:Sample = lastCPUSample;
         lastCPUSample = s;
         var stackFrameCount:uint = (s.stack == null) ? 0:s.stack.length;
-        socket.writeUTF("s\x00" + (s.time - lastSampleTime) + " " + s.stack.length);
 
         var matchedCount:int = 0;
         var key:String;
@@ -152,14 +158,26 @@ public class ProfilerAgent extends Sprite {
           }
         }
 
+        writeVarint(cpuSamples, uint(Math.max(0, s.time - lastSampleTime)));
+        writeVarint(cpuSamples, stackFrameCount - matchedCount);
+        writeVarint(cpuSamples, matchedCount);
         if (stackFrameCount > matchedCount) {
-          writeStack(s.stack, stackFrameCount, matchedCount);
+          writeBinaryStack(s.stack, stackFrameCount, matchedCount);
         }
-        if (matchedCount != 0) socket.writeUTF("u>:" + matchedCount);
       }
       lastSampleTime = s.time;
     }
 
+    // sent before the created objects, which take the duration of the last CPU sample
+    if (cpuSamples.length > 0) {
+      if (connected) {
+        socket.writeUTF(CPU_SAMPLES_PACKET_MARKER);
+        socket.writeUnsignedInt(cpuSamples.length);
+        socket.writeBytes(cpuSamples);
+      }
+      cpuSamples.clear();
+    }
+
     if (connected && collectingLiveObjects) {
       for (var sid:Object in createdIds2Send){
         var info:Array = id2SampleInfo[sid];
@@ -201,6 +219,35 @@ public class ProfilerAgent extends Sprite {
     }
   }
 
+  // frame string is written once with id 0, after that only its id is written
+  private function writeBinaryStack(stack:Object, stackFrameCount:int, matchedCount:int):void {
+    for each(var frame:* in stack) {
+      var key:String = frame.toString();
+      var id:* = frameIds[key];
+      if (id == undefined) {
+        frameIds[key] = ++frameIdsSize;
+        writeVarint(cpuSamples, 0);
+        frameBytes.clear();
+        frameBytes.writeUTFBytes(key);
+        writeVarint(cpuSamples, frameBytes.length);
+        cpuSamples.writeBytes(frameBytes);
+      } else {
+        writeVarint(cpuSamples, id);
+      }
+      --stackFrameCount;
+
+      if (stackFrameCount == matchedCount) break;
+    }
+  }
+
+  private static function writeVarint(bytes:ByteArray, value:uint):void {
+    while (value >= 0x80) {
+      bytes.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes.writeByte(value);
+  }
+
   private function isProfilerAgentSample(sample:Sample):Boolean{
     if(sample.stack && sample.stack.length > 0){
         /*
@@ -268,10 +315,11 @@ public class ProfilerAgent extends Sprite {
   private static const STOP_COLLECTING_LIVE_OBJECTS:int = 6;
   private static const VERSION_COMMAND_MARKER:String = "v\x00 ";
 
-  private static const VERSION:int = 4;
+  private static const VERSION:int = 5;
 
   private static const END_COMMAND_MARKER:String = "e\x00 ";
   private static const SI_COMMAND_MARKER:String = "si\x00 ";
+  private static const CPU_SAMPLES_PACKET_MARKER:String = "sb\x00";
 
   private function socketDataHandler(event:ProgressEvent):void {
     if (!connected) return;
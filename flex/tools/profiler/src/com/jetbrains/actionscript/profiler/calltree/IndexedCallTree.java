@@ -0,0 +1,316 @@
+package com.jetbrains.actionscript.profiler.calltree;
+
+import com.intellij.openapi.util.Pair;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import gnu.trove.THashMap;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only snapshot of a {@link CallTreeNode} tree for the merged (hot spots, callers, callees) views.
+ * Frames are interned to ids, nodes are numbered in depth-first order and stored in int/long arrays,
+ * so the subtree of the node {@code n} is the range {@code [n, mySubtreeEnds[n])}. Nodes of each frame are listed
+ * in {@link #myFrameNodes}, so queries start from the nodes of the selected frame instead of walking the whole tree.
+ * <p/>
+ * Time maps of the whole tree and callees of a single frame (a click in the hot spots table) are computed once and cached.
+ */
+final class IndexedCallTree {
+  private static final int ROOT = 0;
+  private static final int NO_FRAME = -1;
+
+  private final FrameInfo[] myFrames;
+  private final TObjectIntHashMap<FrameInfo> myFrameIds = new TObjectIntHashMap<>();
+
+  // per node, node 0 is the root
+  private final int[] myFrameIdsOfNodes;
+  private final int[] myParents;
+  private final int[] mySubtreeEnds;
+  private final long[] myCumulativeTimes;
+  private final long[] mySelfTimes;
+
+  // nodes of frame f are myFrameNodes[myFrameNodeStarts[f] .. myFrameNodeStarts[f + 1] - 1], in depth-first order
+  private final int[] myFrameNodeStarts;
+  private final int[] myFrameNodes;
+
+  private TimeMaps myTimeMaps;
+  private final TIntObjectHashMap<TimeMaps> mySingleFrameCalleesTimeMaps = new TIntObjectHashMap<>();
+
+  private static class TimeMaps {
+    private final int[] myFrameIds;
+    private final long[] myCumulativeTimes;
+    private final long[] mySelfTimes;
+
+    private TimeMaps(int[] frameIds, long[] cumulativeTimes, long[] selfTimes) {
+      myFrameIds = frameIds;
+      myCumulativeTimes = cumulativeTimes;
+      mySelfTimes = selfTimes;
+    }
+  }
+
+  IndexedCallTree(CallTreeNode root) {
+    final List<FrameInfo> frames = new ArrayList<>();
+    final TIntArrayList frameIdsOfNodes = new TIntArrayList();
+    final TIntArrayList parents = new TIntArrayList();
+    final List<CallTreeNode> nodes = new ArrayList<>();
+
+    // depth-first numbering without recursion, call trees of recursive functions may be very deep
+    final List<CallTreeNode> stack = new ArrayList<>();
+    final TIntArrayList parentStack = new TIntArrayList();
+    stack.add(root);
+    parentStack.add(-1);
+    while (!stack.isEmpty()) {
+      final CallTreeNode node = stack.remove(stack.size() - 1);
+      final int parent = parentStack.remove(parentStack.size() - 1);
+      final int index = nodes.size();
+      nodes.add(node);
+      parents.add(parent);
+
+      int frameId = NO_FRAME;
+      if (index != ROOT) {
+        final FrameInfo frameInfo = node.getFrameInfo();
+        if (myFrameIds.containsKey(frameInfo)) {
+          frameId = myFrameIds.get(frameInfo);
+        }
+        else {
+          frameId = frames.size();
+          frames.add(frameInfo);
+          myFrameIds.put(frameInfo, frameId);
+        }
+      }
+      frameIdsOfNodes.add(frameId);
+
+      for (CallTreeNode child : node.getChildren()) {
+        stack.add(child);
+        parentStack.add(index);
+      }
+    }
+
+    final int nodeCount = nodes.size();
+    myFrames = frames.toArray(FrameInfo.EMPTY_FRAME_INFO_ARRAY);
+    myFrameIdsOfNodes = frameIdsOfNodes.toNativeArray();
+    myParents = parents.toNativeArray();
+    myCumulativeTimes = new long[nodeCount];
+    mySelfTimes = new long[nodeCount];
+    mySubtreeEnds = new int[nodeCount];
+
+    for (int i = 0; i < nodeCount; i++) {
+      myCumulativeTimes[i] = nodes.get(i).getCumulativeTiming();
+      mySelfTimes[i] = myCumulativeTimes[i];
+      mySubtreeEnds[i] = i + 1;
+    }
+    // children have greater numbers than their parents
+    for (int i = nodeCount - 1; i > ROOT; i--) {
+      final int parent = myParents[i];
+      mySelfTimes[parent] -= myCumulativeTimes[i];
+      mySubtreeEnds[parent] = Math.max(mySubtreeEnds[parent], mySubtreeEnds[i]);
+    }
+
+    myFrameNodeStarts = new int[myFrames.length + 1];
+    for (int i = ROOT + 1; i < nodeCount; i++) {
+      myFrameNodeStarts[myFrameIdsOfNodes[i] + 1]++;
+    }
+    for (int f = 0; f < myFrames.length; f++) {
+      myFrameNodeStarts[f + 1] += myFrameNodeStarts[f];
+    }
+    myFrameNodes = new int[nodeCount - 1];
+    final int[] filled = Arrays.copyOf(myFrameNodeStarts, myFrames.length);
+    for (int i = ROOT + 1; i < nodeCount; i++) {
+      myFrameNodes[filled[myFrameIdsOfNodes[i]]++] = i;
+    }
+  }
+
+  /*
+   * @return pair <cumulative time map, self time map>
+   */
+  synchronized Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getTimeMaps() {
+    if (myTimeMaps == null) {
+      myTimeMaps = buildTimeMaps(getChildren(new int[]{ROOT}));
+    }
+    return toMaps(myTimeMaps, null);
+  }
+
+  /*
+   * Callers are the nodes that call {@code frames} in reverse order, only the nearest to the root ones among the nodes of the same frame.
+   * @return pair <cumulative time map, self time map> of callers
+   */
+  Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getCallersTimeMaps(FrameInfo[] frames) {
+    final int[] frameIds = getFrameIds(frames);
+    if (frameIds == null || frameIds.length == 0) {
+      return toMaps(new TimeMaps(new int[0], new long[0], new long[0]), null);
+    }
+
+    final TIntArrayList candidates = new TIntArrayList();
+    for (int chainEnd : findChainEnds(frameIds)) {
+      int caller = chainEnd;
+      for (int i = 0; i < frameIds.length; i++) {
+        caller = myParents[caller];
+      }
+      if (caller != ROOT) {
+        candidates.add(caller);
+      }
+    }
+    candidates.sort();
+
+    // skip candidates that have an added ancestor of the same frame
+    final TIntArrayList callers = new TIntArrayList();
+    final boolean[] callerFrames = new boolean[myFrames.length];
+    final int[] activeCounts = new int[myFrames.length];
+    final TIntArrayList path = new TIntArrayList();
+    for (int i = 0; i < candidates.size(); i++) {
+      final int candidate = candidates.get(i);
+      while (!path.isEmpty() && mySubtreeEnds[path.get(path.size() - 1)] <= candidate) {
+        activeCounts[myFrameIdsOfNodes[path.remove(path.size() - 1)]]--;
+      }
+      final int frameId = myFrameIdsOfNodes[candidate];
+      if (activeCounts[frameId] == 0) {
+        callers.add(candidate);
+        callerFrames[frameId] = true;
+        activeCounts[frameId]++;
+        path.add(candidate);
+      }
+    }
+
+    return toMaps(buildTimeMaps(callers.toNativeArray()), callerFrames);
+  }
+
+  /*
+   * Callees are the children of the nodes that end the {@code frames} call chain.
+   * @return pair <cumulative time map, self time map> of callees and their subcalls
+   */
+  synchronized Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> getCalleesTimeMaps(FrameInfo[] frames) {
+    if (frames.length == 0) {
+      return getTimeMaps();
+    }
+
+    final int[] frameIds = getFrameIds(frames);
+    if (frameIds == null) {
+      return toMaps(new TimeMaps(new int[0], new long[0], new long[0]), null);
+    }
+
+    if (frameIds.length == 1) {
+      TimeMaps timeMaps = mySingleFrameCalleesTimeMaps.get(frameIds[0]);
+      if (timeMaps == null) {
+        timeMaps = buildTimeMaps(getChildren(findChainEnds(frameIds)));
+        mySingleFrameCalleesTimeMaps.put(frameIds[0], timeMaps);
+      }
+      return toMaps(timeMaps, null);
+    }
+
+    return toMaps(buildTimeMaps(getChildren(findChainEnds(frameIds))), null);
+  }
+
+  private int[] getFrameIds(FrameInfo[] frames) {
+    final int[] result = new int[frames.length];
+    for (int i = 0; i < frames.length; i++) {
+      if (!myFrameIds.containsKey(frames[i])) return null;
+      result[i] = myFrameIds.get(frames[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @param frameIds call chain, {@code frameIds[0]} is the innermost frame
+   * @return nodes of the innermost frame whose ancestors complete the chain
+   */
+  private int[] findChainEnds(int[] frameIds) {
+    final int innermost = frameIds[0];
+    final TIntArrayList result = new TIntArrayList();
+    for (int i = myFrameNodeStarts[innermost]; i < myFrameNodeStarts[innermost + 1]; i++) {
+      final int node = myFrameNodes[i];
+      int current = node;
+      boolean matches = true;
+      for (int j = 1; j < frameIds.length && matches; j++) {
+        current = myParents[current];
+        matches = myFrameIdsOfNodes[current] == frameIds[j];
+      }
+      if (matches) {
+        result.add(node);
+      }
+    }
+    return result.toNativeArray();
+  }
+
+  private int[] getChildren(int[] nodes) {
+    final TIntArrayList result = new TIntArrayList();
+    for (int node : nodes) {
+      for (int child = node + 1; child < mySubtreeEnds[node]; child = mySubtreeEnds[child]) {
+        result.add(child);
+      }
+    }
+    result.sort();
+    return result.toNativeArray();
+  }
+
+  /**
+   * Cumulative time of a frame is the sum over its nodes that don't have an ancestor of the same frame within the tracked subtrees,
+   * self time is the sum over all its nodes.
+   *
+   * @param startNodes roots of tracked subtrees in depth-first order
+   */
+  private TimeMaps buildTimeMaps(int[] startNodes) {
+    final long[] cumulativeTimes = new long[myFrames.length];
+    final long[] selfTimes = new long[myFrames.length];
+    final boolean[] seen = new boolean[myFrames.length];
+    final int[] activeCounts = new int[myFrames.length];
+    final int[] path = new int[myParents.length];
+
+    int trackedEnd = -1;
+    for (int start : startNodes) {
+      if (start < trackedEnd) continue; // already tracked as a part of the previous subtree
+      trackedEnd = mySubtreeEnds[start];
+
+      int depth = 0;
+      for (int node = start; node < trackedEnd; node++) {
+        while (depth > 0 && mySubtreeEnds[path[depth - 1]] <= node) {
+          activeCounts[myFrameIdsOfNodes[path[--depth]]]--;
+        }
+
+        final int frameId = myFrameIdsOfNodes[node];
+        if (activeCounts[frameId] == 0) {
+          cumulativeTimes[frameId] += myCumulativeTimes[node];
+        }
+        selfTimes[frameId] += mySelfTimes[node];
+        seen[frameId] = true;
+
+        activeCounts[frameId]++;
+        path[depth++] = node;
+      }
+      while (depth > 0) {
+        activeCounts[myFrameIdsOfNodes[path[--depth]]]--;
+      }
+    }
+
+    final TIntArrayList frameIds = new TIntArrayList();
+    for (int f = 0; f < seen.length; f++) {
+      if (seen[f]) frameIds.add(f);
+    }
+    final long[] resultCumulativeTimes = new long[frameIds.size()];
+    final long[] resultSelfTimes = new long[frameIds.size()];
+    for (int i = 0; i < frameIds.size(); i++) {
+      resultCumulativeTimes[i] = cumulativeTimes[frameIds.get(i)];
+      resultSelfTimes[i] = selfTimes[frameIds.get(i)];
+    }
+    return new TimeMaps(frameIds.toNativeArray(), resultCumulativeTimes, resultSelfTimes);
+  }
+
+  /**
+   * Maps are new every time, callers are free to modify them.
+   */
+  private Pair<Map<FrameInfo, Long>, Map<FrameInfo, Long>> toMaps(TimeMaps timeMaps, boolean[] frameFilter) {
+    final Map<FrameInfo, Long> cumulativeTimeMap = new THashMap<>(timeMaps.myFrameIds.length);
+    final Map<FrameInfo, Long> selfTimeMap = new THashMap<>(timeMaps.myFrameIds.length);
+    for (int i = 0; i < timeMaps.myFrameIds.length; i++) {
+      final int frameId = timeMaps.myFrameIds[i];
+      if (frameFilter != null && !frameFilter[frameId]) continue;
+      cumulativeTimeMap.put(myFrames[frameId], timeMaps.myCumulativeTimes[i]);
+      selfTimeMap.put(myFrames[frameId], timeMaps.mySelfTimes[i]);
+    }
+    return Pair.create(cumulativeTimeMap, selfTimeMap);
+  }
+}
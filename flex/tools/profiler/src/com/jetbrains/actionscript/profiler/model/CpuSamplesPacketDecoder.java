@@ -0,0 +1,129 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import com.jetbrains.actionscript.profiler.sampler.FrameInfo;
+import com.jetbrains.actionscript.profiler.sampler.FrameInfoBuilder;
+import com.jetbrains.actionscript.profiler.sampler.Sample;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes binary CPU sample packets sent by the agent since version 5.
+ * After the {@link #MARKER} string the packet has a 4-byte big-endian length and the samples, all numbers are unsigned varints:
+ * <pre>
+ * sample := duration newFrameCount reusedFrameCount frame{newFrameCount}
+ * frame  := frameId | 0 utf8Length utf8Bytes
+ * </pre>
+ * A frame string is sent once, with id 0, and gets the next id in the frame table; then it is referenced by id.
+ * Reused frames are the last {@code reusedFrameCount} frames of the previous sample.
+ */
+class CpuSamplesPacketDecoder {
+  static final String MARKER = "sb\0";
+
+  private final ProfilerDataConsumer myDataConsumer;
+  private final FrameInfoBuilder myFrameInfoBuilder = new FrameInfoBuilder();
+
+  private FrameInfo[] myFrames = new FrameInfo[1024]; // by frame id, id 0 is not used
+  private int myFrameCount;
+  private FrameInfo[] myLastSampleFrames = FrameInfo.EMPTY_FRAME_INFO_ARRAY;
+  private long myLastSampleDuration = -1;
+
+  private byte[] myBuffer = new byte[8192];
+  private int myPosition;
+  private int myLimit;
+
+  CpuSamplesPacketDecoder(ProfilerDataConsumer dataConsumer) {
+    myDataConsumer = dataConsumer;
+  }
+
+  void readPacket(DataInputStream inputStream) throws IOException {
+    final int length = inputStream.readInt();
+    if (length < 0) throw new IOException("Bad packet length: " + length);
+    if (length > myBuffer.length) {
+      myBuffer = new byte[Math.max(length, myBuffer.length * 2)];
+    }
+    inputStream.readFully(myBuffer, 0, length);
+    myPosition = 0;
+    myLimit = length;
+
+    while (myPosition < myLimit) {
+      readSample();
+    }
+  }
+
+  private void readSample() throws IOException {
+    final long duration = readVarint();
+    final int newFrameCount = readCount();
+    final int reusedFrameCount = readCount();
+    if (reusedFrameCount > myLastSampleFrames.length) {
+      throw new IOException("Bad reused frame count: " + reusedFrameCount + ", previous sample has " + myLastSampleFrames.length);
+    }
+
+    final int frameCount = newFrameCount + reusedFrameCount;
+    final FrameInfo[] frames = frameCount > 0 ? new FrameInfo[frameCount] : FrameInfo.EMPTY_FRAME_INFO_ARRAY;
+    for (int i = 0; i < newFrameCount; i++) {
+      frames[i] = readFrame();
+    }
+    System.arraycopy(myLastSampleFrames, myLastSampleFrames.length - reusedFrameCount, frames, newFrameCount, reusedFrameCount);
+
+    myLastSampleFrames = frames;
+    myLastSampleDuration = duration;
+    myDataConsumer.process(new Sample(duration, frames));
+  }
+
+  private FrameInfo readFrame() throws IOException {
+    final int id = readCount();
+    if (id != 0) {
+      if (id > myFrameCount) throw new IOException("Unknown frame id: " + id);
+      return myFrames[id];
+    }
+
+    final int length = readCount();
+    if (length > myLimit - myPosition) throw new EOFException();
+    final FrameInfo frameInfo = myFrameInfoBuilder.buildInstance(new String(myBuffer, myPosition, length, StandardCharsets.UTF_8));
+    myPosition += length;
+
+    if (++myFrameCount == myFrames.length) {
+      myFrames = Arrays.copyOf(myFrames, myFrames.length * 2);
+    }
+    myFrames[myFrameCount] = frameInfo;
+    return frameInfo;
+  }
+
+  private int readCount() throws IOException {
+    final long value = readVarint();
+    if (value > Integer.MAX_VALUE) throw new IOException("Bad count: " + value);
+    return (int)value;
+  }
+
+  private long readVarint() throws IOException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (myPosition >= myLimit) throw new EOFException();
+      final byte b = myBuffer[myPosition++];
+      result |= (long)(b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return result;
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * @return duration of the last decoded sample, -1 if there were no samples
+   */
+  long getLastSampleDuration() {
+    return myLastSampleDuration;
+  }
+
+  /**
+   * The agent starts a new frame table when CPU profiling is stopped.
+   */
+  void clearProfilingState() {
+    Arrays.fill(myFrames, 0, myFrameCount + 1, null);
+    myFrameCount = 0;
+    myLastSampleFrames = FrameInfo.EMPTY_FRAME_INFO_ARRAY;
+    myLastSampleDuration = -1;
+  }
+}
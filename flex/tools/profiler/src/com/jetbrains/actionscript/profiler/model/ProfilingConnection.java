@@ -23,9 +23,12 @@ public class ProfilingConnection {
   private DataInputStream myInputStream;
   private PacketProcessor myCurrentPacketProcessor;
   private final Map<String, PacketProcessor> myInitialString2ProcessorsMap = new HashMap<>();
+  private final CpuSamplesPacketDecoder myCpuSamplesPacketDecoder;
   private final Callback myIoHandler;
   private final int myPort;
-  private static final int ourAgentVersion = 4;
+  private static final int ourAgentVersion = 5;
+  // agents of version 4 send CPU samples in the text format
+  private static final int ourMinAgentVersion = 4;
   private boolean myAbortingSocketConnection;
   private boolean myDisposed;
 
@@ -72,6 +75,7 @@ public class ProfilingConnection {
       new SampleInfoProcessor(sampleProcessor)
     );
 
+    myCpuSamplesPacketDecoder = new CpuSamplesPacketDecoder(sampleProcessor);
     myIoHandler = ioHandler;
   }
 
@@ -109,23 +113,7 @@ public class ProfilingConnection {
           LOG.debug(x);
           bytesRead += x.length();
           try {
-            if (myCurrentPacketProcessor == null) {
-              String marker = x;
-              int i = x.indexOf('\0');
-              if (i != -1) marker = x.substring(0, i + 1);
-              myCurrentPacketProcessor = myInitialString2ProcessorsMap.get(marker);
-              if (myCurrentPacketProcessor != null) {
-                myCurrentPacketProcessor.startingPacket(x);
-              }
-            }
-            if (myCurrentPacketProcessor != null) {
-              PacketProcessor.ProcessingResult processingResult = myCurrentPacketProcessor.process(x);
-              if (processingResult == PacketProcessor.ProcessingResult.FINISHED) myCurrentPacketProcessor = null;
-              if (processingResult == PacketProcessor.ProcessingResult.STOP) return;
-            }
-            else {
-              LOG.warn("No processing:" + x);
-            }
+            if (!processInput(x, myInputStream)) return;
           }
           catch (Exception e) {
             LOG.error(e);
@@ -142,6 +130,41 @@ public class ProfilingConnection {
     });
   }
 
+  /**
+   * @param x string read from the agent
+   * @param inputStream stream to read the rest of a binary packet from
+   * @return false if the connection must stop reading
+   */
+  boolean processInput(String x, DataInputStream inputStream) throws IOException {
+    if (myCurrentPacketProcessor == null && CpuSamplesPacketDecoder.MARKER.equals(x)) {
+      myCpuSamplesPacketDecoder.readPacket(inputStream);
+      // memory samples are still sent as text and take the duration of the last CPU sample, as in the text protocol
+      final long duration = myCpuSamplesPacketDecoder.getLastSampleDuration();
+      if (duration != -1) {
+        getBatchSamplesProcessor().setSampleDuration(duration);
+      }
+      return true;
+    }
+    if (myCurrentPacketProcessor == null) {
+      String marker = x;
+      int i = x.indexOf('\0');
+      if (i != -1) marker = x.substring(0, i + 1);
+      myCurrentPacketProcessor = myInitialString2ProcessorsMap.get(marker);
+      if (myCurrentPacketProcessor != null) {
+        myCurrentPacketProcessor.startingPacket(x);
+      }
+    }
+    if (myCurrentPacketProcessor != null) {
+      PacketProcessor.ProcessingResult processingResult = myCurrentPacketProcessor.process(x);
+      if (processingResult == PacketProcessor.ProcessingResult.FINISHED) myCurrentPacketProcessor = null;
+      if (processingResult == PacketProcessor.ProcessingResult.STOP) return false;
+    }
+    else {
+      LOG.warn("No processing:" + x);
+    }
+    return true;
+  }
+
   private void ensurePolicyServedEvenOnFlashSecurityPort() {
     ApplicationManager.getApplication().executeOnPooledThread(() -> {
       try {
@@ -169,8 +192,12 @@ public class ProfilingConnection {
   private static final int STOP_COLLECTING_LIVE_OBJECTS = 6;
 
   private void clearProfilingState() {
-    final PacketProcessor processor = myInitialString2ProcessorsMap.get(BatchSamplesProcessor.BATCH_MARKER);
-    ((BatchSamplesProcessor)processor).clearProfilingState();
+    getBatchSamplesProcessor().clearProfilingState();
+    myCpuSamplesPacketDecoder.clearProfilingState();
+  }
+
+  private BatchSamplesProcessor getBatchSamplesProcessor() {
+    return (BatchSamplesProcessor)myInitialString2ProcessorsMap.get(BatchSamplesProcessor.BATCH_MARKER);
   }
 
   interface Callback {
@@ -402,6 +429,10 @@ public class ProfilingConnection {
       }
     }
 
+    void setSampleDuration(long sampleDuration) {
+      this.sampleDuration = sampleDuration;
+    }
+
     private String getClassName(String className) {
       if (Character.isDigit(className.charAt(0))) {
         className = typeDictionary.get(className);
@@ -460,7 +491,8 @@ public class ProfilingConnection {
 
     @Override
     ProcessingResult process(String output) throws IOException {
-      if (Integer.parseInt(output.substring(output.lastIndexOf(' ') + 1)) != ourAgentVersion) {
+      final int version = Integer.parseInt(output.substring(output.lastIndexOf(' ') + 1));
+      if (version < ourMinAgentVersion || version > ourAgentVersion) {
         LOG.warn("Version mismatch");
         myIoHandler.finished(null, new AgentVersionMismatchProblem());
         myOutputStream.close();
@@ -0,0 +1,227 @@
+package com.jetbrains.actionscript.profiler.model;
+
+import com.jetbrains.actionscript.profiler.sampler.CreateObjectSample;
+import com.jetbrains.actionscript.profiler.sampler.Sample;
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Encodes the same samples as agents of version 4 (text) and 5 (binary CPU samples) write them
+ * and checks that both streams are decoded to the same samples.
+ */
+public class CpuSamplesPacketDecoderTest extends TestCase {
+  private static final String MAIN = "com.test::Main/main()[C:\\src;com\\test;Main.as:10]";
+  private static final String FOO = "com.test::Foo/foo()[C:\\src;com\\test;Foo.as:20]";
+  private static final String BAR = "com.test::Foo/get bar()[C:\\src;com\\test;Foo.as:30]";
+  private static final String ANONYMOUS = "Function/<anonymous>()";
+
+  public void testCpuSamples() throws IOException {
+    List<AgentSample> samples = Arrays.asList(
+      cpu(5, FOO, MAIN),
+      cpu(3, BAR, FOO, MAIN),
+      cpu(4, FOO, MAIN),
+      cpu(1, FOO, MAIN),
+      cpu(300, ANONYMOUS),
+      cpu(2),
+      cpu(7, BAR, FOO, MAIN)
+    );
+
+    List<Sample> text = decode(encodeText(samples));
+    List<Sample> binary = decode(encodeBinary(samples));
+    assertEquals(samples.size(), text.size());
+    assertSameSamples(text, binary);
+    assertEquals(300, binary.get(4).duration);
+    assertEquals(3, binary.get(6).frames.length);
+  }
+
+  public void testMemorySamples() throws IOException {
+    List<AgentSample> samples = Arrays.asList(
+      cpu(5, FOO, MAIN),
+      cpu(4, BAR, FOO, MAIN),
+      create(1, "flash.display::Sprite", 40, FOO, MAIN),
+      cpu(7, ANONYMOUS),
+      cpu(2, FOO, MAIN),
+      create(2, "Object", 16),
+      create(3, "com.test::Foo", 24, BAR, FOO, MAIN)
+    );
+
+    List<Sample> text = decode(encodeText(samples));
+    List<Sample> binary = decode(encodeBinary(samples));
+    assertEquals(samples.size(), text.size());
+    assertSameSamples(text, binary);
+
+    // created objects take the duration of the last CPU sample before them
+    assertEquals(4, binary.get(2).duration);
+    assertEquals(2, binary.get(5).duration);
+    assertEquals("flash.display.Sprite", ((CreateObjectSample)binary.get(2)).className);
+  }
+
+  private static void assertSameSamples(List<Sample> expected, List<Sample> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Sample e = expected.get(i);
+      Sample a = actual.get(i);
+      assertEquals(e.getClass(), a.getClass());
+      assertEquals("duration of " + i, e.duration, a.duration);
+      assertEquals("frames of " + i, e.frames.length, a.frames.length);
+      for (int j = 0; j < e.frames.length; j++) {
+        assertEquals(e.frames[j].toString(), a.frames[j].toString());
+        assertEquals(e.frames[j].getFileLine(), a.frames[j].getFileLine());
+      }
+      if (e instanceof CreateObjectSample) {
+        assertEquals(((CreateObjectSample)e).id, ((CreateObjectSample)a).id);
+        assertEquals(((CreateObjectSample)e).className, ((CreateObjectSample)a).className);
+        assertEquals(((CreateObjectSample)e).size, ((CreateObjectSample)a).size);
+      }
+    }
+  }
+
+  private static List<Sample> decode(byte[] bytes) throws IOException {
+    final List<Sample> result = new ArrayList<>();
+    ProfilingConnection connection = new ProfilingConnection(0, new ProfilerDataConsumer(null) {
+      @Override
+      public void process(Sample sample) {
+        result.add(sample);
+      }
+    }, (data, ex) -> fail("Unexpected callback: " + data + " " + ex));
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    while (in.available() > 0) {
+      assertTrue(connection.processInput(in.readUTF(), in));
+    }
+    return result;
+  }
+
+  /**
+   * Stream of agent version 4, all samples are strings.
+   */
+  private static byte[] encodeText(List<AgentSample> samples) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    Map<String, String> dictionary = new HashMap<>();
+    String[] lastCpuStack = null;
+    for (AgentSample sample : samples) {
+      if (sample.myType == null) {
+        int matchedCount = matchedCount(lastCpuStack, sample.myStack);
+        lastCpuStack = sample.myStack;
+        out.writeUTF("s\0" + sample.myDuration + " " + sample.myStack.length);
+        writeStack(out, dictionary, sample.myStack, matchedCount);
+        if (matchedCount != 0) out.writeUTF("u>:" + matchedCount);
+      }
+      else {
+        writeCreateObjectSample(out, dictionary, sample);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Stream of agent version 5, CPU samples are collected into binary packets which are sent before memory samples.
+   */
+  private static byte[] encodeBinary(List<AgentSample> samples) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    Map<String, String> dictionary = new HashMap<>();
+    Map<String, Integer> frameIds = new HashMap<>();
+    ByteArrayOutputStream packet = new ByteArrayOutputStream();
+    String[] lastCpuStack = null;
+    for (AgentSample sample : samples) {
+      if (sample.myType == null) {
+        int matchedCount = matchedCount(lastCpuStack, sample.myStack);
+        lastCpuStack = sample.myStack;
+        writeVarint(packet, sample.myDuration);
+        writeVarint(packet, sample.myStack.length - matchedCount);
+        writeVarint(packet, matchedCount);
+        for (int i = 0; i < sample.myStack.length - matchedCount; i++) {
+          Integer id = frameIds.get(sample.myStack[i]);
+          if (id == null) {
+            frameIds.put(sample.myStack[i], frameIds.size() + 1);
+            byte[] utf8 = sample.myStack[i].getBytes(StandardCharsets.UTF_8);
+            writeVarint(packet, 0);
+            writeVarint(packet, utf8.length);
+            packet.write(utf8);
+          }
+          else {
+            writeVarint(packet, id);
+          }
+        }
+      }
+      else {
+        writePacket(out, packet);
+        writeCreateObjectSample(out, dictionary, sample);
+      }
+    }
+    writePacket(out, packet);
+    return bytes.toByteArray();
+  }
+
+  private static void writePacket(DataOutputStream out, ByteArrayOutputStream packet) throws IOException {
+    if (packet.size() == 0) return;
+    out.writeUTF(CpuSamplesPacketDecoder.MARKER);
+    out.writeInt(packet.size());
+    packet.writeTo(out);
+    packet.reset();
+  }
+
+  private static void writeCreateObjectSample(DataOutputStream out, Map<String, String> dictionary, AgentSample sample)
+    throws IOException {
+    out.writeUTF("c\0" + sample.myStack.length + " " + sample.myId + " " + sample.myType + " " + sample.mySize);
+    writeStack(out, dictionary, sample.myStack, 0);
+  }
+
+  private static void writeStack(DataOutputStream out, Map<String, String> dictionary, String[] stack, int matchedCount)
+    throws IOException {
+    for (int i = 0; i < stack.length - matchedCount; i++) {
+      String value = dictionary.get(stack[i]);
+      if (value == null) {
+        dictionary.put(stack[i], String.valueOf(dictionary.size() + 1));
+        value = stack[i];
+      }
+      out.writeUTF(value);
+    }
+  }
+
+  private static int matchedCount(String[] lastStack, String[] stack) {
+    if (lastStack == null) return 0;
+    int result = 0;
+    for (int i = lastStack.length - 1, j = stack.length - 1; i >= 0 && j >= 0 && lastStack[i].equals(stack[j]); i--, j--) {
+      result++;
+    }
+    return result;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while (value >= 0x80) {
+      out.write((int)(value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int)value);
+  }
+
+  private static AgentSample cpu(int duration, String... stack) {
+    return new AgentSample(duration, stack, 0, null, 0);
+  }
+
+  private static AgentSample create(int id, String type, int size, String... stack) {
+    return new AgentSample(0, stack, id, type, size);
+  }
+
+  private static class AgentSample {
+    private final int myDuration;
+    private final String[] myStack;
+    private final int myId;
+    private final String myType; // null for CPU samples
+    private final int mySize;
+
+    private AgentSample(int duration, String[] stack, int id, String type, int size) {
+      myDuration = duration;
+      myStack = stack;
+      myId = id;
+      myType = type;
+      mySize = size;
+    }
+  }
+}
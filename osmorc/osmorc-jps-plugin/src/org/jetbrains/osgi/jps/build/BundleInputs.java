@@ -0,0 +1,189 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.osgi.jps.build;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Settings and file contents a bundle was built from, along with the bundles built from them.
+ * When a module is recompiled without changes to its classes (e.g. because of a change in a comment or in a dependency
+ * it doesn't use), the inputs stay the same and the bundles of the previous build are kept.
+ * <p/>
+ * Files are hashed only when their size or modification time differ from the previous build.
+ */
+final class BundleInputs {
+  private static final int VERSION = 1;
+
+  private final byte[] mySettings;
+  private final Map<String, FileStamp> myFiles;
+  private final Map<String, FileStamp> myOutputs = new TreeMap<>();
+
+  private BundleInputs(@NotNull byte[] settings, @NotNull Map<String, FileStamp> files) {
+    mySettings = settings;
+    myFiles = files;
+  }
+
+  /**
+   * Collects the files under the roots (which may be files or directories), reusing hashes of unchanged files from the previous inputs.
+   */
+  @NotNull
+  static BundleInputs collect(@NotNull String settings, @NotNull Collection<File> roots, @Nullable BundleInputs previous) throws IOException {
+    Map<String, FileStamp> files = new TreeMap<>();
+    MessageDigest digest = createDigest();
+    byte[] settingsHash = digest.digest(settings.getBytes(StandardCharsets.UTF_8));
+    IOException[] error = {null};
+
+    for (File root : roots) {
+      FileUtil.processFilesRecursively(root, file -> {
+        if (!file.isFile()) return true;
+
+        String path = file.getAbsolutePath();
+        long length = file.length(), lastModified = file.lastModified();
+        FileStamp stamp = previous != null ? previous.myFiles.get(path) : null;
+        if (stamp == null || stamp.myLength != length || stamp.myLastModified != lastModified) {
+          try {
+            stamp = new FileStamp(length, lastModified, digest.digest(FileUtil.loadFileBytes(file)));
+          }
+          catch (IOException e) {
+            error[0] = e;
+            return false;
+          }
+        }
+        files.put(path, stamp);
+        return true;
+      });
+      if (error[0] != null) throw error[0];
+    }
+
+    return new BundleInputs(settingsHash, files);
+  }
+
+  /**
+   * True when the settings and the contents of all files are the same and the bundles built from them were not touched since.
+   */
+  boolean isUpToDate(@Nullable BundleInputs previous) {
+    if (previous == null || !Arrays.equals(mySettings, previous.mySettings) || !myFiles.keySet().equals(previous.myFiles.keySet())) {
+      return false;
+    }
+
+    for (Map.Entry<String, FileStamp> entry : myFiles.entrySet()) {
+      if (!Arrays.equals(entry.getValue().myHash, previous.myFiles.get(entry.getKey()).myHash)) {
+        return false;
+      }
+    }
+
+    if (previous.myOutputs.isEmpty()) return false;
+    for (Map.Entry<String, FileStamp> entry : previous.myOutputs.entrySet()) {
+      File output = new File(entry.getKey());
+      if (output.length() != entry.getValue().myLength || output.lastModified() != entry.getValue().myLastModified) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  void setOutputs(@NotNull Collection<File> outputs) {
+    myOutputs.clear();
+    for (File output : outputs) {
+      myOutputs.put(output.getAbsolutePath(), new FileStamp(output.length(), output.lastModified(), null));
+    }
+  }
+
+  @Nullable
+  static BundleInputs load(@NotNull File file) {
+    if (!file.isFile()) return null;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != VERSION) return null;
+
+      byte[] settings = new byte[in.readInt()];
+      in.readFully(settings);
+      BundleInputs inputs = new BundleInputs(settings, new TreeMap<>());
+      readStamps(in, inputs.myFiles);
+      readStamps(in, inputs.myOutputs);
+      return inputs;
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  void save(@NotNull File file) throws IOException {
+    FileUtil.createParentDirs(file);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(VERSION);
+      out.writeInt(mySettings.length);
+      out.write(mySettings);
+      writeStamps(out, myFiles);
+      writeStamps(out, myOutputs);
+    }
+  }
+
+  private static void readStamps(DataInputStream in, Map<String, FileStamp> result) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      String path = in.readUTF();
+      long length = in.readLong(), lastModified = in.readLong();
+      byte[] hash = new byte[in.readInt()];
+      in.readFully(hash);
+      result.put(path, new FileStamp(length, lastModified, hash));
+    }
+  }
+
+  private static void writeStamps(DataOutputStream out, Map<String, FileStamp> stamps) throws IOException {
+    out.writeInt(stamps.size());
+    for (Map.Entry<String, FileStamp> entry : stamps.entrySet()) {
+      FileStamp stamp = entry.getValue();
+      out.writeUTF(entry.getKey());
+      out.writeLong(stamp.myLength);
+      out.writeLong(stamp.myLastModified);
+      out.writeInt(stamp.myHash.length);
+      out.write(stamp.myHash);
+    }
+  }
+
+  private static MessageDigest createDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static class FileStamp {
+    private static final byte[] NO_HASH = new byte[0];
+
+    private final long myLength;
+    private final long myLastModified;
+    private final byte[] myHash;
+
+    private FileStamp(long length, long lastModified, @Nullable byte[] hash) {
+      myLength = length;
+      myLastModified = lastModified;
+      myHash = hash != null ? hash : NO_HASH;
+    }
+  }
+}
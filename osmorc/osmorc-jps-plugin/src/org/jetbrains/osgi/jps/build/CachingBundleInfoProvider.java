@@ -26,15 +26,17 @@ package org.jetbrains.osgi.jps.build;
 
 import aQute.bnd.osgi.Constants;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
@@ -44,7 +46,8 @@ import java.util.jar.Manifest;
  * @author <a href="mailto:janthomae@janthomae.de">Jan Thomä</a>
  */
 public class CachingBundleInfoProvider {
-  private static final Map<String, Pair<Long, Manifest>> ourCache = new WeakHashMap<String, Pair<Long, Manifest>>();
+  private static final int MAX_CACHE_SIZE = 4096;
+  private static final ConcurrentMap<String, CacheEntry> ourCache = new ConcurrentHashMap<>();
 
   /**
    * True for .jar files or exploded directories with Bundle-SymbolicName in their manifests.
@@ -83,51 +86,74 @@ public class CachingBundleInfoProvider {
   }
 
   @Nullable
-  public synchronized static String getBundleAttribute(@NotNull String path, @NotNull String attribute) {
-    Pair<Long, Manifest> pair = ourCache.remove(path);
+  public static String getBundleAttribute(@NotNull String path, @NotNull String attribute) {
+    Attributes attributes = getMainAttributes(path);
+    return attributes != null ? attributes.getValue(attribute) : null;
+  }
 
+  @Nullable
+  private static Attributes getMainAttributes(@NotNull String path) {
+    File bundleFile = new File(path);
+    File stampFile = bundleFile.isDirectory() ? new File(bundleFile, JarFile.MANIFEST_NAME) : bundleFile;
+    long length = stampFile.length(), lastModified = stampFile.lastModified();
+    if (lastModified == 0) {
+      return null;  // neither a directory with a manifest nor a file
+    }
+
+    String key = FileUtil.toCanonicalPath(path);
+    CacheEntry entry = ourCache.get(key);
+    if (entry == null || entry.myLength != length || entry.myLastModified != lastModified) {
+      entry = new CacheEntry(length, lastModified, readMainAttributes(bundleFile, stampFile));
+      if (ourCache.size() >= MAX_CACHE_SIZE) {
+        evictEntry();
+      }
+      ourCache.put(key, entry);
+    }
+    return entry.myAttributes;
+  }
+
+  @Nullable
+  private static Attributes readMainAttributes(@NotNull File bundleFile, @NotNull File stampFile) {
     try {
-      File bundleFile = new File(path);
-      if (bundleFile.isDirectory()) {
-        File manifestFile = new File(bundleFile, JarFile.MANIFEST_NAME);
-        if (pair == null || pair.first != manifestFile.lastModified()) {
-          pair = null;
-          FileInputStream stream = new FileInputStream(manifestFile);
-          try {
-            Manifest manifest = new Manifest(stream);
-            pair = Pair.create(manifestFile.lastModified(), manifest);
-          }
-          finally {
-            stream.close();
-          }
+      if (stampFile != bundleFile) {
+        try (FileInputStream stream = new FileInputStream(stampFile)) {
+          return new Manifest(stream).getMainAttributes();
         }
       }
-      else if (bundleFile.isFile()) {
-        if (pair == null || pair.first != bundleFile.lastModified()) {
-          pair = null;
-          JarFile jar = new JarFile(bundleFile);
-          try {
-            Manifest manifest = jar.getManifest();
-            if (manifest != null) {
-              pair = Pair.create(bundleFile.lastModified(), manifest);
-            }
-          }
-          finally {
-            jar.close();
-          }
+      else {
+        try (JarFile jar = new JarFile(bundleFile)) {
+          Manifest manifest = jar.getManifest();
+          return manifest != null ? manifest.getMainAttributes() : null;
         }
       }
     }
     catch (IOException e) {
       Logger.getInstance(CachingBundleInfoProvider.class).debug(e);
+      return null;
     }
+  }
 
-    if (pair != null) {
-      ourCache.put(path, pair);
-      return pair.second.getMainAttributes().getValue(attribute);
+  private static void evictEntry() {
+    Iterator<String> iterator = ourCache.keySet().iterator();
+    if (iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
     }
-    else {
-      return null;
+  }
+
+  /**
+   * Main attributes of a bundle manifest, valid while size and modification time of the bundle
+   * (or of the manifest for exploded bundles) stay the same. Bundles without manifests are cached with no attributes.
+   */
+  private static class CacheEntry {
+    private final long myLength;
+    private final long myLastModified;
+    private final Attributes myAttributes;
+
+    private CacheEntry(long length, long lastModified, @Nullable Attributes attributes) {
+      myLength = length;
+      myLastModified = lastModified;
+      myAttributes = attributes;
     }
   }
 }
@@ -52,6 +52,10 @@ import static com.intellij.util.ObjectUtils.coalesce;
 public class OsgiBuildSession implements Reporter {
   private static final Logger LOG = Logger.getInstance(OsgiBuildSession.class);
 
+  // instructions which add files to the bundle or depend on something else than the build settings and the classes
+  private static final String[] INSTRUCTIONS_WITH_UNKNOWN_INPUTS = {
+    Constants.INCLUDE_RESOURCE, Constants.INCLUDERESOURCE, Constants.SOURCES, Constants.INCLUDE, Constants.CONDITIONAL_PACKAGE};
+
   private OsmorcBuildTarget myTarget;
   private CompileContext myContext;
   private JpsOsmorcModuleExtension myExtension;
@@ -64,10 +68,16 @@ public class OsgiBuildSession implements Reporter {
   private File[] mySources;
   private BndWrapper myBndWrapper;
   private String mySourceToReport = null;
+  private boolean myForced;
+  private boolean myErrorsReported;
 
-  public void build(@NotNull OsmorcBuildTarget target, @NotNull CompileContext context) throws IOException {
+  /**
+   * @param forced build the bundle even if its inputs are unchanged since the previous build
+   */
+  public void build(@NotNull OsmorcBuildTarget target, @NotNull CompileContext context, boolean forced) throws IOException {
     myTarget = target;
     myContext = context;
+    myForced = forced;
     myExtension = target.getExtension();
     myModule = target.getModule();
     myMessagePrefix = "[" + myModule.getName() + "] ";
@@ -76,7 +86,10 @@ public class OsgiBuildSession implements Reporter {
 
     try {
       prepare();
-      doBuild();
+      if (!doBuild()) {
+        progress("Bundle is up to date");
+        return;
+      }
     }
     catch (OsgiBuildException e) {
       error(e.getMessage(), e.getCause(), e.getSourcePath(), -1);
@@ -112,15 +125,6 @@ public class OsgiBuildSession implements Reporter {
     myOutputJarFile = new File(jarFileLocation);
     myOutputJarFiles = myTarget.getOutputRoots(myContext);
 
-    for (File jarFile : myOutputJarFiles) {
-      if (!FileUtil.delete(jarFile)) {
-        throw new OsgiBuildException("Can't delete bundle file '" + jarFile + "'.");
-      }
-    }
-    if (!FileUtil.createParentDirs(myOutputJarFile)) {
-      throw new OsgiBuildException("Cannot create a directory for bundles '" + myOutputJarFile.getParent() + "'.");
-    }
-
     List<File> classes = ContainerUtil.newSmartList();
     if (myModuleOutputDir.exists()) {
       classes.add(myModuleOutputDir);
@@ -150,10 +154,25 @@ public class OsgiBuildSession implements Reporter {
     myBndWrapper = new BndWrapper(this);
   }
 
-  private void doBuild() throws OsgiBuildException {
-    progress("Running Bnd to build the bundle");
+  private void deleteOutputJars() throws OsgiBuildException {
+    for (File jarFile : myOutputJarFiles) {
+      if (!FileUtil.delete(jarFile)) {
+        throw new OsgiBuildException("Can't delete bundle file '" + jarFile + "'.");
+      }
+    }
+    if (!FileUtil.createParentDirs(myOutputJarFile)) {
+      throw new OsgiBuildException("Cannot create a directory for bundles '" + myOutputJarFile.getParent() + "'.");
+    }
+  }
 
+  /**
+   * @return false if the bundle was not built because it is up to date
+   */
+  private boolean doBuild() throws OsgiBuildException {
     if (myExtension.isUseBndFile()) {
+      deleteOutputJars();
+      progress("Running Bnd to build the bundle");
+
       String bndPath = myExtension.getBndFileLocation();
       File bndFile = OsgiBuildUtil.findFileInModuleContentRoots(myModule, bndPath);
       if (bndFile == null || !bndFile.isFile()) {
@@ -176,6 +195,8 @@ public class OsgiBuildSession implements Reporter {
         throw new OsgiBuildException("Bundlor file missing '" + bundlorPath + "' - please check OSGi facet settings.");
       }
 
+      deleteOutputJars();
+      progress("Running Bnd to build the bundle");
       File tempFile = new File(myOutputJarFile.getAbsolutePath() + ".tmp.jar");
 
       try {
@@ -206,6 +227,16 @@ public class OsgiBuildSession implements Reporter {
         LOG.debug("build properties: " + buildProperties);
       }
 
+      File inputsFile = getInputsFile();
+      BundleInputs previous = BundleInputs.load(inputsFile);
+      BundleInputs inputs = collectInputs(buildProperties, previous);
+      if (!myForced && inputs != null && inputs.isUpToDate(previous)) {
+        return false;
+      }
+      FileUtil.delete(inputsFile);
+
+      deleteOutputJars();
+      progress("Running Bnd to build the bundle");
       mySourceToReport = getSourceFileToReport();
       try {
         myBndWrapper.build(buildProperties, myClasses, mySources, myOutputJarFile);
@@ -214,11 +245,70 @@ public class OsgiBuildSession implements Reporter {
         throw new OsgiBuildException("Unexpected build error", e, null);
       }
       mySourceToReport = null;
+
+      if (inputs != null && !myErrorsReported) {
+        inputs.setOutputs(myOutputJarFiles);
+        try {
+          inputs.save(inputsFile);
+        }
+        catch (IOException e) {
+          LOG.warn("Can't save bundle inputs to '" + inputsFile + "'", e);
+        }
+      }
     }
     else {
       ManifestGenerationMode mode = ((JpsOsmorcModuleExtensionImpl)myExtension).getProperties().myManifestGenerationMode;
       throw new OsgiBuildException("Internal error (unknown build method `" + mode + "`)");
     }
+
+    return true;
+  }
+
+  @NotNull
+  private File getInputsFile() {
+    File dataRoot = myContext.getProjectDescriptor().dataManager.getDataPaths().getTargetDataRoot(myTarget);
+    return new File(dataRoot, "bundle-inputs.dat");
+  }
+
+  /**
+   * Returns the inputs of the bundle, or null if some of them are not known, e.g. when resources are included by custom
+   * instructions or settings contain macros, which may expand differently in the next build.
+   */
+  @Nullable
+  private BundleInputs collectInputs(@NotNull Map<String, String> properties, @Nullable BundleInputs previous) {
+    for (String key : INSTRUCTIONS_WITH_UNKNOWN_INPUTS) {
+      if (myExtension.getAdditionalProperties().containsKey(key)) {
+        return null;
+      }
+    }
+
+    StringBuilder settings = new StringBuilder();
+    for (Map.Entry<String, String> entry : new TreeMap<>(properties).entrySet()) {
+      if (entry.getValue().contains("${")) {
+        return null;
+      }
+      settings.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+    }
+
+    List<File> roots = ContainerUtil.newArrayList(myClasses);
+    for (File root : myClasses) {
+      settings.append(root.getAbsolutePath()).append('\n');
+    }
+    for (OsmorcJarContentEntry contentEntry : myExtension.getAdditionalJarContents()) {
+      roots.add(new File(contentEntry.mySource));
+    }
+    String manifest = properties.get(Constants.MANIFEST);
+    if (manifest != null) {
+      roots.add(new File(manifest));
+    }
+
+    try {
+      return BundleInputs.collect(settings.toString(), roots, previous);
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+      return null;
+    }
   }
 
   @NotNull
@@ -323,6 +413,7 @@ public class OsgiBuildSession implements Reporter {
 
   @Override
   public void error(@NotNull String message, @Nullable Throwable t, @Nullable String sourcePath, int lineNum) {
+    myErrorsReported = true;
     process(BuildMessage.Kind.ERROR, message, t, sourcePath, lineNum);
   }
 
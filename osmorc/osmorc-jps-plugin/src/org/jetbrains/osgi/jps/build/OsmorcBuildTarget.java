@@ -29,6 +29,7 @@ import org.jetbrains.jps.model.java.JpsJavaExtensionService;
 import org.jetbrains.jps.model.module.JpsModule;
 import org.jetbrains.osgi.jps.model.JpsOsmorcExtensionService;
 import org.jetbrains.osgi.jps.model.JpsOsmorcModuleExtension;
+import org.jetbrains.osgi.jps.model.OsmorcJarContentEntry;
 import org.jetbrains.osgi.jps.util.OsgiBuildUtil;
 
 import java.io.File;
@@ -77,6 +78,10 @@ public class OsmorcBuildTarget extends ModuleBasedTarget<BuildRootDescriptor> {
       if (file != null) {
         rootDescriptors.add(new BuildRootDescriptorImpl(this, file, true));
       }
+
+      for (OsmorcJarContentEntry contentEntry : extension.getAdditionalJarContents()) {
+        rootDescriptors.add(new BuildRootDescriptorImpl(this, new File(contentEntry.mySource), true));
+      }
     }
 
     JpsJavaExtensionService.dependencies(getModule()).recursively().productionOnly().processModules(module -> {
@@ -48,10 +48,9 @@ public class OsmorcBuilder extends TargetBuilder<BuildRootDescriptor, OsmorcBuil
                     @NotNull DirtyFilesHolder<BuildRootDescriptor, OsmorcBuildTarget> holder,
                     @NotNull BuildOutputConsumer outputConsumer,
                     @NotNull CompileContext context) throws ProjectBuildException, IOException {
-    if (target.getExtension().isAlwaysRebuildBundleJar() ||
-        JavaBuilderUtil.isForcedRecompilationAllJavaModules(context) ||
-        holder.hasDirtyFiles() || holder.hasRemovedFiles()) {
-      new OsgiBuildSession().build(target, context);
+    boolean forced = target.getExtension().isAlwaysRebuildBundleJar() || JavaBuilderUtil.isForcedRecompilationAllJavaModules(context);
+    if (forced || holder.hasDirtyFiles() || holder.hasRemovedFiles()) {
+      new OsgiBuildSession().build(target, context, forced);
     }
   }
 }
@@ -16,6 +16,7 @@
 package org.jetbrains.osgi.jps
 
 import org.jetbrains.jps.model.module.JpsModule
+import org.jetbrains.osgi.jps.build.OsmorcBuilder
 import org.jetbrains.osgi.jps.model.ManifestGenerationMode
 import org.jetbrains.osgi.jps.model.OsmorcJarContentEntry
 import java.io.File
@@ -96,6 +97,26 @@ class OsgiBuildTest : OsgiBuildTestCase() {
     assertManifest(myModule, setOf("Bundle-Name=main", "Bundle-SymbolicName=main", "Bundle-Version=1.0.0", "Export-Package=main;version=\"1.0.0\""))
   }
 
+  fun testIdeaProjectUnchangedClasses() {
+    ideaBuild(myModule)
+    extension(myModule).properties.myAdditionalJARContents.add(OsmorcJarContentEntry(getAbsolutePath("content/readme.txt"), "readme.txt"))
+    createFile("content/readme.txt", "Hiya there.")
+    createFile("main/src/main/Main.java", "package main;\n\npublic interface Main { String greeting(); }")
+    buildAllModules().assertBundleCompiled(myModule)
+    buildAllModules().assertUpToDate()
+
+    changeFile("main/src/main/Main.java", "package main;\n\npublic interface Main { String greeting(); }\n")
+    buildAllModules().assertSuccessful()
+    assertCompiled(OsmorcBuilder.ID)
+
+    changeFile("content/readme.txt", "Hello there.")
+    buildAllModules().assertBundleCompiled(myModule)
+    assertJar(myModule, setOf("META-INF/MANIFEST.MF", "main/Main.class", "readme.txt"))
+
+    extension(myModule).properties.myAlwaysRebuildBundleJar = true
+    buildAllModules().assertBundleCompiled(myModule)
+  }
+
   fun testMavenResources() {
     ideaBuild(myModule)
     extension(myModule).properties.myAdditionalProperties = mapOf("Include-Resource" to "included.txt=${getAbsolutePath("main/res/included.txt")}")
@@ -20,14 +20,11 @@ import aQute.bnd.osgi.Constants;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiNameHelper;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Represents a bundle manifest.
@@ -36,6 +33,11 @@ import java.util.Set;
 public class BundleManifest {
   private final Map<String, String> myMap;
   private final PsiFile mySource;
+  // headers are parsed once, package checks are made for every class reference by the inspections
+  private final PackagePrefixes myExportedPackages;
+  private final PackagePrefixes myImportedPackages;
+  private final PackagePrefixes myPrivatePackages;
+  private final Set<String> myRequiredBundles;
 
   public BundleManifest(@NotNull Map<String, String> map) {
     this(map, null);
@@ -44,6 +46,10 @@ public class BundleManifest {
   public BundleManifest(@NotNull Map<String, String> map, @Nullable PsiFile source) {
     mySource = source;
     myMap = ContainerUtil.newHashMap(map);
+    myExportedPackages = getPackages(Constants.EXPORT_PACKAGE, true);
+    myImportedPackages = getPackages(Constants.IMPORT_PACKAGE, false);
+    myPrivatePackages = getPackages(Constants.PRIVATE_PACKAGE, false);
+    myRequiredBundles = ContainerUtil.newHashSet(getValues(Constants.REQUIRE_BUNDLE));
   }
 
   @Nullable
@@ -68,48 +74,31 @@ public class BundleManifest {
 
   @Nullable
   public String getExportedPackage(@NotNull String packageName) {
-    for (String exported : getValues(Constants.EXPORT_PACKAGE)) {
-      exported = StringUtil.trimEnd(exported, ".*");
-      if (PsiNameHelper.isSubpackageOf(packageName, exported)) {
-        return exported;
-      }
-    }
-
-    return null;
+    return myExportedPackages.findCovering(packageName);
   }
 
   public boolean isPackageImported(@NotNull String packageName) {
-    for (String imported : getValues(Constants.IMPORT_PACKAGE)) {
-      if (PsiNameHelper.isSubpackageOf(packageName, imported)) {
-        return true;
-      }
-    }
-
-    return false;
+    return myImportedPackages.covers(packageName);
   }
 
   public boolean isBundleRequired(@NotNull String bsn) {
-    for (String bundleName : getValues(Constants.REQUIRE_BUNDLE)) {
-      if (bsn.equals(bundleName)) {
-        return true;
-      }
-    }
-
-    return false;
+    return myRequiredBundles.contains(bsn);
   }
 
   public boolean isPrivatePackage(@NotNull String packageName) {
-    for (String privatePkg : getValues(Constants.PRIVATE_PACKAGE)) {
-      if (PsiNameHelper.isSubpackageOf(packageName, privatePkg)) {
-        return true;
-      }
-    }
-
-    return false;
+    return myPrivatePackages.covers(packageName);
   }
 
   private Set<String> getValues(String header) {
     String value = get(header);
     return StringUtil.isEmptyOrSpaces(value) ? Collections.emptySet() : new Parameters(value).keySet();
   }
+
+  private PackagePrefixes getPackages(String header, boolean trimWildcards) {
+    List<String> packages = new ArrayList<>();
+    for (String packageName : getValues(header)) {
+      packages.add(trimWildcards ? StringUtil.trimEnd(packageName, ".*") : packageName);
+    }
+    return new PackagePrefixes(packages);
+  }
 }
\ No newline at end of file
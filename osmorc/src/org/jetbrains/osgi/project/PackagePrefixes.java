@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.osgi.project;
+
+import com.intellij.psi.PsiNameHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Package names listed in a manifest header, kept in a character trie, so that the name covering a package
+ * (the package itself or one of its parents, see {@link PsiNameHelper#isSubpackageOf(String, String)})
+ * is found in a single pass over the package name.
+ */
+final class PackagePrefixes {
+  private final Node myRoot = new Node();
+  private final String[] myNames;
+
+  PackagePrefixes(@NotNull List<String> names) {
+    myNames = names.toArray(new String[names.size()]);
+    for (int i = 0; i < myNames.length; i++) {
+      myRoot.add(myNames[i], i);
+    }
+  }
+
+  /**
+   * Returns the name which is the package or one of its parents; if there are several, the first one in the header.
+   */
+  @Nullable
+  String findCovering(@NotNull String packageName) {
+    int found = -1;
+    Node node = myRoot;
+    for (int i = 0; ; i++) {
+      if (node.myIndex >= 0 && (found < 0 || node.myIndex < found) &&
+          (i == packageName.length() || packageName.charAt(i) == '.')) {
+        found = node.myIndex;
+      }
+      if (i == packageName.length()) break;
+      node = node.get(packageName.charAt(i));
+      if (node == null) break;
+    }
+    return found >= 0 ? myNames[found] : null;
+  }
+
+  boolean covers(@NotNull String packageName) {
+    return findCovering(packageName) != null;
+  }
+
+  private static class Node {
+    private static final char[] NO_CHARS = new char[0];
+    private static final Node[] NO_NODES = new Node[0];
+
+    private char[] myChars = NO_CHARS;
+    private Node[] myChildren = NO_NODES;
+    private int myIndex = -1;
+
+    void add(@NotNull String name, int index) {
+      Node node = this;
+      for (int i = 0; i < name.length(); i++) {
+        node = node.getOrCreate(name.charAt(i));
+      }
+      if (node.myIndex < 0) {
+        node.myIndex = index;
+      }
+    }
+
+    @Nullable
+    Node get(char c) {
+      int idx = Arrays.binarySearch(myChars, c);
+      return idx >= 0 ? myChildren[idx] : null;
+    }
+
+    @NotNull
+    private Node getOrCreate(char c) {
+      int idx = Arrays.binarySearch(myChars, c);
+      if (idx >= 0) return myChildren[idx];
+
+      int insertAt = -idx - 1;
+      char[] chars = new char[myChars.length + 1];
+      Node[] children = new Node[myChildren.length + 1];
+      System.arraycopy(myChars, 0, chars, 0, insertAt);
+      System.arraycopy(myChildren, 0, children, 0, insertAt);
+      System.arraycopy(myChars, insertAt, chars, insertAt + 1, myChars.length - insertAt);
+      System.arraycopy(myChildren, insertAt, children, insertAt + 1, myChildren.length - insertAt);
+      chars[insertAt] = c;
+      children[insertAt] = new Node();
+      myChars = chars;
+      myChildren = children;
+      return children[insertAt];
+    }
+  }
+}
@@ -43,6 +43,15 @@ class BundleManifestTest {
     assertNull(manifest.getExportedPackage("foo.bar.no.way"))
   }
 
+  @Test fun exportedPackageNested() {
+    val manifest = BundleManifest(mapOf("Export-Package" to "foo.bar.baz.impl,foo.bar,foo.bar.baz"))
+    assertEquals("foo.bar.baz.impl", manifest.getExportedPackage("foo.bar.baz.impl.x"))
+    assertEquals("foo.bar", manifest.getExportedPackage("foo.bar.baz"))
+    assertEquals("foo.bar", manifest.getExportedPackage("foo.bar.bazz"))
+    assertNull(manifest.getExportedPackage("foo.barr"))
+    assertNull(manifest.getExportedPackage("foo"))
+  }
+
   @Test fun missingHeaderHandling() {
     val manifest = BundleManifest(mapOf())
     assertNull(manifest.getExportedPackage("pkg"))
@@ -80,6 +80,14 @@ public class CachingBundleInfoProviderTest {
     assertThat(CachingBundleInfoProvider.getBundleVersion(myInvalidDirBundle), equalTo(null));
   }
 
+  @Test
+  public void testManifestChange() throws Exception {
+    assertThat(CachingBundleInfoProvider.getBundleVersion(myDirBundle), equalTo("1.0.0"));
+    FileUtil.writeToFile(new File(myDirBundle, "META-INF/MANIFEST.MF"), "Bundle-SymbolicName: dirbundle\nBundle-Version: 1.0.1\n");
+    assertThat(CachingBundleInfoProvider.getBundleVersion(myDirBundle), equalTo("1.0.1"));
+    assertThat(CachingBundleInfoProvider.isFragmentBundle(myDirBundle), equalTo(false));
+  }
+
   @Test
   public void testIsFragmentBundle() {
     assertThat(CachingBundleInfoProvider.isFragmentBundle(myDirBundle), equalTo(true));
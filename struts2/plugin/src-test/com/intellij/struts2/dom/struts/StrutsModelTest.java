@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 The authors
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intellij.struts2.dom.struts;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.struts2.dom.struts.action.Action;
+import com.intellij.struts2.dom.struts.model.StrutsManager;
+import com.intellij.struts2.dom.struts.model.StrutsModel;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for action lookups of {@link StrutsModel}.
+ */
+public class StrutsModelTest extends StrutsLightHighlightingTestCase {
+
+  private static final String STRUTS_MODEL_XML = "struts-model.xml";
+
+  private StrutsModel myModel;
+
+  @Override
+  @NotNull
+  protected String getTestDataLocation() {
+    return "strutsXml/model";
+  }
+
+  @Override
+  protected void performSetUp() {
+    myFixture.copyFileToProject("FooAction.java");
+    myFixture.copyFileToProject("BarAction.java");
+    myFixture.copyFileToProject("UnusedClass.java");
+    createStrutsFileSet(STRUTS_MODEL_XML);
+
+    final XmlFile xmlFile = (XmlFile)myFixture.getPsiManager().findFile(myFixture.findFileInTempDir(STRUTS_MODEL_XML));
+    assertNotNull(xmlFile);
+    myModel = StrutsManager.getInstance(getProject()).getModelByFile(xmlFile);
+    assertNotNull(myModel);
+  }
+
+  @Override
+  protected void performTearDown() {
+    myModel = null;
+  }
+
+  public void testFindActionsByName() {
+    assertActions(myModel.findActionsByName("list", null), "/:list", "/admin:list", "/admin:*");
+    assertActions(myModel.findActionsByName("list", "/"), "/:list");
+    assertActions(myModel.findActionsByName("list", "/admin"), "/admin:list", "/admin:*");
+    assertActions(myModel.findActionsByName("list", "/unknown"));
+    assertActions(myModel.findActionsByName("unknown/path", null));
+  }
+
+  public void testFindActionsByNameKeepsDeclarationOrder() {
+    // wildcard action declared before the exact one
+    assertActions(myModel.findActionsByName("editUser", "/"), "/:edit*", "/:editUser");
+    assertActions(myModel.findActionsByName("editUser!save", "/"), "/:edit*", "/:editUser");
+    assertActions(myModel.findActionsByName("editGroup", "/"), "/:edit*");
+    assertActions(myModel.findActionsByName("help", null), "/admin:*", "/:help");
+  }
+
+  public void testDefaultNamespace() {
+    assertActions(myModel.findActionsByName("help", "/"), "/:help");
+    assertActions(myModel.getActionsForNamespace("/"), "/:list", "/:edit*", "/:editUser", "/:noClass", "/:help");
+  }
+
+  public void testGetActionsForNamespace() {
+    assertActions(myModel.getActionsForNamespace("/admin"), "/admin:list", "/admin:*");
+    assertActions(myModel.getActionsForNamespace("/unknown"));
+    assertActions(myModel.getActionsForNamespace(null),
+                  "/:list", "/:edit*", "/:editUser", "/:noClass", "/admin:list", "/admin:*", "/:help");
+  }
+
+  public void testProcessActions() {
+    final List<Action> processed = new ArrayList<>();
+    assertTrue(myModel.processActions(action -> processed.add(action)));
+    assertActions(processed, "/:list", "/:edit*", "/:editUser", "/:noClass", "/admin:list", "/admin:*", "/:help");
+
+    processed.clear();
+    assertFalse(myModel.processActions(action -> processed.add(action) && processed.size() < 2));
+    assertActions(processed, "/:list", "/:edit*");
+  }
+
+  public void testFindActionsByClass() {
+    final PsiClass fooAction = myFixture.findClass("FooAction");
+    final PsiClass barAction = myFixture.findClass("BarAction");
+    final PsiClass unusedClass = myFixture.findClass("UnusedClass");
+
+    assertActions(myModel.findActionsByClass(fooAction), "/:list", "/:edit*", "/admin:*");
+    assertActions(myModel.findActionsByClass(barAction), "/:editUser", "/admin:list", "/:help");
+    assertActions(myModel.findActionsByClass(unusedClass));
+
+    assertTrue(myModel.isActionClass(fooAction));
+    assertTrue(myModel.isActionClass(barAction));
+    assertFalse(myModel.isActionClass(unusedClass));
+  }
+
+  public void testFoundActionsAreUnmodifiable() {
+    final PsiClass fooAction = myFixture.findClass("FooAction");
+    assertUnmodifiable(myModel.findActionsByClass(fooAction));
+    assertUnmodifiable(myModel.getActionsForNamespace("/"));
+    assertUnmodifiable(myModel.getActionsForNamespace(null));
+
+    assertActions(myModel.findActionsByClass(fooAction), "/:list", "/:edit*", "/admin:*");
+    assertActions(myModel.getActionsForNamespace(null),
+                  "/:list", "/:edit*", "/:editUser", "/:noClass", "/admin:list", "/admin:*", "/:help");
+  }
+
+  private static void assertUnmodifiable(@NotNull final List<Action> actions) {
+    try {
+      actions.remove(0);
+      fail("modifiable: " + actions);
+    }
+    catch (UnsupportedOperationException ignored) {
+    }
+  }
+
+  /**
+   * @param expected Actions as {@code namespace:name}, in the expected order.
+   */
+  private static void assertActions(@NotNull final List<Action> actions, @NotNull final String... expected) {
+    final List<String> names = ContainerUtil.map(actions, action ->
+      action.getStrutsPackage().searchNamespace() + ":" + action.getName().getStringValue());
+    assertEquals(Arrays.asList(expected), names);
+  }
+}
@@ -55,6 +55,25 @@ public class ActionUtilTest {
     assertTrue(ActionUtil.matchesPath("some*Action*Stuff", "someXYZActionXYZStuff"));
 
     assertFalse(ActionUtil.matchesPath("some*Action*Stuff", "some/Action/Stuff"));
+    assertFalse(ActionUtil.matchesPath("some*Action*Stuff", "someActionStuffX"));
+  }
+
+  @Test
+  public void matchesPathWildcardSegments() {
+    assertTrue(ActionUtil.matchesPath("admin/*/edit*", "admin/user/edit"));
+    assertTrue(ActionUtil.matchesPath("admin/*/edit*", "admin//editUser"));
+    assertTrue(ActionUtil.matchesPath("*/*", "a/b"));
+
+    assertFalse(ActionUtil.matchesPath("admin/*/edit*", "admin/user/edit/x"));
+    assertFalse(ActionUtil.matchesPath("admin/*/edit*", "admin/edit"));
+    assertFalse(ActionUtil.matchesPath("*/*", "a"));
+  }
+
+  @Test
+  public void matchesPathWildcardSpecialCharacters() {
+    assertTrue(ActionUtil.matchesPath("some.*", "some.Thing"));
+    assertFalse(ActionUtil.matchesPath("some.*", "someXThing"));
+    assertTrue(ActionUtil.matchesPath("some(*)", "some(Thing)"));
   }
 
   @Test
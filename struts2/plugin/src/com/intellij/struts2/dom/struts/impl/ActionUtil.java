@@ -19,7 +19,6 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.Condition;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PropertyUtilBase;
@@ -31,8 +30,6 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 /**
  * Helper methods for {@link ActionImpl}.
@@ -55,19 +52,80 @@ final class ActionUtil {
                              @NotNull @NonNls final String checkPath) {
     // strip everything behind "!"
     final int bangIdx = checkPath.indexOf('!');
-    final String strippedCheckPath = bangIdx == -1 ? checkPath : checkPath.substring(0, bangIdx);
+    final int checkPathEnd = bangIdx == -1 ? checkPath.length() : bangIdx;
 
     // do we have any wildcard-markers in our path? no --> exact compare
     if (actionPath.indexOf('*') == -1) {
-      return Comparing.equal(strippedCheckPath, actionPath);
+      return actionPath.length() == checkPathEnd && checkPath.startsWith(actionPath);
     }
 
-    try {
-      return Pattern.matches(StringUtil.replace(actionPath, "*", "[^/]*"), strippedCheckPath);
+    // '*' never matches '/', so both paths must consist of the same number of segments matching one by one
+    int actionStart = 0;
+    int checkStart = 0;
+    while (true) {
+      final int actionEnd = indexOf(actionPath, '/', actionStart, actionPath.length());
+      final int checkEnd = indexOf(checkPath, '/', checkStart, checkPathEnd);
+      if (!matchesSegment(actionPath, actionStart, actionEnd, checkPath, checkStart, checkEnd)) {
+        return false;
+      }
+
+      final boolean actionDone = actionEnd == actionPath.length();
+      final boolean checkDone = checkEnd == checkPathEnd;
+      if (actionDone || checkDone) {
+        return actionDone && checkDone;
+      }
+      actionStart = actionEnd + 1;
+      checkStart = checkEnd + 1;
+    }
+  }
+
+  /**
+   * Matches a segment of the Action's path, where '*' matches any text, against a segment of the path to check.
+   */
+  private static boolean matchesSegment(@NotNull final String actionPath, final int actionStart, final int actionEnd,
+                                        @NotNull final String checkPath, int checkStart, int checkEnd) {
+    final int firstWildcard = indexOf(actionPath, '*', actionStart, actionEnd);
+    if (firstWildcard == actionEnd) {
+      return actionEnd - actionStart == checkEnd - checkStart &&
+             checkPath.regionMatches(checkStart, actionPath, actionStart, actionEnd - actionStart);
     }
-    catch (PatternSyntaxException e) {
+
+    // text before first and after last wildcard must match at both ends
+    final int prefixLength = firstWildcard - actionStart;
+    final int lastWildcard = actionPath.lastIndexOf('*', actionEnd - 1);
+    final int suffixLength = actionEnd - lastWildcard - 1;
+    if (prefixLength + suffixLength > checkEnd - checkStart ||
+        !checkPath.regionMatches(checkStart, actionPath, actionStart, prefixLength) ||
+        !checkPath.regionMatches(checkEnd - suffixLength, actionPath, lastWildcard + 1, suffixLength)) {
       return false;
     }
+    checkStart += prefixLength;
+    checkEnd -= suffixLength;
+
+    // text between wildcards must occur in order, taking the first occurrence leaves most room for the rest
+    int partStart = firstWildcard + 1;
+    while (partStart < lastWildcard) {
+      final int partEnd = indexOf(actionPath, '*', partStart, lastWildcard);
+      final int partLength = partEnd - partStart;
+      int found = checkStart;
+      while (found + partLength <= checkEnd && !checkPath.regionMatches(found, actionPath, partStart, partLength)) {
+        found++;
+      }
+      if (found + partLength > checkEnd) {
+        return false;
+      }
+      checkStart = found + partLength;
+      partStart = partEnd + 1;
+    }
+    return true;
+  }
+
+  /**
+   * @return index of the character in the range, or the end of the range if not found.
+   */
+  private static int indexOf(@NotNull final String s, final char c, final int start, final int end) {
+    final int idx = s.indexOf(c, start);
+    return idx == -1 || idx > end ? end : idx;
   }
 
   /**
@@ -15,9 +15,12 @@
 
 package com.intellij.struts2.dom.struts.model;
 
-import com.intellij.openapi.util.Comparing;
-import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiClass;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.struts2.dom.struts.StrutsRoot;
 import com.intellij.struts2.dom.struts.action.Action;
@@ -36,12 +39,12 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
+ * Actions are looked up in maps built once per modification of the configuration files,
+ * actions by class are additionally rebuilt on changes of Java classes.
+ *
  * @author Yann C&eacute;bron
  */
 class StrutsModelImpl extends DomModelImpl<StrutsRoot> implements StrutsModel {
@@ -52,9 +55,16 @@ class StrutsModelImpl extends DomModelImpl<StrutsRoot> implements StrutsModel {
   private static final Function<StrutsRoot, Collection<? extends StrutsPackage>> STRUTS_PACKAGE_COLLECTOR =
     strutsRoot -> strutsRoot.getPackages();
 
+  private final Project myProject;
+
+  private volatile CachedValue<ActionIndex> myActionIndex;
+
+  private volatile CachedValue<Map<PsiClass, List<Action>>> myActionsByClass;
+
   StrutsModelImpl(@NotNull final DomFileElement<StrutsRoot> strutsRootDomFileElement,
                   @NotNull final Set<XmlFile> xmlFiles) {
     super(strutsRootDomFileElement, xmlFiles);
+    myProject = strutsRootDomFileElement.getManager().getProject();
   }
 
   @NotNull
@@ -82,55 +92,136 @@ class StrutsModelImpl extends DomModelImpl<StrutsRoot> implements StrutsModel {
   @NotNull
   public List<Action> findActionsByName(@NotNull @NonNls final String name,
                                         @Nullable @NonNls final String namespace) {
-    return ContainerUtil.findAll(getActionsForNamespace(namespace), action -> action.matchesPath(name));
+    return getActionIndex().findActionsByName(name, namespace);
   }
 
   @NotNull
   public List<Action> findActionsByClass(@NotNull final PsiClass clazz) {
-    return findActionsByClassInner(clazz, false);
+    final List<Action> actions = getActionsByClass().get(clazz);
+    return actions != null ? Collections.unmodifiableList(actions) : Collections.emptyList();
   }
 
-  private List<Action> findActionsByClassInner(final PsiClass clazz,
-                                               final boolean skipOnFirst) {
-    final List<Action> actionResultList = new SmartList<>();
+  @Override
+  public boolean isActionClass(@NotNull final PsiClass clazz) {
+    return getActionsByClass().containsKey(clazz);
+  }
 
-    for (final StrutsPackage strutsPackage : getStrutsPackages()) {
-      for (final Action action : strutsPackage.getActions()) {
-        final PsiClass actionClassValue = action.searchActionClass();
-        if (Comparing.equal(clazz, actionClassValue)) {
-          actionResultList.add(action);
-          if (skipOnFirst) {
-            return actionResultList;
+  public List<Action> getActionsForNamespace(@Nullable @NonNls final String namespace) {
+    return getActionIndex().getActions(namespace);
+  }
+
+  public boolean processActions(final Processor<Action> processor) {
+    return ContainerUtil.process(getActionIndex().getActions(null), processor);
+  }
+
+  @NotNull
+  private ActionIndex getActionIndex() {
+    if (myActionIndex == null) {
+      myActionIndex = CachedValuesManager.getManager(myProject).createCachedValue(
+        () -> CachedValueProvider.Result.create(new ActionIndex(getStrutsPackages()), getConfigFiles().toArray()), false);
+    }
+    return myActionIndex.getValue();
+  }
+
+  /**
+   * Action classes are resolved for all actions at once, {@link #isActionClass(PsiClass)} is queried for every class icon.
+   */
+  @NotNull
+  private Map<PsiClass, List<Action>> getActionsByClass() {
+    if (myActionsByClass == null) {
+      myActionsByClass = CachedValuesManager.getManager(myProject).createCachedValue(() -> {
+        final Map<PsiClass, List<Action>> actionsByClass = new HashMap<>();
+        for (final Action action : getActionIndex().getActions(null)) {
+          final PsiClass actionClass = action.searchActionClass();
+          if (actionClass != null) {
+            ContainerUtil.getOrCreate(actionsByClass, actionClass, new ArrayList<>()).add(action);
+          }
+        }
+        return CachedValueProvider.Result.create(actionsByClass, PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT);
+      }, false);
+    }
+    return myActionsByClass.getValue();
+  }
+
+  /**
+   * Actions of the model by namespace, actions with plain names also by their names.
+   * Actions with wildcard names are matched against the requested path one by one.
+   */
+  private static class ActionIndex {
+    private final List<Action> myActions = new ArrayList<>();
+    private final Map<String, List<Action>> myActionsByNamespace = new HashMap<>();
+    private final Map<String, List<Action>> myActionsByName = new HashMap<>();
+    private final List<Action> myWildcardActions = new ArrayList<>();
+    private final Map<Action, Integer> myPositions = new HashMap<>();
+    private final Map<Action, String> myNamespaces = new HashMap<>();
+
+    private ActionIndex(@NotNull final List<StrutsPackage> strutsPackages) {
+      for (final StrutsPackage strutsPackage : strutsPackages) {
+        final String namespace = strutsPackage.searchNamespace();
+        final List<Action> namespaceActions = ContainerUtil.getOrCreate(myActionsByNamespace, namespace, new ArrayList<>());
+
+        for (final Action action : strutsPackage.getActions()) {
+          myPositions.put(action, myActions.size());
+          myNamespaces.put(action, namespace);
+          myActions.add(action);
+          namespaceActions.add(action);
+
+          final String name = action.getName().getRawText();
+          if (name == null) {
+            continue;
+          }
+          if (action.isWildcardMapping()) {
+            myWildcardActions.add(action);
+          }
+          else {
+            ContainerUtil.getOrCreate(myActionsByName, name, new SmartList<>()).add(action);
           }
         }
       }
     }
 
-    return actionResultList;
-  }
+    @NotNull
+    private List<Action> getActions(@Nullable final String namespace) {
+      if (namespace == null) {
+        return Collections.unmodifiableList(myActions);
+      }
+      final List<Action> actions = myActionsByNamespace.get(namespace);
+      return actions != null ? Collections.unmodifiableList(actions) : Collections.emptyList();
+    }
 
-  @Override
-  public boolean isActionClass(@NotNull final PsiClass clazz) {
-    return !findActionsByClassInner(clazz, true).isEmpty();
-  }
+    @NotNull
+    private List<Action> findActionsByName(@NotNull final String name, @Nullable final String namespace) {
+      // strip everything behind "!"
+      final int bangIdx = name.indexOf('!');
+      final String path = bangIdx == -1 ? name : name.substring(0, bangIdx);
+
+      final List<Action> result = new SmartList<>();
+      final List<Action> exactActions = myActionsByName.get(path);
+      if (exactActions != null) {
+        for (final Action action : exactActions) {
+          if (isInNamespace(action, namespace)) {
+            result.add(action);
+          }
+        }
+      }
 
-  public List<Action> getActionsForNamespace(@Nullable @NonNls final String namespace) {
-    final List<Action> actionResultList = new SmartList<>();
+      boolean wildcardFound = false;
+      for (final Action action : myWildcardActions) {
+        if (isInNamespace(action, namespace) && action.matchesPath(name)) {
+          result.add(action);
+          wildcardFound = true;
+        }
+      }
 
-    for (final StrutsPackage strutsPackage : getStrutsPackages()) {
-      if (namespace == null ||
-          Comparing.equal(namespace, strutsPackage.searchNamespace())) {
-        actionResultList.addAll(strutsPackage.getActions());
+      // keep the order of declaration
+      if (wildcardFound && exactActions != null) {
+        Collections.sort(result, Comparator.comparingInt(myPositions::get));
       }
+      return result;
     }
-    return actionResultList;
-  }
 
-  public boolean processActions(final Processor<Action> processor) {
-    for (final StrutsPackage strutsPackage : getStrutsPackages()) {
-      final List<Action> actions = strutsPackage.getActions();
-      if (!ContainerUtil.process(actions, processor)) return false;
+    private boolean isInNamespace(@NotNull final Action action, @Nullable final String namespace) {
+      return namespace == null || namespace.equals(myNamespaces.get(action));
     }
-    return true;
   }
 }